@@ -18,19 +18,25 @@ package de.esoco.lib.app;
 
 import de.esoco.lib.comm.CommunicationMethod;
 import de.esoco.lib.comm.HttpEndpoint;
+import de.esoco.lib.comm.RequestHistory;
 import de.esoco.lib.comm.Server;
 import de.esoco.lib.comm.Server.RequestHandler;
 import de.esoco.lib.comm.Server.RequestHandlerFactory;
+import de.esoco.lib.comm.Server.ShutdownResult;
+import de.esoco.lib.comm.ServerMetrics;
 import de.esoco.lib.comm.http.HttpRequestHandler;
 import de.esoco.lib.comm.http.HttpRequestHandler.HttpRequestMethodHandler;
+import de.esoco.lib.comm.http.HttpRouter;
 import de.esoco.lib.comm.http.HttpStatusCode;
 import de.esoco.lib.comm.http.HttpStatusException;
 import de.esoco.lib.comm.http.ObjectSpaceHttpMethodHandler;
+import de.esoco.lib.comm.http.ObjectSpaceHttpMethodHandler.ConcurrencyMode;
 import de.esoco.lib.json.JsonBuilder.ConvertJson;
 import de.esoco.lib.logging.Log;
 import de.esoco.lib.logging.LogLevel;
 import de.esoco.lib.manage.Stoppable;
 import de.esoco.lib.security.AuthenticationService;
+import de.esoco.lib.security.CredentialCache;
 import de.esoco.lib.security.SecurityRelationTypes;
 import de.esoco.lib.text.TextUtil;
 import org.obrel.core.Relatable;
@@ -43,9 +49,15 @@ import org.obrel.space.RelationSpace;
 import org.obrel.space.SynchronizedObjectSpace;
 
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import static de.esoco.lib.comm.CommunicationRelationTypes.ENCRYPTION;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_HISTORY_BUFFER;
+import static de.esoco.lib.comm.CommunicationRelationTypes.SERVER_METRICS;
+import static de.esoco.lib.comm.CommunicationRelationTypes.SHUTDOWN_TIMEOUT;
 import static de.esoco.lib.security.SecurityRelationTypes.AUTHENTICATION_SERVICE;
+import static de.esoco.lib.security.SecurityRelationTypes.CREDENTIAL_CACHE;
 import static org.obrel.core.RelationTypes.newFlagType;
 import static org.obrel.core.RelationTypes.newType;
 import static org.obrel.type.StandardTypes.INFO;
@@ -97,6 +109,12 @@ import static org.obrel.type.StandardTypes.UPTIME;
  * By setting the {@link #OPTION_NO_ENCRYPTION no encryption option} on the
  * command line this can be disabled for testing purposes.</p>
  *
+ * <p>On shutdown the REST server stops to accept connections and lets active
+ * requests finish until the
+ * {@link de.esoco.lib.comm.CommunicationRelationTypes#SHUTDOWN_TIMEOUT} of the
+ * server has been reached. The number of completed and aborted requests is
+ * logged afterwards.</p>
+ *
  * @author eso
  */
 public abstract class Service extends Application implements Stoppable {
@@ -118,6 +136,21 @@ public abstract class Service extends Application implements Stoppable {
 	 */
 	public static final RelationType<String> LOG_LEVEL = newType();
 
+	/**
+	 * The status space attribute that contains the most recent requests that
+	 * have been handled by the REST server.
+	 */
+	public static final RelationType<List<String>> RECENT_REQUESTS =
+		newType();
+
+	/**
+	 * The status space attribute that contains a summary of the performance
+	 * metrics of the REST server, including request latency percentiles per
+	 * path and response status (see {@link ServerMetrics#getSummary()}).
+	 */
+	public static final RelationType<Map<String, Object>> REQUEST_METRICS =
+		newType();
+
 	/**
 	 * The {@link ObjectSpace} containing the server API.
 	 */
@@ -193,6 +226,8 @@ public abstract class Service extends Application implements Stoppable {
 
 	private ObjectSpace<Object> restServerSpace;
 
+	private ObjectSpace<Object> statusSpace;
+
 	private HttpRequestMethodHandler requestMethodHandler;
 
 	/**
@@ -216,6 +251,17 @@ public abstract class Service extends Application implements Stoppable {
 		this.isRestService = isRestService;
 	}
 
+	/**
+	 * Adds routes to the router of the REST server that bypass the lookup of
+	 * response data in the {@link #getRestSpace() REST object space}. This
+	 * is intended for frequently requested paths that can be handled without
+	 * access to the object space. The default implementation does nothing.
+	 *
+	 * @param router The router to add the routes to
+	 */
+	protected void addRoutes(HttpRouter router) {
+	}
+
 	/**
 	 * Builds the object space that provides the REST API of this service.
 	 *
@@ -262,12 +308,12 @@ public abstract class Service extends Application implements Stoppable {
 		String serviceName = getServiceName();
 
 		ObjectSpace<Object> statusSpace = buildStatusSpace(serviceName);
-		ObjectSpace<Object> controlSpace = buildControlSpace(serviceName);
-		ObjectSpace<Object> apiSpace = buildApiSpace(statusSpace,
-			controlSpace);
 
 		// synchronize access from multiple server threads
-		controlSpace = new SynchronizedObjectSpace<>(controlSpace);
+		ObjectSpace<Object> controlSpace =
+			new SynchronizedObjectSpace<>(buildControlSpace(serviceName));
+		ObjectSpace<Object> apiSpace = buildApiSpace(statusSpace,
+			controlSpace);
 
 		root.set(API, new MappedSpace<>(apiSpace, new ConvertApiValue()));
 		root.set(WEBAPI, buildWebApiSpace(serviceName, apiSpace));
@@ -280,6 +326,8 @@ public abstract class Service extends Application implements Stoppable {
 				.viewAs(INFO, root, this::getServiceInfo);
 		}
 
+		this.statusSpace = statusSpace;
+
 		return root;
 	}
 
@@ -311,6 +359,26 @@ public abstract class Service extends Application implements Stoppable {
 		return new HtmlSpace(apiSpace, "webapi").with(NAME, serviceName);
 	}
 
+	/**
+	 * Creates the cache for the credentials that have been verified by this
+	 * service if it implements {@link AuthenticationService}. The default
+	 * implementation returns NULL so that the credentials of each request are
+	 * verified by the authentication service.
+	 *
+	 * <p>Subclasses with expensive credential checks can return a cache, e.g.
+	 * {@code new CredentialCache(1000, 60 * 1000)} for up to 1000 credentials
+	 * for one minute. The trade-off is that a changed password or revoked
+	 * access remains valid for cached credentials until the time to live has
+	 * expired unless the service invalidates them explicitly through
+	 * {@link #getCredentialCache()} (see
+	 * {@link CredentialCache#invalidateUser(String)}).</p>
+	 *
+	 * @return The credential cache or NULL for none
+	 */
+	protected CredentialCache createCredentialCache() {
+		return null;
+	}
+
 	/**
 	 * Must be implemented to create new instances of {@link RequestHandler}
 	 * for
@@ -334,13 +402,24 @@ public abstract class Service extends Application implements Stoppable {
 	/**
 	 * Creates a new instance of {@link HttpRequestMethodHandler}. See the
 	 * method {@link #getRequestMethodHandler()} for more details. The default
-	 * implementation returns an instance of
-	 * {@link ObjectSpaceHttpMethodHandler}.
+	 * implementation returns a {@link HttpRouter} with the routes that are
+	 * added by {@link #addRoutes(HttpRouter)} and an instance of
+	 * {@link ObjectSpaceHttpMethodHandler} as the fallback for all other
+	 * paths. The latter uses the concurrency mode that is returned by
+	 * {@link #getRestSpaceConcurrencyMode()} with independent subtrees at the
+	 * second level of the REST space (e.g. {@code /api/status} and
+	 * {@code /api/control}).
 	 *
 	 * @return The new request method handler
 	 */
 	protected HttpRequestMethodHandler createRequestMethodHandler() {
-		return new ObjectSpaceHttpMethodHandler(restServerSpace, "info");
+		HttpRouter router = new HttpRouter(
+			new ObjectSpaceHttpMethodHandler(restServerSpace, "info",
+				getRestSpaceConcurrencyMode(), 2));
+
+		addRoutes(router);
+
+		return router;
 	}
 
 	/**
@@ -361,14 +440,31 @@ public abstract class Service extends Application implements Stoppable {
 			server.set(ENCRYPTION);
 
 			if (this instanceof AuthenticationService) {
+				CredentialCache credentialCache = createCredentialCache();
+
 				server.set(AUTHENTICATION_SERVICE,
 					(AuthenticationService) this);
+
+				if (credentialCache != null) {
+					server.set(CREDENTIAL_CACHE, credentialCache);
+				}
 			}
 		}
 
 		return server;
 	}
 
+	/**
+	 * Returns the cache of verified credentials of the REST server. It can be
+	 * used to invalidate cached credentials, e.g. if a password changes.
+	 *
+	 * @return The credential cache or NULL if the REST server has not been
+	 * created or doesn't cache credentials
+	 */
+	protected final CredentialCache getCredentialCache() {
+		return restServer != null ? restServer.get(CREDENTIAL_CACHE) : null;
+	}
+
 	/**
 	 * Will be invoked to return the handler for HTTP request methods (like
 	 * GET,
@@ -429,6 +525,21 @@ public abstract class Service extends Application implements Stoppable {
 		return restServerSpace;
 	}
 
+	/**
+	 * Returns the mode for the synchronization of concurrent requests to the
+	 * REST object space. The default implementation returns
+	 * {@link ConcurrencyMode#SYNCHRONIZED} which serializes all requests.
+	 * Subclasses can return {@link ConcurrencyMode#READ_WRITE} to let GET
+	 * requests (e.g. status polling) run in parallel if reading from their
+	 * REST space doesn't modify it and if the spaces below {@link #API} don't
+	 * depend on each other.
+	 *
+	 * @return The concurrency mode for the REST space
+	 */
+	protected ConcurrencyMode getRestSpaceConcurrencyMode() {
+		return ConcurrencyMode.SYNCHRONIZED;
+	}
+
 	/**
 	 * Returns a string that contains information about this service.
 	 *
@@ -480,11 +591,16 @@ public abstract class Service extends Application implements Stoppable {
 		runService();
 
 		if (isRestService) {
-			restServerThread.join();
+			try {
+				restServerThread.join();
+			} catch (InterruptedException e) {
+				// interrupted by a shutdown request
+				shutdownRestServer();
+			}
 		} else {
 			// stop the REST server if this is not a REST service (where the
 			// REST server is the actual service)
-			restServer.stop();
+			shutdownRestServer();
 		}
 	}
 
@@ -520,6 +636,18 @@ public abstract class Service extends Application implements Stoppable {
 	protected Server startRestServer() throws Exception {
 		Server server = createRestServer();
 
+		if (statusSpace != null) {
+			// snapshots are only created if the status is queried
+			server
+				.getRelation(REQUEST_HISTORY_BUFFER)
+				.viewAs(RECENT_REQUESTS, statusSpace,
+					RequestHistory::getRequests);
+			server
+				.getRelation(SERVER_METRICS)
+				.viewAs(REQUEST_METRICS, statusSpace,
+					ServerMetrics::getSummary);
+		}
+
 		// this will stop the server on service shutdown
 		manageResource(server);
 
@@ -547,6 +675,26 @@ public abstract class Service extends Application implements Stoppable {
 		}
 	}
 
+	/**
+	 * Shuts down the REST server gracefully and reports the result.
+	 *
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *                              shutdown
+	 */
+	@SuppressWarnings("boxing")
+	private void shutdownRestServer() throws InterruptedException {
+		ShutdownResult result =
+			restServer.shutdown(restServer.get(SHUTDOWN_TIMEOUT));
+
+		if (result != null && !result.isComplete()) {
+			Log.warnf("%s: %d connections with active requests aborted " +
+					"after shutdown timeout", getServiceName(),
+				result.getClosedActiveConnections());
+		} else if (result != null) {
+			Log.infof("%s shut down: %s", getServiceName(), result);
+		}
+	}
+
 	/**
 	 * Internal method to handle a request from the REST server to stop the
 	 * service.
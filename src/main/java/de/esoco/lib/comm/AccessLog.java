@@ -0,0 +1,506 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import de.esoco.lib.logging.Log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An access log that writes a record for each request handled by a
+ * {@link Server} to a file in the Common or Combined Log Format. Request
+ * threads only put a fixed {@link Entry} record on a lock-free queue. A
+ * background thread formats the records and writes them to a buffered file.
+ * That keeps the logging cost on the request path very small. The writer
+ * thread flushes the file when the queue is empty.
+ *
+ * <p>If the log file reaches a maximum size it is rolled over. The current
+ * file is renamed by appending the index 1 and older files are shifted to
+ * the next index. Files beyond the maximum number are deleted. The number of
+ * queued records is limited. Records that exceed this limit are dropped and
+ * counted so that a slow disk cannot exhaust the memory of the server.</p>
+ *
+ * @author eso
+ */
+public class AccessLog implements AutoCloseable {
+
+	/**
+	 * The maximum number of records that wait to be written.
+	 */
+	public static final int MAX_QUEUE_SIZE = 64 * 1024;
+
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(200);
+
+	private static final char[] HEX_DIGITS =
+		"0123456789abcdef".toCharArray();
+
+	private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter
+		.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US)
+		.withZone(ZoneId.systemDefault());
+
+	private final Path file;
+
+	private final Format format;
+
+	private final long maxFileSize;
+
+	private final int maxFiles;
+
+	private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger queueSize = new AtomicInteger();
+
+	private final AtomicLong droppedRecords = new AtomicLong();
+
+	private final Thread writerThread;
+
+	private final StringBuilder line = new StringBuilder(256);
+
+	private volatile boolean running = true;
+
+	private Writer output;
+
+	private long fileSize;
+
+	private boolean writeError;
+
+	private long timestampSecond = -1;
+
+	private String timestamp;
+
+	/**
+	 * Creates a new instance and starts the writer thread.
+	 *
+	 * @param fileName    The name of the log file
+	 * @param format      The format of the log records
+	 * @param maxFileSize The size in bytes at which the log file is rolled
+	 *                    over or zero to never roll over
+	 * @param maxFiles    The maximum number of rolled over files to keep
+	 */
+	public AccessLog(String fileName, Format format, long maxFileSize,
+		int maxFiles) {
+		this.file = Paths.get(fileName);
+		this.format = format;
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = maxFiles;
+
+		writerThread = new Thread(this::run,
+			"access-log-" + file.getFileName());
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Writes all queued records and stops the writer thread.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		LockSupport.unpark(writerThread);
+
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of records that have been dropped because the queue
+	 * was full or the log file could not be written.
+	 *
+	 * @return The number of dropped records
+	 */
+	public long getDroppedRecords() {
+		return droppedRecords.get();
+	}
+
+	/**
+	 * Adds a record to this log. The record will be written asynchronously
+	 * and must not be modified anymore.
+	 *
+	 * @param entry The record to add
+	 */
+	public void log(Entry entry) {
+		if (running && queueSize.incrementAndGet() <= MAX_QUEUE_SIZE) {
+			queue.add(entry);
+		} else {
+			queueSize.decrementAndGet();
+			droppedRecords.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Appends a byte value as a hexadecimal escape sequence to the current
+	 * line.
+	 *
+	 * @param value The byte value
+	 */
+	private void appendEscaped(int value) {
+		line.append("\\x");
+		line.append(HEX_DIGITS[value >> 4]).append(HEX_DIGITS[value & 0x0F]);
+	}
+
+	/**
+	 * Appends a quoted string to the current line. Quotes, backslashes, and
+	 * characters outside of the printable ASCII range are escaped like in the
+	 * access logs of the Apache HTTP server so that a log line cannot be
+	 * forged and only contains ASCII characters.
+	 *
+	 * @param value The value to append or NULL for '-'
+	 */
+	private void appendQuoted(String value) {
+		line.append('"');
+
+		if (value == null) {
+			line.append('-');
+		} else {
+			int length = value.length();
+
+			for (int i = 0; i < length; i++) {
+				char c = value.charAt(i);
+
+				if (c == '"' || c == '\\') {
+					line.append('\\').append(c);
+				} else if (c >= 0x20 && c < 0x7F) {
+					line.append(c);
+				} else if (c < 0x80) {
+					appendEscaped(c);
+				} else {
+					int codePoint = value.codePointAt(i);
+
+					i += Character.charCount(codePoint) - 1;
+
+					for (byte b : new String(Character.toChars(codePoint))
+						.getBytes(StandardCharsets.UTF_8)) {
+						appendEscaped(b & 0xFF);
+					}
+				}
+			}
+		}
+
+		line.append('"');
+	}
+
+	/**
+	 * Formats a record into the line buffer.
+	 *
+	 * @param entry The record to format
+	 */
+	private void formatEntry(Entry entry) {
+		long second = entry.timestamp / 1000;
+
+		if (second != timestampSecond) {
+			timestampSecond = second;
+			timestamp =
+				TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(entry.timestamp));
+		}
+
+		line.setLength(0);
+		line.append(entry.clientAddress != null ?
+		            entry.clientAddress.getHostAddress() :
+		            "-");
+		line.append(" - - [").append(timestamp).append("] ");
+
+		if (entry.method != null) {
+			appendQuoted(
+				entry.method + ' ' + entry.path + ' ' + entry.protocol);
+		} else {
+			appendQuoted(null);
+		}
+
+		line.append(' ');
+		line.append(entry.status > 0 ? String.valueOf(entry.status) : "-");
+		line.append(' ');
+		line.append(entry.bytesSent > 0 ? String.valueOf(entry.bytesSent) :
+		            "-");
+
+		if (format != Format.COMMON) {
+			line.append(' ');
+			appendQuoted(entry.referer);
+			line.append(' ');
+			appendQuoted(entry.userAgent);
+		}
+
+		if (format == Format.COMBINED_LATENCY) {
+			line.append(' ').append(entry.latency);
+		}
+
+		line.append('\n');
+	}
+
+	/**
+	 * Opens the log file for appending.
+	 *
+	 * @throws IOException If opening the file fails
+	 */
+	private void openFile() throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+
+		if (directory != null) {
+			Files.createDirectories(directory);
+		}
+
+		fileSize = Files.exists(file) ? Files.size(file) : 0;
+		output = new BufferedWriter(new OutputStreamWriter(
+			Files.newOutputStream(file, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND), StandardCharsets.US_ASCII),
+			WRITE_BUFFER_SIZE);
+	}
+
+	/**
+	 * Closes the current log file and rolls it over to the first backup file
+	 * after shifting the existing backup files.
+	 *
+	 * @throws IOException If renaming a file fails
+	 */
+	private void rollOver() throws IOException {
+		output.close();
+		output = null;
+
+		if (maxFiles > 0) {
+			Files.deleteIfExists(rolledFile(maxFiles));
+
+			for (int i = maxFiles - 1; i > 0; i--) {
+				Path rolled = rolledFile(i);
+
+				if (Files.exists(rolled)) {
+					Files.move(rolled, rolledFile(i + 1),
+						StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+
+			Files.move(file, rolledFile(1),
+				StandardCopyOption.REPLACE_EXISTING);
+		} else {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Returns the path of a rolled over log file.
+	 *
+	 * @param index The index of the file
+	 * @return The file path
+	 */
+	private Path rolledFile(int index) {
+		return file.resolveSibling(file.getFileName() + "." + index);
+	}
+
+	/**
+	 * The main loop of the writer thread.
+	 */
+	private void run() {
+		while (running || !queue.isEmpty()) {
+			Entry entry = queue.poll();
+
+			if (entry != null) {
+				queueSize.decrementAndGet();
+				write(entry);
+			} else {
+				if (output != null) {
+					try {
+						output.flush();
+					} catch (IOException e) {
+						writeFailed(e);
+					}
+				}
+
+				if (running) {
+					LockSupport.parkNanos(this, IDLE_WAIT);
+				}
+			}
+		}
+
+		if (output != null) {
+			try {
+				output.close();
+			} catch (IOException e) {
+				Log.error("Closing access log failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Writes a record to the log file. If writing fails the record will be
+	 * dropped and the file will be opened again for the next record.
+	 *
+	 * @param entry The record to write
+	 */
+	private void write(Entry entry) {
+		formatEntry(entry);
+
+		try {
+			if (output == null) {
+				openFile();
+			}
+
+			output.append(line);
+			fileSize += line.length();
+
+			if (maxFileSize > 0 && fileSize >= maxFileSize) {
+				rollOver();
+			}
+
+			writeError = false;
+		} catch (IOException e) {
+			droppedRecords.incrementAndGet();
+			writeFailed(e);
+		}
+	}
+
+	/**
+	 * Handles an error that occurred while writing the log file by closing
+	 * the file so that it will be opened again for the next record. Only the
+	 * first of consecutive errors is logged.
+	 *
+	 * @param error The error that occurred
+	 */
+	private void writeFailed(IOException error) {
+		if (!writeError) {
+			Log.error("Writing access log failed", error);
+			writeError = true;
+		}
+
+		if (output != null) {
+			try {
+				output.close();
+			} catch (IOException e) {
+				// ignored because writing has already failed
+			}
+
+			output = null;
+		}
+	}
+
+	/**
+	 * Enumeration of the supported log formats.
+	 *
+	 * <ul>
+	 *   <li>{@link #COMMON}: the Common Log Format.</li>
+	 *   <li>{@link #COMBINED}: the Combined Log Format which adds the Referer
+	 *     and User-Agent request headers.</li>
+	 *   <li>{@link #COMBINED_LATENCY}: the Combined Log Format followed by the
+	 *     request handling time in microseconds.</li>
+	 * </ul>
+	 */
+	public enum Format {COMMON, COMBINED, COMBINED_LATENCY}
+
+	/**
+	 * The record of a single request in an {@link AccessLog}. A server
+	 * creates a record at the start of each request and sets it on the
+	 * request handler with the relation type
+	 * {@link Server#ACCESS_LOG_ENTRY}. HTTP request handlers then set the
+	 * request line and the client information on it. The remaining values
+	 * are set by the server when the request is complete.
+	 *
+	 * @author eso
+	 */
+	public static final class Entry {
+
+		private final long timestamp;
+
+		private final InetAddress clientAddress;
+
+		private String method;
+
+		private String path;
+
+		private String protocol;
+
+		private String referer;
+
+		private String userAgent;
+
+		private int status;
+
+		private long bytesSent;
+
+		private long latency;
+
+		/**
+		 * Creates a new instance with the current time as the request time.
+		 *
+		 * @param clientAddress The address of the requesting client
+		 */
+		public Entry(InetAddress clientAddress) {
+			this.clientAddress = clientAddress;
+
+			timestamp = System.currentTimeMillis();
+		}
+
+		/**
+		 * Sets the header values that are logged in the Combined Log Format.
+		 *
+		 * @param referer   The value of the Referer header or NULL for none
+		 * @param userAgent The value of the User-Agent header or NULL for
+		 *                  none
+		 */
+		public void setClientInfo(String referer, String userAgent) {
+			this.referer = referer;
+			this.userAgent = userAgent;
+		}
+
+		/**
+		 * Sets the elements of the request line.
+		 *
+		 * @param method   The request method
+		 * @param path     The request path
+		 * @param protocol The protocol version (e.g. HTTP/1.1)
+		 */
+		public void setRequest(String method, String path, String protocol) {
+			this.method = method;
+			this.path = path;
+			this.protocol = protocol;
+		}
+
+		/**
+		 * Sets the result of the request.
+		 *
+		 * @param status    The response status code or zero if not known
+		 * @param bytesSent The number of bytes sent to the client
+		 * @param latency   The request handling time in microseconds
+		 */
+		public void setResult(int status, long bytesSent, long latency) {
+			this.status = status;
+			this.bytesSent = bytesSent;
+			this.latency = latency;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the request rate and the number of concurrent connections of the
+ * clients of a {@link Server}, identified by their IP address. The request
+ * rate is limited with a token bucket per client that holds up to a certain
+ * number of requests (the burst size) and is refilled continuously with the
+ * allowed rate. The bucket is implemented as a single atomic timestamp (the
+ * time at which the bucket would be full again) so that requests can be
+ * checked without locking.
+ *
+ * <p>The state of clients that have no open connections and a full bucket is
+ * removed periodically. Because the state can be removed concurrently with
+ * an access the limits may be exceeded slightly in rare cases.</p>
+ *
+ * @author eso
+ */
+public final class ClientRateLimiter {
+
+	private static final long EVICTION_INTERVAL =
+		TimeUnit.SECONDS.toNanos(10);
+
+	private final ConcurrentMap<InetAddress, ClientState> clients =
+		new ConcurrentHashMap<>();
+
+	private final long tokenInterval;
+
+	private final long burstTime;
+
+	private final int maxConnections;
+
+	private final AtomicLong nextEviction =
+		new AtomicLong(System.nanoTime() + EVICTION_INTERVAL);
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param requestsPerSecond The number of requests per second that a
+	 *                          client may send on average or zero for no
+	 *                          limit
+	 * @param burstSize         The maximum number of requests that a client
+	 *                          may send at once
+	 * @param maxConnections    The maximum number of concurrent connections
+	 *                          per client or zero for no limit
+	 * @throws IllegalArgumentException If a parameter is negative or if the
+	 *                                  burst size is not positive for a
+	 *                                  limited request rate
+	 */
+	@SuppressWarnings("boxing")
+	public ClientRateLimiter(int requestsPerSecond, int burstSize,
+		int maxConnections) {
+		if (requestsPerSecond < 0 || maxConnections < 0 ||
+			(requestsPerSecond > 0 && burstSize <= 0)) {
+			throw new IllegalArgumentException(String.format(
+				"Invalid rate limit: %d/s, burst %d, %d connections",
+				requestsPerSecond, burstSize, maxConnections));
+		}
+
+		this.maxConnections = maxConnections;
+
+		if (requestsPerSecond > 0) {
+			tokenInterval = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+			burstTime = tokenInterval * burstSize;
+		} else {
+			tokenInterval = 0;
+			burstTime = 0;
+		}
+	}
+
+	/**
+	 * Tries to register a new connection of a client. If successful the
+	 * connection must be released with {@link #releaseConnection(InetAddress)}
+	 * after it has been closed.
+	 *
+	 * @param client The client address
+	 * @return TRUE if the connection is allowed, FALSE if the client has
+	 * reached the connection limit
+	 */
+	public boolean acquireConnection(InetAddress client) {
+		if (maxConnections > 0) {
+			AtomicInteger connections =
+				getState(client, System.nanoTime()).connections;
+			int count;
+
+			do {
+				count = connections.get();
+
+				if (count >= maxConnections) {
+					return false;
+				}
+			} while (!connections.compareAndSet(count, count + 1));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Tries to take a token from the bucket of a client for a new request.
+	 *
+	 * @param client The client address
+	 * @return Zero if the request is allowed or else the time in milliseconds
+	 * after which the client may send the next request
+	 */
+	public long acquireRequest(InetAddress client) {
+		if (tokenInterval > 0) {
+			long now = System.nanoTime();
+			AtomicLong fullTime = getState(client, now).fullTime;
+
+			while (true) {
+				long current = fullTime.get();
+				long next = (current - now > 0 ? current : now) + tokenInterval;
+				long excess = next - now - burstTime;
+
+				if (excess > 0) {
+					// rounded up to not signal a retry time that is too early
+					return TimeUnit.NANOSECONDS.toMillis(excess + 999_999);
+				} else if (fullTime.compareAndSet(current, next)) {
+					return 0;
+				}
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Returns the number of clients for which state is currently kept.
+	 *
+	 * @return The client count
+	 */
+	public int getClientCount() {
+		return clients.size();
+	}
+
+	/**
+	 * Releases a connection of a client that has been acquired with
+	 * {@link #acquireConnection(InetAddress)}.
+	 *
+	 * @param client The client address
+	 */
+	public void releaseConnection(InetAddress client) {
+		if (maxConnections > 0) {
+			ClientState state = clients.get(client);
+
+			if (state != null) {
+				state.connections.updateAndGet(c -> c > 0 ? c - 1 : 0);
+			}
+		}
+	}
+
+	/**
+	 * Returns the state of a client, creating it if necessary. Also removes
+	 * idle clients if the eviction interval has elapsed.
+	 *
+	 * @param client The client address
+	 * @param now    The current time in nanoseconds
+	 * @return The client state
+	 */
+	private ClientState getState(InetAddress client, long now) {
+		long eviction = nextEviction.get();
+
+		if (now - eviction >= 0 &&
+			nextEviction.compareAndSet(eviction, now + EVICTION_INTERVAL)) {
+			clients.values().removeIf(state -> state.isIdle(now));
+		}
+
+		ClientState state = clients.get(client);
+
+		if (state == null) {
+			state = clients.computeIfAbsent(client, c -> new ClientState(now));
+		}
+
+		return state;
+	}
+
+	/**
+	 * The rate limiting state of a single client.
+	 *
+	 * @author eso
+	 */
+	private static class ClientState {
+
+		private final AtomicLong fullTime;
+
+		private final AtomicInteger connections = new AtomicInteger();
+
+		/**
+		 * Creates a new instance with a full token bucket.
+		 *
+		 * @param now The current time in nanoseconds
+		 */
+		ClientState(long now) {
+			fullTime = new AtomicLong(now);
+		}
+
+		/**
+		 * Checks whether this client has no open connections and a full
+		 * token bucket.
+		 *
+		 * @param now The current time in nanoseconds
+		 * @return TRUE if idle
+		 */
+		boolean isIdle(long now) {
+			return connections.get() == 0 && fullTime.get() - now <= 0;
+		}
+	}
+}
@@ -16,12 +16,13 @@
 //++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 package de.esoco.lib.comm;
 
+import de.esoco.lib.comm.Server.RequestCapture;
 import de.esoco.lib.comm.http.HttpRequestMethod;
+import de.esoco.lib.comm.http.HttpRouter;
 import de.esoco.lib.comm.http.HttpStatusCode;
+import de.esoco.lib.logging.LogLevel;
 import org.obrel.core.RelationType;
 import org.obrel.core.RelationTypes;
-import org.obrel.type.CollectorType;
-import org.obrel.type.StandardTypes;
 
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -34,9 +35,9 @@ import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 import static org.obrel.core.RelationTypeModifier.FINAL;
-import static org.obrel.core.RelationTypeModifier.READONLY;
 import static org.obrel.core.RelationTypes.newFlagType;
 import static org.obrel.core.RelationTypes.newInitialValueType;
 import static org.obrel.core.RelationTypes.newMapType;
@@ -114,23 +115,76 @@ public class CommunicationRelationTypes {
 
 	/**
 	 * Contains a string description of the most recent request that has been
-	 * performed in a network operation.
+	 * performed in a network operation. For server requests this is the
+	 * request data that has been captured according to the
+	 * {@link #REQUEST_CAPTURE} mode of the server (or NULL if the request has
+	 * not been captured). It may contain line breaks. On servers this is a
+	 * view of the latest entry in the {@link #REQUEST_HISTORY_BUFFER}.
 	 */
 	public static final RelationType<String> LAST_REQUEST = newType();
 
 	/**
-	 * An automatic relation that collects the values of {@link #LAST_REQUEST}.
-	 * Should be annotated with {@link StandardTypes#MAXIMUM} to limit the
-	 * history size.
+	 * The values of {@link #LAST_REQUEST} of the most recent requests that
+	 * have been handled by a server, ordered from oldest to newest. On servers
+	 * this is a view that creates a snapshot of the
+	 * {@link #REQUEST_HISTORY_BUFFER} on each access.
 	 */
 	public static final RelationType<Collection<String>> REQUEST_HISTORY =
-		CollectorType.newCollector(String.class,
-			(r, o) -> r.getType() == LAST_REQUEST ? o.toString() : null,
-			READONLY);
+		newType();
+
+	/**
+	 * The buffer containing the history of the most recent requests that have
+	 * been handled by a server, including their captured data and handling
+	 * time. The size of the history is defined by
+	 * {@link #REQUEST_HISTORY_SIZE}.
+	 */
+	public static final RelationType<RequestHistory> REQUEST_HISTORY_BUFFER =
+		newType();
+
+	/**
+	 * The maximum number of requests in the {@link #REQUEST_HISTORY_BUFFER}
+	 * of a server. Has a default value of 100.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> REQUEST_HISTORY_SIZE =
+		newInitialValueType(100);
+
+	/**
+	 * The mode in which a server captures the data of requests for
+	 * {@link #LAST_REQUEST} and {@link #REQUEST_HISTORY}. Has a default value
+	 * of {@link RequestCapture#FULL}.
+	 */
+	public static final RelationType<RequestCapture> REQUEST_CAPTURE =
+		newInitialValueType(RequestCapture.FULL);
+
+	/**
+	 * The maximum number of bytes that are captured of a request in the mode
+	 * {@link RequestCapture#TRUNCATED}. Has a default value of 1 KiB.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> REQUEST_CAPTURE_SIZE =
+		newInitialValueType(1024);
+
+	/**
+	 * The rate at which requests are captured in the mode
+	 * {@link RequestCapture#SAMPLED}, i.e. a value of N means that every N-th
+	 * request is captured. Has a default value of 100.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> REQUEST_CAPTURE_SAMPLE_RATE =
+		newInitialValueType(100);
+
+	/**
+	 * The performance metrics of a server, including request latency
+	 * histograms and throughput counters.
+	 */
+	public static final RelationType<ServerMetrics> SERVER_METRICS =
+		newType();
 
 	/**
 	 * Contains the time (in milliseconds) that the handling of a request has
-	 * consumed.
+	 * consumed. On servers this is a view of the latest entry in the
+	 * {@link #REQUEST_HISTORY_BUFFER}.
 	 */
 	public static final RelationType<Integer> REQUEST_HANDLING_TIME =
 		newType();
@@ -151,6 +205,115 @@ public class CommunicationRelationTypes {
 	 */
 	public static final RelationType<Integer> MAX_CONNECTIONS = newType();
 
+	/**
+	 * The maximum number of requests that a server keeps waiting if all
+	 * request handling threads (see {@link #MAX_CONNECTIONS}) are busy. Any
+	 * further requests will be rejected. Has a default value of 100.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> REQUEST_QUEUE_SIZE =
+		newInitialValueType(100);
+
+	/**
+	 * The number of seconds after which a client should retry a request that
+	 * has been rejected because the server was busy. Has a default value of 5.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> RETRY_AFTER =
+		newInitialValueType(5);
+
+	/**
+	 * The number of requests per second that a single client (identified by
+	 * it's IP address) may send to a server on average. Requests exceeding
+	 * this rate will be rejected with the HTTP status 429 (Too Many Requests).
+	 * Not set by default which disables the rate limit.
+	 */
+	public static final RelationType<Integer> CLIENT_REQUEST_RATE = newType();
+
+	/**
+	 * The number of requests that a single client may send to a server at
+	 * once if it has been idle before. Only used if a
+	 * {@link #CLIENT_REQUEST_RATE} is set. Defaults to the request rate if not
+	 * set.
+	 */
+	public static final RelationType<Integer> CLIENT_REQUEST_BURST =
+		newType();
+
+	/**
+	 * The maximum number of concurrent connections of a single client
+	 * (identified by it's IP address) to a server. Connections exceeding this
+	 * limit will be rejected with the HTTP status 429 (Too Many Requests). Not
+	 * set by default which disables the limit.
+	 */
+	public static final RelationType<Integer> MAX_CLIENT_CONNECTIONS =
+		newType();
+
+	/**
+	 * A flag that enables persistent connections (HTTP keep-alive) on a
+	 * server. While a request is handled the flag will also be set on the
+	 * request handler if the connection may be kept alive afterwards. The
+	 * handler must then clear the flag if the connection needs to be closed,
+	 * e.g. because the client requested so.
+	 */
+	public static final RelationType<Boolean> KEEP_ALIVE = newFlagType();
+
+	/**
+	 * The time in milliseconds after which an idle persistent connection will
+	 * be closed. Has a default value of 5 seconds.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> KEEP_ALIVE_TIMEOUT =
+		newInitialValueType(5 * 1000);
+
+	/**
+	 * The maximum number of requests that can be performed over a single
+	 * persistent connection. Has a default value of 100.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> MAX_KEEP_ALIVE_REQUESTS =
+		newInitialValueType(100);
+
+	/**
+	 * The time in milliseconds that a client has to send the complete header
+	 * of a request to a server, starting when the connection has been opened
+	 * or, on persistent connections, when the first data of the next request
+	 * has been received. Connections exceeding this time will be closed. Has
+	 * a default value of 10 seconds. A value of zero disables the timeout.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> REQUEST_HEADER_TIMEOUT =
+		newInitialValueType(10 * 1000);
+
+	/**
+	 * The time in milliseconds that a client has to send the body of a
+	 * request to a server after the request header has been received.
+	 * Connections exceeding this time will be closed. Has a default value of
+	 * 30 seconds. A value of zero disables the timeout.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> REQUEST_BODY_TIMEOUT =
+		newInitialValueType(30 * 1000);
+
+	/**
+	 * The time in milliseconds that writing response data to a client may
+	 * take without progress. Large responses are written in blocks of up to
+	 * 256 KiB that must each be accepted by the client within this time.
+	 * Connections exceeding this time will be closed. Has a default value of
+	 * 30 seconds. A value of zero disables the timeout.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> RESPONSE_WRITE_TIMEOUT =
+		newInitialValueType(30 * 1000);
+
+	/**
+	 * The time in milliseconds that a server waits for active requests to
+	 * finish when it is stopped. Connections that are still active after this
+	 * time will be closed. Has a default value of 30 seconds.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> SHUTDOWN_TIMEOUT =
+		newInitialValueType(30 * 1000);
+
 	/**
 	 * The maximum size that a request to a server allowed to have. Has a
 	 * default value of 64 KiB.
@@ -182,6 +345,65 @@ public class CommunicationRelationTypes {
 	 */
 	public static final RelationType<Boolean> ENCRYPTION = newFlagType(FINAL);
 
+	/**
+	 * A flag that enables non-blocking I/O for a server. If set a server will
+	 * multiplex all client connections over a single selector thread and only
+	 * hand complete requests over to the request handlers. Responses will be
+	 * buffered in memory until they are complete and are therefore limited by
+	 * {@link #MAX_RESPONSE_SIZE}.
+	 */
+	public static final RelationType<Boolean> NON_BLOCKING_IO = newFlagType();
+
+	/**
+	 * The number of threads that accept client connections in a server with
+	 * blocking I/O. Each acceptor thread listens on a separate server socket
+	 * if the platform supports the socket option {@code SO_REUSEPORT} for
+	 * unencrypted connections. Otherwise all threads accept connections from
+	 * the same server socket. Has a default value of 1.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> ACCEPTOR_THREADS =
+		newInitialValueType(1);
+
+	/**
+	 * The name of the file a server writes it's access log to. If not set no
+	 * access log will be written.
+	 */
+	public static final RelationType<String> ACCESS_LOG_FILE = newType();
+
+	/**
+	 * The format of the records in a server access log. Has a default value
+	 * of {@link AccessLog.Format#COMMON}.
+	 */
+	public static final RelationType<AccessLog.Format> ACCESS_LOG_FORMAT =
+		newInitialValueType(AccessLog.Format.COMMON);
+
+	/**
+	 * The size in bytes at which a server access log file is rolled over.
+	 * Zero disables the rollover. Has a default value of 10 MiB.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Long> ACCESS_LOG_MAX_SIZE =
+		newInitialValueType(10L * 1024 * 1024);
+
+	/**
+	 * The number of rolled over access log files that are kept by a server.
+	 * Has a default value of 5.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> ACCESS_LOG_MAX_FILES =
+		newInitialValueType(5);
+
+	/**
+	 * The level at which a server logs the handling of each request to the
+	 * application log. Setting a level that is not enabled for the
+	 * application log (like {@link LogLevel#TRACE}) avoids the logging cost
+	 * for servers that write an access log. Has a default value of
+	 * {@link LogLevel#INFO}.
+	 */
+	public static final RelationType<LogLevel> REQUEST_LOG_LEVEL =
+		newInitialValueType(LogLevel.INFO);
+
 	/**
 	 * A flag to enabled SSL/TLS connections to endpoints that use self-signed
 	 * certificates. ATTENTION: this should only be used for test environments,
@@ -205,6 +427,28 @@ public class CommunicationRelationTypes {
 	public static final RelationType<Integer> HTTP_MAX_HEADER_LINE_SIZE =
 		newInitialValueType(1024 * 8);
 
+	/**
+	 * The compression level (0-9) for HTTP responses that are sent with a
+	 * content encoding that has been negotiated from the Accept-Encoding
+	 * header of the request. The value 0 ({@link Deflater#NO_COMPRESSION})
+	 * disables response compression. Has a default value of
+	 * {@link Deflater#DEFAULT_COMPRESSION}.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> HTTP_COMPRESSION_LEVEL =
+		newInitialValueType(Deflater.DEFAULT_COMPRESSION);
+
+	/**
+	 * The minimum size in bytes of HTTP response bodies that will be
+	 * compressed. Smaller responses are sent uncompressed because the
+	 * compression overhead would outweigh the size reduction. Streaming
+	 * responses of unknown size are always compressed. Has a default value of
+	 * 1 KiB.
+	 */
+	@SuppressWarnings("boxing")
+	public static final RelationType<Integer> HTTP_COMPRESSION_THRESHOLD =
+		newInitialValueType(1024);
+
 	/**
 	 * The method of an HTTP request.
 	 */
@@ -214,8 +458,15 @@ public class CommunicationRelationTypes {
 	/**
 	 * The target path of an HTTP request.
 	 */
-	public static final RelationType<HttpRequestMethod> HTTP_REQUEST_PATH =
-		newType();
+	public static final RelationType<String> HTTP_REQUEST_PATH = newType();
+
+	/**
+	 * The values of the parameter segments in the path of an HTTP request,
+	 * mapped from the parameter names. Will be set on requests that have been
+	 * routed by a {@link HttpRouter}.
+	 */
+	public static final RelationType<Map<String, String>>
+		HTTP_PATH_PARAMETERS = newType();
 
 	/**
 	 * The headers for an HTTP request. These must be set on a connection or
@@ -0,0 +1,154 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import de.esoco.lib.comm.TimingWheel.Timeout;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The deadline of a server connection that is monitored by the connection
+ * reaper of a {@link Server}. The deadline is changed for each phase of a
+ * request (receiving the header and the body, sending the response) and
+ * cleared while the connection is not waiting for the client. If the
+ * deadline has passed the timeout action will be executed once.
+ *
+ * <p>To avoid scheduling a new timeout on every change of the deadline the
+ * timer only keeps a single timeout on the {@link TimingWheel} at a time.
+ * When it expires before the current deadline it will be re-scheduled for the
+ * remaining time.</p>
+ *
+ * @author eso
+ */
+final class ConnectionTimer {
+
+	private final TimingWheel wheel;
+
+	private final Runnable timeoutAction;
+
+	private long deadline = 0;
+
+	private long checkTime;
+
+	private Timeout deadlineCheck;
+
+	private boolean expired = false;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param wheel         The timing wheel to schedule the deadline checks on
+	 * @param timeoutAction The action to execute when the deadline has passed
+	 */
+	ConnectionTimer(TimingWheel wheel, Runnable timeoutAction) {
+		this.wheel = wheel;
+		this.timeoutAction = timeoutAction;
+	}
+
+	/**
+	 * Removes the current deadline.
+	 */
+	synchronized void clear() {
+		deadline = 0;
+	}
+
+	/**
+	 * Checks whether the deadline of this timer has passed and the timeout
+	 * action has been executed.
+	 *
+	 * @return TRUE if the timer has expired
+	 */
+	synchronized boolean isExpired() {
+		return expired;
+	}
+
+	/**
+	 * Sets a new deadline relative to the current time.
+	 *
+	 * @param timeout The timeout in milliseconds or zero to clear the
+	 *                deadline
+	 */
+	synchronized void set(int timeout) {
+		if (timeout <= 0 || expired) {
+			deadline = 0;
+		} else {
+			long now = System.nanoTime();
+
+			// zero indicates that no deadline is set
+			deadline = (now + TimeUnit.MILLISECONDS.toNanos(timeout)) | 1;
+
+			if (deadlineCheck == null || checkTime - deadline > 0) {
+				if (deadlineCheck != null) {
+					deadlineCheck.cancel();
+				}
+
+				scheduleCheck(now);
+			}
+		}
+	}
+
+	/**
+	 * Stops this timer when the connection has been closed.
+	 */
+	synchronized void stop() {
+		deadline = 0;
+
+		if (deadlineCheck != null) {
+			deadlineCheck.cancel();
+			deadlineCheck = null;
+		}
+	}
+
+	/**
+	 * Checks the deadline when the scheduled timeout has expired.
+	 */
+	private void checkDeadline() {
+		boolean timedOut = false;
+
+		synchronized (this) {
+			deadlineCheck = null;
+
+			if (deadline != 0) {
+				long now = System.nanoTime();
+
+				if (deadline - now <= 0) {
+					deadline = 0;
+					expired = true;
+					timedOut = true;
+				} else {
+					scheduleCheck(now);
+				}
+			}
+		}
+
+		if (timedOut) {
+			timeoutAction.run();
+		}
+	}
+
+	/**
+	 * Schedules the check of the current deadline.
+	 *
+	 * @param now The current time in nanoseconds
+	 */
+	private void scheduleCheck(long now) {
+		checkTime = deadline;
+		deadlineCheck = wheel.schedule(
+			TimeUnit.NANOSECONDS.toMillis(deadline - now + 999_999),
+			this::checkDeadline);
+	}
+}
@@ -0,0 +1,187 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values (typically latencies) with logarithmic
+ * buckets in the style of an HDR histogram. Each power of two is divided into
+ * a fixed number of linear sub-buckets so that recorded values are resolved
+ * with a constant relative precision of 12.5% over the full value range while
+ * the histogram has a small, fixed memory footprint. Values are not stored
+ * individually and the unit of the values is up to the application.
+ *
+ * <p>Recording values is lock-free and therefore can be done concurrently
+ * from multiple threads with low overhead. Queries are also possible at any
+ * time but the result will not reflect values that are recorded while the
+ * query is performed.</p>
+ *
+ * @author eso
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+
+	private static final int BUCKET_COUNT =
+		bucketIndex(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray buckets =
+		new AtomicLongArray(BUCKET_COUNT);
+
+	private final LongAdder total = new LongAdder();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Returns the number of recorded values.
+	 *
+	 * @return The value count
+	 */
+	public long getCount() {
+		long count = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += buckets.get(i);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the maximum of the recorded values.
+	 *
+	 * @return The maximum value or zero if no values have been recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the arithmetic mean of the recorded values.
+	 *
+	 * @return The mean value or zero if no values have been recorded
+	 */
+	public double getMean() {
+		long count = getCount();
+
+		return count > 0 ? total.doubleValue() / count : 0;
+	}
+
+	/**
+	 * Returns the value below which a certain percentage of the recorded
+	 * values fall. The result is the upper bound of the bucket that contains
+	 * the percentile and therefore deviates at most by the precision of this
+	 * histogram from the exact value.
+	 *
+	 * @param percentile The percentile in the range 0 to 100
+	 * @return The value at the given percentile or zero if no values have
+	 * been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException(
+				"Invalid percentile: " + percentile);
+		}
+
+		long[] counts = new long[BUCKET_COUNT];
+		long count = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = buckets.get(i);
+			count += counts[i];
+		}
+
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long current = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			current += counts[i];
+
+			if (current >= rank) {
+				return Math.min(bucketUpperBound(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	/**
+	 * Records a value. Negative values will be recorded as zero.
+	 *
+	 * @param value The value to record
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+
+		buckets.incrementAndGet(bucketIndex(value));
+		total.add(value);
+
+		long currentMax = max.get();
+
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Returns the index of the bucket for a certain value. Small values are
+	 * mapped to linear buckets, larger values to the sub-bucket of the power
+	 * of two they fall into.
+	 *
+	 * @param value The non-negative value
+	 * @return The bucket index
+	 */
+	static int bucketIndex(long value) {
+		if (value < LINEAR_BUCKETS) {
+			return (int) value;
+		}
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * Returns the largest value that is mapped to a certain bucket.
+	 *
+	 * @param index The bucket index
+	 * @return The upper bound of the bucket
+	 */
+	static long bucketUpperBound(int index) {
+		if (index < LINEAR_BUCKETS) {
+			return index;
+		}
+
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,1057 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import de.esoco.lib.comm.Server.RequestFramer;
+import de.esoco.lib.comm.http.HttpRequest;
+import de.esoco.lib.io.BufferPool;
+import de.esoco.lib.io.LimitedInputStream;
+import de.esoco.lib.io.LimitedOutputStream;
+import de.esoco.lib.logging.Log;
+import org.obrel.core.Relatable;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static de.esoco.lib.comm.CommunicationRelationTypes.ENCRYPTION;
+import static de.esoco.lib.comm.CommunicationRelationTypes.KEEP_ALIVE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.KEEP_ALIVE_TIMEOUT;
+import static de.esoco.lib.comm.CommunicationRelationTypes.MAX_KEEP_ALIVE_REQUESTS;
+import static de.esoco.lib.comm.CommunicationRelationTypes.MAX_REQUEST_SIZE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.MAX_RESPONSE_SIZE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_BODY_TIMEOUT;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_HEADER_TIMEOUT;
+import static de.esoco.lib.comm.CommunicationRelationTypes.RESPONSE_WRITE_TIMEOUT;
+import static de.esoco.lib.comm.CommunicationRelationTypes.SERVER_METRICS;
+import static de.esoco.lib.comm.Server.REQUEST_FRAMER;
+import static org.obrel.type.StandardTypes.PORT;
+
+/**
+ * The implementation of the non-blocking mode of a {@link Server} (see
+ * {@link CommunicationRelationTypes#NON_BLOCKING_IO}). All client connections
+ * are accepted, read, and written by a single thread through a
+ * {@link Selector}. A request will only be handed to a request handler after
+ * the {@link RequestFramer} of the server reports that it has been received
+ * completely. The request handlers are then executed asynchronously and their
+ * response data is written back to the client by the selector thread.
+ *
+ * <p>Encrypted connections are supported through an {@link SSLEngine} that is
+ * created from the SSL context of the server. Complete requests are executed
+ * by the request executor of the server and are therefore subject to the
+ * same limits as in blocking mode. But in contrast to blocking mode the
+ * number of open (but idle) connections is not limited by these. If
+ * persistent connections are enabled with
+ * {@link CommunicationRelationTypes#KEEP_ALIVE} idle connections will be
+ * closed after the {@link CommunicationRelationTypes#KEEP_ALIVE_TIMEOUT}.</p>
+ *
+ * <p>Because request handlers write their responses while the selector thread
+ * may still serve other connections a response is collected completely in a
+ * {@link ResponseBuffer} before it is sent. This means that file bodies are
+ * copied into memory instead of being sent with
+ * {@link java.nio.channels.FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)} like in blocking mode. The memory
+ * used per response is therefore limited by
+ * {@link CommunicationRelationTypes#MAX_RESPONSE_SIZE}. A response that
+ * exceeds this limit is discarded without sending any of its data and the
+ * connection is closed. Servers that deliver large files should therefore use
+ * blocking mode.</p>
+ *
+ * <p>When the server is stopped the server channel is closed and idle
+ * connections are closed immediately. The loop continues to run until the
+ * responses of all active requests have been sent or until the shutdown
+ * timeout of the server has been reached.</p>
+ *
+ * @author eso
+ */
+class NioServerLoop {
+
+	private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+	private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+	private static final BufferPool BUFFER_POOL = BufferPool.getShared();
+
+	private static final RequestFramer HTTP_REQUEST_FRAMER =
+		new RequestFramer() {
+			@Override
+			public int getHeaderLength(ByteBuffer data) {
+				return HttpRequest.getHeaderLength(data);
+			}
+
+			@Override
+			public int getRequestLength(ByteBuffer data) {
+				return HttpRequest.getRequestLength(data);
+			}
+		};
+
+	private static final int IDLE_CHECK_INTERVAL = 1000;
+
+	private static final int DRAIN_CHECK_INTERVAL = 50;
+
+	private final Server server;
+
+	private final Relatable context;
+
+	private final RequestFramer requestFramer;
+
+	private final SSLContext sslContext;
+
+	private final Selector selector;
+
+	private final ServerMetrics metrics;
+
+	private final int maxRequestSize;
+
+	private final int maxResponseSize;
+
+	private final int maxKeepAliveRequests;
+
+	private final int keepAliveTimeout;
+
+	private final int headerTimeout;
+
+	private final int bodyTimeout;
+
+	private final int writeTimeout;
+
+	private final Queue<ClientConnection> completedRequests =
+		new ConcurrentLinkedQueue<>();
+
+	private final Queue<ClientConnection> timedOutConnections =
+		new ConcurrentLinkedQueue<>();
+
+	private int closedIdleConnections;
+
+	private int closedActiveConnections;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param server  The server to run the loop for
+	 * @param context The context for the request handlers
+	 * @throws IOException If opening the selector fails
+	 */
+	@SuppressWarnings("boxing")
+	NioServerLoop(Server server, Relatable context) throws IOException {
+		this.server = server;
+		this.context = context;
+
+		requestFramer = server
+			.getOption(REQUEST_FRAMER)
+			.orUse(HTTP_REQUEST_FRAMER);
+		metrics = server.get(SERVER_METRICS);
+		maxRequestSize = server.get(MAX_REQUEST_SIZE);
+		maxResponseSize = server.get(MAX_RESPONSE_SIZE);
+		keepAliveTimeout = server.get(KEEP_ALIVE_TIMEOUT);
+		headerTimeout = server.get(REQUEST_HEADER_TIMEOUT);
+		bodyTimeout = server.get(REQUEST_BODY_TIMEOUT);
+		writeTimeout = server.get(RESPONSE_WRITE_TIMEOUT);
+		maxKeepAliveRequests = server.hasFlag(KEEP_ALIVE) ?
+		                       server.get(MAX_KEEP_ALIVE_REQUESTS) :
+		                       1;
+
+		sslContext =
+			server.hasFlag(ENCRYPTION) ? server.createSslContext() : null;
+		selector = Selector.open();
+	}
+
+	/**
+	 * Returns the number of active connections that have been closed at the
+	 * end of the loop.
+	 *
+	 * @return The number of closed active connections
+	 */
+	int getClosedActiveConnections() {
+		return closedActiveConnections;
+	}
+
+	/**
+	 * Returns the number of idle connections that have been closed after the
+	 * server has been stopped.
+	 *
+	 * @return The number of closed idle connections
+	 */
+	int getClosedIdleConnections() {
+		return closedIdleConnections;
+	}
+
+	/**
+	 * Runs the selector loop until the server is stopped and all active
+	 * requests have finished or the shutdown timeout has been reached. All
+	 * connections that are still open when the loop ends will be closed.
+	 *
+	 * @throws IOException If the server socket cannot be opened
+	 */
+	@SuppressWarnings("boxing")
+	void run() throws IOException {
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+			serverChannel.configureBlocking(false);
+			serverChannel.bind(new InetSocketAddress(server.get(PORT)));
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+			long nextIdleCheck = System.currentTimeMillis();
+
+			while (server.isRunning()) {
+				if (maxKeepAliveRequests > 1) {
+					selector.select(IDLE_CHECK_INTERVAL);
+
+					long now = System.currentTimeMillis();
+
+					if (now >= nextIdleCheck) {
+						closeIdleConnections(now - keepAliveTimeout);
+						nextIdleCheck = now + IDLE_CHECK_INTERVAL;
+					}
+				} else {
+					selector.select();
+				}
+
+				processCompletedRequests();
+				processTimedOutConnections();
+				processSelectedKeys(serverChannel);
+			}
+
+			serverChannel.close();
+			drainConnections();
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof ClientConnection) {
+					ClientConnection connection =
+						(ClientConnection) key.attachment();
+
+					if (connection.channel.isOpen()) {
+						closedActiveConnections++;
+						connection.close();
+					}
+				}
+			}
+
+			selector.close();
+		}
+	}
+
+	/**
+	 * Wakes up the selector thread, e.g. to check the server state.
+	 */
+	void wakeup() {
+		selector.wakeup();
+	}
+
+	/**
+	 * Accepts all pending connections on the server channel.
+	 *
+	 * @param serverChannel The server channel
+	 * @throws IOException If accepting a connection fails
+	 */
+	private void acceptConnections(ServerSocketChannel serverChannel)
+		throws IOException {
+		SocketChannel channel;
+
+		while ((channel = serverChannel.accept()) != null) {
+			SSLEngine sslEngine = null;
+
+			channel.configureBlocking(false);
+
+			if (sslContext != null) {
+				sslEngine = sslContext.createSSLEngine();
+				sslEngine.setUseClientMode(false);
+				sslEngine.beginHandshake();
+			}
+
+			ClientConnection connection =
+				new ClientConnection(channel, sslEngine);
+
+			// rejected when the first request has been received
+			connection.connectionLimited =
+				!server.acquireConnection(connection.clientAddress);
+
+			channel.register(selector, SelectionKey.OP_READ, connection);
+			metrics.connectionOpened();
+		}
+	}
+
+	/**
+	 * Closes all connections that wait for request data and have been idle
+	 * since a certain time.
+	 *
+	 * @param idleLimit The time in milliseconds since which connections will
+	 *                  be considered as idle
+	 * @return The number of closed connections
+	 */
+	private int closeIdleConnections(long idleLimit) {
+		int count = 0;
+
+		for (SelectionKey key : selector.keys()) {
+			Object attachment = key.attachment();
+
+			if (attachment instanceof ClientConnection && key.isValid() &&
+				key.interestOps() == SelectionKey.OP_READ) {
+				ClientConnection connection = (ClientConnection) attachment;
+
+				if (connection.lastActivity < idleLimit) {
+					connection.close();
+					count++;
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Hands a complete request to the request executor of the server. If the
+	 * client has exceeded it's limits or if the server is busy a rejection
+	 * response will be sent to the client instead.
+	 *
+	 * @param connection The connection with the complete request
+	 */
+	private void dispatchRequest(ClientConnection connection) {
+		byte[] rejection;
+
+		if (connection.connectionLimited) {
+			Log.warnf("%s: connection limit of %s exceeded",
+				server.getServerName(), connection.clientAddress);
+			rejection = server.getConnectionLimitResponse();
+		} else {
+			rejection = server.checkRequestRate(connection.clientAddress);
+		}
+
+		if (rejection == null &&
+			!server.submitRequest(connection::handleRequest)) {
+			Log.warnf("%s: server busy, rejecting request from %s",
+				server.getServerName(), connection.clientAddress);
+			rejection = server.getBusyResponse();
+		}
+
+		if (rejection != null) {
+			connection.request = null;
+			connection.keepAlive = false;
+			connection.response = ByteBuffer.wrap(rejection);
+			connection.responsePooled = false;
+			connection.sendResponse();
+		}
+	}
+
+	/**
+	 * Continues to process the active connections after the server has been
+	 * stopped until they are finished or the shutdown timeout has been
+	 * reached. Idle connections and connections that become idle after
+	 * sending a response will be closed.
+	 *
+	 * @throws IOException If the selection fails
+	 */
+	private void drainConnections() throws IOException {
+		closedIdleConnections += closeIdleConnections(Long.MAX_VALUE);
+
+		while (hasActiveConnections() && server.isDraining()) {
+			selector.select(DRAIN_CHECK_INTERVAL);
+			processCompletedRequests();
+			processTimedOutConnections();
+			processSelectedKeys(null);
+
+			// partially received requests are discarded
+			closedIdleConnections += closeIdleConnections(Long.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Checks whether there are connections with requests that are handled
+	 * or responses that are sent.
+	 *
+	 * @return TRUE if there are active connections
+	 */
+	private boolean hasActiveConnections() {
+		for (SelectionKey key : selector.keys()) {
+			if (key.attachment() instanceof ClientConnection &&
+				key.isValid() && key.interestOps() != SelectionKey.OP_READ) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Starts to send the responses of all requests that have been completed by
+	 * the request handlers.
+	 */
+	private void processCompletedRequests() {
+		ClientConnection connection;
+
+		while ((connection = completedRequests.poll()) != null) {
+			connection.sendResponse();
+		}
+	}
+
+	/**
+	 * Processes the selected keys after a selection.
+	 *
+	 * @param serverChannel The server channel to accept connections from or
+	 *                      NULL if no connections are accepted
+	 * @throws IOException If accepting a connection fails
+	 */
+	private void processSelectedKeys(ServerSocketChannel serverChannel)
+		throws IOException {
+		Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+		while (keys.hasNext()) {
+			SelectionKey key = keys.next();
+
+			keys.remove();
+
+			if (key.isValid()) {
+				if (key.isAcceptable()) {
+					if (serverChannel != null) {
+						acceptConnections(serverChannel);
+					}
+				} else {
+					((ClientConnection) key.attachment()).process(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes the connections that have been reported by the connection reaper
+	 * of the server because they exceeded a timeout.
+	 */
+	private void processTimedOutConnections() {
+		ClientConnection connection;
+
+		while ((connection = timedOutConnections.poll()) != null) {
+			if (connection.channel.isOpen()) {
+				metrics.recordTimeout();
+				Log.infof("%s: closing connection from %s after timeout",
+					server.getServerName(),
+					connection.clientAddress.getHostAddress());
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Encapsulates the state of a single client connection.
+	 *
+	 * @author eso
+	 */
+	private class ClientConnection {
+
+		private final SocketChannel channel;
+
+		private final SSLEngine sslEngine;
+
+		private final InetAddress clientAddress;
+
+		private final int maxRequestCapacity;
+
+		private final ConnectionTimer timer;
+
+		private ByteBuffer requestData;
+
+		private ByteBuffer networkInput;
+
+		private ByteBuffer networkOutput;
+
+		private byte[] request;
+
+		private ByteBuffer response;
+
+		private boolean responsePooled;
+
+		private int requestCount = 0;
+
+		private boolean keepAlive;
+
+		private boolean connectionLimited;
+
+		private boolean requestStarted = true;
+
+		private boolean headerReceived = false;
+
+		private long lastActivity = System.currentTimeMillis();
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param channel   The client channel
+		 * @param sslEngine The SSL engine for encrypted connections or NULL
+		 *                  for plain connections
+		 */
+		ClientConnection(SocketChannel channel, SSLEngine sslEngine) {
+			this.channel = channel;
+			this.sslEngine = sslEngine;
+
+			clientAddress = channel.socket().getInetAddress();
+			timer = server.createConnectionTimer(this::timedOut);
+
+			// the header timeout includes the TLS handshake
+			timer.set(headerTimeout);
+
+			if (sslEngine != null) {
+				int packetSize = sslEngine.getSession().getPacketBufferSize();
+				int appSize =
+					sslEngine.getSession().getApplicationBufferSize();
+
+				networkInput = BUFFER_POOL.acquireBuffer(packetSize, true);
+				networkOutput = BUFFER_POOL.acquireBuffer(packetSize, true);
+				requestData = BUFFER_POOL.acquireBuffer(appSize, false);
+
+				// unwrapping requires space for a full application buffer
+				maxRequestCapacity = maxRequestSize + appSize;
+			} else {
+				requestData = BUFFER_POOL.acquireBuffer(
+					Math.min(INITIAL_BUFFER_SIZE, maxRequestSize), false);
+				maxRequestCapacity = maxRequestSize;
+			}
+		}
+
+		/**
+		 * Closes this connection. Errors will be ignored.
+		 */
+		void close() {
+			if (!channel.isOpen()) {
+				return;
+			}
+
+			metrics.connectionClosed();
+			timer.stop();
+
+			if (!connectionLimited) {
+				server.releaseConnection(clientAddress);
+			}
+
+			try {
+				if (sslEngine != null) {
+					sslEngine.closeOutbound();
+					wrap(EMPTY_BUFFER);
+				}
+			} catch (Exception e) {
+				// just close the channel
+			}
+
+			try {
+				channel.close();
+			} catch (IOException e) {
+				Log.error("Socket close failed", e);
+			}
+
+			releaseBuffers();
+		}
+
+		/**
+		 * Invokes the request handler for the current request. Will be
+		 * executed asynchronously.
+		 */
+		@SuppressWarnings("boxing")
+		void handleRequest() {
+			ResponseBuffer responseData = new ResponseBuffer();
+			LimitedOutputStream output =
+				new LimitedOutputStream(responseData, maxResponseSize) {
+					@Override
+					public int getBytesWritten() {
+						// an incomplete response is discarded without sending it
+						return getRemainingLimit() < 0 ? 0 :
+							super.getBytesWritten();
+					}
+				};
+
+			try {
+				keepAlive = server.handleRequest(context, clientAddress,
+					new LimitedInputStream(new ByteArrayInputStream(request),
+						maxRequestSize), output, keepAlive, null);
+			} catch (Exception e) {
+				keepAlive = false;
+				Log.error("Client request handling failed", e);
+			} finally {
+				// nothing has been sent yet so that an incomplete response can
+				// be discarded completely
+				if (output.getRemainingLimit() < 0) {
+					Log.warnf("Response to %s exceeds maximum size of %d bytes",
+						clientAddress, maxResponseSize);
+					responseData.reset();
+					keepAlive = false;
+				}
+
+				request = null;
+				response = responseData.toByteBuffer();
+				responsePooled = true;
+				completedRequests.add(this);
+				selector.wakeup();
+			}
+		}
+
+		/**
+		 * Processes the selected operations of this connection.
+		 *
+		 * @param key The selection key of this connection
+		 */
+		void process(SelectionKey key) {
+			try {
+				if (key.isReadable()) {
+					read(key);
+				}
+
+				if (key.isValid() && key.isWritable()) {
+					write(key);
+				}
+			} catch (IOException | CancelledKeyException e) {
+				Log.debugf(e, "Connection to %s failed", clientAddress);
+				close();
+			}
+		}
+
+		/**
+		 * Starts sending the response after request handling has finished.
+		 */
+		void sendResponse() {
+			SelectionKey key = channel.keyFor(selector);
+
+			if (key != null && key.isValid()) {
+				try {
+					write(key);
+				} catch (IOException | CancelledKeyException e) {
+					Log.debugf(e, "Response to %s failed", clientAddress);
+					close();
+				}
+			} else {
+				close();
+			}
+		}
+
+		/**
+		 * Reports this connection as timed out to the selector thread. Invoked
+		 * by the connection reaper of the server.
+		 */
+		void timedOut() {
+			timedOutConnections.add(this);
+			selector.wakeup();
+		}
+
+		/**
+		 * Checks whether the request data contains a complete request and
+		 * dispatches it to a request handler if so.
+		 *
+		 * @param key The selection key of this connection
+		 */
+		private void checkRequestComplete(SelectionKey key) {
+			requestData.flip();
+
+			int length = requestFramer.getRequestLength(requestData);
+
+			if (length <= 0 && requestData.remaining() >= maxRequestSize) {
+				// hand over oversized requests so that the request handler
+				// fails on the input limit like in blocking mode
+				length = requestData.remaining();
+			}
+
+			if (length <= 0 && requestData.hasRemaining()) {
+				updateRequestTimeout();
+			}
+
+			if (length > 0) {
+				// the handling time doesn't count for the client timeouts
+				timer.clear();
+				requestStarted = false;
+				headerReceived = false;
+				request = new byte[length];
+				requestData.get(request);
+				keepAlive = ++requestCount < maxKeepAliveRequests &&
+					length < maxRequestSize;
+
+				// no further reading while the request is handled
+				key.interestOps(0);
+				dispatchRequest(this);
+			}
+
+			requestData.compact();
+		}
+
+		/**
+		 * Writes the contents of the network output buffer of an encrypted
+		 * connection to the channel.
+		 *
+		 * @return TRUE if the buffer has been written completely
+		 * @throws IOException If writing fails
+		 */
+		private boolean flush() throws IOException {
+			networkOutput.flip();
+			channel.write(networkOutput);
+
+			boolean flushed = !networkOutput.hasRemaining();
+
+			networkOutput.compact();
+
+			return flushed;
+		}
+
+		/**
+		 * Enlarges the request data buffer so that it can receive at least
+		 * the given number of additional bytes but not beyond the maximum
+		 * request capacity.
+		 *
+		 * @param minFree The minimal number of free bytes
+		 * @return TRUE if the buffer has free space, FALSE if the maximum
+		 * capacity has been reached
+		 */
+		private boolean growRequestData(int minFree) {
+			if (requestData.remaining() < minFree &&
+				requestData.capacity() < maxRequestCapacity) {
+				int capacity = Math.min(maxRequestCapacity,
+					Math.max(requestData.capacity() * 2,
+						requestData.position() + minFree));
+
+				ByteBuffer newBuffer = BUFFER_POOL.acquireBuffer(capacity, false);
+
+				requestData.flip();
+				newBuffer.put(requestData);
+				BUFFER_POOL.release(requestData);
+				requestData = newBuffer;
+			}
+
+			return requestData.hasRemaining();
+		}
+
+		/**
+		 * Performs the necessary steps of an ongoing TLS handshake that don't
+		 * require input from the client.
+		 *
+		 * @return TRUE if the handshake can continue, FALSE if the handshake
+		 * output could not be written completely
+		 * @throws IOException If the handshake fails
+		 */
+		private boolean handshake() throws IOException {
+			while (true) {
+				HandshakeStatus status = sslEngine.getHandshakeStatus();
+
+				if (status == HandshakeStatus.NEED_TASK) {
+					Runnable task;
+
+					while ((task = sslEngine.getDelegatedTask()) != null) {
+						task.run();
+					}
+				} else if (status == HandshakeStatus.NEED_WRAP) {
+					if (!wrap(EMPTY_BUFFER)) {
+						return false;
+					}
+				} else {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Reads the available data from the channel.
+		 *
+		 * @param key The selection key of this connection
+		 * @throws IOException If reading fails
+		 */
+		private void read(SelectionKey key) throws IOException {
+			int read;
+
+			if (sslEngine != null) {
+				read = channel.read(networkInput);
+
+				if (read >= 0 && !unwrap(key)) {
+					read = -1;
+				}
+			} else {
+				growRequestData(1);
+				read = channel.read(requestData);
+			}
+
+			lastActivity = System.currentTimeMillis();
+
+			if (read < 0) {
+				close();
+			} else if (key.interestOps() == SelectionKey.OP_READ) {
+				checkRequestComplete(key);
+			}
+		}
+
+		/**
+		 * Returns the buffers of this connection to the buffer pool after it
+		 * has been closed.
+		 */
+		private void releaseBuffers() {
+			releaseResponse();
+			BUFFER_POOL.release(requestData);
+			requestData = null;
+
+			if (sslEngine != null) {
+				BUFFER_POOL.release(networkInput);
+				BUFFER_POOL.release(networkOutput);
+				networkInput = null;
+				networkOutput = null;
+			}
+		}
+
+		/**
+		 * Returns the buffer of a response that has been sent completely to
+		 * the buffer pool.
+		 */
+		private void releaseResponse() {
+			if (response != null && responsePooled) {
+				BUFFER_POOL.release(response);
+			}
+
+			response = null;
+		}
+
+		/**
+		 * Decrypts the received network data of an encrypted connection into
+		 * the request data buffer and performs the TLS handshake if necessary.
+		 *
+		 * @param key The selection key of this connection
+		 * @return FALSE if the client has closed the connection
+		 * @throws IOException If decrypting the data fails
+		 */
+		private boolean unwrap(SelectionKey key) throws IOException {
+			while (true) {
+				if (!handshake()) {
+					// wait until the handshake output can be written
+					key.interestOps(SelectionKey.OP_WRITE);
+
+					return true;
+				}
+
+				networkInput.flip();
+
+				SSLEngineResult result =
+					sslEngine.unwrap(networkInput, requestData);
+
+				networkInput.compact();
+
+				Status status = result.getStatus();
+				HandshakeStatus handshakeStatus = result.getHandshakeStatus();
+
+				if (status == Status.CLOSED) {
+					return false;
+				} else if (status == Status.BUFFER_OVERFLOW) {
+					if (!growRequestData(
+						sslEngine.getSession().getApplicationBufferSize())) {
+						// oversized request, will be handled as such
+						return true;
+					}
+				} else if (status == Status.BUFFER_UNDERFLOW) {
+					if (!networkInput.hasRemaining()) {
+						ByteBuffer newBuffer = BUFFER_POOL.acquireBuffer(
+							networkInput.capacity() * 2, true);
+
+						networkInput.flip();
+						newBuffer.put(networkInput);
+						BUFFER_POOL.release(networkInput);
+						networkInput = newBuffer;
+					}
+
+					return true;
+				} else if (networkInput.position() == 0 &&
+					handshakeStatus != HandshakeStatus.NEED_TASK &&
+					handshakeStatus != HandshakeStatus.NEED_WRAP) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Sets the timeout for the current phase of a request that has not
+		 * been received completely. The header timeout starts with the first
+		 * data of a request and the body timeout when the framer reports a
+		 * complete header.
+		 */
+		private void updateRequestTimeout() {
+			if (!requestStarted) {
+				requestStarted = true;
+				timer.set(headerTimeout);
+			}
+
+			if (!headerReceived &&
+				requestFramer.getHeaderLength(requestData) >= 0) {
+				headerReceived = true;
+				timer.set(bodyTimeout);
+			}
+		}
+
+		/**
+		 * Encrypts data into the network output buffer and writes it to the
+		 * channel.
+		 *
+		 * @param data The data to encrypt
+		 * @return TRUE if all data has been written, FALSE if the channel
+		 * cannot accept more data at the moment
+		 * @throws IOException If encrypting or writing the data fails
+		 */
+		private boolean wrap(ByteBuffer data) throws IOException {
+			if (!flush()) {
+				return false;
+			}
+
+			do {
+				SSLEngineResult result = sslEngine.wrap(data, networkOutput);
+
+				if (result.getStatus() == Status.BUFFER_OVERFLOW &&
+					networkOutput.position() == 0) {
+					BUFFER_POOL.release(networkOutput);
+					networkOutput = BUFFER_POOL.acquireBuffer(
+						sslEngine.getSession().getPacketBufferSize(), true);
+				} else if (result.getStatus() == Status.CLOSED &&
+					data.hasRemaining()) {
+					throw new IOException("SSL engine closed");
+				}
+
+				if (!flush()) {
+					return false;
+				}
+			} while (data.hasRemaining());
+
+			return true;
+		}
+
+		/**
+		 * Writes pending data to the channel. This is either the output of an
+		 * ongoing TLS handshake or the response to a request.
+		 *
+		 * @param key The selection key of this connection
+		 * @throws IOException If writing fails
+		 */
+		private void write(SelectionKey key) throws IOException {
+			if (response == null) {
+				// continue a TLS handshake that waited for the output
+				if (flush()) {
+					key.interestOps(SelectionKey.OP_READ);
+					read(key);
+				}
+			} else {
+				boolean complete;
+
+				if (sslEngine != null) {
+					complete = wrap(response);
+				} else {
+					channel.write(response);
+					complete = !response.hasRemaining();
+				}
+
+				if (!complete) {
+					// invoked initially or if the client accepted more data
+					timer.set(writeTimeout);
+					key.interestOps(SelectionKey.OP_WRITE);
+				} else if (keepAlive && server.isRunning()) {
+					timer.clear();
+					releaseResponse();
+					lastActivity = System.currentTimeMillis();
+					key.interestOps(SelectionKey.OP_READ);
+
+					// check for pipelined requests
+					checkRequestComplete(key);
+				} else {
+					close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * An output stream that collects the response data in a pooled byte array
+	 * and provides it as a byte buffer without copying. The buffer must be
+	 * returned to the {@link BufferPool} after it has been sent. As this class
+	 * doesn't implement {@link de.esoco.lib.io.ChannelOutput} file bodies will
+	 * be copied into the buffer. The buffer size is limited by wrapping it in
+	 * a {@link LimitedOutputStream} with the maximum response size.
+	 *
+	 * @author eso
+	 */
+	private static class ResponseBuffer extends OutputStream {
+
+		private byte[] buffer = BUFFER_POOL.acquireBytes(INITIAL_BUFFER_SIZE);
+
+		private int count = 0;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int b) {
+			ensureCapacity(count + 1);
+			buffer[count++] = (byte) b;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] data, int offset, int length) {
+			if (offset < 0 || length < 0 || offset + length > data.length) {
+				throw new IndexOutOfBoundsException();
+			}
+
+			ensureCapacity(count + length);
+			System.arraycopy(data, offset, buffer, count, length);
+			count += length;
+		}
+
+		/**
+		 * Discards all data that has been written to this stream.
+		 */
+		void reset() {
+			count = 0;
+		}
+
+		/**
+		 * Returns a byte buffer that wraps the data of this stream.
+		 *
+		 * @return The byte buffer
+		 */
+		ByteBuffer toByteBuffer() {
+			ByteBuffer data = ByteBuffer.wrap(buffer);
+
+			data.limit(count);
+
+			return data;
+		}
+
+		/**
+		 * Replaces the buffer with a larger one from the pool if necessary.
+		 *
+		 * @param capacity The minimal buffer capacity
+		 */
+		private void ensureCapacity(int capacity) {
+			if (capacity > buffer.length) {
+				byte[] newBuffer = BUFFER_POOL.acquireBytes(
+					Math.max(capacity, buffer.length * 2));
+
+				System.arraycopy(buffer, 0, newBuffer, 0, count);
+				BUFFER_POOL.release(buffer);
+				buffer = newBuffer;
+			}
+		}
+	}
+}
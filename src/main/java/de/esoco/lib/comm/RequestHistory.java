@@ -0,0 +1,252 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * A fixed-size history of the most recent requests that have been handled by
+ * a {@link Server}. The history is implemented as a lock-free ring buffer so
+ * that it can be updated concurrently by all request handling threads without
+ * contention. Each writer atomically claims the next sequence number and
+ * stores an immutable {@link Entry} in the corresponding slot, overwriting the
+ * oldest entry if the history is full.
+ *
+ * <p>Readers can query a snapshot of the history with {@link #getEntries()}.
+ * The snapshot only contains entries that have been completely written and it
+ * is always in the order of the request completion. If writers overtake a
+ * reader while it creates the snapshot the overwritten entries will be
+ * omitted.</p>
+ *
+ * @author eso
+ */
+public final class RequestHistory {
+
+	private static final Pattern LINE_BREAKS = Pattern.compile("\r\n|\r|\n");
+
+	private static final String LINE_BREAK_REPLACEMENT = "¶";
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final AtomicReferenceArray<Entry> entries;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param capacity The maximum number of entries in the history
+	 * @throws IllegalArgumentException If the capacity is not positive
+	 */
+	public RequestHistory(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(
+				"Capacity must be positive: " + capacity);
+		}
+
+		entries = new AtomicReferenceArray<>(capacity);
+	}
+
+	/**
+	 * Adds a request to this history. If the history is full the oldest
+	 * request will be removed.
+	 *
+	 * @param request      The captured request data or NULL if the request
+	 *                     has not been captured
+	 * @param handlingTime The time in milliseconds that the handling of the
+	 *                     request has consumed
+	 */
+	public void add(String request, int handlingTime) {
+		long index = sequence.getAndIncrement();
+
+		entries.set(slot(index),
+			new Entry(index, System.currentTimeMillis(), request,
+				handlingTime));
+	}
+
+	/**
+	 * Returns the maximum number of entries in this history.
+	 *
+	 * @return The capacity
+	 */
+	public int getCapacity() {
+		return entries.length();
+	}
+
+	/**
+	 * Returns a snapshot of the entries in this history, ordered from the
+	 * oldest to the most recent request.
+	 *
+	 * @return A new list containing the history entries
+	 */
+	public List<Entry> getEntries() {
+		long end = sequence.get();
+		long start = Math.max(0, end - entries.length());
+		List<Entry> result = new ArrayList<>((int) (end - start));
+
+		for (long index = start; index < end; index++) {
+			Entry entry = entries.get(slot(index));
+
+			// skip slots that are not written yet or already overwritten
+			if (entry != null && entry.sequence == index) {
+				result.add(entry);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the most recent entry of this history.
+	 *
+	 * @return The latest entry or NULL if the history is empty
+	 */
+	public Entry getLatest() {
+		long end = sequence.get();
+		long start = Math.max(0, end - entries.length());
+
+		// the latest slot may still be written by another thread
+		for (long index = end - 1; index >= start; index--) {
+			Entry entry = entries.get(slot(index));
+
+			if (entry != null && entry.sequence == index) {
+				return entry;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns a snapshot of the entries of this history in the form of
+	 * strings. See {@link Entry#toString()} for the format.
+	 *
+	 * @return A new list containing the entry strings
+	 */
+	public List<String> getRequests() {
+		List<Entry> snapshot = getEntries();
+		List<String> result = new ArrayList<>(snapshot.size());
+
+		for (Entry entry : snapshot) {
+			result.add(entry.toString());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the total number of requests that have been added to this
+	 * history, including those that have already been removed.
+	 *
+	 * @return The total request count
+	 */
+	public long getTotalCount() {
+		return sequence.get();
+	}
+
+	/**
+	 * Maps a sequence number to the index of the slot in the ring buffer.
+	 *
+	 * @param index The sequence number
+	 * @return The slot index
+	 */
+	private int slot(long index) {
+		return (int) (index % entries.length());
+	}
+
+	/**
+	 * An immutable entry in a request history.
+	 *
+	 * @author eso
+	 */
+	public static final class Entry {
+
+		private final long sequence;
+
+		private final long timestamp;
+
+		private final String request;
+
+		private final int handlingTime;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param sequence     The sequence number of the entry
+		 * @param timestamp    The time at which the entry has been created
+		 * @param request      The captured request data or NULL for none
+		 * @param handlingTime The request handling time in milliseconds
+		 */
+		Entry(long sequence, long timestamp, String request,
+			int handlingTime) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.request = request;
+			this.handlingTime = handlingTime;
+		}
+
+		/**
+		 * Returns the time that the handling of the request has consumed.
+		 *
+		 * @return The handling time in milliseconds
+		 */
+		public int getHandlingTime() {
+			return handlingTime;
+		}
+
+		/**
+		 * Returns the captured request data.
+		 *
+		 * @return The request data or NULL if the request has not been
+		 * captured
+		 */
+		public String getRequest() {
+			return request;
+		}
+
+		/**
+		 * Returns the time at which the request handling has been completed.
+		 *
+		 * @return The timestamp in milliseconds since the epoch
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * Returns a single-line description of this entry that contains the
+		 * timestamp, the handling time, and the request data. Line breaks in
+		 * the request data will be replaced with a paragraph sign.
+		 *
+		 * @return The entry description
+		 */
+		@Override
+		@SuppressWarnings("boxing")
+		public String toString() {
+			String requestLine = request != null ?
+			                     LINE_BREAKS
+				                     .matcher(request)
+				                     .replaceAll(LINE_BREAK_REPLACEMENT) :
+			                     "-";
+
+			return String.format("%1$tF %1$tT.%1$tL [%2$dms] %3$s", timestamp,
+				handlingTime, requestLine);
+		}
+	}
+}
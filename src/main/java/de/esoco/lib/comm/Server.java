@@ -16,8 +16,13 @@
 //++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 package de.esoco.lib.comm;
 
+import de.esoco.lib.comm.http.HttpHeaderTypes.HttpHeaderField;
+import de.esoco.lib.comm.http.HttpRequest;
+import de.esoco.lib.comm.http.HttpStatusCode;
+import de.esoco.lib.io.ChannelOutput;
 import de.esoco.lib.io.LimitedInputStream;
 import de.esoco.lib.io.LimitedOutputStream;
+import de.esoco.lib.io.StreamUtil;
 import de.esoco.lib.logging.Log;
 import de.esoco.lib.logging.LogLevel;
 import de.esoco.lib.manage.Releasable;
@@ -28,35 +33,83 @@ import de.esoco.lib.security.SecurityRelationTypes;
 import org.obrel.core.ObjectRelations;
 import org.obrel.core.Relatable;
 import org.obrel.core.RelatedObject;
+import org.obrel.core.Relation;
 import org.obrel.core.RelationBuilder;
 import org.obrel.core.RelationType;
 import org.obrel.core.RelationTypes;
 import org.obrel.type.StandardTypes;
 
 import javax.net.ServerSocketFactory;
+import javax.net.ssl.SSLContext;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
-import java.util.ArrayDeque;
-import java.util.Iterator;
-import java.util.Queue;
-import java.util.concurrent.CompletableFuture;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
+import static de.esoco.lib.comm.CommunicationRelationTypes.ACCEPTOR_THREADS;
+import static de.esoco.lib.comm.CommunicationRelationTypes.ACCESS_LOG_FILE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.ACCESS_LOG_FORMAT;
+import static de.esoco.lib.comm.CommunicationRelationTypes.ACCESS_LOG_MAX_FILES;
+import static de.esoco.lib.comm.CommunicationRelationTypes.ACCESS_LOG_MAX_SIZE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.CLIENT_REQUEST_BURST;
+import static de.esoco.lib.comm.CommunicationRelationTypes.CLIENT_REQUEST_RATE;
 import static de.esoco.lib.comm.CommunicationRelationTypes.ENCRYPTION;
+import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_REQUEST_PATH;
+import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_STATUS_CODE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.KEEP_ALIVE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.KEEP_ALIVE_TIMEOUT;
 import static de.esoco.lib.comm.CommunicationRelationTypes.LAST_REQUEST;
+import static de.esoco.lib.comm.CommunicationRelationTypes.MAX_CLIENT_CONNECTIONS;
 import static de.esoco.lib.comm.CommunicationRelationTypes.MAX_CONNECTIONS;
+import static de.esoco.lib.comm.CommunicationRelationTypes.MAX_KEEP_ALIVE_REQUESTS;
 import static de.esoco.lib.comm.CommunicationRelationTypes.MAX_REQUEST_SIZE;
 import static de.esoco.lib.comm.CommunicationRelationTypes.MAX_RESPONSE_SIZE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.NON_BLOCKING_IO;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_BODY_TIMEOUT;
 import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_HANDLING_TIME;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_HEADER_TIMEOUT;
 import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_HISTORY;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_HISTORY_BUFFER;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_HISTORY_SIZE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_LOG_LEVEL;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_QUEUE_SIZE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.RESPONSE_WRITE_TIMEOUT;
+import static de.esoco.lib.comm.CommunicationRelationTypes.RETRY_AFTER;
+import static de.esoco.lib.comm.CommunicationRelationTypes.SERVER_METRICS;
+import static de.esoco.lib.comm.CommunicationRelationTypes.SHUTDOWN_TIMEOUT;
+import static de.esoco.lib.net.NetUtil.CRLF;
 import static de.esoco.lib.security.SecurityRelationTypes.CERTIFICATE;
 import static de.esoco.lib.security.SecurityRelationTypes.KEY_PASSWORD;
 import static org.obrel.core.RelationTypes.newType;
@@ -64,7 +117,6 @@ import static org.obrel.type.MetaTypes.IMMUTABLE;
 import static org.obrel.type.StandardTypes.IP_ADDRESS;
 import static org.obrel.type.StandardTypes.NAME;
 import static org.obrel.type.StandardTypes.PORT;
-import static org.obrel.type.StandardTypes.TIMER;
 
 /**
  * A server that listens on a socket for requests. To create a new instance the
@@ -114,8 +166,77 @@ import static org.obrel.type.StandardTypes.TIMER;
  *         period of a generated certificate in days (default: 30).</li>
  *     </ul>
  *   </li>
+ *   <li>{@link CommunicationRelationTypes#NON_BLOCKING_IO}: if set the server
+ *     will handle all connections with non-blocking I/O on a single selector
+ *     thread. Client requests will be read completely before they are handed
+ *     to a request handler so that slow clients don't occupy a handler
+ *     thread. The boundaries of requests are determined by the
+ *     {@link RequestFramer} in {@link #REQUEST_FRAMER} (default: HTTP
+ *     requests). Responses are buffered completely before they are sent so
+ *     that file bodies are copied into memory instead of being transferred
+ *     directly to the socket and are limited by
+ *     {@link CommunicationRelationTypes#MAX_RESPONSE_SIZE}.</li>
+ *   <li>{@link CommunicationRelationTypes#ACCEPTOR_THREADS}: the number of
+ *     threads that accept connections in blocking mode (default: 1).
+ *     Multiple acceptors listen on separate sockets with the option
+ *     {@code SO_REUSEPORT} if supported by the platform and share a single
+ *     server socket otherwise.</li>
+ *   <li>{@link CommunicationRelationTypes#MAX_CONNECTIONS}: the maximum
+ *     number of requests that are handled concurrently by the worker threads
+ *     of the server (default: the parallelism of the common fork-join pool
+ *     but at least 4).</li>
+ *   <li>{@link CommunicationRelationTypes#REQUEST_QUEUE_SIZE}: the maximum
+ *     number of requests that wait for a free worker thread. Requests that
+ *     exceed this limit are rejected with an HTTP status of 503 (Service
+ *     Unavailable) and a {@code Retry-After} header containing the value of
+ *     {@link CommunicationRelationTypes#RETRY_AFTER}.</li>
+ *   <li>{@link CommunicationRelationTypes#CLIENT_REQUEST_RATE},
+ *     {@link CommunicationRelationTypes#CLIENT_REQUEST_BURST}, and
+ *     {@link CommunicationRelationTypes#MAX_CLIENT_CONNECTIONS}: limit the
+ *     request rate and the concurrent connections per client IP address
+ *     with a {@link ClientRateLimiter}. Requests and connections exceeding
+ *     these limits are rejected with an HTTP status of 429 (Too Many
+ *     Requests) and a {@code Retry-After} header.</li>
+ *   <li>{@link CommunicationRelationTypes#KEEP_ALIVE}: enables persistent
+ *     connections that are used for multiple requests. Connections will be
+ *     closed after {@link CommunicationRelationTypes#MAX_KEEP_ALIVE_REQUESTS}
+ *     requests or if they have been idle longer than
+ *     {@link CommunicationRelationTypes#KEEP_ALIVE_TIMEOUT}
+ *     milliseconds. The request handler must clear the
+ *     {@link CommunicationRelationTypes#KEEP_ALIVE} flag on itself if a
+ *     connection cannot be kept alive.</li>
+ *   <li>{@link CommunicationRelationTypes#REQUEST_HISTORY_SIZE}: the number
+ *     of recent requests that are kept in the
+ *     {@link CommunicationRelationTypes#REQUEST_HISTORY_BUFFER} of the
+ *     server (default: 100).</li>
+ *   <li>{@link CommunicationRelationTypes#REQUEST_HEADER_TIMEOUT},
+ *     {@link CommunicationRelationTypes#REQUEST_BODY_TIMEOUT}, and
+ *     {@link CommunicationRelationTypes#RESPONSE_WRITE_TIMEOUT}: the time in
+ *     milliseconds that a client may take to send the header and the body
+ *     of a request and to receive response data (defaults: 10, 30, and 30
+ *     seconds). Connections that exceed these timeouts are closed by a
+ *     connection reaper that runs on a {@link TimingWheel}.</li>
+ *   <li>{@link CommunicationRelationTypes#ACCESS_LOG_FILE}: the name of a
+ *     file to write an {@link AccessLog} of all requests to. The format and
+ *     the rollover of the file are defined by
+ *     {@link CommunicationRelationTypes#ACCESS_LOG_FORMAT},
+ *     {@link CommunicationRelationTypes#ACCESS_LOG_MAX_SIZE}, and
+ *     {@link CommunicationRelationTypes#ACCESS_LOG_MAX_FILES}.</li>
+ *   <li>{@link CommunicationRelationTypes#REQUEST_LOG_LEVEL}: the level at
+ *     which each request is logged to the application log (default:
+ *     INFO).</li>
+ *   <li>{@link CommunicationRelationTypes#SHUTDOWN_TIMEOUT}: the time in
+ *     milliseconds that a stopped server waits for active requests to
+ *     finish (default: 30 seconds).</li>
  * </ul>
  *
+ * <p>Stopping a server shuts it down gracefully: it stops to accept new
+ * connections, closes idle persistent connections, and lets active requests
+ * finish until the shutdown timeout has been reached. Connections that are
+ * still active after the timeout will be closed forcibly. The method
+ * {@link #shutdown(int)} performs the same steps but waits until the shutdown
+ * is complete and returns the resulting {@link ShutdownResult}.</p>
+ *
  * @author eso
  */
 public class Server extends RelatedObject
@@ -127,15 +248,92 @@ public class Server extends RelatedObject
 	public static final RelationType<RequestHandlerFactory>
 		REQUEST_HANDLER_FACTORY = newType();
 
+	/**
+	 * The request framer of this server. Only used in non-blocking mode. If
+	 * not set requests will be framed as HTTP requests with
+	 * {@link HttpRequest#getRequestLength(ByteBuffer)}.
+	 */
+	public static final RelationType<RequestFramer> REQUEST_FRAMER =
+		newType();
+
+	/**
+	 * A callback that a server sets on it's request handlers in blocking mode.
+	 * Request handlers that read the header of a request separately from the
+	 * body should invoke it after the header has been read so that the
+	 * remaining request data is read with the
+	 * {@link CommunicationRelationTypes#REQUEST_BODY_TIMEOUT} instead of the
+	 * {@link CommunicationRelationTypes#REQUEST_HEADER_TIMEOUT}.
+	 */
+	public static final RelationType<Runnable> REQUEST_HEADER_CALLBACK =
+		newType();
+
+	/**
+	 * The access log record of the current request that a server sets on it's
+	 * request handlers if it writes an access log. Request handlers should
+	 * set the request line and client information on it as soon as they are
+	 * known. The result of the request will be set by the server.
+	 */
+	public static final RelationType<AccessLog.Entry> ACCESS_LOG_ENTRY =
+		newType();
+
+	private static final Pattern LINE_BREAKS = Pattern.compile("\r\n|\r|\n");
+
+	private static final String LINE_BREAK_REPLACEMENT = "¶";
+
+	private static final int DRAIN_CHECK_INTERVAL = 50;
+
+	private static final int REAPER_TICK_DURATION = 100;
+
+	private static final int REAPER_BUCKETS = 512;
+
+	/**
+	 * The maximum number of bytes that are written to a client in one
+	 * operation which must complete within the response write timeout.
+	 */
+	private static final int MAX_TIMED_WRITE = 256 * 1024;
+
+	/**
+	 * The socket option SO_REUSEPORT which is only available since Java 9
+	 * and therefore looked up at runtime. NULL if not available.
+	 */
+	private static final SocketOption<Boolean> SO_REUSEPORT =
+		getReusePortOption();
+
 	static {
 		RelationTypes.init(Server.class);
 	}
 
-	private final Lock serverLock = new ReentrantLock();
+	private final ServerMetrics metrics = new ServerMetrics();
+
+	private final Set<Socket> clientSockets = ConcurrentHashMap.newKeySet();
+
+	private final Set<Socket> idleSockets = ConcurrentHashMap.newKeySet();
+
+	private List<ServerSocket> serverSockets = Collections.emptyList();
+
+	private NioServerLoop nioServerLoop;
+
+	private ExecutorService requestExecutor;
+
+	private RequestHistory requestHistory;
+
+	private ClientRateLimiter rateLimiter;
+
+	private TimingWheel connectionReaper;
+
+	private AccessLog accessLog;
+
+	private volatile boolean running;
+
+	private volatile long shutdownDeadline;
 
-	private ServerSocket serverSocket;
+	private volatile long shutdownRequestCount;
 
-	private boolean running;
+	private volatile CountDownLatch serverLoopFinished;
+
+	private volatile ShutdownResult shutdownResult;
+
+	private int pendingShutdownTimeout = -1;
 
 	/**
 	 * Creates a new instance with a certain type of request handler. The
@@ -145,9 +343,39 @@ public class Server extends RelatedObject
 	 * @param requestHandlerFactory The class of the request handler to use for
 	 *                              client requests
 	 */
+	@SuppressWarnings("boxing")
 	public Server(RequestHandlerFactory requestHandlerFactory) {
 		set(REQUEST_HANDLER_FACTORY, requestHandlerFactory);
-		init(REQUEST_HISTORY);
+		set(SERVER_METRICS, metrics);
+
+		requestHistory = new RequestHistory(get(REQUEST_HISTORY_SIZE));
+
+		Relation<RequestHistory> history =
+			set(REQUEST_HISTORY_BUFFER, requestHistory);
+
+		// derived from the history on access instead of being updated for
+		// each request
+		history.viewAs(REQUEST_HISTORY, this, RequestHistory::getRequests);
+		history.viewAs(LAST_REQUEST, this, h -> {
+			RequestHistory.Entry latest = h.getLatest();
+
+			return latest != null ? latest.getRequest() : null;
+		});
+		history.viewAs(REQUEST_HANDLING_TIME, this, h -> {
+			RequestHistory.Entry latest = h.getLatest();
+
+			return latest != null ? latest.getHandlingTime() : null;
+		});
+	}
+
+	/**
+	 * Returns the number of requests that are currently handled or waiting
+	 * for a free worker thread.
+	 *
+	 * @return The number of active requests
+	 */
+	public final int getActiveRequestCount() {
+		return metrics.getActiveRequests();
 	}
 
 	/**
@@ -191,15 +419,84 @@ public class Server extends RelatedObject
 	}
 
 	/**
-	 * Stops this server after all active client threads have finished. This
-	 * method will return immediately after the call, even if client requests
-	 * are still processed.
+	 * Shuts down this server gracefully and waits until the shutdown is
+	 * complete. The server stops to accept new connections, closes idle
+	 * connections, and waits up to the given timeout for active requests to
+	 * finish. Afterwards all remaining connections will be closed.
+	 *
+	 * <p>If the server is still starting it will be shut down as soon as it
+	 * runs. If it has not been started at all this method returns
+	 * immediately.</p>
+	 *
+	 * @param timeout The maximum time in milliseconds to wait for active
+	 *                requests
+	 * @return The result of the shutdown or NULL if the server has never been
+	 * started
+	 * @throws InterruptedException If the current thread is interrupted while
+	 *                              waiting for the shutdown
+	 */
+	public ShutdownResult shutdown(int timeout) throws InterruptedException {
+		CountDownLatch finished = requestShutdown(timeout);
+
+		if (finished != null) {
+			finished.await();
+		}
+
+		return shutdownResult;
+	}
+
+	/**
+	 * Stops this server gracefully. This method will return immediately after
+	 * the call while the server lets active requests finish until the
+	 * {@link CommunicationRelationTypes#SHUTDOWN_TIMEOUT} has been reached.
+	 *
+	 * @see #shutdown(int)
 	 */
 	@Override
+	@SuppressWarnings("boxing")
 	public void stop() {
-		if (running) {
-			running = false;
-			Log.infof("%s stopped", getServerName());
+		requestShutdown(get(SHUTDOWN_TIMEOUT));
+	}
+
+	/**
+	 * Creates the access log of this server. The default implementation
+	 * returns a new {@link AccessLog} if the relation
+	 * {@link CommunicationRelationTypes#ACCESS_LOG_FILE} is set.
+	 *
+	 * @return The access log or NULL for none
+	 */
+	@SuppressWarnings("boxing")
+	protected AccessLog createAccessLog() {
+		String file = get(ACCESS_LOG_FILE);
+
+		if (file != null) {
+			return new AccessLog(file, get(ACCESS_LOG_FORMAT),
+				get(ACCESS_LOG_MAX_SIZE), get(ACCESS_LOG_MAX_FILES));
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the limiter for the request rate and connections of clients.
+	 * The default implementation returns a new {@link ClientRateLimiter} if
+	 * at least one of the relations
+	 * {@link CommunicationRelationTypes#CLIENT_REQUEST_RATE} or
+	 * {@link CommunicationRelationTypes#MAX_CLIENT_CONNECTIONS} is set.
+	 *
+	 * @return The rate limiter or NULL for no client limits
+	 */
+	@SuppressWarnings("boxing")
+	protected ClientRateLimiter createRateLimiter() {
+		int requestRate = getOption(CLIENT_REQUEST_RATE).orUse(0);
+		int maxConnections = getOption(MAX_CLIENT_CONNECTIONS).orUse(0);
+
+		if (requestRate > 0 || maxConnections > 0) {
+			return new ClientRateLimiter(requestRate,
+				getOption(CLIENT_REQUEST_BURST).orUse(requestRate),
+				maxConnections);
+		} else {
+			return null;
 		}
 	}
 
@@ -219,33 +516,147 @@ public class Server extends RelatedObject
 		return requestConfig;
 	}
 
+	/**
+	 * Creates the executor that runs the request handlers of this server. The
+	 * default implementation returns a thread pool with a maximum of
+	 * {@link CommunicationRelationTypes#MAX_CONNECTIONS} daemon threads and a
+	 * queue for up to {@link CommunicationRelationTypes#REQUEST_QUEUE_SIZE}
+	 * waiting requests. Subclasses may override this method to return a
+	 * different executor but it must throw a
+	 * {@link RejectedExecutionException} for requests that cannot be
+	 * handled.
+	 *
+	 * @return The request executor
+	 */
+	@SuppressWarnings("boxing")
+	protected ExecutorService createRequestExecutor() {
+		int maxThreads = getOption(MAX_CONNECTIONS).orUse(
+			Math.max(4, ForkJoinPool.commonPool().getParallelism()));
+		int queueSize = get(REQUEST_QUEUE_SIZE);
+		String threadPrefix = getServerName() + "-worker-";
+		AtomicInteger threadCount = new AtomicInteger();
+
+		BlockingQueue<Runnable> requestQueue;
+
+		if (queueSize > 0) {
+			requestQueue = new ArrayBlockingQueue<>(queueSize);
+		} else {
+			requestQueue = new SynchronousQueue<>();
+		}
+
+		ThreadPoolExecutor executor =
+			new ThreadPoolExecutor(maxThreads, maxThreads, 60,
+				TimeUnit.SECONDS, requestQueue, runnable -> {
+				Thread thread = new Thread(runnable,
+					threadPrefix + threadCount.incrementAndGet());
+
+				thread.setDaemon(true);
+
+				return thread;
+			});
+
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+	}
+
 	/**
 	 * Creates the server socket to listen on when the server is started.
+	 * Unencrypted server sockets are created from a server socket channel so
+	 * that files can be sent to clients without copying (see
+	 * {@link ChannelOutput}).
+	 *
+	 * <p>If multiple acceptor threads are configured (see
+	 * {@link CommunicationRelationTypes#ACCEPTOR_THREADS}) the socket option
+	 * {@code SO_REUSEPORT} will be set on unencrypted sockets if it is
+	 * supported by the platform. In that case this method will be invoked
+	 * again for each additional acceptor to open a separate socket on the
+	 * same port. If the option is not set on the first socket (e.g. because a
+	 * subclass creates it differently) all acceptors share that socket.</p>
 	 *
 	 * @param port The port to listen on
 	 * @return The new server port
 	 * @throws IOException If the socket could not be created
 	 */
+	@SuppressWarnings("boxing")
 	protected ServerSocket createServerSocket(int port) throws IOException {
-		ServerSocketFactory serverSocketFactory;
-
 		if (hasFlag(ENCRYPTION)) {
-			KeyStore certificate = get(CERTIFICATE);
+			ServerSocketFactory serverSocketFactory =
+				createSslContext().getServerSocketFactory();
 
-			if (certificate != null) {
-				serverSocketFactory = Security
-					.getSslContext(certificate,
-						getOption(KEY_PASSWORD).orUse(""))
-					.getServerSocketFactory();
-			} else {
-				throw new IllegalStateException(CERTIFICATE.getSimpleName() +
-					" parameter missing to enable SSL");
-			}
+			return serverSocketFactory.createServerSocket(port);
 		} else {
-			serverSocketFactory = ServerSocketFactory.getDefault();
+			ServerSocketChannel channel = ServerSocketChannel.open();
+
+			if (get(ACCEPTOR_THREADS) > 1 && SO_REUSEPORT != null &&
+				channel.supportedOptions().contains(SO_REUSEPORT)) {
+				channel.setOption(SO_REUSEPORT, true);
+			}
+
+			channel.bind(new InetSocketAddress(port));
+
+			return channel.socket();
+		}
+	}
+
+	/**
+	 * Creates the SSL context for encrypted connections from the server
+	 * certificate in the relation {@link SecurityRelationTypes#CERTIFICATE}.
+	 *
+	 * @return The SSL context
+	 * @throws IllegalStateException If no certificate has been set
+	 */
+	protected SSLContext createSslContext() {
+		KeyStore certificate = get(CERTIFICATE);
+
+		if (certificate == null) {
+			throw new IllegalStateException(CERTIFICATE.getSimpleName() +
+				" parameter missing to enable SSL");
 		}
 
-		return serverSocketFactory.createServerSocket(port);
+		return Security.getSslContext(certificate,
+			getOption(KEY_PASSWORD).orUse(""));
+	}
+
+	/**
+	 * Returns the response that is sent to clients if a request is rejected
+	 * because the server is busy. The default implementation returns an HTTP
+	 * response with the status code 503 (Service Unavailable) and a
+	 * {@code Retry-After} header with the value of
+	 * {@link CommunicationRelationTypes#RETRY_AFTER}.
+	 *
+	 * @return The response bytes
+	 */
+	protected byte[] getBusyResponse() {
+		String response = HttpStatusCode.SERVICE_UNAVAILABLE.getStatusLine() +
+			HttpHeaderField.RETRY_AFTER.getFieldName() + ": " +
+			get(RETRY_AFTER) + CRLF +
+			HttpHeaderField.CONTENT_LENGTH.getFieldName() + ": 0" + CRLF +
+			HttpHeaderField.CONNECTION.getFieldName() + ": close" + CRLF +
+			CRLF;
+
+		return response.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Returns the response that is sent to clients if a request or connection
+	 * is rejected because the client has exceeded it's request rate or
+	 * connection limit. The default implementation returns an HTTP response
+	 * with the status code 429 (Too Many Requests) and a {@code Retry-After}
+	 * header.
+	 *
+	 * @param retryAfter The number of seconds after which the client may
+	 *                   retry
+	 * @return The response bytes
+	 */
+	protected byte[] getTooManyRequestsResponse(int retryAfter) {
+		String response = HttpStatusCode.TOO_MANY_REQUESTS.getStatusLine() +
+			HttpHeaderField.RETRY_AFTER.getFieldName() + ": " + retryAfter +
+			CRLF + HttpHeaderField.CONTENT_LENGTH.getFieldName() + ": 0" +
+			CRLF + HttpHeaderField.CONNECTION.getFieldName() + ": close" +
+			CRLF + CRLF;
+
+		return response.getBytes(StandardCharsets.US_ASCII);
 	}
 
 	/**
@@ -260,53 +671,97 @@ public class Server extends RelatedObject
 	@SuppressWarnings("boxing")
 	protected void handleClientRequest(Socket clientSocket,
 		Relatable context) {
-		RequestHandler requestHandler =
-			get(REQUEST_HANDLER_FACTORY).getRequestHandler(context);
+		ConnectionTimer timer =
+			createConnectionTimer(() -> closeTimedOut(clientSocket));
 
-		requestHandler.init(TIMER);
+		metrics.connectionOpened();
+		clientSockets.add(clientSocket);
 
 		try {
+			InetAddress clientAddress = clientSocket.getInetAddress();
 			InputStream clientIn = clientSocket.getInputStream();
 			OutputStream clientOut = clientSocket.getOutputStream();
-			InetAddress clientAddress = clientSocket.getInetAddress();
+			SocketChannel clientChannel = clientSocket.getChannel();
+			int maxRequests =
+				hasFlag(KEEP_ALIVE) ? get(MAX_KEEP_ALIVE_REQUESTS) : 1;
+			int headerTimeout = get(REQUEST_HEADER_TIMEOUT);
+			int bodyTimeout = get(REQUEST_BODY_TIMEOUT);
+			int keepAliveTimeout = get(KEEP_ALIVE_TIMEOUT);
+			Runnable headerCallback = () -> timer.set(bodyTimeout);
+			int requestCount = 0;
+			boolean keepAlive;
 
-			Log.infof("%s: handling request from %s", getServerName(),
-				clientAddress.getHostAddress());
+			// limits single reads, the reaper limits the total time
+			int readTimeout = Math.max(headerTimeout, bodyTimeout);
 
-			requestHandler.set(IP_ADDRESS, clientAddress);
+			if (readTimeout > 0) {
+				clientSocket.setSoTimeout(readTimeout);
+			}
 
-			InputStream input =
-				new LimitedInputStream(clientIn, get(MAX_REQUEST_SIZE));
-			OutputStream output =
-				new LimitedOutputStream(clientOut, get(MAX_RESPONSE_SIZE));
+			if (maxRequests > 1) {
+				// allows to wait for the next request without losing data
+				clientIn = new BufferedInputStream(clientIn);
+			}
 
-			String request = requestHandler.handleRequest(input, output);
+			if (clientChannel != null) {
+				clientOut =
+					new SocketChannelOutputStream(clientOut, clientChannel);
+			}
 
-			request = request.replaceAll("(\r\n|\r|\n)", "¶");
+			clientOut = new TimedOutputStream(clientOut, timer,
+				get(RESPONSE_WRITE_TIMEOUT));
 
-			if (Log.isLevelEnabled(LogLevel.DEBUG)) {
-				Log.debugf("Request: %s", request);
-			}
+			do {
+				LimitedInputStream input =
+					new LimitedInputStream(clientIn, get(MAX_REQUEST_SIZE));
+				LimitedOutputStream output =
+					new LimitedOutputStream(clientOut, get(MAX_RESPONSE_SIZE));
+				byte[] rateLimitResponse = checkRequestRate(clientAddress);
 
-			serverLock.lock();
+				timer.set(headerTimeout);
 
-			try {
-				set(LAST_REQUEST, request);
-				set(REQUEST_HANDLING_TIME,
-					requestHandler.get(TIMER).intValue());
+				if (rateLimitResponse != null) {
+					output.write(rateLimitResponse);
+					output.flush();
+					keepAlive = false;
+				} else {
+					keepAlive = handleRequest(context, clientAddress, input,
+						output, ++requestCount < maxRequests, headerCallback);
+				}
+
+				timer.clear();
+
+				if (keepAlive && running) {
+					// the keep-alive timeout only applies to the idle time
+					// until the first byte of the next request arrives
+					clientSocket.setSoTimeout(keepAliveTimeout);
+
+					// idle connections are closed on shutdown
+					idleSockets.add(clientSocket);
 
-				if (!running) {
-					serverSocket.close();
+					try {
+						keepAlive = awaitNextRequest(clientIn);
+					} finally {
+						idleSockets.remove(clientSocket);
+					}
+
+					if (keepAlive) {
+						clientSocket.setSoTimeout(readTimeout);
+					}
 				}
-			} finally {
-				serverLock.unlock();
-			}
+			} while (keepAlive && running);
 		} catch (Exception e) {
-			Log.error("Client request handling failed", e);
-		} finally {
-			if (requestHandler instanceof Releasable) {
-				((Releasable) requestHandler).release();
+			if (timer.isExpired()) {
+				Log.debugf(e, "%s: connection to %s timed out",
+					getServerName(), clientSocket.getInetAddress());
+			} else {
+				Log.error("Client request handling failed", e);
 			}
+		} finally {
+			timer.stop();
+			metrics.connectionClosed();
+			clientSockets.remove(clientSocket);
+			releaseConnection(clientSocket.getInetAddress());
 
 			try {
 				clientSocket.close();
@@ -316,6 +771,97 @@ public class Server extends RelatedObject
 		}
 	}
 
+	/**
+	 * Handles a single request with a new request handler that is queried
+	 * from the {@link RequestHandlerFactory} of this server. This method is
+	 * independent of the underlying connection so that it can be used for
+	 * both blocking and non-blocking I/O. The handling time and the number of
+	 * transferred bytes will be recorded in the {@link ServerMetrics} of this
+	 * server.
+	 *
+	 * @param context        The request context
+	 * @param clientAddress  The address of the requesting client
+	 * @param input          The stream to read the request from
+	 * @param output         The stream to write the response to
+	 * @param keepAlive      TRUE if the connection may be kept alive after
+	 *                       the request
+	 * @param headerCallback The callback to be invoked by the request
+	 *                       handler after the request header has been read
+	 *                       or NULL for none
+	 * @return TRUE if the connection should be kept alive for further
+	 * requests
+	 * @throws Exception If handling the request fails
+	 */
+	@SuppressWarnings("boxing")
+	boolean handleRequest(Relatable context, InetAddress clientAddress,
+		LimitedInputStream input, LimitedOutputStream output,
+		boolean keepAlive, Runnable headerCallback) throws Exception {
+		RequestHandler requestHandler =
+			get(REQUEST_HANDLER_FACTORY).getRequestHandler(context);
+		long startTime = System.nanoTime();
+		int inputLimit = input.getRemainingLimit();
+		int bytesWritten = output.getBytesWritten();
+		AccessLog log = accessLog;
+		AccessLog.Entry logEntry = null;
+
+		try {
+			LogLevel logLevel = get(REQUEST_LOG_LEVEL);
+
+			if (Log.isLevelEnabled(logLevel)) {
+				Log.logf(logLevel, "%s: handling request from %s",
+					getServerName(), clientAddress.getHostAddress());
+			}
+
+			requestHandler.set(IP_ADDRESS, clientAddress);
+
+			if (log != null) {
+				logEntry = new AccessLog.Entry(clientAddress);
+				requestHandler.set(ACCESS_LOG_ENTRY, logEntry);
+			}
+
+			if (keepAlive) {
+				requestHandler.set(KEEP_ALIVE);
+			}
+
+			if (headerCallback != null) {
+				requestHandler.set(REQUEST_HEADER_CALLBACK, headerCallback);
+			}
+
+			String request = requestHandler.handleRequest(input, output);
+
+			if (request != null && Log.isLevelEnabled(LogLevel.DEBUG)) {
+				Log.debugf("Request: %s", LINE_BREAKS
+					.matcher(request)
+					.replaceAll(LINE_BREAK_REPLACEMENT));
+			}
+
+			requestHistory.add(request, (int) TimeUnit.NANOSECONDS.toMillis(
+				System.nanoTime() - startTime));
+
+			return keepAlive && requestHandler.hasFlag(KEEP_ALIVE);
+		} finally {
+			HttpStatusCode status = requestHandler.get(HTTP_STATUS_CODE);
+			int statusCode = status != null ? status.getCode() : 0;
+			long handlingTime = System.nanoTime() - startTime;
+
+			int bytesSent = output.getBytesWritten() - bytesWritten;
+
+			metrics.recordRequest(requestHandler.get(HTTP_REQUEST_PATH),
+				statusCode, handlingTime,
+				inputLimit - input.getRemainingLimit(), bytesSent);
+
+			if (logEntry != null) {
+				logEntry.setResult(statusCode, bytesSent,
+					TimeUnit.NANOSECONDS.toMicros(handlingTime));
+				log.log(logEntry);
+			}
+
+			if (requestHandler instanceof Releasable) {
+				((Releasable) requestHandler).release();
+			}
+		}
+	}
+
 	/**
 	 * Runs the main server loop that listens for client requests and handles
 	 * them with the current request handler.
@@ -325,107 +871,683 @@ public class Server extends RelatedObject
 	@SuppressWarnings("boxing")
 	protected void runServerLoop() throws IOException {
 		Relatable requestContext = createRequestContext();
+		int historySize = get(REQUEST_HISTORY_SIZE);
 
-		int maxConnections = getOption(MAX_CONNECTIONS).orUse(
-			Math.max(4, ForkJoinPool.commonPool().getParallelism()));
+		if (historySize != requestHistory.getCapacity()) {
+			requestHistory = new RequestHistory(historySize);
+			set(REQUEST_HISTORY_BUFFER, requestHistory);
+		}
 
-		Queue<CompletableFuture<Void>> requestHandlers =
-			new ArrayDeque<>(maxConnections);
+		requestExecutor = createRequestExecutor();
+		rateLimiter = createRateLimiter();
+		accessLog = createAccessLog();
+		connectionReaper = new TimingWheel(getServerName() + "-reaper",
+			REAPER_TICK_DURATION, REAPER_BUCKETS);
 
-		serverSocket = createServerSocket(get(PORT));
-		running = true;
+		synchronized (this) {
+			serverLoopFinished = new CountDownLatch(1);
+			pendingShutdownTimeout = -1;
+		}
 
-		while (running) {
-			try {
-				Socket clientSocket = serverSocket.accept();
+		ShutdownResult result = null;
 
-				Iterator<CompletableFuture<Void>> handlers =
-					requestHandlers.iterator();
+		try {
+			if (hasFlag(NON_BLOCKING_IO)) {
+				nioServerLoop = new NioServerLoop(this, requestContext);
+				startRunning();
 
-				// remove finished request handlers
-				while (handlers.hasNext()) {
-					if (handlers.next().isDone()) {
-						handlers.remove();
-					}
+				try {
+					nioServerLoop.run();
+				} finally {
+					result = new ShutdownResult(getCompletedShutdownRequests(),
+						nioServerLoop.getClosedIdleConnections(),
+						nioServerLoop.getClosedActiveConnections());
 				}
+			} else {
+				serverSockets = openServerSockets(get(PORT),
+					Math.max(1, get(ACCEPTOR_THREADS)));
+				startRunning();
 
-				if (requestHandlers.size() < maxConnections) {
-					CompletableFuture<Void> requestHandler =
-						CompletableFuture.runAsync(
-							() -> handleClientRequest(clientSocket,
-								requestContext));
-
-					requestHandlers.add(requestHandler);
-				} else {
-					Log.warn(
-						"Maximum connections reached, rejecting connection " +
-							"from " + clientSocket.getInetAddress());
+				List<Thread> acceptors =
+					startAcceptors(serverSockets, requestContext);
 
-					try {
-						clientSocket.close();
-					} catch (IOException e) {
-						Log.error(
-							"Closing rejected connection failed, continuing");
-					}
-				}
-			} catch (SocketException e) {
-				if (running) {
-					// only throw if still running; if server has been
-					// terminated due to a client request the "socket closed"
-					// exception can be ignored
-					throw e;
+				try {
+					acceptConnections(serverSockets.get(0), requestContext);
+				} finally {
+					beginShutdown(get(SHUTDOWN_TIMEOUT));
+					joinAcceptors(acceptors);
+					result = drainConnections();
 				}
 			}
+		} finally {
+			requestExecutor.shutdownNow();
+			connectionReaper.close();
+
+			if (accessLog != null) {
+				accessLog.close();
+			}
+
+			shutdownResult = result;
+			serverLoopFinished.countDown();
+
+			if (result != null) {
+				Log.infof("%s stopped (%s)", getServerName(), result);
+			}
 		}
 	}
 
 	/**
-	 * Returns the name of this server instance.
+	 * Tries to acquire a connection of a client from the rate limiter of
+	 * this server. If successful the connection must be released with
+	 * {@link #releaseConnection(InetAddress)} after it has been closed.
 	 *
-	 * @return The server name
+	 * @param clientAddress The client address
+	 * @return TRUE if the connection is allowed
 	 */
-	private String getServerName() {
-		String name = get(NAME);
+	boolean acquireConnection(InetAddress clientAddress) {
+		return rateLimiter == null ||
+			rateLimiter.acquireConnection(clientAddress);
+	}
 
-		if (name == null) {
-			name = getClass().getSimpleName();
+	/**
+	 * Checks whether a client may send another request according to the rate
+	 * limit of this server.
+	 *
+	 * @param clientAddress The client address
+	 * @return NULL if the request is allowed or else the response to send to
+	 * the client
+	 */
+	byte[] checkRequestRate(InetAddress clientAddress) {
+		long retryAfter =
+			rateLimiter != null ? rateLimiter.acquireRequest(clientAddress) :
+			0;
+
+		if (retryAfter > 0) {
+			metrics.recordRateLimit();
+			Log.debugf("%s: request rate of %s exceeded", getServerName(),
+				clientAddress.getHostAddress());
+
+			return getTooManyRequestsResponse(
+				(int) TimeUnit.MILLISECONDS.toSeconds(retryAfter + 999));
+		} else {
+			return null;
 		}
+	}
 
-		return name;
+	/**
+	 * Creates a timer for the deadlines of a client connection that is
+	 * monitored by the connection reaper of this server.
+	 *
+	 * @param timeoutAction The action that closes the connection if a
+	 *                      deadline has passed
+	 * @return The new connection timer
+	 */
+	ConnectionTimer createConnectionTimer(Runnable timeoutAction) {
+		return new ConnectionTimer(connectionReaper, timeoutAction);
 	}
 
 	/**
-	 * Defines the interface that needs to be implemented for server request
-	 * handlers. A request handler is a stateful object which means that for
-	 * each request a new instance will be created (or at least requested, see
-	 * {@link RequestHandlerFactory} for details). How exactly a handler
-	 * will be
-	 * configured depends on the factory which receives an instance of
-	 * {@link Relatable} with the server configuration. It may either copy the
-	 * relations of the context into the handler or embed them.
+	 * Returns the response for a connection that exceeds the connection limit
+	 * of a client and records the rejection.
 	 *
-	 * <p>This interface extends {@link Relatable} to allow the server to set
-	 * request state information directly on a handler object.</p>
+	 * @return The response bytes
+	 */
+	@SuppressWarnings("boxing")
+	byte[] getConnectionLimitResponse() {
+		metrics.recordRateLimit();
+
+		return getTooManyRequestsResponse(get(RETRY_AFTER));
+	}
+
+	/**
+	 * Checks whether this server is shutting down and waits for active
+	 * requests to finish. This is the case after it has been stopped until
+	 * the shutdown timeout has been reached.
 	 *
-	 * @author eso
+	 * @return TRUE if active requests should be allowed to finish
 	 */
-	public interface RequestHandler extends Relatable {
+	boolean isDraining() {
+		return !running && System.nanoTime() - shutdownDeadline < 0;
+	}
 
-		/**
-		 * Implements the handling of a single server request by reading the
-		 * request from an input stream, processing it, and writing an adequate
-		 * response to the given output stream. For each request a new instance
-		 * is used so it is not necessary
-		 *
-		 * <p>The implementation doesn't need to perform any kind of resource
-		 * management with the given stream parameters. That will be done by
+	/**
+	 * Releases a client connection that has been acquired with
+	 * {@link #acquireConnection(InetAddress)}.
+	 *
+	 * @param clientAddress The client address
+	 */
+	void releaseConnection(InetAddress clientAddress) {
+		if (rateLimiter != null) {
+			rateLimiter.releaseConnection(clientAddress);
+		}
+	}
+
+	/**
+	 * Submits a request to the request executor of this server.
+	 *
+	 * @param request The request to execute
+	 * @return TRUE if the request has been submitted, FALSE if it has been
+	 * rejected because the server is busy
+	 */
+	boolean submitRequest(Runnable request) {
+		long submitTime = System.nanoTime();
+
+		metrics.requestStarted();
+
+		try {
+			requestExecutor.execute(() -> {
+				metrics.recordQueueWait(System.nanoTime() - submitTime);
+
+				try {
+					request.run();
+				} finally {
+					metrics.requestFinished();
+				}
+			});
+
+			return true;
+		} catch (RejectedExecutionException e) {
+			metrics.requestFinished();
+			metrics.recordRejection();
+
+			return false;
+		}
+	}
+
+	/**
+	 * Accepts client connections from a server socket in blocking mode until
+	 * the server is stopped.
+	 *
+	 * @param serverSocket   The server socket to accept connections from
+	 * @param requestContext The request context
+	 * @throws IOException If accepting a connection fails
+	 */
+	private void acceptConnections(ServerSocket serverSocket,
+		Relatable requestContext) throws IOException {
+		while (running) {
+			try {
+				Socket clientSocket = serverSocket.accept();
+				InetAddress clientAddress = clientSocket.getInetAddress();
+
+				if (!acquireConnection(clientAddress)) {
+					Log.warnf("%s: connection limit of %s exceeded",
+						getServerName(), clientAddress.getHostAddress());
+					rejectConnection(clientSocket,
+						getConnectionLimitResponse());
+				} else {
+					// registered here so that queued connections are closed
+					// on shutdown too
+					clientSockets.add(clientSocket);
+
+					if (!submitRequest(() -> handleClientRequest(clientSocket,
+						requestContext))) {
+						Log.warnf("%s: server busy, rejecting connection " +
+							"from %s", getServerName(), clientAddress);
+						clientSockets.remove(clientSocket);
+						releaseConnection(clientAddress);
+						rejectConnection(clientSocket, getBusyResponse());
+					}
+				}
+			} catch (SocketException e) {
+				if (running) {
+					// only throw if still running; if server has been
+					// terminated due to a client request the "socket closed"
+					// exception can be ignored
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits until the next request on a persistent connection is available.
+	 * The input stream must support marking so that the availability of data
+	 * can be checked without consuming it.
+	 *
+	 * @param input The connection input stream
+	 * @return TRUE if request data is available, FALSE if the connection has
+	 * been closed by the client or has been idle for longer than the
+	 * {@link CommunicationRelationTypes#KEEP_ALIVE_TIMEOUT}
+	 * @throws IOException If reading from the stream fails
+	 */
+	private boolean awaitNextRequest(InputStream input) throws IOException {
+		input.mark(1);
+
+		try {
+			if (input.read() < 0) {
+				return false;
+			}
+		} catch (SocketTimeoutException e) {
+			return false;
+		} catch (SocketException e) {
+			if (running) {
+				throw e;
+			}
+
+			// idle connection closed by shutdown
+			return false;
+		}
+
+		input.reset();
+
+		return true;
+	}
+
+	/**
+	 * Starts the shutdown of this server if it is running. Stops the
+	 * acceptance of new connections and notifies the server loop.
+	 *
+	 * @param timeout The time in milliseconds to wait for active requests
+	 */
+	private synchronized void beginShutdown(int timeout) {
+		if (running) {
+			shutdownDeadline =
+				System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+			shutdownRequestCount = metrics.getRequestLatency().getCount();
+			running = false;
+
+			if (nioServerLoop != null) {
+				nioServerLoop.wakeup();
+			} else {
+				for (ServerSocket serverSocket : serverSockets) {
+					try {
+						serverSocket.close();
+					} catch (IOException e) {
+						Log.error("Server socket close failed", e);
+					}
+				}
+			}
+
+			Log.infof("%s stopping, waiting for %d active requests",
+				getServerName(), metrics.getActiveRequests());
+		}
+	}
+
+	/**
+	 * Closes all sockets in a set and removes them from it.
+	 *
+	 * @param sockets The sockets to close
+	 * @return The number of sockets that were still open
+	 */
+	private int closeSockets(Set<Socket> sockets) {
+		int count = 0;
+
+		for (Socket socket : sockets) {
+			if (sockets.remove(socket) && !socket.isClosed()) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					Log.debugf(e, "Closing connection to %s failed",
+						socket.getInetAddress());
+				}
+
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Closes the socket of a client connection that has exceeded a timeout.
+	 * Invoked by the connection reaper.
+	 *
+	 * @param clientSocket The client socket
+	 */
+	private void closeTimedOut(Socket clientSocket) {
+		metrics.recordTimeout();
+		Log.infof("%s: closing connection from %s after timeout",
+			getServerName(), clientSocket.getInetAddress().getHostAddress());
+
+		try {
+			clientSocket.close();
+		} catch (IOException e) {
+			Log.debugf(e, "Closing connection to %s failed",
+				clientSocket.getInetAddress());
+		}
+	}
+
+	/**
+	 * Waits in blocking mode until all active requests have finished or the
+	 * shutdown timeout has been reached. Idle persistent connections are
+	 * closed immediately, remaining active connections after the timeout.
+	 *
+	 * @return The shutdown result
+	 */
+	private ShutdownResult drainConnections() {
+		int closedIdle = 0;
+
+		// repeated to close connections that became idle in the meantime
+		while (metrics.getActiveRequests() > 0 && isDraining()) {
+			closedIdle += closeSockets(idleSockets);
+
+			try {
+				Thread.sleep(DRAIN_CHECK_INTERVAL);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		closedIdle += closeSockets(idleSockets);
+
+		return new ShutdownResult(getCompletedShutdownRequests(), closedIdle,
+			closeSockets(clientSockets));
+	}
+
+	/**
+	 * Returns the number of requests that have been completed since the
+	 * shutdown has started.
+	 *
+	 * @return The number of completed requests
+	 */
+	private long getCompletedShutdownRequests() {
+		return metrics.getRequestLatency().getCount() - shutdownRequestCount;
+	}
+
+	/**
+	 * Returns the name of this server instance.
+	 *
+	 * @return The server name
+	 */
+	String getServerName() {
+		String name = get(NAME);
+
+		if (name == null) {
+			name = getClass().getSimpleName();
+		}
+
+		return name;
+	}
+
+	/**
+	 * Waits until the additional acceptor threads have terminated after the
+	 * server sockets have been closed.
+	 *
+	 * @param acceptors The acceptor threads
+	 */
+	private void joinAcceptors(List<Thread> acceptors) {
+		for (Thread acceptor : acceptors) {
+			try {
+				acceptor.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Opens the server sockets for the acceptor threads of this server with
+	 * {@link #createServerSocket(int)}. If multiple acceptors are requested
+	 * and the socket option {@code SO_REUSEPORT} has been set on the first
+	 * socket a separate socket will be opened for each acceptor so that the
+	 * operating system distributes incoming connections between them.
+	 * Otherwise the acceptors share a single server socket.
+	 *
+	 * @param port      The port to listen on
+	 * @param acceptors The number of acceptor threads
+	 * @return A list containing the server socket for each acceptor
+	 * @throws IOException If opening a socket fails
+	 */
+	private List<ServerSocket> openServerSockets(int port, int acceptors)
+		throws IOException {
+		List<ServerSocket> sockets = new ArrayList<>(acceptors);
+		ServerSocket first = createServerSocket(port);
+		boolean reusePort = acceptors > 1 && isReusePort(first);
+
+		sockets.add(first);
+
+		try {
+			// use the actual port in the case of an ephemeral port (0)
+			port = first.getLocalPort();
+
+			for (int i = 1; i < acceptors; i++) {
+				sockets.add(reusePort ? createServerSocket(port) : first);
+			}
+		} catch (IOException e) {
+			for (ServerSocket socket : sockets) {
+				socket.close();
+			}
+
+			throw e;
+		}
+
+		if (acceptors > 1) {
+			Log.infof("%s: %d acceptors on %s", getServerName(), acceptors,
+				reusePort ? "separate sockets (SO_REUSEPORT)" :
+				"a shared socket");
+		}
+
+		return sockets;
+	}
+
+	/**
+	 * Rejects a client connection by sending a response and closing the
+	 * connection.
+	 *
+	 * @param clientSocket The client socket
+	 * @param response     The response to send
+	 */
+	private void rejectConnection(Socket clientSocket, byte[] response) {
+		try {
+			OutputStream output = clientSocket.getOutputStream();
+
+			output.write(response);
+			output.flush();
+			clientSocket.shutdownOutput();
+		} catch (IOException e) {
+			Log.debugf(e, "Sending rejection response to %s failed",
+				clientSocket.getInetAddress());
+		} finally {
+			try {
+				clientSocket.close();
+			} catch (IOException e) {
+				Log.error("Closing rejected connection failed, continuing");
+			}
+		}
+	}
+
+	/**
+	 * Requests the shutdown of this server. If the server is running the
+	 * shutdown begins immediately. If the server loop has been entered but
+	 * the server is not yet running the shutdown will begin as soon as it
+	 * runs. Checking the state and recording the pending shutdown is
+	 * synchronized with {@link #startRunning()} so that a request during the
+	 * start cannot get lost.
+	 *
+	 * @param timeout The time in milliseconds to wait for active requests
+	 * @return The latch that signals the termination of the server loop or
+	 * NULL if the server has never been started
+	 */
+	private synchronized CountDownLatch requestShutdown(int timeout) {
+		if (running) {
+			beginShutdown(timeout);
+		} else if (serverLoopFinished != null &&
+			serverLoopFinished.getCount() > 0) {
+			pendingShutdownTimeout = timeout;
+		}
+
+		return serverLoopFinished;
+	}
+
+	/**
+	 * Starts the threads of the additional acceptors that accept connections
+	 * in parallel to the server loop thread. If an acceptor fails the server
+	 * will be stopped.
+	 *
+	 * @param sockets        The server sockets of all acceptors, starting
+	 *                       with the one of the server loop thread
+	 * @param requestContext The request context
+	 * @return The started threads
+	 */
+	private List<Thread> startAcceptors(List<ServerSocket> sockets,
+		Relatable requestContext) {
+		List<Thread> acceptors = new ArrayList<>(sockets.size() - 1);
+
+		for (int i = 1; i < sockets.size(); i++) {
+			ServerSocket socket = sockets.get(i);
+			Thread acceptor = new Thread(() -> {
+				try {
+					acceptConnections(socket, requestContext);
+				} catch (Exception e) {
+					Log.errorf(e, "%s: acceptor failed, stopping server",
+						getServerName());
+					stop();
+				}
+			}, getServerName() + "-acceptor-" + i);
+
+			acceptor.setDaemon(true);
+			acceptor.start();
+			acceptors.add(acceptor);
+		}
+
+		return acceptors;
+	}
+
+	/**
+	 * Marks this server as running after the server socket or loop has been
+	 * created. If a shutdown has been requested while the server was still
+	 * starting the shutdown will begin immediately.
+	 */
+	private synchronized void startRunning() {
+		running = true;
+
+		if (pendingShutdownTimeout >= 0) {
+			beginShutdown(pendingShutdownTimeout);
+		}
+	}
+
+	/**
+	 * Returns the socket option SO_REUSEPORT if it is available in the
+	 * current Java runtime.
+	 *
+	 * @return The socket option or NULL if not available
+	 */
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> getReusePortOption() {
+		try {
+			return (SocketOption<Boolean>) StandardSocketOptions.class
+				.getField("SO_REUSEPORT")
+				.get(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether the socket option SO_REUSEPORT has been set on a server
+	 * socket.
+	 *
+	 * @param socket The server socket
+	 * @return TRUE if other sockets can bind the port of the socket
+	 * @throws IOException If querying the socket option fails
+	 */
+	@SuppressWarnings("boxing")
+	private static boolean isReusePort(ServerSocket socket)
+		throws IOException {
+		ServerSocketChannel channel = socket.getChannel();
+
+		return SO_REUSEPORT != null && channel != null &&
+			channel.supportedOptions().contains(SO_REUSEPORT) &&
+			channel.getOption(SO_REUSEPORT);
+	}
+
+	/**
+	 * Enumeration of the modes in which request handlers capture the data of
+	 * the requests they handle. The captured data is returned by
+	 * {@link RequestHandler#handleRequest(InputStream, OutputStream)} and
+	 * stored in the {@link CommunicationRelationTypes#REQUEST_HISTORY_BUFFER}
+	 * of the server. The mode is configured with
+	 * {@link CommunicationRelationTypes#REQUEST_CAPTURE}.
+	 *
+	 * <ul>
+	 *   <li>{@link #NONE}: requests are not captured.</li>
+	 *   <li>{@link #HEADERS}: only the request headers are captured.</li>
+	 *   <li>{@link #TRUNCATED}: requests are captured up to the size in
+	 *     {@link CommunicationRelationTypes#REQUEST_CAPTURE_SIZE}.</li>
+	 *   <li>{@link #SAMPLED}: only every N-th request is captured completely
+	 *     with N being the value of
+	 *     {@link CommunicationRelationTypes#REQUEST_CAPTURE_SAMPLE_RATE}.</li>
+	 *   <li>{@link #FULL}: all requests are captured completely.</li>
+	 * </ul>
+	 */
+	public enum RequestCapture {NONE, HEADERS, TRUNCATED, SAMPLED, FULL}
+
+	/**
+	 * A functional interface that determines the boundaries of requests in the
+	 * raw data that is received by a server in non-blocking mode. Because
+	 * connections are read without blocking a request can arrive in multiple
+	 * fragments and it will only be handed to a {@link RequestHandler} after
+	 * the framer signals that it is complete.
+	 *
+	 * @author eso
+	 */
+	@FunctionalInterface
+	public interface RequestFramer {
+
+		/**
+		 * Returns the length of the header of the first request in the given
+		 * buffer if the header has been received completely. This is used to
+		 * apply the {@link CommunicationRelationTypes#REQUEST_BODY_TIMEOUT}
+		 * to the remaining data. The default implementation returns -1 so
+		 * that the header timeout applies to the complete request.
+		 *
+		 * @param data The buffer containing the received data
+		 * @return The header length or -1 if the header is not complete or
+		 * the request format has no separate header
+		 */
+		default int getHeaderLength(ByteBuffer data) {
+			return -1;
+		}
+
+		/**
+		 * Returns the length of the first complete request in the given
+		 * buffer. The request data starts at the buffer position and ends at
+		 * the buffer limit. Implementations must not modify the position or
+		 * limit of the buffer. If the data is malformed implementations should
+		 * return the length of the available data so that the request handler
+		 * can respond with an appropriate error.
+		 *
+		 * @param data The buffer containing the received data
+		 * @return The request length or -1 if the request is not complete yet
+		 */
+		int getRequestLength(ByteBuffer data);
+	}
+
+	/**
+	 * Defines the interface that needs to be implemented for server request
+	 * handlers. A request handler is a stateful object which means that for
+	 * each request a new instance will be created (or at least requested, see
+	 * {@link RequestHandlerFactory} for details). How exactly a handler
+	 * will be
+	 * configured depends on the factory which receives an instance of
+	 * {@link Relatable} with the server configuration. It may either copy the
+	 * relations of the context into the handler or embed them.
+	 *
+	 * <p>This interface extends {@link Relatable} to allow the server to set
+	 * request state information directly on a handler object.</p>
+	 *
+	 * @author eso
+	 */
+	public interface RequestHandler extends Relatable {
+
+		/**
+		 * Implements the handling of a single server request by reading the
+		 * request from an input stream, processing it, and writing an adequate
+		 * response to the given output stream. For each request a new instance
+		 * is used so it is not necessary
+		 *
+		 * <p>The implementation doesn't need to perform any kind of resource
+		 * management with the given stream parameters. That will be done by
 		 * the
 		 * server implementation.</p>
 		 *
 		 * @param request  The request input stream
 		 * @param response The response output stream
 		 * @return A string description of the handled request (used for
-		 * statistical purposes)
+		 * statistical purposes) or NULL if the request has not been captured
+		 * (see {@link RequestCapture})
 		 * @throws Exception Can throw any exception if handling the request
 		 *                   fails
 		 */
@@ -461,4 +1583,319 @@ public class Server extends RelatedObject
 		 */
 		RequestHandler getRequestHandler(Relatable context);
 	}
+
+	/**
+	 * Contains the result of a server shutdown.
+	 *
+	 * @author eso
+	 */
+	public static final class ShutdownResult {
+
+		private final long completedRequests;
+
+		private final int closedIdleConnections;
+
+		private final int closedActiveConnections;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param completedRequests       The number of requests completed
+		 *                                during the shutdown
+		 * @param closedIdleConnections   The number of closed idle
+		 *                                connections
+		 * @param closedActiveConnections The number of active connections
+		 *                                closed after the timeout
+		 */
+		ShutdownResult(long completedRequests, int closedIdleConnections,
+			int closedActiveConnections) {
+			this.completedRequests = completedRequests;
+			this.closedIdleConnections = closedIdleConnections;
+			this.closedActiveConnections = closedActiveConnections;
+		}
+
+		/**
+		 * Returns the number of active connections that have been closed
+		 * because the shutdown timeout was reached. Requests on these
+		 * connections have been aborted.
+		 *
+		 * @return The number of forcibly closed connections
+		 */
+		public int getClosedActiveConnections() {
+			return closedActiveConnections;
+		}
+
+		/**
+		 * Returns the number of idle persistent connections that have been
+		 * closed.
+		 *
+		 * @return The number of closed idle connections
+		 */
+		public int getClosedIdleConnections() {
+			return closedIdleConnections;
+		}
+
+		/**
+		 * Returns the number of requests that have been completed after the
+		 * shutdown had started.
+		 *
+		 * @return The number of completed requests
+		 */
+		public long getCompletedRequests() {
+			return completedRequests;
+		}
+
+		/**
+		 * Checks whether all active requests have finished before the
+		 * shutdown timeout.
+		 *
+		 * @return TRUE if no requests have been aborted
+		 */
+		public boolean isComplete() {
+			return closedActiveConnections == 0;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("boxing")
+		public String toString() {
+			return String.format(
+				"%d requests completed, %d idle and %d active connections " +
+					"closed", completedRequests, closedIdleConnections,
+				closedActiveConnections);
+		}
+	}
+
+	/**
+	 * An output stream for client sockets that have a socket channel. Files
+	 * are transferred directly to the channel so that the operating system
+	 * can send them without copying the data into the Java heap.
+	 *
+	 * @author eso
+	 */
+	private static class SocketChannelOutputStream extends FilterOutputStream
+		implements ChannelOutput {
+
+		private final SocketChannel channel;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param output  The socket output stream
+		 * @param channel The socket channel
+		 */
+		SocketChannelOutputStream(OutputStream output, SocketChannel channel) {
+			super(output);
+
+			this.channel = channel;
+		}
+
+		/**
+		 * Writes the buffers with a single gathering write to the socket
+		 * channel.
+		 *
+		 * @see ChannelOutput#transferFrom(ByteBuffer[])
+		 */
+		@Override
+		public void transferFrom(ByteBuffer[] buffers) throws IOException {
+			long remaining = 0;
+
+			for (ByteBuffer buffer : buffers) {
+				remaining += buffer.remaining();
+			}
+
+			flush();
+
+			// a blocking channel writes all data but this is not guaranteed
+			while (remaining > 0) {
+				remaining -= channel.write(buffers);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void transferFrom(FileChannel source, long position,
+			long count) throws IOException {
+			long end = position + count;
+
+			flush();
+
+			while (position < end) {
+				long transferred =
+					source.transferTo(position, end - position, channel);
+
+				if (transferred <= 0 && position >= source.size()) {
+					throw new EOFException(
+						"File ended at position " + position);
+				}
+
+				position += transferred;
+			}
+		}
+
+		/**
+		 * Overridden to write the data in a single call to the socket stream.
+		 *
+		 * @see FilterOutputStream#write(byte[], int, int)
+		 */
+		@Override
+		public void write(byte[] data, int offset, int length)
+			throws IOException {
+			out.write(data, offset, length);
+		}
+	}
+
+	/**
+	 * An output stream that sets the response write timeout as the deadline
+	 * of a connection while data is written to the client. Large blocks of
+	 * data are written in parts so that the timeout applies to the progress
+	 * of the transfer instead of it's total duration.
+	 *
+	 * @author eso
+	 */
+	private static class TimedOutputStream extends FilterOutputStream
+		implements ChannelOutput {
+
+		private final ConnectionTimer timer;
+
+		private final int timeout;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param output  The stream to write to
+		 * @param timer   The connection timer
+		 * @param timeout The write timeout in milliseconds
+		 */
+		TimedOutputStream(OutputStream output, ConnectionTimer timer,
+			int timeout) {
+			super(output);
+
+			this.timer = timer;
+			this.timeout = timeout;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void flush() throws IOException {
+			timer.set(timeout);
+
+			try {
+				out.flush();
+			} finally {
+				timer.clear();
+			}
+		}
+
+		/**
+		 * Transfers the buffers to the wrapped stream at once if they don't
+		 * exceed the maximum size of a timed write. Otherwise the buffer data
+		 * is transferred in parts of that size.
+		 *
+		 * @see ChannelOutput#transferFrom(ByteBuffer[])
+		 */
+		@Override
+		public void transferFrom(ByteBuffer[] buffers) throws IOException {
+			long count = 0;
+
+			for (ByteBuffer buffer : buffers) {
+				count += buffer.remaining();
+			}
+
+			if (count <= MAX_TIMED_WRITE) {
+				timer.set(timeout);
+
+				try {
+					StreamUtil.send(buffers, out);
+				} finally {
+					timer.clear();
+				}
+			} else {
+				for (ByteBuffer buffer : buffers) {
+					while (buffer.hasRemaining()) {
+						ByteBuffer part = buffer.duplicate();
+						int length =
+							Math.min(buffer.remaining(), MAX_TIMED_WRITE);
+
+						part.limit(part.position() + length);
+						timer.set(timeout);
+
+						try {
+							StreamUtil.send(new ByteBuffer[] { part }, out);
+						} finally {
+							timer.clear();
+						}
+
+						buffer.position(buffer.position() + length);
+					}
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void transferFrom(FileChannel source, long position,
+			long count) throws IOException {
+			long end = position + count;
+
+			while (position < end) {
+				long length = Math.min(end - position, MAX_TIMED_WRITE);
+
+				timer.set(timeout);
+
+				try {
+					StreamUtil.send(source, position, length, out);
+				} finally {
+					timer.clear();
+				}
+
+				position += length;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int b) throws IOException {
+			timer.set(timeout);
+
+			try {
+				out.write(b);
+			} finally {
+				timer.clear();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] data, int offset, int length)
+			throws IOException {
+			int end = offset + length;
+
+			do {
+				int part = Math.min(end - offset, MAX_TIMED_WRITE);
+
+				timer.set(timeout);
+
+				try {
+					out.write(data, offset, part);
+				} finally {
+					timer.clear();
+				}
+
+				offset += part;
+			} while (offset < end);
+		}
+	}
 }
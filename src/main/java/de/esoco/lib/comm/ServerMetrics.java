@@ -0,0 +1,385 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects performance metrics of a {@link Server}. Request latencies are
+ * recorded in microseconds in {@link LatencyHistogram histograms} for all
+ * requests and additionally per request path and per response status if these
+ * are available. Furthermore counters for the transferred bytes, open
+ * connections, active and rejected requests, and the time that requests wait
+ * for a free worker thread are maintained. All methods can be invoked
+ * concurrently without locking.
+ *
+ * <p>To limit the memory consumption the number of distinct request paths
+ * that are recorded is limited. Latencies of further paths will be recorded
+ * under the path '*'.</p>
+ *
+ * @author eso
+ */
+public final class ServerMetrics {
+
+	/**
+	 * The maximum number of distinct request paths.
+	 */
+	public static final int MAX_PATHS = 100;
+
+	/**
+	 * The path under which requests are recorded if the limit of distinct
+	 * request paths has been reached.
+	 */
+	public static final String OTHER_PATHS = "*";
+
+	private final long startTime = System.currentTimeMillis();
+
+	private final LatencyHistogram requestLatency = new LatencyHistogram();
+
+	private final LatencyHistogram queueWaitTime = new LatencyHistogram();
+
+	private final ConcurrentMap<String, LatencyHistogram> pathLatencies =
+		new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Integer, LatencyHistogram> statusLatencies =
+		new ConcurrentHashMap<>();
+
+	private final LongAdder bytesReceived = new LongAdder();
+
+	private final LongAdder bytesSent = new LongAdder();
+
+	private final LongAdder rejectedRequests = new LongAdder();
+
+	private final LongAdder rateLimitedRequests = new LongAdder();
+
+	private final LongAdder timedOutConnections = new LongAdder();
+
+	private final AtomicInteger activeRequests = new AtomicInteger();
+
+	private final AtomicInteger openConnections = new AtomicInteger();
+
+	/**
+	 * Returns the number of requests that are currently handled or waiting
+	 * for a free worker thread.
+	 *
+	 * @return The number of active requests
+	 */
+	public int getActiveRequests() {
+		return activeRequests.get();
+	}
+
+	/**
+	 * Returns the total number of bytes that have been received in requests.
+	 *
+	 * @return The number of received bytes
+	 */
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+
+	/**
+	 * Returns the total number of bytes that have been sent in responses.
+	 *
+	 * @return The number of sent bytes
+	 */
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	/**
+	 * Returns the number of currently open client connections.
+	 *
+	 * @return The number of open connections
+	 */
+	public int getOpenConnections() {
+		return openConnections.get();
+	}
+
+	/**
+	 * Returns the latency histogram of a certain request path.
+	 *
+	 * @param path The request path
+	 * @return The histogram or NULL if no request for the path has been
+	 * recorded
+	 */
+	public LatencyHistogram getPathLatency(String path) {
+		return pathLatencies.get(path);
+	}
+
+	/**
+	 * Returns the histogram of the time in microseconds that requests have
+	 * waited for a free worker thread.
+	 *
+	 * @return The queue wait time histogram
+	 */
+	public LatencyHistogram getQueueWaitTime() {
+		return queueWaitTime;
+	}
+
+	/**
+	 * Returns the number of requests and connections that have been rejected
+	 * because a client exceeded it's rate or connection limit.
+	 *
+	 * @return The number of rate-limited requests
+	 */
+	public long getRateLimitedRequests() {
+		return rateLimitedRequests.sum();
+	}
+
+	/**
+	 * Returns the number of requests that have been rejected because the
+	 * server was busy.
+	 *
+	 * @return The number of rejected requests
+	 */
+	public long getRejectedRequests() {
+		return rejectedRequests.sum();
+	}
+
+	/**
+	 * Returns the histogram of the handling time in microseconds of all
+	 * requests.
+	 *
+	 * @return The request latency histogram
+	 */
+	public LatencyHistogram getRequestLatency() {
+		return requestLatency;
+	}
+
+	/**
+	 * Returns the latency histogram of the requests with a certain response
+	 * status.
+	 *
+	 * @param status The response status code
+	 * @return The histogram or NULL if no request with the status has been
+	 * recorded
+	 */
+	public LatencyHistogram getStatusLatency(int status) {
+		return statusLatencies.get(status);
+	}
+
+	/**
+	 * Returns a summary of all metrics that can be converted into JSON. The
+	 * latencies are contained as maps with the request count, the mean,
+	 * selected percentiles, and the maximum in milliseconds.
+	 *
+	 * @return A new map containing the metrics summary
+	 */
+	@SuppressWarnings("boxing")
+	public Map<String, Object> getSummary() {
+		Map<String, Object> summary = new LinkedHashMap<>();
+		long requests = requestLatency.getCount();
+		long seconds = Math.max(1,
+			TimeUnit.MILLISECONDS.toSeconds(
+				System.currentTimeMillis() - startTime));
+
+		summary.put("requests", requests);
+		summary.put("requestsPerSecond",
+			Math.round(requests * 100.0 / seconds) / 100.0);
+		summary.put("activeRequests", getActiveRequests());
+		summary.put("openConnections", getOpenConnections());
+		summary.put("rejectedRequests", getRejectedRequests());
+		summary.put("rateLimitedRequests", getRateLimitedRequests());
+		summary.put("timedOutConnections", getTimedOutConnections());
+		summary.put("bytesReceived", getBytesReceived());
+		summary.put("bytesSent", getBytesSent());
+		summary.put("latency", summarize(requestLatency));
+		summary.put("queueWait", summarize(queueWaitTime));
+		summary.put("paths", summarize(pathLatencies));
+		summary.put("statuses", summarize(statusLatencies));
+
+		return summary;
+	}
+
+	/**
+	 * Returns the number of connections that have been closed because a
+	 * client exceeded the time for sending a request or receiving a response.
+	 *
+	 * @return The number of timed out connections
+	 */
+	public long getTimedOutConnections() {
+		return timedOutConnections.sum();
+	}
+
+	/**
+	 * Records that a client connection has been closed.
+	 */
+	void connectionClosed() {
+		openConnections.decrementAndGet();
+	}
+
+	/**
+	 * Records that a client connection has been opened.
+	 */
+	void connectionOpened() {
+		openConnections.incrementAndGet();
+	}
+
+	/**
+	 * Records the time a request has waited for a free worker thread.
+	 *
+	 * @param nanos The wait time in nanoseconds
+	 */
+	void recordQueueWait(long nanos) {
+		queueWaitTime.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+	}
+
+	/**
+	 * Records that a request or connection has been rejected because a client
+	 * exceeded it's limits.
+	 */
+	void recordRateLimit() {
+		rateLimitedRequests.increment();
+	}
+
+	/**
+	 * Records that a request has been rejected because the server was busy.
+	 */
+	void recordRejection() {
+		rejectedRequests.increment();
+	}
+
+	/**
+	 * Records a request that has been handled.
+	 *
+	 * @param path          The request path or NULL if not available
+	 * @param status        The response status code or zero if not
+	 *                      available
+	 * @param nanos         The request handling time in nanoseconds
+	 * @param bytesReceived The number of request bytes
+	 * @param bytesSent     The number of response bytes
+	 */
+	@SuppressWarnings("boxing")
+	void recordRequest(String path, int status, long nanos,
+		long bytesReceived, long bytesSent) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+
+		requestLatency.record(micros);
+		this.bytesReceived.add(bytesReceived);
+		this.bytesSent.add(bytesSent);
+
+		if (path != null) {
+			getPathHistogram(path).record(micros);
+		}
+
+		if (status > 0) {
+			statusLatencies
+				.computeIfAbsent(status, s -> new LatencyHistogram())
+				.record(micros);
+		}
+	}
+
+	/**
+	 * Records that a connection has been closed because a client exceeded a
+	 * timeout.
+	 */
+	void recordTimeout() {
+		timedOutConnections.increment();
+	}
+
+	/**
+	 * Records the end of request handling.
+	 */
+	void requestFinished() {
+		activeRequests.decrementAndGet();
+	}
+
+	/**
+	 * Records the start of request handling, including the time the request
+	 * waits for a worker thread.
+	 */
+	void requestStarted() {
+		activeRequests.incrementAndGet();
+	}
+
+	/**
+	 * Returns the histogram for a request path. The query part of the path
+	 * will be ignored.
+	 *
+	 * @param path The request path
+	 * @return The path histogram
+	 */
+	private LatencyHistogram getPathHistogram(String path) {
+		int query = path.indexOf('?');
+
+		if (query >= 0) {
+			path = path.substring(0, query);
+		}
+
+		LatencyHistogram histogram = pathLatencies.get(path);
+
+		if (histogram == null) {
+			// the limit may be exceeded slightly by concurrent requests
+			if (pathLatencies.size() >= MAX_PATHS) {
+				path = OTHER_PATHS;
+			}
+
+			histogram =
+				pathLatencies.computeIfAbsent(path, p -> new LatencyHistogram());
+		}
+
+		return histogram;
+	}
+
+	/**
+	 * Creates a summary of a latency histogram with values in microseconds.
+	 *
+	 * @param histogram The histogram
+	 * @return A new map containing the summary in milliseconds
+	 */
+	@SuppressWarnings("boxing")
+	private Map<String, Object> summarize(LatencyHistogram histogram) {
+		Map<String, Object> summary = new LinkedHashMap<>();
+
+		summary.put("count", histogram.getCount());
+		summary.put("mean", Math.round(histogram.getMean()) / 1000.0);
+		summary.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+		summary.put("p90", histogram.getValueAtPercentile(90) / 1000.0);
+		summary.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+		summary.put("p999", histogram.getValueAtPercentile(99.9) / 1000.0);
+		summary.put("max", histogram.getMax() / 1000.0);
+
+		return summary;
+	}
+
+	/**
+	 * Creates summaries of a map of latency histograms, ordered by the map
+	 * keys.
+	 *
+	 * @param histograms The mapping from keys to histograms
+	 * @return A new map containing the summaries
+	 */
+	private Map<String, Object> summarize(
+		Map<?, LatencyHistogram> histograms) {
+		Map<String, Object> summaries = new TreeMap<>();
+
+		for (Entry<?, LatencyHistogram> entry : histograms.entrySet()) {
+			summaries.put(entry.getKey().toString(),
+				summarize(entry.getValue()));
+		}
+
+		return summaries;
+	}
+}
@@ -0,0 +1,271 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import de.esoco.lib.logging.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel that executes actions after a timeout. Timeouts are
+ * distributed over a fixed number of buckets that are processed by a single
+ * background thread in ticks of a fixed duration. Scheduling and cancelling a
+ * timeout are constant-time operations that don't need any locking which
+ * makes the wheel suitable for large numbers of short-lived timeouts like
+ * the deadlines of network connections. The precision of the timeouts is
+ * limited to the tick duration.
+ *
+ * <p>Timeout actions are executed on the thread of the wheel and should
+ * therefore only perform short operations like closing a connection or
+ * handing the work over to another thread. Cancelled timeouts are removed
+ * when their bucket is processed the next time.</p>
+ *
+ * @author eso
+ */
+public final class TimingWheel implements AutoCloseable {
+
+	private final long tickDuration;
+
+	private final Queue<Timeout>[] buckets;
+
+	private final int bucketMask;
+
+	private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+
+	private final long startTime = System.nanoTime();
+
+	private final Thread wheelThread;
+
+	private volatile boolean running = true;
+
+	private long currentTick = 0;
+
+	/**
+	 * Creates a new instance and starts the thread of the wheel.
+	 *
+	 * @param name         The name of the wheel thread
+	 * @param tickDuration The duration of a tick in milliseconds
+	 * @param bucketCount  The number of buckets of the wheel (will be rounded
+	 *                     up to the next power of two)
+	 * @throws IllegalArgumentException If the tick duration or the bucket
+	 *                                  count is not positive
+	 */
+	@SuppressWarnings({ "unchecked", "boxing" })
+	public TimingWheel(String name, long tickDuration, int bucketCount) {
+		if (tickDuration <= 0 || bucketCount <= 0 || bucketCount > 1 << 20) {
+			throw new IllegalArgumentException(
+				String.format("Invalid timing wheel: %d ms, %d buckets",
+					tickDuration, bucketCount));
+		}
+
+		int size = Integer.highestOneBit(bucketCount);
+
+		if (size < bucketCount) {
+			size <<= 1;
+		}
+
+		this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+
+		buckets = new Queue[size];
+		bucketMask = size - 1;
+
+		for (int i = 0; i < size; i++) {
+			buckets[i] = new ArrayDeque<>();
+		}
+
+		wheelThread = new Thread(this::run, name);
+		wheelThread.setDaemon(true);
+		wheelThread.start();
+	}
+
+	/**
+	 * Stops the thread of this wheel. Pending timeouts will not be executed
+	 * anymore.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		LockSupport.unpark(wheelThread);
+	}
+
+	/**
+	 * Checks whether this wheel is still running.
+	 *
+	 * @return TRUE if the wheel has not been closed
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Schedules an action to be executed after a timeout.
+	 *
+	 * @param delay  The timeout in milliseconds
+	 * @param action The action to execute on timeout
+	 * @return The timeout that can be used to cancel the execution
+	 */
+	public Timeout schedule(long delay, Runnable action) {
+		Timeout timeout = new Timeout(
+			System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay), action);
+
+		newTimeouts.add(timeout);
+
+		return timeout;
+	}
+
+	/**
+	 * Adds the newly scheduled timeouts to their buckets.
+	 */
+	private void addNewTimeouts() {
+		Timeout timeout;
+
+		while ((timeout = newTimeouts.poll()) != null) {
+			if (!timeout.isCancelled()) {
+				long tick = Math.max(
+					(timeout.deadline - startTime) / tickDuration,
+					currentTick);
+
+				timeout.remainingRounds = (tick - currentTick) / buckets.length;
+				buckets[(int) (tick & bucketMask)].add(timeout);
+			}
+		}
+	}
+
+	/**
+	 * Executes the timeouts in a bucket that are due in the current round and
+	 * removes cancelled timeouts.
+	 *
+	 * @param bucket The bucket to process
+	 */
+	private void expireTimeouts(Queue<Timeout> bucket) {
+		Iterator<Timeout> timeouts = bucket.iterator();
+
+		while (timeouts.hasNext()) {
+			Timeout timeout = timeouts.next();
+
+			if (timeout.isCancelled()) {
+				timeouts.remove();
+			} else if (timeout.remainingRounds <= 0) {
+				timeouts.remove();
+				timeout.expire();
+			} else {
+				timeout.remainingRounds--;
+			}
+		}
+	}
+
+	/**
+	 * The main loop of the wheel thread.
+	 */
+	private void run() {
+		while (running) {
+			long tickEnd = startTime + (currentTick + 1) * tickDuration;
+			long wait;
+
+			while (running && (wait = tickEnd - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(this, wait);
+			}
+
+			if (running) {
+				addNewTimeouts();
+				expireTimeouts(buckets[(int) (currentTick & bucketMask)]);
+				currentTick++;
+			}
+		}
+	}
+
+	/**
+	 * A timeout that has been scheduled on a {@link TimingWheel}.
+	 *
+	 * @author eso
+	 */
+	public static final class Timeout {
+
+		private static final int PENDING = 0;
+
+		private static final int CANCELLED = 1;
+
+		private static final int EXPIRED = 2;
+
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+
+		private final long deadline;
+
+		private final Runnable action;
+
+		private long remainingRounds;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param deadline The deadline in nanoseconds
+		 * @param action   The action to execute on expiration
+		 */
+		Timeout(long deadline, Runnable action) {
+			this.deadline = deadline;
+			this.action = action;
+		}
+
+		/**
+		 * Cancels this timeout if it has not expired yet.
+		 *
+		 * @return TRUE if the timeout has been cancelled, FALSE if it had
+		 * already expired or been cancelled
+		 */
+		public boolean cancel() {
+			return state.compareAndSet(PENDING, CANCELLED);
+		}
+
+		/**
+		 * Checks whether this timeout has been cancelled.
+		 *
+		 * @return TRUE if cancelled
+		 */
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		/**
+		 * Checks whether this timeout has expired and it's action has been
+		 * executed.
+		 *
+		 * @return TRUE if expired
+		 */
+		public boolean isExpired() {
+			return state.get() == EXPIRED;
+		}
+
+		/**
+		 * Executes the action of this timeout if it has not been cancelled.
+		 */
+		void expire() {
+			if (state.compareAndSet(PENDING, EXPIRED)) {
+				try {
+					action.run();
+				} catch (Throwable e) {
+					Log.error("Timeout action failed", e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,220 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A range of bytes in the body of an HTTP response as requested by a client
+ * in the Range header of a request. The static method
+ * {@link #parse(String, long)} resolves the byte ranges of a Range header
+ * against the actual size of a response body.
+ *
+ * @author eso
+ */
+final class ByteRange {
+
+	/**
+	 * The maximum number of ranges in a Range header. Headers with more
+	 * ranges are ignored to prevent clients from requesting excessively
+	 * fragmented responses.
+	 */
+	static final int MAX_RANGES = 16;
+
+	private static final String BYTES_UNIT = "bytes=";
+
+	private final long start;
+
+	private final long end;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param start The index of the first byte
+	 * @param end   The index of the last byte (inclusive)
+	 */
+	ByteRange(long start, long end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return start + "-" + end;
+	}
+
+	/**
+	 * Parses the value of a Range header and returns the resulting ranges for
+	 * a body of a certain size. Ranges that start after the end of the body
+	 * are omitted and ranges that exceed the body are truncated. Overlapping
+	 * and adjacent ranges are merged so that the result is ordered by the
+	 * range start.
+	 *
+	 * @param header The value of the Range header
+	 * @param size   The size of the response body
+	 * @return The list of satisfiable ranges which is empty if none of the
+	 * ranges can be satisfied, or NULL if the header is invalid or uses an
+	 * unsupported range unit and must therefore be ignored
+	 */
+	static List<ByteRange> parse(String header, long size) {
+		header = header.trim();
+
+		if (!header.regionMatches(true, 0, BYTES_UNIT, 0,
+			BYTES_UNIT.length())) {
+			return null;
+		}
+
+		String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+
+		if (specs.length > MAX_RANGES) {
+			return null;
+		}
+
+		List<ByteRange> ranges = new ArrayList<>(specs.length);
+
+		for (String spec : specs) {
+			spec = spec.trim();
+
+			int dash = spec.indexOf('-');
+
+			if (dash < 0) {
+				return null;
+			}
+
+			long first = parsePosition(spec.substring(0, dash));
+			long last = parsePosition(spec.substring(dash + 1));
+
+			if (dash == 0) {
+				// suffix range with the length of the range
+				if (last < 0) {
+					return null;
+				} else if (last > 0 && size > 0) {
+					ranges.add(new ByteRange(Math.max(0, size - last),
+						size - 1));
+				}
+			} else if (first < 0 || (dash < spec.length() - 1 &&
+				(last < 0 || last < first))) {
+				return null;
+			} else if (first < size) {
+				ranges.add(new ByteRange(first,
+					last >= 0 ? Math.min(last, size - 1) : size - 1));
+			}
+		}
+
+		return merge(ranges);
+	}
+
+	/**
+	 * Returns the value of the Content-Range header for this range.
+	 *
+	 * @param size The complete size of the response body
+	 * @return The header value
+	 */
+	String getContentRange(long size) {
+		return "bytes " + start + "-" + end + "/" + size;
+	}
+
+	/**
+	 * Returns the index of the last byte of this range.
+	 *
+	 * @return The end index (inclusive)
+	 */
+	long getEnd() {
+		return end;
+	}
+
+	/**
+	 * Returns the number of bytes in this range.
+	 *
+	 * @return The range length
+	 */
+	long getLength() {
+		return end - start + 1;
+	}
+
+	/**
+	 * Returns the index of the first byte of this range.
+	 *
+	 * @return The start index
+	 */
+	long getStart() {
+		return start;
+	}
+
+	/**
+	 * Merges overlapping and adjacent ranges.
+	 *
+	 * @param ranges The ranges to merge
+	 * @return A list of distinct ranges ordered by their start
+	 */
+	private static List<ByteRange> merge(List<ByteRange> ranges) {
+		if (ranges.size() < 2) {
+			return ranges;
+		}
+
+		List<ByteRange> merged = new ArrayList<>(ranges.size());
+		ByteRange current = null;
+
+		Collections.sort(ranges, Comparator.comparingLong(r -> r.start));
+
+		for (ByteRange range : ranges) {
+			if (current == null) {
+				current = range;
+			} else if (range.start <= current.end + 1) {
+				current = new ByteRange(current.start,
+					Math.max(current.end, range.end));
+			} else {
+				merged.add(current);
+				current = range;
+			}
+		}
+
+		merged.add(current);
+
+		return merged;
+	}
+
+	/**
+	 * Parses a byte position in a range specification.
+	 *
+	 * @param position The position string
+	 * @return The position or -1 if the string is empty or invalid
+	 */
+	private static long parsePosition(String position) {
+		int length = position.length();
+
+		if (length == 0 || length > 18) {
+			return -1;
+		}
+
+		for (int i = 0; i < length; i++) {
+			char c = position.charAt(i);
+
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+		}
+
+		return Long.parseLong(position);
+	}
+}
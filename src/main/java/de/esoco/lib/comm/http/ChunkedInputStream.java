@@ -0,0 +1,231 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static de.esoco.lib.comm.http.HttpStatusCode.badRequest;
+
+/**
+ * An input stream that decodes data in the HTTP chunked transfer encoding.
+ * The stream ends after the last chunk and the (ignored) trailer fields have
+ * been read so that the wrapped stream is positioned at the start of the next
+ * request. Closing this stream doesn't close the wrapped stream which
+ * typically belongs to a connection that may be reused.
+ *
+ * @author eso
+ */
+final class ChunkedInputStream extends FilterInputStream {
+
+	private static final int MAX_LINE_LENGTH = 1024;
+
+	private final StringBuilder line = new StringBuilder();
+
+	private long chunkRemaining = 0;
+
+	private boolean finished = false;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param input The stream to read the chunked data from
+	 */
+	ChunkedInputStream(InputStream input) {
+		super(input);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int available() throws IOException {
+		return finished ? 0 :
+		       (int) Math.min(chunkRemaining, in.available());
+	}
+
+	/**
+	 * Overridden to not close the wrapped stream.
+	 *
+	 * @see FilterInputStream#close()
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Checks whether the complete chunked data including the last chunk has
+	 * been read.
+	 *
+	 * @return TRUE if finished
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read() throws IOException {
+		int result = -1;
+
+		if (nextChunk()) {
+			result = in.read();
+
+			if (result < 0) {
+				throw new EOFException("Chunked data incomplete");
+			}
+
+			chunkEnd(1);
+		}
+
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read(byte[] target, int offset, int length) throws IOException {
+		int read = -1;
+
+		if (length == 0) {
+			read = 0;
+		} else if (nextChunk()) {
+			read = in.read(target, offset,
+				(int) Math.min(length, chunkRemaining));
+
+			if (read < 0) {
+				throw new EOFException("Chunked data incomplete");
+			}
+
+			chunkEnd(read);
+		}
+
+		return read;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long skip(long count) throws IOException {
+		long skipped = 0;
+
+		if (count > 0 && nextChunk()) {
+			skipped = in.skip(Math.min(count, chunkRemaining));
+			chunkEnd(skipped);
+		}
+
+		return skipped;
+	}
+
+	/**
+	 * Counts bytes that have been read from the current chunk and reads the
+	 * CRLF that terminates the chunk data if the chunk is complete.
+	 *
+	 * @param count The number of bytes read
+	 * @throws IOException If reading fails
+	 */
+	private void chunkEnd(long count) throws IOException {
+		chunkRemaining -= count;
+
+		if (chunkRemaining == 0 && readLine().length() > 0) {
+			badRequest("Chunk data not terminated with CRLF");
+		}
+	}
+
+	/**
+	 * Starts the next chunk if the current chunk has been read completely.
+	 *
+	 * @return TRUE if chunk data is available, FALSE if the last chunk has
+	 * been reached
+	 * @throws IOException If reading fails
+	 */
+	private boolean nextChunk() throws IOException {
+		if (!finished && chunkRemaining == 0) {
+			String header = readLine();
+			int extension = header.indexOf(';');
+
+			if (extension >= 0) {
+				header = header.substring(0, extension);
+			}
+
+			try {
+				chunkRemaining = Long.parseLong(header.trim(), 16);
+			} catch (NumberFormatException e) {
+				chunkRemaining = -1;
+			}
+
+			if (chunkRemaining < 0) {
+				badRequest("Invalid chunk size: " + header);
+			} else if (chunkRemaining == 0) {
+				// skip trailer fields until the terminating empty line
+				while (readLine().length() > 0) {
+				}
+
+				finished = true;
+			}
+		}
+
+		return !finished;
+	}
+
+	/**
+	 * Reads a line that is terminated by CRLF from the wrapped stream.
+	 *
+	 * @return The line without the terminating CRLF
+	 * @throws IOException If reading fails or the stream ends before the end
+	 *                     of the line
+	 */
+	private String readLine() throws IOException {
+		int c;
+
+		line.setLength(0);
+
+		while ((c = in.read()) != '\n') {
+			if (c < 0) {
+				throw new EOFException("Chunked data incomplete");
+			} else if (line.length() >= MAX_LINE_LENGTH) {
+				badRequest("Chunk line too long");
+			}
+
+			line.append((char) c);
+		}
+
+		int length = line.length();
+
+		if (length == 0 || line.charAt(length - 1) != '\r') {
+			badRequest("Chunk line not terminated with CRLF");
+		}
+
+		line.setLength(length - 1);
+
+		return line.toString();
+	}
+}
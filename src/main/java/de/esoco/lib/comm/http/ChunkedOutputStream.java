@@ -0,0 +1,213 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import de.esoco.lib.io.BufferPool;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An output stream that writes data in the HTTP chunked transfer encoding.
+ * Written data is collected in a buffer of fixed size which is written as a
+ * chunk to the wrapped stream when it is full or when the stream is flushed.
+ * Because writing to the wrapped stream blocks until the data has been
+ * accepted a producer that writes to this stream is slowed down to the speed
+ * of the client while the memory consumption remains bounded by the buffer
+ * size. The buffer is taken from the shared {@link BufferPool} and returned
+ * to it when the stream is finished.
+ *
+ * <p>Invoking {@link #finish()} writes the last chunk that terminates the
+ * chunked data. Closing the stream finishes it but doesn't close the wrapped
+ * stream which typically belongs to a connection that may be reused.</p>
+ *
+ * @author eso
+ */
+final class ChunkedOutputStream extends FilterOutputStream {
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	/**
+	 * Space for the chunk size (up to 8 hex digits) and CRLF in front of the
+	 * buffered data.
+	 */
+	private static final int CHUNK_PREFIX = 10;
+
+	private static final byte[] LAST_CHUNK =
+		"0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final byte[] buffer;
+
+	private final int bufferEnd;
+
+	private int position = CHUNK_PREFIX;
+
+	private boolean finished = false;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param output     The stream to write the chunks to
+	 * @param bufferSize The maximum chunk size
+	 */
+	ChunkedOutputStream(OutputStream output, int bufferSize) {
+		super(output);
+
+		buffer = BufferPool.getShared()
+			.acquireBytes(CHUNK_PREFIX + bufferSize + CRLF.length);
+		bufferEnd = CHUNK_PREFIX + bufferSize;
+	}
+
+	/**
+	 * Finishes this stream by writing any remaining data and the terminating
+	 * last chunk. Further invocations will be ignored.
+	 *
+	 * @throws IOException If writing fails
+	 */
+	public void finish() throws IOException {
+		if (!finished) {
+			finished = true;
+
+			try {
+				writeBuffer();
+			} finally {
+				BufferPool.getShared().release(buffer);
+			}
+
+			out.write(LAST_CHUNK);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Finishes this stream but doesn't close the wrapped stream.
+	 *
+	 * @see #finish()
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+
+	/**
+	 * Writes the currently buffered data as a chunk and flushes the wrapped
+	 * stream.
+	 *
+	 * @see FilterOutputStream#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		checkNotFinished();
+		writeBuffer();
+		out.flush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		checkNotFinished();
+
+		if (position == bufferEnd) {
+			writeBuffer();
+		}
+
+		buffer[position++] = (byte) b;
+	}
+
+	/**
+	 * Overridden to write data that is larger than the buffer directly as a
+	 * single chunk.
+	 *
+	 * @see FilterOutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] data, int offset, int length) throws IOException {
+		checkNotFinished();
+
+		if (length > bufferEnd - position) {
+			writeBuffer();
+
+			if (length >= bufferEnd - CHUNK_PREFIX) {
+				writeChunk(data, offset, length);
+
+				return;
+			}
+		}
+
+		System.arraycopy(data, offset, buffer, position, length);
+		position += length;
+	}
+
+	/**
+	 * Throws an exception if this stream has already been finished.
+	 *
+	 * @throws IOException If the stream is finished
+	 */
+	private void checkNotFinished() throws IOException {
+		if (finished) {
+			throw new IOException("Chunked output already finished");
+		}
+	}
+
+	/**
+	 * Writes the buffered data as a single chunk with a single write to the
+	 * wrapped stream. The chunk size is placed in front of the data in the
+	 * space that has been reserved for it.
+	 *
+	 * @throws IOException If writing fails
+	 */
+	private void writeBuffer() throws IOException {
+		int length = position - CHUNK_PREFIX;
+
+		if (length > 0) {
+			byte[] size =
+				Integer.toHexString(length).getBytes(StandardCharsets.US_ASCII);
+			int start = CHUNK_PREFIX - size.length - CRLF.length;
+
+			System.arraycopy(size, 0, buffer, start, size.length);
+			System.arraycopy(CRLF, 0, buffer, CHUNK_PREFIX - CRLF.length,
+				CRLF.length);
+			System.arraycopy(CRLF, 0, buffer, position, CRLF.length);
+			out.write(buffer, start, position + CRLF.length - start);
+			position = CHUNK_PREFIX;
+		}
+	}
+
+	/**
+	 * Writes a single chunk to the wrapped stream. Empty chunks will be
+	 * ignored because they would terminate the chunked data.
+	 *
+	 * @param data   The chunk data
+	 * @param offset The offset of the chunk in the data
+	 * @param length The chunk length
+	 * @throws IOException If writing fails
+	 */
+	private void writeChunk(byte[] data, int offset, int length)
+		throws IOException {
+		if (length > 0) {
+			out.write(Integer.toHexString(length)
+				.getBytes(StandardCharsets.US_ASCII));
+			out.write(CRLF);
+			out.write(data, offset, length);
+			out.write(CRLF);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import de.esoco.lib.io.PooledOutputStream;
+import de.esoco.lib.net.NetUtil;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A block of HTTP header fields that has been encoded in advance so that it
+ * can be written to multiple responses without encoding it again. This is
+ * used for the default response headers of a server. Header fields that are
+ * also set in a particular response will be omitted when the block is
+ * written for that response. Like in {@link HttpResponse} only the first
+ * value of each field is written and characters outside of the ASCII range
+ * are replaced with '?'.
+ *
+ * <p>The block contains a snapshot of the header map it has been created
+ * from. Changes of that map will not be reflected by an existing block.</p>
+ *
+ * @author eso
+ */
+final class EncodedHeaders {
+
+	private final Map<String, List<String>> source;
+
+	private final Map<String, List<String>> headers;
+
+	private final String[] names;
+
+	private final int[] offsets;
+
+	private final byte[] data;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param headers The header fields to encode
+	 */
+	EncodedHeaders(Map<String, List<String>> headers) {
+		StringBuilder block = new StringBuilder();
+		int count = 0;
+
+		source = headers;
+		this.headers = new LinkedHashMap<>(headers.size());
+		names = new String[headers.size()];
+		offsets = new int[headers.size() + 1];
+
+		for (Entry<String, List<String>> header : headers.entrySet()) {
+			List<String> values = header.getValue();
+
+			if (values != null && !values.isEmpty()) {
+				this.headers.put(header.getKey(), values);
+				names[count] = header.getKey();
+				offsets[count++] = block.length();
+
+				block.append(header.getKey()).append(": ");
+				block.append(values.get(0)).append(NetUtil.CRLF);
+			}
+		}
+
+		offsets[count] = block.length();
+		data = new byte[block.length()];
+
+		for (int i = 0; i < data.length; i++) {
+			char c = block.charAt(i);
+
+			data[i] = (byte) (c < 128 ? c : '?');
+		}
+	}
+
+	/**
+	 * Returns the values of a header field in this block.
+	 *
+	 * @param name The name of the header field
+	 * @return The field values or NULL if the field is not contained
+	 */
+	List<String> get(String name) {
+		return headers.get(name);
+	}
+
+	/**
+	 * Checks whether this block has been created from a certain header map
+	 * and the size of the map has not changed since then.
+	 *
+	 * @param headerMap The header map to check
+	 * @return TRUE if this block can be used for the given header map
+	 */
+	boolean isEncodingOf(Map<String, List<String>> headerMap) {
+		return source == headerMap && names.length == headerMap.size();
+	}
+
+	/**
+	 * Writes the header fields of this block that are not contained in the
+	 * header fields of a response. If none of the fields is overridden by the
+	 * response the complete block is written with a single copy.
+	 *
+	 * @param responseHeaders The header fields of the response
+	 * @param out             The buffered response output stream
+	 * @throws IOException If writing the data fails
+	 */
+	void write(Map<String, List<String>> responseHeaders,
+		PooledOutputStream out) throws IOException {
+		int count = headers.size();
+		int start = 0;
+
+		for (int i = 0; i < count; i++) {
+			if (responseHeaders.containsKey(names[i])) {
+				out.write(data, start, offsets[i] - start);
+				start = offsets[i + 1];
+			}
+		}
+
+		out.write(data, start, offsets[count] - start);
+	}
+
+	/**
+	 * Writes the header fields of this block that are not contained in the
+	 * header fields of a response to a writer.
+	 *
+	 * @param responseHeaders The header fields of the response
+	 * @param out             The response header writer
+	 * @throws IOException If writing the data fails
+	 */
+	void write(Map<String, List<String>> responseHeaders, Writer out)
+		throws IOException {
+		int count = headers.size();
+
+		for (int i = 0; i < count; i++) {
+			if (!responseHeaders.containsKey(names[i])) {
+				for (int b = offsets[i]; b < offsets[i + 1]; b++) {
+					out.write(data[b]);
+				}
+			}
+		}
+	}
+}
@@ -22,7 +22,12 @@ import org.obrel.core.RelationType;
 import org.obrel.core.RelationTypes;
 import org.obrel.type.CollectorType;
 
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Collection;
+import java.util.Locale;
 
 import static org.obrel.core.RelationTypeModifier.FINAL;
 import static org.obrel.core.RelationTypeModifier.READONLY;
@@ -42,8 +47,11 @@ public class HttpHeaderTypes {
 	 * Enumeration of HTTP header field names.
 	 */
 	public enum HttpHeaderField {
-		ACCEPT, ACCEPT_CHARSET, AUTHORIZATION, CONNECTION, CONTENT_LENGTH,
-		CONTENT_TYPE, COOKIE, HOST, USER_AGENT,
+		ACCEPT, ACCEPT_CHARSET, ACCEPT_ENCODING, ACCEPT_RANGES, AUTHORIZATION,
+		CONNECTION, CONTENT_ENCODING, CONTENT_LENGTH, CONTENT_RANGE,
+		CONTENT_TYPE, COOKIE, ETAG("ETag"), HOST, IF_MODIFIED_SINCE,
+		IF_NONE_MATCH, IF_RANGE, KEEP_ALIVE, LAST_MODIFIED, RANGE, REFERER,
+		RETRY_AFTER, TRANSFER_ENCODING, USER_AGENT, VARY,
 		WWW_AUTHENTICATE("WWW-Authenticate");
 
 		private final String fieldName;
@@ -158,10 +166,26 @@ public class HttpHeaderTypes {
 		                                                                 null,
 			READONLY);
 
+	private static final DateTimeFormatter HTTP_DATE_FORMAT =
+		DateTimeFormatter
+			.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+			.withZone(ZoneOffset.UTC);
+
 	static {
 		RelationTypes.init(HttpHeaderTypes.class);
 	}
 
+	/**
+	 * Formats a timestamp as an HTTP date for header fields like
+	 * Last-Modified.
+	 *
+	 * @param time The timestamp in milliseconds since the epoch
+	 * @return The HTTP date string
+	 */
+	public static String formatDate(long time) {
+		return HTTP_DATE_FORMAT.format(Instant.ofEpochMilli(time));
+	}
+
 	/**
 	 * Returns the corresponding relation type for a certain HTTP request
 	 * header
@@ -176,4 +200,21 @@ public class HttpHeaderTypes {
 		return RelationType.valueOf(
 			HttpHeaderTypes.HTTP_HEADER_TYPES_NAMESPACE + "." + headerName);
 	}
+
+	/**
+	 * Parses an HTTP date from a header field like If-Modified-Since.
+	 *
+	 * @param date The HTTP date string
+	 * @return The timestamp in milliseconds since the epoch or -1 if the
+	 * date is invalid
+	 */
+	public static long parseDate(String date) {
+		try {
+			return Instant
+				.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(date.trim()))
+				.toEpochMilli();
+		} catch (DateTimeException e) {
+			return -1;
+		}
+	}
 }
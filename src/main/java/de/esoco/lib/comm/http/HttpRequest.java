@@ -16,51 +16,127 @@
 //++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 package de.esoco.lib.comm.http;
 
+import de.esoco.lib.comm.Server.RequestFramer;
 import de.esoco.lib.comm.http.HttpHeaderTypes.HttpHeaderField;
-import de.esoco.lib.comm.http.HttpStatusException.EmptyRequestException;
+import de.esoco.lib.comm.http.HttpRequestParser.HeaderMap;
 import de.esoco.lib.expression.Conversions;
 import de.esoco.lib.io.StreamUtil;
 import de.esoco.lib.logging.Log;
 import de.esoco.lib.net.NetUtil;
 import org.obrel.core.RelatedObject;
+import org.obrel.core.Relation;
 import org.obrel.core.RelationType;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringWriter;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 
 import static de.esoco.lib.comm.http.HttpHeaderTypes.CONTENT_LENGTH;
 import static de.esoco.lib.comm.http.HttpStatusCode.badRequest;
+import static org.obrel.type.StandardTypes.IP_ADDRESS;
 
 /**
  * A class that collects the data of an HTTP request and additional information
  * (like headers) in it's relations.
  *
+ * <p>To keep the per-request overhead low the request data is stored in
+ * plain fields and the header fields are only decoded when they are
+ * accessed. The relations for the header types in {@link HttpHeaderTypes}
+ * and for {@link org.obrel.type.StandardTypes#IP_ADDRESS} are only created
+ * when one of these types is accessed for the first time, e.g. with
+ * {@link #get(RelationType)}, {@link #hasRelation(RelationType)}, or
+ * {@link #getRelation(RelationType)}, or when the relations are queried with
+ * {@link #getRelations(Predicate)}.
+ * Request handlers should prefer the access methods like
+ * {@link #getHeaderValue(HttpHeaderField)}, {@link #getContentLength()}, or
+ * {@link #getClientAddress()}. Relations that are set by applications are
+ * stored as usual.</p>
+ *
+ * <p>The request body can be read as text with {@link #getBody()} or
+ * {@link #getBodyReader()} or as binary data with {@link #getBodyStream()} or
+ * {@link #getBodyChannel()}. The body data is limited by the Content-Length
+ * header or, if the request uses the chunked transfer encoding, decoded from
+ * the chunks. Large bodies should be streamed or buffered with
+ * {@link #bufferBody(int)} instead of reading them into memory
+ * completely.</p>
+ *
  * @author eso
  */
 public class HttpRequest extends RelatedObject {
 
-	private final Reader requestReader;
+	private static final String CONTENT_LENGTH_PREFIX = "content-length:";
+
+	private static final String TRANSFER_ENCODING_PREFIX =
+		"transfer-encoding:";
+
+	private static final String CHUNKED = "chunked";
+
+	private static final String HTTP_1_0 = "HTTP/1.0";
+
+	private static final Map<HttpHeaderField, RelationType<?>> HEADER_TYPES =
+		new EnumMap<>(HttpHeaderField.class);
+
+	private static final Set<RelationType<?>> LAZY_TYPES = new HashSet<>();
+
+	static {
+		for (HttpHeaderField field : HttpHeaderField.values()) {
+			RelationType<?> headerType =
+				HttpHeaderTypes.get(field.getFieldName());
+
+			if (headerType != null) {
+				HEADER_TYPES.put(field, headerType);
+			}
+		}
+
+		LAZY_TYPES.addAll(HEADER_TYPES.values());
+		LAZY_TYPES.add(IP_ADDRESS);
+	}
+
+	private final InputStream requestBody;
 
 	private final HttpRequestMethod requestMethod;
 
 	private final String requestPath;
 
+	private final String httpVersion;
+
 	private final Map<String, List<String>> requestHeaders;
 
-	private int maxLineLength;
+	private final boolean pipelined;
+
+	private final boolean chunked;
+
+	private final int contentLength;
+
+	private InetAddress clientAddress;
+
+	private Reader requestReader;
+
+	private boolean bodyRead = false;
+
+	private boolean lazyRelationsSet = false;
 
 	/**
 	 * Reads the incoming request and throws an exception if it doesn't match
-	 * the requirements.
+	 * the requirements. The request header is parsed with a byte-based parser
+	 * and the header values will only be decoded when they are accessed.
+	 * The values of the header fields that are defined in
+	 * {@link HttpHeaderTypes} will be available as relations of the new
+	 * instance but are only set when they are first queried.
 	 *
 	 * @param input         inputReader The reader to read the request from
 	 * @param maxLineLength The maximum length a request header line
@@ -72,36 +148,73 @@ public class HttpRequest extends RelatedObject {
 	 */
 	public HttpRequest(InputStream input, int maxLineLength)
 		throws IOException, HttpStatusException {
-		this.maxLineLength = maxLineLength;
-		requestReader = new BufferedReader(
-			new InputStreamReader(input, StandardCharsets.UTF_8));
+		HttpRequestParser parser = HttpRequestParser.getThreadParser();
+
+		parser.parse(input, maxLineLength);
+
+		requestMethod = parser.getMethod();
+		requestPath = parser.getPath();
+		httpVersion = parser.getVersion();
+
+		HeaderMap headers = parser.getHeaders();
+		int headerCount = headers.getHeaderCount();
+		int bodyLength = -1;
+		boolean hasContentLength = false;
+
+		for (int i = 0; i < headerCount; i++) {
+			if (headers.getField(i) == HttpHeaderField.CONTENT_LENGTH) {
+				String value = headers.getValue(i);
 
-		String requestLine = readLine(requestReader);
+				// different framing by intermediaries allows request smuggling
+				if (hasContentLength) {
+					badRequest("Multiple Content-Length headers");
+				}
+
+				hasContentLength = true;
+
+				try {
+					bodyLength = Integer.parseInt(value.trim());
+				} catch (NumberFormatException e) {
+					badRequest(String.format(
+						"Invalid value for header '%s': %s",
+						headers.getName(i), value));
+				}
+			}
+		}
 
-		if (requestLine == null) {
-			badRequest("Unterminated request");
-		} else if (requestLine.isEmpty()) {
-			badRequest("Empty request line");
+		if (bodyLength < -1) {
+			badRequest("Invalid content length: " + bodyLength);
 		}
 
-		HttpRequestMethod method = HttpRequestMethod.GET;
-		String[] requestParts = requestLine.split(" ");
+		List<String> transferEncoding = headers.get(
+			HttpHeaderField.TRANSFER_ENCODING.getFieldName());
 
-		if (requestParts.length != 3 || !requestParts[2].startsWith("HTTP/")) {
-			badRequest("Malformed request line: " + requestLine);
+		if (transferEncoding != null) {
+			if (hasContentLength) {
+				badRequest("Content-Length not allowed with Transfer-Encoding");
+			} else if (!isChunked(transferEncoding)) {
+				badRequest("Unsupported Transfer-Encoding: " +
+					transferEncoding);
+			}
 		}
 
-		try {
-			method = HttpRequestMethod.valueOf(requestParts[0]);
-		} catch (Exception e) {
-			badRequest("Unknown request method: " + requestParts[0]);
+		contentLength = bodyLength;
+		requestHeaders = headers;
+		chunked = transferEncoding != null;
+
+		InputStream body;
+
+		if (chunked) {
+			body = new ChunkedInputStream(parser.getBodyStream(input, -1));
+		} else {
+			body = parser.getBodyStream(input, bodyLength);
 		}
 
-		requestMethod = method;
-		requestPath = requestParts[1];
-		requestHeaders = readHeaders(requestReader);
+		requestBody = new BodyStream(body);
+		pipelined = parser.hasExcessData(Math.max(bodyLength, 0));
 
-		Log.debugf("Request: %s %s", requestLine, requestHeaders);
+		Log.debugf("Request: %s %s %s %s", requestMethod, requestPath,
+			httpVersion, requestHeaders);
 	}
 
 	/**
@@ -120,45 +233,256 @@ public class HttpRequest extends RelatedObject {
 		this.requestPath = requestPath;
 		this.requestHeaders = requestHeaders;
 		requestReader = requestBodyReader;
+		requestBody = null;
+		httpVersion = "HTTP/1.1";
+		pipelined = false;
+		chunked = false;
+		contentLength = -1;
+	}
+
+	/**
+	 * Determines the length of the header of the first HTTP request in a byte
+	 * buffer, including the empty line that terminates the header. The
+	 * position and limit of the buffer will not be modified.
+	 *
+	 * @param data The buffer containing the request data from the buffer
+	 *             position to the limit
+	 * @return The length of the request header or -1 if the header is not
+	 * complete yet
+	 * @see #getRequestLength(ByteBuffer)
+	 */
+	public static int getHeaderLength(ByteBuffer data) {
+		int start = data.position();
+		int end = data.limit();
+
+		for (int i = start + 3; i < end; i++) {
+			if (data.get(i) == '\n' && data.get(i - 1) == '\r' &&
+				data.get(i - 2) == '\n' && data.get(i - 3) == '\r') {
+				return i + 1 - start;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Determines the length of the first complete HTTP request in a byte
+	 * buffer. This method can be used as a {@link RequestFramer} for servers
+	 * that read requests with non-blocking I/O. A request is complete if it
+	 * contains the empty line that terminates the request header and the
+	 * number of body bytes given by the Content-Length header (if present) or,
+	 * for a chunked body, all chunks up to the terminating empty chunk and
+	 * the trailer section. The position and limit of the buffer will not be
+	 * modified.
+	 *
+	 * <p>Requests with an ambiguous length (multiple Content-Length headers,
+	 * Content-Length together with Transfer-Encoding, or a transfer encoding
+	 * other than chunked) and chunked bodies with an invalid chunk size are
+	 * reported with the length of all available data. The request handler
+	 * will then reject them and close the connection so that no remaining
+	 * data is interpreted as a subsequent request.</p>
+	 *
+	 * @param data The buffer containing the request data from the buffer
+	 *             position to the limit
+	 * @return The length of the complete request or -1 if the request is not
+	 * complete yet
+	 */
+	public static int getRequestLength(ByteBuffer data) {
+		int start = data.position();
+		int end = data.limit();
+		int headerLength = getHeaderLength(data);
+
+		if (headerLength < 0) {
+			return -1;
+		}
+
+		int headerEnd = start + headerLength;
+		int lineStart = start;
+		int contentLengthCount = 0;
+		long bodyLength = 0;
+		boolean transferEncoding = false;
+		boolean chunkedBody = false;
+
+		while (lineStart < headerEnd) {
+			int lineEnd = lineStart;
+
+			while (data.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+
+			int valueEnd = lineEnd;
+
+			if (valueEnd > lineStart && data.get(valueEnd - 1) == '\r') {
+				valueEnd--;
+			}
+
+			if (matchesIgnoreCase(data, lineStart, lineEnd,
+				CONTENT_LENGTH_PREFIX)) {
+				contentLengthCount++;
+				bodyLength = parseLength(data,
+					lineStart + CONTENT_LENGTH_PREFIX.length(), lineEnd);
+			} else if (matchesIgnoreCase(data, lineStart, lineEnd,
+				TRANSFER_ENCODING_PREFIX)) {
+				transferEncoding = true;
+				chunkedBody |= containsToken(data,
+					lineStart + TRANSFER_ENCODING_PREFIX.length(), valueEnd,
+					CHUNKED);
+			}
+
+			lineStart = lineEnd + 1;
+		}
+
+		if (contentLengthCount > 1 ||
+			(transferEncoding && (contentLengthCount > 0 || !chunkedBody))) {
+			return end - start;
+		} else if (chunkedBody) {
+			int chunkedLength = getChunkedLength(data, headerEnd, end);
+
+			return chunkedLength >= 0 ? headerLength + chunkedLength : -1;
+		} else {
+			long length = headerLength + bodyLength;
+
+			return length <= end - start ? (int) length : -1;
+		}
+	}
+
+	/**
+	 * Reads the complete body of this request into a buffer that keeps the
+	 * data in memory up to a certain size and writes larger bodies to a
+	 * temporary file. The returned buffer must be closed after use to delete
+	 * the file.
+	 *
+	 * @param memoryLimit The maximum number of bytes to keep in memory
+	 * @return The buffer containing the body data
+	 * @throws IOException If reading the body or writing the file fails
+	 */
+	public final RequestBodyBuffer bufferBody(int memoryLimit)
+		throws IOException {
+		return new RequestBodyBuffer(getBodyStream(), memoryLimit);
+	}
+
+	/**
+	 * Overridden to create the lazy relations first so that they will not be
+	 * re-created after the deletion.
+	 *
+	 * @see RelatedObject#deleteRelation(RelationType)
+	 */
+	@Override
+	public void deleteRelation(RelationType<?> type) {
+		ensureLazyRelations(type);
+		super.deleteRelation(type);
+	}
+
+	/**
+	 * Overridden to set the relations of the request headers and the client
+	 * address when one of them is queried for the first time.
+	 *
+	 * @see RelatedObject#get(RelationType)
+	 */
+	@Override
+	public <T> T get(RelationType<T> type) {
+		ensureLazyRelations(type);
+
+		return super.get(type);
 	}
 
 	/**
 	 * Returns the complete body of this request by reading it from the reader
 	 * returned by {@link #getBodyReader()}. The maximum length to be read will
-	 * be taken from the {@link HttpHeaderTypes#CONTENT_LENGTH} relation type
-	 * which will be automatically set if the request is read from the input
-	 * stream.
+	 * be taken from the Content-Length header (see
+	 * {@link #getContentLength()}). Chunked bodies will be read completely.
 	 *
 	 * @return A string containing the full body text
 	 * @throws HttpStatusException {@link HttpStatusCode#LENGTH_REQUIRED} if no
-	 *                             content length is provided
+	 *                             content length is provided for a body that
+	 *                             is not chunked
 	 * @throws IOException         If reading the body content fails
 	 */
 	public final String getBody() throws IOException {
-		Integer length = get(CONTENT_LENGTH);
-
-		if (length == null) {
+		if (contentLength < 0 && !chunked) {
 			throw new HttpStatusException(HttpStatusCode.LENGTH_REQUIRED,
 				"Content-Length header missing");
 		}
 
-		return StreamUtil.readAll(requestReader, 8 * 1024, length.intValue());
+		bodyRead = true;
+
+		return StreamUtil.readAll(getBodyReader(), 8 * 1024,
+			chunked ? Integer.MAX_VALUE : contentLength);
+	}
+
+	/**
+	 * Returns a channel that provides the binary body data of this request.
+	 * This is a channel view of the stream returned by
+	 * {@link #getBodyStream()}.
+	 *
+	 * @return A channel that provides the body data
+	 * @throws IllegalStateException If this request has been created with a
+	 *                               body reader
+	 */
+	public final ReadableByteChannel getBodyChannel() {
+		return Channels.newChannel(getBodyStream());
 	}
 
 	/**
 	 * Returns a reader that provides the body of the request. Will be yield no
-	 * data (but will never be NULL) if the request has no body. The relation
-	 * {@link HttpHeaderTypes#CONTENT_LENGTH} will contain the length of the
-	 * body data.
+	 * data (but will never be NULL) if the request has no body. The method
+	 * {@link #getContentLength()} returns the length of the body data.
 	 *
 	 * @return A reader that provides the body data
 	 */
 	public final Reader getBodyReader() {
+		if (requestReader == null && requestBody != null) {
+			// created on demand because most requests have no text body
+			requestReader = new BufferedReader(
+				new InputStreamReader(requestBody, StandardCharsets.UTF_8));
+		}
+
 		return requestReader;
 	}
 
 	/**
-	 * Returns the value of a header field in this request.
+	 * Returns a stream that provides the binary body data of this request.
+	 * The stream ends at the end of the body as defined by the Content-Length
+	 * header or the chunked transfer encoding. It must not be used together
+	 * with the reader returned by {@link #getBodyReader()} because that
+	 * buffers the data it reads from the stream. If the stream is read
+	 * completely the connection of the request can be kept alive.
+	 *
+	 * @return A stream that provides the body data
+	 * @throws IllegalStateException If this request has been created with a
+	 *                               body reader
+	 */
+	public final InputStream getBodyStream() {
+		if (requestBody == null) {
+			throw new IllegalStateException(
+				"Request body only readable as text");
+		}
+
+		return requestBody;
+	}
+
+	/**
+	 * Returns the address of the client that has sent this request.
+	 *
+	 * @return The client address or NULL if not known
+	 */
+	public final InetAddress getClientAddress() {
+		return clientAddress;
+	}
+
+	/**
+	 * Returns the value of the Content-Length header of this request.
+	 *
+	 * @return The content length or -1 if the header is not set
+	 */
+	public final int getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * Returns the value of a header field in this request. If the request has
+	 * been read from an input stream the name will be compared
+	 * case-insensitive.
 	 *
 	 * @param name The name of the header field
 	 * @return The header field value or NULL if the header is not set
@@ -178,6 +502,67 @@ public class HttpRequest extends RelatedObject {
 		return getHeaderField(field.getFieldName());
 	}
 
+	/**
+	 * Returns the header of this request as a string. This contains the
+	 * request line and the header fields, each terminated by CRLF.
+	 *
+	 * @return The request header string
+	 */
+	public String getHeaderString() {
+		StringBuilder header = new StringBuilder();
+
+		if (requestHeaders instanceof HeaderMap) {
+			header.append(((HeaderMap) requestHeaders).getRawHeader());
+		} else {
+			header
+				.append(requestMethod)
+				.append(' ')
+				.append(requestPath)
+				.append(' ')
+				.append(httpVersion)
+				.append(NetUtil.CRLF);
+
+			for (Map.Entry<String, List<String>> field :
+				requestHeaders.entrySet()) {
+				for (String value : field.getValue()) {
+					header
+						.append(field.getKey())
+						.append(": ")
+						.append(value)
+						.append(NetUtil.CRLF);
+				}
+			}
+		}
+
+		return header.toString();
+	}
+
+	/**
+	 * Returns the (last) value of a header field in this request. This is a
+	 * shortcut for header fields that are only expected once, like the
+	 * Content-Type or the Host header.
+	 *
+	 * @param field The header field
+	 * @return The field value or NULL if the header is not set
+	 */
+	public final String getHeaderValue(HttpHeaderField field) {
+		List<String> values = getHeaderField(field);
+
+		return values != null && !values.isEmpty() ?
+		       values.get(values.size() - 1) :
+		       null;
+	}
+
+	/**
+	 * Returns the HTTP version of this request as it appears in the request
+	 * line (e.g. 'HTTP/1.1').
+	 *
+	 * @return The HTTP version
+	 */
+	public final String getHttpVersion() {
+		return httpVersion;
+	}
+
 	/**
 	 * Returns the request method.
 	 *
@@ -196,6 +581,92 @@ public class HttpRequest extends RelatedObject {
 		return requestPath;
 	}
 
+	/**
+	 * Overridden to set the relations of the request headers and the client
+	 * address when one of them is queried for the first time.
+	 *
+	 * @see RelatedObject#getRelation(RelationType)
+	 */
+	@Override
+	public <T> Relation<T> getRelation(RelationType<T> type) {
+		ensureLazyRelations(type);
+
+		return super.getRelation(type);
+	}
+
+	/**
+	 * Overridden to set the relations of the request headers and the client
+	 * address before the relations are queried.
+	 *
+	 * @see RelatedObject#getRelations(Predicate)
+	 */
+	@Override
+	public List<Relation<?>> getRelations(
+		Predicate<? super Relation<?>> filter) {
+		ensureLazyRelations(null);
+
+		return super.getRelations(filter);
+	}
+
+	/**
+	 * Overridden to set the relations of the request headers and the client
+	 * address when one of them is queried for the first time.
+	 *
+	 * @see RelatedObject#hasRelation(RelationType)
+	 */
+	@Override
+	public boolean hasRelation(RelationType<?> type) {
+		ensureLazyRelations(type);
+
+		return super.hasRelation(type);
+	}
+
+	/**
+	 * Checks whether the connection of this request can be used for further
+	 * requests. This is the case if the client supports persistent
+	 * connections (the default for HTTP/1.1, an explicit 'keep-alive' for
+	 * HTTP/1.0) and if the request body either doesn't exist or has been read
+	 * completely with {@link #getBody()} or up to the end of the body
+	 * stream. Otherwise any unread body data would
+	 * corrupt the next request. Pipelined requests (i.e. sent without waiting
+	 * for the response) also prevent the re-use of the connection because
+	 * their data has already been read together with this request.
+	 *
+	 * @return TRUE if the connection can be kept alive
+	 */
+	public boolean isKeepAlive() {
+		boolean keepAlive;
+
+		if (HTTP_1_0.equals(httpVersion)) {
+			keepAlive = hasConnectionOption("keep-alive");
+		} else {
+			keepAlive = !hasConnectionOption("close");
+		}
+
+		if (pipelined) {
+			// data of subsequent requests has been consumed with this one
+			keepAlive = false;
+		} else if (keepAlive && !bodyRead) {
+			keepAlive = contentLength <= 0 &&
+				getHeaderField("Transfer-Encoding") == null;
+		}
+
+		return keepAlive;
+	}
+
+	/**
+	 * Overridden to create the lazy relations first so that they will not
+	 * replace values that are set by the application.
+	 *
+	 * @see RelatedObject#set(RelationType, Object)
+	 */
+	@Override
+	public <T> Relation<T> set(RelationType<T> type, T target) {
+		ensureLazyRelations(type);
+
+		return super.set(type, target);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -206,102 +677,411 @@ public class HttpRequest extends RelatedObject {
 	}
 
 	/**
-	 * Tries to set an HTTP request header field as a relation on this
-	 * instance.
-	 * Invokes {@link HttpHeaderTypes#get(String)} with the given header name
-	 * and if successfull tries to parse the value with
-	 * {@link Conversions#parseValue(String, Class)} with the relation
-	 * datatype.
+	 * Sets the address of the client that has sent this request.
+	 *
+	 * @param address The client address
+	 */
+	final void setClientAddress(InetAddress address) {
+		clientAddress = address;
+
+		if (lazyRelationsSet && address != null) {
+			set(IP_ADDRESS, address);
+		}
+	}
+
+	/**
+	 * Sets the lazily created relations of the request headers and the client
+	 * address if this hasn't been done yet and if a relation type is one of
+	 * the lazy types.
+	 *
+	 * @param type The accessed relation type or NULL if all relations are
+	 *             accessed
+	 */
+	private void ensureLazyRelations(RelationType<?> type) {
+		if (!lazyRelationsSet && (type == null || LAZY_TYPES.contains(type))) {
+			lazyRelationsSet = true;
+			setLazyRelations();
+		}
+	}
+
+	/**
+	 * Checks whether the Connection header of this request contains a certain
+	 * option. Options are compared case-insensitive.
+	 *
+	 * @param option The lower case option
+	 * @return TRUE if the option is present
+	 */
+	private boolean hasConnectionOption(String option) {
+		List<String> values = getHeaderField(HttpHeaderField.CONNECTION);
+
+		if (values != null) {
+			for (String value : values) {
+				for (String token : value.split(",")) {
+					if (token.trim().equalsIgnoreCase(option)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks whether the values of the Transfer-Encoding header contain the
+	 * chunked encoding.
+	 *
+	 * @param transferEncoding The header values or NULL for none
+	 * @return TRUE if the body is chunked
+	 */
+	private boolean isChunked(List<String> transferEncoding) {
+		if (transferEncoding != null) {
+			for (String value : transferEncoding) {
+				for (String token : value.split(",")) {
+					if (token.trim().equalsIgnoreCase(CHUNKED)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Sets the value of an HTTP request header field as a relation on this
+	 * instance. Integer and string values are converted directly, other
+	 * datatypes with {@link Conversions#parseValue(String, Class)}. Values
+	 * that cannot be parsed are logged and ignored because this is done when
+	 * the relation is queried.
 	 *
+	 * @param headerType  The relation type of the header field
 	 * @param headerName  The name of the header field
 	 * @param headerValue The value of the header field
-	 * @throws HttpStatusException If the field value could not be parsed
 	 */
 	@SuppressWarnings("unchecked")
-	protected void parseRequestHeader(String headerName, String headerValue)
-		throws HttpStatusException {
-		RelationType<?> headerType = HttpHeaderTypes.get(headerName);
-
-		if (headerType != null) {
-			try {
-				Object value = Conversions.parseValue(headerValue,
-					headerType.getTargetType());
-
-				set((RelationType<Object>) headerType, value);
-			} catch (Exception e) {
-				badRequest(String.format("Invalid value for header '%s': %s",
-					headerName, headerValue));
+	private void setHeaderRelation(RelationType<?> headerType,
+		String headerName, String headerValue) {
+		Class<?> datatype = headerType.getTargetType();
+
+		try {
+			Object value;
+
+			if (datatype == String.class) {
+				value = headerValue;
+			} else if (datatype == Integer.class) {
+				value = Integer.valueOf(headerValue);
+			} else {
+				value = Conversions.parseValue(headerValue, datatype);
 			}
+
+			set((RelationType<Object>) headerType, value);
+		} catch (Exception e) {
+			Log.warnf("Invalid value for header '%s': %s", headerName,
+				headerValue);
 		}
 	}
 
 	/**
-	 * Reads the request headers into a map and returns it.
+	 * Sets the relations of the request headers that are defined in
+	 * {@link HttpHeaderTypes} and of the client address.
+	 */
+	@SuppressWarnings("boxing")
+	private void setLazyRelations() {
+		for (Map.Entry<HttpHeaderField, RelationType<?>> header :
+			HEADER_TYPES.entrySet()) {
+			RelationType<?> headerType = header.getValue();
+
+			if (headerType == CONTENT_LENGTH) {
+				if (contentLength >= 0) {
+					set(CONTENT_LENGTH, contentLength);
+				}
+			} else {
+				String value = getHeaderValue(header.getKey());
+
+				if (value != null) {
+					setHeaderRelation(headerType,
+						header.getKey().getFieldName(), value);
+				}
+			}
+		}
+
+		if (clientAddress != null) {
+			set(IP_ADDRESS, clientAddress);
+		}
+	}
+
+	/**
+	 * Checks whether a comma-separated list of values in a range of bytes in
+	 * a buffer contains a certain token, ignoring whitespace and the case of
+	 * letters.
 	 *
-	 * @param inputReader The reader to read the header fields from
-	 * @return A mapping from header field names to field values
-	 * @throws IOException         On stream acces failures
-	 * @throws HttpStatusException On malformed requests
+	 * @param data  The buffer
+	 * @param start The start position of the range
+	 * @param end   The end position of the range (exclusive)
+	 * @param token The lower case token to search for
+	 * @return TRUE if the token is contained in the range
 	 */
-	protected Map<String, List<String>> readHeaders(Reader inputReader)
-		throws IOException, HttpStatusException {
-		Map<String, List<String>> headers = new LinkedHashMap<>();
-		String header;
+	private static boolean containsToken(ByteBuffer data, int start, int end,
+		String token) {
+		int tokenStart = start;
+
+		while (tokenStart < end) {
+			int tokenEnd = tokenStart;
+
+			while (tokenEnd < end && data.get(tokenEnd) != ',') {
+				tokenEnd++;
+			}
+
+			int next = tokenEnd + 1;
+
+			while (tokenStart < tokenEnd &&
+				isWhitespace(data.get(tokenStart))) {
+				tokenStart++;
+			}
+
+			while (tokenEnd > tokenStart &&
+				isWhitespace(data.get(tokenEnd - 1))) {
+				tokenEnd--;
+			}
+
+			if (tokenEnd - tokenStart == token.length() &&
+				matchesIgnoreCase(data, tokenStart, tokenEnd, token)) {
+				return true;
+			}
+
+			tokenStart = next;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Determines the length of a chunked request body in a buffer, including
+	 * the terminating empty chunk and the trailer section.
+	 *
+	 * @param data  The buffer
+	 * @param start The start position of the chunked body
+	 * @param end   The end position of the available data (exclusive)
+	 * @return The length of the chunked body, -1 if the body is not complete
+	 * yet, or the length of the available data if a chunk size is invalid
+	 */
+	private static int getChunkedLength(ByteBuffer data, int start, int end) {
+		int position = start;
+		long chunkSize;
 
 		do {
-			header = readLine(inputReader);
+			int lineEnd = findLineEnd(data, position, end);
+
+			if (lineEnd < 0) {
+				return -1;
+			}
 
-			if (header == null) {
-				badRequest(
-					"Request must be terminated with CRLF on empty line");
-			} else if (!header.isEmpty()) {
-				int colon = header.indexOf(':');
+			chunkSize = parseChunkSize(data, position, lineEnd);
 
-				if (colon < 1) {
-					badRequest("Malformed header: " + header);
-				}
+			if (chunkSize < 0) {
+				return end - start;
+			}
 
-				String headerName = header.substring(0, colon).trim();
-				String headerValue = header.substring(colon + 1).trim();
+			// chunk data is followed by CRLF
+			long next = lineEnd + 1 + (chunkSize > 0 ? chunkSize + 2 : 0);
 
-				List<String> headerValues = headers.get(headerName);
+			if (next > end) {
+				return -1;
+			}
 
-				if (headerValues == null) {
-					headerValues = new ArrayList<>();
-				}
+			position = (int) next;
+		} while (chunkSize > 0);
 
-				headerValues.add(headerValue);
-				headers.put(headerName, headerValues);
-				parseRequestHeader(headerName, headerValue);
+		boolean emptyLine;
+
+		do {
+			int lineEnd = findLineEnd(data, position, end);
+
+			if (lineEnd < 0) {
+				return -1;
 			}
-		} while (!header.isEmpty());
 
-		return headers;
+			emptyLine = lineEnd == position ||
+				(lineEnd == position + 1 && data.get(position) == '\r');
+			position = lineEnd + 1;
+		} while (!emptyLine);
+
+		return position - start;
 	}
 
 	/**
-	 * Helper method to read a single HTTP request line (terminated with CRLF)
-	 * from a {@link Reader}.
+	 * Returns the position of the next line feed in a range of bytes in a
+	 * buffer.
 	 *
-	 * @param reader The reader to read the line from
-	 * @return The line string or NULL if no terminating CRLF could be found
-	 * @throws IOException         If reading data fails
-	 * @throws HttpStatusException If the line is not terminated correctly
+	 * @param data  The buffer
+	 * @param start The start position of the range
+	 * @param end   The end position of the range (exclusive)
+	 * @return The position of the line feed or -1 if not found
 	 */
-	protected String readLine(Reader reader) throws IOException {
-		StringWriter result = new StringWriter();
-		String line = null;
+	private static int findLineEnd(ByteBuffer data, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (data.get(i) == '\n') {
+				return i;
+			}
+		}
 
-		if (StreamUtil.readUntil(reader, result, NetUtil.CRLF, maxLineLength,
-			false)) {
-			line = result.toString();
-			line = line.substring(0, line.length() - 2);
-		} else if (result.getBuffer().length() == 0) {
-			throw new EmptyRequestException();
-		} else {
-			badRequest("Request line not terminated with CRLF");
+		return -1;
+	}
+
+	/**
+	 * Checks whether a byte is a space or a horizontal tab.
+	 *
+	 * @param b The byte to check
+	 * @return TRUE if the byte is whitespace
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	/**
+	 * Checks whether a range of bytes in a buffer starts with a certain ASCII
+	 * prefix, ignoring the case of letters.
+	 *
+	 * @param data   The buffer
+	 * @param start  The start position of the range
+	 * @param end    The end position of the range (exclusive)
+	 * @param prefix The lower case prefix to check
+	 * @return TRUE if the range starts with the prefix
+	 */
+	private static boolean matchesIgnoreCase(ByteBuffer data, int start,
+		int end, String prefix) {
+		int length = prefix.length();
+		boolean matches = end - start >= length;
+
+		for (int i = 0; matches && i < length; i++) {
+			matches = Character.toLowerCase((char) data.get(start + i)) ==
+				prefix.charAt(i);
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Parses the hexadecimal size from the header line of a chunk in a range
+	 * of bytes in a buffer. Chunk extensions after a semicolon are ignored.
+	 *
+	 * @param data  The buffer
+	 * @param start The start position of the chunk header line
+	 * @param end   The position of the line feed that terminates the line
+	 * @return The chunk size or -1 if the size is invalid
+	 */
+	private static long parseChunkSize(ByteBuffer data, int start, int end) {
+		long size = 0;
+		int digits = 0;
+		int position = start;
+
+		while (position < end) {
+			int digit =
+				Character.digit((char) (data.get(position) & 0xFF), 16);
+
+			if (digit < 0) {
+				break;
+			}
+
+			size = size * 16 + digit;
+			position++;
+
+			if (++digits > 8 || size > Integer.MAX_VALUE) {
+				return -1;
+			}
+		}
+
+		while (position < end && isWhitespace(data.get(position))) {
+			position++;
+		}
+
+		byte next = position < end ? data.get(position) : 0;
+
+		if (digits == 0 || (next != ';' && next != '\r')) {
+			return -1;
 		}
 
-		return line;
+		return size;
+	}
+
+	/**
+	 * Parses a non-negative decimal length value from a range of bytes in a
+	 * buffer, ignoring any whitespace. Returns zero if the range doesn't
+	 * contain a valid length value so that malformed requests will be handed
+	 * to the request handler for the error handling.
+	 *
+	 * @param data  The buffer
+	 * @param start The start position of the range
+	 * @param end   The end position of the range (exclusive)
+	 * @return The parsed length value or zero if invalid
+	 */
+	private static long parseLength(ByteBuffer data, int start, int end) {
+		long length = 0;
+
+		for (int i = start; i < end; i++) {
+			byte b = data.get(i);
+
+			if (b >= '0' && b <= '9') {
+				length = length * 10 + (b - '0');
+
+				if (length > Integer.MAX_VALUE) {
+					return 0;
+				}
+			} else if (b != ' ' && b != '\t' && b != '\r') {
+				return 0;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * The stream of the request body which records when the end of the body
+	 * has been reached.
+	 *
+	 * @author eso
+	 */
+	private class BodyStream extends FilterInputStream {
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param body The stream of the body data
+		 */
+		BodyStream(InputStream body) {
+			super(body);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() throws IOException {
+			return checkEnd(super.read());
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] target, int offset, int length)
+			throws IOException {
+			return checkEnd(super.read(target, offset, length));
+		}
+
+		/**
+		 * Records the end of the body if a read result signals it.
+		 *
+		 * @param result The result of a read invocation
+		 * @return The unchanged result
+		 */
+		private int checkEnd(int result) {
+			if (result < 0) {
+				bodyRead = true;
+			}
+
+			return result;
+		}
 	}
 }
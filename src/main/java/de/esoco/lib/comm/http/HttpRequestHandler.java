@@ -17,14 +17,20 @@
 package de.esoco.lib.comm.http;
 
 import de.esoco.lib.collection.CollectionUtil;
+import de.esoco.lib.comm.AccessLog;
+import de.esoco.lib.comm.CommunicationRelationTypes;
 import de.esoco.lib.comm.Server;
+import de.esoco.lib.comm.Server.RequestCapture;
 import de.esoco.lib.comm.Server.RequestHandler;
 import de.esoco.lib.comm.http.HttpHeaderTypes.HttpHeaderField;
 import de.esoco.lib.comm.http.HttpStatusException.EmptyRequestException;
+import de.esoco.lib.comm.http.ResponseCompression.ContentEncoding;
 import de.esoco.lib.datatype.Pair;
 import de.esoco.lib.io.EchoInputStream;
 import de.esoco.lib.logging.Log;
 import de.esoco.lib.security.AuthenticationService;
+import de.esoco.lib.security.CredentialCache;
+import de.esoco.lib.security.SecurityRelationTypes;
 import org.obrel.core.Relatable;
 import org.obrel.core.RelatedObject;
 
@@ -35,16 +41,33 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 
+import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_COMPRESSION_LEVEL;
+import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_COMPRESSION_THRESHOLD;
 import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_MAX_HEADER_LINE_SIZE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_REQUEST_PATH;
 import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_RESPONSE_HEADERS;
+import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_STATUS_CODE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.KEEP_ALIVE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.KEEP_ALIVE_TIMEOUT;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_CAPTURE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_CAPTURE_SAMPLE_RATE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_CAPTURE_SIZE;
+import static de.esoco.lib.comm.Server.ACCESS_LOG_ENTRY;
+import static de.esoco.lib.comm.Server.REQUEST_HEADER_CALLBACK;
+import static de.esoco.lib.comm.http.HttpHeaderTypes.CONTENT_TYPE;
 import static de.esoco.lib.comm.http.HttpStatusCode.badRequest;
 import static de.esoco.lib.security.SecurityRelationTypes.AUTHENTICATION_METHOD;
 import static de.esoco.lib.security.SecurityRelationTypes.AUTHENTICATION_SERVICE;
+import static de.esoco.lib.security.SecurityRelationTypes.CREDENTIAL_CACHE;
 import static de.esoco.lib.security.SecurityRelationTypes.LOGIN_NAME;
 import static de.esoco.lib.security.SecurityRelationTypes.PASSWORD;
 import static org.obrel.type.StandardTypes.EXCEPTION;
@@ -65,6 +88,16 @@ public class HttpRequestHandler extends RelatedObject
 	private static final ThreadLocal<HttpRequest> threadLocalRequest =
 		new ThreadLocal<>();
 
+	/**
+	 * The encoded default headers of the server the current thread works
+	 * for. Stored per thread because worker threads belong to a single
+	 * server.
+	 */
+	private static final ThreadLocal<EncodedHeaders> threadDefaultHeaders =
+		new ThreadLocal<>();
+
+	private static final AtomicLong requestCounter = new AtomicLong();
+
 	private final Relatable context;
 
 	private HttpRequestMethodHandler requestMethodHandler = null;
@@ -134,20 +167,59 @@ public class HttpRequestHandler extends RelatedObject
 	@Override
 	public String handleRequest(InputStream requestStream,
 		OutputStream responseStream) throws IOException {
-		ByteArrayOutputStream requestCopy = new ByteArrayOutputStream(2048);
-		String result;
+		RequestCapture capture = getRequestCapture();
+		CaptureBuffer requestCopy = null;
+		HttpRequest httpRequest = null;
+		String result = null;
+		boolean responseStarted = false;
+
+		if (capture == RequestCapture.FULL) {
+			requestCopy = new CaptureBuffer(Integer.MAX_VALUE);
+		} else if (capture == RequestCapture.TRUNCATED) {
+			requestCopy =
+				new CaptureBuffer(context.get(REQUEST_CAPTURE_SIZE).intValue());
+		}
 
 		try {
-			requestStream = new EchoInputStream(requestStream, requestCopy);
+			if (requestCopy != null) {
+				requestStream = new EchoInputStream(requestStream, requestCopy);
+			}
+
+			httpRequest = readRequest(requestStream);
+
+			Runnable headerCallback = get(REQUEST_HEADER_CALLBACK);
 
-			HttpRequest httpRequest = readRequest(requestStream);
+			if (headerCallback != null) {
+				headerCallback.run();
+			}
+
+			set(HTTP_REQUEST_PATH, httpRequest.getPath());
+			httpRequest.setClientAddress(get(IP_ADDRESS));
+
+			AccessLog.Entry logEntry = get(ACCESS_LOG_ENTRY);
+
+			if (logEntry != null) {
+				logEntry.setRequest(httpRequest.getMethod().name(),
+					httpRequest.getPath(), httpRequest.getHttpVersion());
+				logEntry.setClientInfo(
+					httpRequest.getHeaderValue(HttpHeaderField.REFERER),
+					httpRequest.getHeaderValue(HttpHeaderField.USER_AGENT));
+			}
 
-			httpRequest.set(IP_ADDRESS, get(IP_ADDRESS));
 			threadLocalRequest.set(httpRequest);
 
 			checkAuthentication(httpRequest);
 
-			sendResponse(createResponse(httpRequest), responseStream);
+			HttpResponse response =
+				checkNotModified(httpRequest, createResponse(httpRequest));
+
+			set(HTTP_STATUS_CODE, response.get(HTTP_STATUS_CODE));
+			setConnectionHeaders(httpRequest, response);
+			responseStarted = true;
+			sendResponse(response, responseStream);
+
+			// the status of range requests is determined while writing
+			set(HTTP_STATUS_CODE, response.get(HTTP_STATUS_CODE));
 		} catch (Exception e) {
 			HttpStatusCode status = HttpStatusCode.INTERNAL_SERVER_ERROR;
 			boolean emptyRequest = (e instanceof EmptyRequestException);
@@ -172,10 +244,21 @@ public class HttpRequestHandler extends RelatedObject
 				Log.error("HTTP Request failed", e);
 			}
 
-			// ignore empty requests; some browsers open connections in advance
-			if (!emptyRequest) {
+			// the connection state is undefined after other errors
+			if (!(e instanceof HttpStatusException)) {
+				httpRequest = null;
+			}
+
+			// ignore empty requests (some browsers open connections in
+			// advance); an incomplete response can only be signaled by
+			// closing the connection
+			if (emptyRequest || responseStarted) {
+				deleteRelation(KEEP_ALIVE);
+			} else {
 				HttpResponse errorResponse = new HttpResponse(status, message);
 
+				set(HTTP_STATUS_CODE, status);
+
 				if (responseHeaders != null) {
 					for (Entry<HttpHeaderField, String> header :
 						responseHeaders.entrySet()) {
@@ -184,14 +267,24 @@ public class HttpRequestHandler extends RelatedObject
 					}
 				}
 
+				setConnectionHeaders(httpRequest, errorResponse);
+
 				try {
 					errorResponse.write(responseStream);
 				} catch (Exception response) {
+					deleteRelation(KEEP_ALIVE);
 					Log.info("Response output failed", response);
 				}
 			}
 		} finally {
-			result = requestCopy.toString(StandardCharsets.UTF_8.name());
+			// pooled threads must neither see nor retain a previous request
+			threadLocalRequest.remove();
+
+			if (requestCopy != null) {
+				result = requestCopy.toString(StandardCharsets.UTF_8.name());
+			} else if (capture == RequestCapture.HEADERS && httpRequest != null) {
+				result = httpRequest.getHeaderString();
+			}
 		}
 
 		responseStream.flush();
@@ -201,7 +294,10 @@ public class HttpRequestHandler extends RelatedObject
 
 	/**
 	 * Checks if authentication is needed and if so, whether the request
-	 * contains the necessary authentication information.
+	 * contains the necessary authentication information. If the context
+	 * contains a {@link SecurityRelationTypes#CREDENTIAL_CACHE} successfully
+	 * verified authorization headers will be cached so that they don't need
+	 * to be verified by the authentication service on each request.
 	 *
 	 * @param request The request to check for authentication if necessary
 	 * @throws HttpStatusException If authentication is required but not
@@ -213,32 +309,52 @@ public class HttpRequestHandler extends RelatedObject
 			context.get(AUTHENTICATION_SERVICE);
 
 		if (authService != null) {
-			boolean authenticated = false;
-
-			String auth = request.get(HttpHeaderTypes.AUTHORIZATION);
+			CredentialCache credentialCache = context.get(CREDENTIAL_CACHE);
+			String auth =
+				request.getHeaderValue(HttpHeaderField.AUTHORIZATION);
 
 			if (auth == null) {
 				throw new HttpStatusException(HttpStatusCode.UNAUTHORIZED,
 					"Authentication required", getAuthErrorHeader());
 			}
 
-			String[] authHeader = auth.trim().split(" ");
+			boolean authenticated =
+				credentialCache != null && credentialCache.contains(auth);
+
+			if (!authenticated) {
+				String[] authHeader = auth.trim().split(" ");
 
-			if (authHeader.length == 2) {
-				String method = authHeader[0];
+				if (authHeader.length == 2) {
+					String method = authHeader[0];
 
-				if (SUPPORTED_AUTH_METHODS.contains(method)) {
-					String[] credential =
-						new String(Base64.getDecoder().decode(authHeader[1]),
+					if (SUPPORTED_AUTH_METHODS.contains(method)) {
+						String[] credential = new String(
+							Base64.getDecoder().decode(authHeader[1]),
 							StandardCharsets.UTF_8).split(":");
 
-					if (credential.length == 2) {
-						Relatable authData = new RelatedObject();
-
-						authData.set(AUTHENTICATION_METHOD, method);
-						authData.set(LOGIN_NAME, credential[0]);
-						authData.set(PASSWORD, credential[1].toCharArray());
-						authenticated = authService.authenticate(authData);
+						if (credential.length == 2) {
+							Relatable authData = new RelatedObject();
+							String loginName = credential[0];
+							long generation = 0;
+
+							if (credentialCache != null) {
+								generation =
+									credentialCache.getGeneration(loginName);
+							}
+
+							authData.set(AUTHENTICATION_METHOD, method);
+							authData.set(LOGIN_NAME, loginName);
+							authData.set(PASSWORD,
+								credential[1].toCharArray());
+							authenticated = authService.authenticate(authData);
+
+							// ignored if the user has been invalidated during
+							// the authentication
+							if (authenticated && credentialCache != null) {
+								credentialCache.add(auth, loginName,
+									generation);
+							}
+						}
 					}
 				}
 			}
@@ -250,6 +366,78 @@ public class HttpRequestHandler extends RelatedObject
 		}
 	}
 
+	/**
+	 * Checks whether a conditional GET request can be answered with the
+	 * status {@link HttpStatusCode#NOT_MODIFIED}. This is the case if the
+	 * response has an ETag that matches the If-None-Match header of the
+	 * request or, if the latter is not present, if the response has a
+	 * Last-Modified date that is not after the If-Modified-Since header of
+	 * the request. In that case a new response without a body will be
+	 * returned. Entity tags are compared with the weak comparison and
+	 * without the content encoding suffix of compressed responses.
+	 *
+	 * @param request  The request
+	 * @param response The response that has been created for the request
+	 * @return Either a new response with the status NOT_MODIFIED or the
+	 * original response
+	 */
+	protected HttpResponse checkNotModified(HttpRequest request,
+		HttpResponse response) {
+		if (request.getMethod() != HttpRequestMethod.GET ||
+			response.get(HTTP_STATUS_CODE) != HttpStatusCode.OK) {
+			return response;
+		}
+
+		String entityTag = response.getHeader(HttpHeaderField.ETAG);
+		String lastModified = response.getHeader(HttpHeaderField.LAST_MODIFIED);
+		List<String> ifNoneMatch =
+			request.getHeaderField(HttpHeaderField.IF_NONE_MATCH);
+		List<String> ifModifiedSince =
+			request.getHeaderField(HttpHeaderField.IF_MODIFIED_SINCE);
+		boolean notModified = false;
+
+		if (ifNoneMatch != null) {
+			if (entityTag != null) {
+				String tag = getOpaqueTag(entityTag);
+
+				for (String headerValue : ifNoneMatch) {
+					for (String requestTag : headerValue.split(",")) {
+						requestTag = requestTag.trim();
+
+						if ("*".equals(requestTag) ||
+							tag.equals(getOpaqueTag(requestTag))) {
+							notModified = true;
+						}
+					}
+				}
+			}
+		} else if (ifModifiedSince != null && lastModified != null) {
+			long modified = HttpHeaderTypes.parseDate(lastModified);
+			long since = HttpHeaderTypes.parseDate(ifModifiedSince.get(0));
+
+			notModified = modified >= 0 && since >= 0 && modified <= since;
+		}
+
+		if (notModified) {
+			HttpResponse notModifiedResponse =
+				new HttpResponse(HttpStatusCode.NOT_MODIFIED);
+
+			if (entityTag != null) {
+				notModifiedResponse.setHeader(HttpHeaderField.ETAG,
+					entityTag);
+			}
+
+			if (lastModified != null) {
+				notModifiedResponse.setHeader(HttpHeaderField.LAST_MODIFIED,
+					lastModified);
+			}
+
+			response = notModifiedResponse;
+		}
+
+		return response;
+	}
+
 	/**
 	 * Creates the HTTP response for a certain HTTP request. The default
 	 * implementation invokes the method
@@ -277,6 +465,29 @@ public class HttpRequestHandler extends RelatedObject
 			String.format("Basic realm=\"%s\"", getContext().get(NAME)));
 	}
 
+	/**
+	 * Returns the capture mode for the current request. For the mode
+	 * {@link RequestCapture#SAMPLED} this will either be
+	 * {@link RequestCapture#FULL} for sampled requests or
+	 * {@link RequestCapture#NONE} for all others.
+	 *
+	 * @return The request capture mode
+	 */
+	protected RequestCapture getRequestCapture() {
+		RequestCapture capture = context.get(REQUEST_CAPTURE);
+
+		if (capture == RequestCapture.SAMPLED) {
+			int sampleRate =
+				Math.max(1, context.get(REQUEST_CAPTURE_SAMPLE_RATE).intValue());
+
+			capture = requestCounter.incrementAndGet() % sampleRate == 0 ?
+			          RequestCapture.FULL :
+			          RequestCapture.NONE;
+		}
+
+		return capture;
+	}
+
 	/**
 	 * Reads the HTTP request from the given input stream. The default
 	 * implementation just returns a new instance of {@link HttpRequest}
@@ -296,7 +507,23 @@ public class HttpRequestHandler extends RelatedObject
 
 	/**
 	 * Sends the HTTP response for an HTTP request through the given output
-	 * stream.
+	 * stream. Header fields from the {@link
+	 * CommunicationRelationTypes#HTTP_RESPONSE_HEADERS} of the context will
+	 * be added to the response if they are not set already. These default
+	 * headers are encoded once per thread and are not copied into the headers
+	 * of the response but written from the encoded data. If the response
+	 * has a compressible content type (which may also be set in the default
+	 * headers) and no content encoding the body will be compressed with the
+	 * encoding that is preferred by the client in the Accept-Encoding header.
+	 * The compression is controlled by the context relations {@link
+	 * CommunicationRelationTypes#HTTP_COMPRESSION_LEVEL} and {@link
+	 * CommunicationRelationTypes#HTTP_COMPRESSION_THRESHOLD}. Successful
+	 * responses to GET requests support byte ranges so that clients can
+	 * resume interrupted transfers or download a response in segments (see
+	 * {@link HttpResponse} for details). Both depend on the request that is
+	 * returned by {@link #getThreadLocalRequest()}, which is only set while
+	 * the current thread executes
+	 * {@link #handleRequest(InputStream, OutputStream)}.
 	 *
 	 * @param response The HTTP response to send
 	 * @param output   The output stream to write the response to
@@ -304,24 +531,74 @@ public class HttpRequestHandler extends RelatedObject
 	 */
 	protected void sendResponse(HttpResponse response, OutputStream output)
 		throws IOException {
-		Map<String, List<String>> defaultResponseHeaders =
-			context.get(HTTP_RESPONSE_HEADERS);
+		EncodedHeaders defaultHeaders = getDefaultHeaders();
 
 		Map<String, List<String>> responseHeaders =
 			response.get(HTTP_RESPONSE_HEADERS);
 
-		for (Entry<String, List<String>> defaultHeader :
-			defaultResponseHeaders.entrySet()) {
-			String headerName = defaultHeader.getKey();
+		response.setDefaultHeaders(defaultHeaders);
+
+		int compressionLevel = context.get(HTTP_COMPRESSION_LEVEL).intValue();
+		HttpRequest request = threadLocalRequest.get();
 
-			if (!responseHeaders.containsKey(headerName)) {
-				responseHeaders.put(headerName, defaultHeader.getValue());
+		if (compressionLevel != Deflater.NO_COMPRESSION && request != null &&
+			isCompressible(responseHeaders, defaultHeaders,
+				response.get(CONTENT_TYPE))) {
+			ContentEncoding encoding = ResponseCompression.negotiate(
+				request.getHeaderField(HttpHeaderField.ACCEPT_ENCODING));
+
+			addVaryHeader(responseHeaders, defaultHeaders);
+
+			if (encoding != null) {
+				response.enableCompression(encoding, compressionLevel,
+					context.get(HTTP_COMPRESSION_THRESHOLD).intValue());
 			}
 		}
 
+		if (request != null && request.getMethod() == HttpRequestMethod.GET &&
+			response.get(HTTP_STATUS_CODE) == HttpStatusCode.OK) {
+			response.enableRanges(
+				request.getHeaderValue(HttpHeaderField.RANGE),
+				request.getHeaderValue(HttpHeaderField.IF_RANGE));
+		}
+
 		response.write(output);
 	}
 
+	/**
+	 * Sets the headers that control the persistence of the connection on a
+	 * response. If the connection cannot be kept alive the flag
+	 * {@link CommunicationRelationTypes#KEEP_ALIVE} will be removed from this
+	 * instance to signal the server that the connection must be closed. This
+	 * is also the case for {@link HttpResponse#isStreaming() streaming
+	 * responses} to HTTP/1.0 clients which don't support the chunked transfer
+	 * encoding.
+	 *
+	 * @param request  The request or NULL if it could not be read
+	 * @param response The response to the request
+	 */
+	@SuppressWarnings("boxing")
+	protected void setConnectionHeaders(HttpRequest request,
+		HttpResponse response) {
+		if (response.isStreaming() && (request == null ||
+			!"HTTP/1.1".equals(request.getHttpVersion()))) {
+			response.disableChunkedEncoding();
+			deleteRelation(KEEP_ALIVE);
+		}
+
+		if (hasFlag(KEEP_ALIVE) && request != null && request.isKeepAlive()) {
+			if (!"HTTP/1.1".equals(request.getHttpVersion())) {
+				response.setHeader(HttpHeaderField.CONNECTION, "keep-alive");
+			}
+
+			response.setHeader(HttpHeaderField.KEEP_ALIVE,
+				"timeout=" + context.get(KEEP_ALIVE_TIMEOUT) / 1000);
+		} else {
+			deleteRelation(KEEP_ALIVE);
+			response.setHeader(HttpHeaderField.CONNECTION, "close");
+		}
+	}
+
 	/**
 	 * Sets the handler for the HTTP request methods.
 	 *
@@ -332,6 +609,134 @@ public class HttpRequestHandler extends RelatedObject
 		requestMethodHandler = handler;
 	}
 
+	/**
+	 * Adds the Accept-Encoding field to the Vary header of a response to
+	 * signal caches that the response depends on the request header.
+	 *
+	 * @param responseHeaders The response headers
+	 * @param defaultHeaders  The default headers of the response
+	 */
+	private void addVaryHeader(Map<String, List<String>> responseHeaders,
+		EncodedHeaders defaultHeaders) {
+		String vary = HttpHeaderField.VARY.getFieldName();
+		String acceptEncoding =
+			HttpHeaderField.ACCEPT_ENCODING.getFieldName();
+		List<String> values =
+			getHeaderValues(vary, responseHeaders, defaultHeaders);
+
+		if (values == null || values.isEmpty()) {
+			responseHeaders.put(vary,
+				Collections.singletonList(acceptEncoding));
+		} else if (!values.get(0).contains(acceptEncoding) &&
+			!"*".equals(values.get(0))) {
+			responseHeaders.put(vary, Collections.singletonList(
+				values.get(0) + ", " + acceptEncoding));
+		}
+	}
+
+	/**
+	 * Returns the encoded default response headers from the context of this
+	 * handler. The encoded headers are cached for the current thread and
+	 * will only be encoded again if the context or the size of the header
+	 * map changes.
+	 *
+	 * @return The encoded default headers
+	 */
+	private EncodedHeaders getDefaultHeaders() {
+		Map<String, List<String>> headerMap =
+			context.get(HTTP_RESPONSE_HEADERS);
+		EncodedHeaders defaultHeaders = threadDefaultHeaders.get();
+
+		if (defaultHeaders == null || !defaultHeaders.isEncodingOf(headerMap)) {
+			defaultHeaders = new EncodedHeaders(headerMap);
+			threadDefaultHeaders.set(defaultHeaders);
+		}
+
+		return defaultHeaders;
+	}
+
+	/**
+	 * Returns the values of a response header field which may either be set
+	 * in the response or in the default headers.
+	 *
+	 * @param name            The name of the header field
+	 * @param responseHeaders The response headers
+	 * @param defaultHeaders  The default headers of the response
+	 * @return The field values or NULL if the field is not set
+	 */
+	private List<String> getHeaderValues(String name,
+		Map<String, List<String>> responseHeaders,
+		EncodedHeaders defaultHeaders) {
+		List<String> values = responseHeaders.get(name);
+
+		return values != null ? values : defaultHeaders.get(name);
+	}
+
+	/**
+	 * Returns the opaque part of an entity tag without the weakness prefix
+	 * and without a content encoding suffix that has been added by
+	 * {@link HttpResponse} for compressed responses.
+	 *
+	 * @param entityTag The entity tag
+	 * @return The opaque tag
+	 */
+	private String getOpaqueTag(String entityTag) {
+		if (entityTag.startsWith("W/")) {
+			entityTag = entityTag.substring(2);
+		}
+
+		for (ContentEncoding encoding : ContentEncoding.values()) {
+			String suffix = "-" + encoding.getName() + "\"";
+
+			if (entityTag.endsWith(suffix)) {
+				int end = entityTag.length() - suffix.length();
+
+				entityTag = entityTag.substring(0, end) + "\"";
+			}
+		}
+
+		return entityTag;
+	}
+
+	/**
+	 * Checks whether a response can be compressed. This is the case if it
+	 * doesn't have a content encoding yet and if the content type is either
+	 * undefined or denotes textual data that is typically well compressible.
+	 *
+	 * @param responseHeaders The response headers
+	 * @param defaultHeaders  The default headers of the response
+	 * @param contentType     The content type of the response or NULL to
+	 *                        check the response headers
+	 * @return TRUE if the response can be compressed
+	 */
+	private boolean isCompressible(Map<String, List<String>> responseHeaders,
+		EncodedHeaders defaultHeaders, String contentType) {
+		if (getHeaderValues(HttpHeaderField.CONTENT_ENCODING.getFieldName(),
+			responseHeaders, defaultHeaders) != null) {
+			return false;
+		}
+
+		if (contentType == null) {
+			List<String> values = getHeaderValues(
+				HttpHeaderField.CONTENT_TYPE.getFieldName(), responseHeaders,
+				defaultHeaders);
+
+			contentType = values != null && !values.isEmpty() ?
+			              values.get(0) :
+			              null;
+		}
+
+		if (contentType == null) {
+			return true;
+		}
+
+		contentType = contentType.toLowerCase(Locale.ROOT);
+
+		return contentType.startsWith("text/") ||
+			contentType.contains("json") || contentType.contains("xml") ||
+			contentType.contains("javascript");
+	}
+
 	/**
 	 * An interface for the handling of the distinct HTTP request methods.
 	 * It is
@@ -456,4 +861,44 @@ public class HttpRequestHandler extends RelatedObject
 			return response;
 		}
 	}
+
+	/**
+	 * A byte array output stream that silently discards all data beyond a
+	 * certain size.
+	 *
+	 * @author eso
+	 */
+	private static class CaptureBuffer extends ByteArrayOutputStream {
+
+		private final int maxSize;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param maxSize The maximum number of bytes to capture
+		 */
+		CaptureBuffer(int maxSize) {
+			super(Math.min(maxSize, 2048));
+
+			this.maxSize = maxSize;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public synchronized void write(int b) {
+			if (count < maxSize) {
+				super.write(b);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public synchronized void write(byte[] data, int offset, int length) {
+			super.write(data, offset, Math.min(length, maxSize - count));
+		}
+	}
 }
@@ -0,0 +1,781 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import de.esoco.lib.comm.http.HttpHeaderTypes.HttpHeaderField;
+import de.esoco.lib.comm.http.HttpStatusException.EmptyRequestException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static de.esoco.lib.comm.http.HttpStatusCode.badRequest;
+
+/**
+ * A parser for the header of HTTP requests that works directly on the raw
+ * request bytes. The data is read in bulk into a buffer that is re-used for
+ * all requests that are parsed by the same thread. Line boundaries and the
+ * positions of the header names and values are recorded as offsets into that
+ * buffer. Only the request line is decoded immediately. The header values are
+ * decoded on access through the map returned by {@link #getHeaders()}.
+ *
+ * <p>If the input stream supports {@link InputStream#mark(int) marking} the
+ * parser only consumes the header bytes from it. Any data that has been read
+ * beyond the end of the header is returned to the stream so that the body
+ * and subsequent pipelined requests can be read from it directly. Otherwise
+ * the excess data will be provided as the start of the body stream (see
+ * {@link #getBodyStream(InputStream, int)}).</p>
+ *
+ * <p>Instances are not thread-safe and must be obtained through
+ * {@link #getThreadParser()}. The results of a parse are only valid until the
+ * next invocation of {@link #parse(InputStream, int)} on the same thread with
+ * the exception of the header map which contains a copy of the header
+ * data.</p>
+ *
+ * @author eso
+ */
+final class HttpRequestParser {
+
+	private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+	private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+	private static final String HTTP_1_1 = "HTTP/1.1";
+
+	private static final byte[] HTTP_VERSION_PREFIX =
+		"HTTP/".getBytes(StandardCharsets.US_ASCII);
+
+	private static final HttpHeaderField[] HEADER_FIELDS =
+		HttpHeaderField.values();
+
+	private static final byte[][] HEADER_FIELD_NAMES =
+		new byte[HEADER_FIELDS.length][];
+
+	private static final HttpRequestMethod[] METHODS =
+		HttpRequestMethod.values();
+
+	private static final ThreadLocal<HttpRequestParser> threadParser =
+		ThreadLocal.withInitial(HttpRequestParser::new);
+
+	static {
+		for (int i = 0; i < HEADER_FIELDS.length; i++) {
+			HEADER_FIELD_NAMES[i] = HEADER_FIELDS[i]
+				.getFieldName()
+				.toLowerCase(Locale.ROOT)
+				.getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+	private int[] headerOffsets = new int[16 * HeaderMap.OFFSETS];
+
+	private int dataLength;
+
+	private int headerEnd;
+
+	private int headerCount;
+
+	private HttpRequestMethod method;
+
+	private String path;
+
+	private String version;
+
+	/**
+	 * Private, instances are only available through
+	 * {@link #getThreadParser()}.
+	 */
+	private HttpRequestParser() {
+	}
+
+	/**
+	 * Returns the parser instance of the current thread.
+	 *
+	 * @return The thread's parser
+	 */
+	static HttpRequestParser getThreadParser() {
+		return threadParser.get();
+	}
+
+	/**
+	 * Returns a stream that provides the body of the last parsed request. The
+	 * stream first returns any body data that has been read together with the
+	 * header and then continues with the input stream.
+	 *
+	 * @param input      The input stream the request has been parsed from
+	 * @param bodyLength The length of the request body or -1 if unknown, in
+	 *                   which case the body extends to the end of the input
+	 * @return The body input stream
+	 */
+	InputStream getBodyStream(InputStream input, int bodyLength) {
+		int available = dataLength - headerEnd;
+
+		if (bodyLength >= 0) {
+			available = Math.min(available, bodyLength);
+		}
+
+		byte[] bodyStart = Arrays.copyOfRange(buffer, headerEnd,
+			headerEnd + available);
+
+		return new BodyInputStream(bodyStart, input, bodyLength);
+	}
+
+	/**
+	 * Returns a map of the header fields of the last parsed request. The
+	 * returned map is independent from this parser.
+	 *
+	 * @return The header map
+	 */
+	HeaderMap getHeaders() {
+		return new HeaderMap(Arrays.copyOf(buffer, headerEnd),
+			Arrays.copyOf(headerOffsets, headerCount * HeaderMap.OFFSETS),
+			headerCount);
+	}
+
+	/**
+	 * Returns the method of the last parsed request.
+	 *
+	 * @return The request method
+	 */
+	HttpRequestMethod getMethod() {
+		return method;
+	}
+
+	/**
+	 * Returns the path of the last parsed request.
+	 *
+	 * @return The request path
+	 */
+	String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the HTTP version of the last parsed request.
+	 *
+	 * @return The HTTP version string
+	 */
+	String getVersion() {
+		return version;
+	}
+
+	/**
+	 * Checks whether more data than the request header and the given body
+	 * length has been read from the input stream. This is the case if a
+	 * client sends multiple requests without waiting for the responses
+	 * (pipelining).
+	 *
+	 * @param bodyLength The length of the request body
+	 * @return TRUE if data of a subsequent request has been read
+	 */
+	boolean hasExcessData(int bodyLength) {
+		return dataLength - headerEnd > bodyLength;
+	}
+
+	/**
+	 * Parses the header of an HTTP request from an input stream.
+	 *
+	 * @param input         The input stream to read the request from
+	 * @param maxLineLength The maximum length of a request line, including
+	 *                      the terminating CRLF
+	 * @throws IOException         If reading from the input fails
+	 * @throws HttpStatusException If the request is malformed
+	 */
+	void parse(InputStream input, int maxLineLength) throws IOException {
+		boolean markable = input.markSupported();
+		int lineStart = 0;
+		int position = 0;
+		int readStart = 0;
+
+		dataLength = 0;
+		headerEnd = 0;
+		headerCount = 0;
+		method = null;
+
+		if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+			buffer = new byte[INITIAL_BUFFER_SIZE];
+		}
+
+		while (headerEnd == 0) {
+			if (position == dataLength) {
+				readStart = dataLength;
+				readData(input, markable);
+			}
+
+			while (position < dataLength && buffer[position] != '\n') {
+				position++;
+			}
+
+			if (position < dataLength) {
+				if (position == lineStart || buffer[position - 1] != '\r' ||
+					position - lineStart + 1 > maxLineLength) {
+					badRequest("Request line not terminated with CRLF");
+				}
+
+				int lineEnd = position - 1;
+
+				if (method == null) {
+					parseRequestLine(lineStart, lineEnd);
+				} else if (lineEnd > lineStart) {
+					parseHeader(lineStart, lineEnd);
+				} else {
+					headerEnd = position + 1;
+				}
+
+				lineStart = ++position;
+			} else if (position - lineStart >= maxLineLength) {
+				badRequest("Request line not terminated with CRLF");
+			}
+		}
+
+		if (markable && dataLength > headerEnd) {
+			unreadExcessData(input, readStart);
+		}
+	}
+
+	/**
+	 * Returns a string for a range of bytes in the buffer.
+	 *
+	 * @param start The start of the range
+	 * @param end   The end of the range (exclusive)
+	 * @return The string
+	 */
+	private String decode(int start, int end) {
+		return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the index of a known header field in {@link #HEADER_FIELDS}.
+	 *
+	 * @param start The start of the field name
+	 * @param end   The end of the field name (exclusive)
+	 * @return The field index or -1 if not a known header field
+	 */
+	private int findHeaderField(int start, int end) {
+		for (int i = 0; i < HEADER_FIELD_NAMES.length; i++) {
+			if (equalsIgnoreCase(buffer, start, end, HEADER_FIELD_NAMES[i])) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Checks whether a range of bytes in the buffer contains exactly the
+	 * characters of an ASCII string.
+	 *
+	 * @param start The start of the range
+	 * @param end   The end of the range (exclusive)
+	 * @param value The string to compare with
+	 * @return TRUE if the range contains exactly the string characters
+	 */
+	private boolean matches(int start, int end, String value) {
+		int length = value.length();
+		boolean equal = end - start == length;
+
+		for (int i = 0; equal && i < length; i++) {
+			equal = buffer[start + i] == value.charAt(i);
+		}
+
+		return equal;
+	}
+
+	/**
+	 * Parses a header line and records the offsets of name and value.
+	 *
+	 * @param start The start of the line
+	 * @param end   The end of the line (exclusive, without CRLF)
+	 * @throws HttpStatusException If the header is malformed
+	 */
+	private void parseHeader(int start, int end) throws HttpStatusException {
+		int colon = start;
+
+		while (colon < end && buffer[colon] != ':') {
+			colon++;
+		}
+
+		if (colon == start || colon == end) {
+			badRequest("Malformed header: " + decode(start, end));
+		}
+
+		int nameEnd = colon;
+		int valueStart = colon + 1;
+		int valueEnd = end;
+
+		while (nameEnd > start && isWhitespace(buffer[nameEnd - 1])) {
+			nameEnd--;
+		}
+
+		while (valueStart < valueEnd && isWhitespace(buffer[valueStart])) {
+			valueStart++;
+		}
+
+		while (valueEnd > valueStart && isWhitespace(buffer[valueEnd - 1])) {
+			valueEnd--;
+		}
+
+		int offset = headerCount++ * HeaderMap.OFFSETS;
+
+		if (offset + HeaderMap.OFFSETS > headerOffsets.length) {
+			headerOffsets = Arrays.copyOf(headerOffsets, offset * 2);
+		}
+
+		headerOffsets[offset] = start;
+		headerOffsets[offset + 1] = nameEnd;
+		headerOffsets[offset + 2] = valueStart;
+		headerOffsets[offset + 3] = valueEnd;
+		headerOffsets[offset + 4] = findHeaderField(start, nameEnd);
+	}
+
+	/**
+	 * Parses the request line.
+	 *
+	 * @param start The start of the line
+	 * @param end   The end of the line (exclusive, without CRLF)
+	 * @throws HttpStatusException If the request line is invalid
+	 */
+	private void parseRequestLine(int start, int end)
+		throws HttpStatusException {
+		if (end == start) {
+			badRequest("Empty request line");
+		}
+
+		int methodEnd = -1;
+		int pathEnd = -1;
+
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == ' ') {
+				if (methodEnd < 0) {
+					methodEnd = i;
+				} else if (pathEnd < 0) {
+					pathEnd = i;
+				} else {
+					pathEnd = -1;
+					break;
+				}
+			}
+		}
+
+		if (pathEnd < 0 || !startsWith(pathEnd + 1, end, HTTP_VERSION_PREFIX)) {
+			badRequest("Malformed request line: " + decode(start, end));
+		}
+
+		for (HttpRequestMethod requestMethod : METHODS) {
+			if (matches(start, methodEnd, requestMethod.name())) {
+				method = requestMethod;
+
+				break;
+			}
+		}
+
+		if (method == null) {
+			badRequest("Unknown request method: " + decode(start, methodEnd));
+		}
+
+		path = decode(methodEnd + 1, pathEnd);
+		version = matches(pathEnd + 1, end, HTTP_1_1) ?
+		          HTTP_1_1 :
+		          decode(pathEnd + 1, end);
+	}
+
+	/**
+	 * Reads the next block of data from the input stream into the buffer and
+	 * enlarges the buffer if necessary.
+	 *
+	 * @param input The input stream
+	 * @param mark  TRUE to mark the input stream before reading so that data
+	 *              beyond the header can be returned to it
+	 * @throws IOException If reading fails or the input ends prematurely
+	 */
+	private void readData(InputStream input, boolean mark) throws IOException {
+		if (dataLength == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+
+		int length = buffer.length - dataLength;
+
+		if (mark) {
+			input.mark(length);
+		}
+
+		int read = input.read(buffer, dataLength, length);
+
+		if (read < 0) {
+			if (dataLength == 0) {
+				throw new EmptyRequestException();
+			} else {
+				badRequest("Request must be terminated with CRLF on empty line");
+			}
+		}
+
+		dataLength += read;
+	}
+
+	/**
+	 * Checks whether a range of bytes in the buffer starts with a certain
+	 * byte sequence.
+	 *
+	 * @param start  The start of the range
+	 * @param end    The end of the range (exclusive)
+	 * @param prefix The prefix bytes
+	 * @return TRUE if the range starts with the prefix
+	 */
+	private boolean startsWith(int start, int end, byte[] prefix) {
+		boolean matches = end - start >= prefix.length;
+
+		for (int i = 0; matches && i < prefix.length; i++) {
+			matches = buffer[start + i] == prefix[i];
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Returns the data that has been read beyond the end of the header to the
+	 * input stream by resetting it to the mark that has been set before the
+	 * last read and then skipping the header bytes of that read again.
+	 *
+	 * @param input     The marked input stream
+	 * @param readStart The buffer position at which the last read started
+	 * @throws IOException If resetting or skipping fails
+	 */
+	private void unreadExcessData(InputStream input, int readStart)
+		throws IOException {
+		long skip = headerEnd - readStart;
+
+		input.reset();
+
+		while (skip > 0) {
+			long skipped = input.skip(skip);
+
+			if (skipped <= 0) {
+				if (input.read() < 0) {
+					throw new EOFException("Header data not available");
+				}
+
+				skipped = 1;
+			}
+
+			skip -= skipped;
+		}
+
+		dataLength = headerEnd;
+	}
+
+	/**
+	 * Compares a range of bytes with a lower case ASCII name, ignoring the
+	 * case of the bytes.
+	 *
+	 * @param data  The data to compare
+	 * @param start The start of the range
+	 * @param end   The end of the range (exclusive)
+	 * @param name  The lower case name bytes
+	 * @return TRUE if the range matches the name
+	 */
+	static boolean equalsIgnoreCase(byte[] data, int start, int end,
+		byte[] name) {
+		boolean equal = end - start == name.length;
+
+		for (int i = 0; equal && i < name.length; i++) {
+			byte b = data[start + i];
+
+			if (b >= 'A' && b <= 'Z') {
+				b += 'a' - 'A';
+			}
+
+			equal = b == name[i];
+		}
+
+		return equal;
+	}
+
+	/**
+	 * Checks whether a byte is a whitespace character in HTTP headers.
+	 *
+	 * @param b The byte to check
+	 * @return TRUE for space or tab
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	/**
+	 * An unmodifiable map of the raw request header fields. The header names
+	 * are compared case-insensitive when queried with {@link #get(Object)}
+	 * and values are only decoded when they are accessed. The full map
+	 * contents will only be created if the map is iterated.
+	 *
+	 * @author eso
+	 */
+	static class HeaderMap extends AbstractMap<String, List<String>> {
+
+		static final int OFFSETS = 5;
+
+		private final byte[] data;
+
+		private final int[] offsets;
+
+		private final int count;
+
+		private Map<String, List<String>> headers = null;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param data    The raw header data
+		 * @param offsets The offsets of the header names and values
+		 * @param count   The number of headers
+		 */
+		HeaderMap(byte[] data, int[] offsets, int count) {
+			this.data = data;
+			this.offsets = offsets;
+			this.count = count;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Set<Entry<String, List<String>>> entrySet() {
+			if (headers == null) {
+				Map<String, List<String>> map = new LinkedHashMap<>();
+
+				for (int i = 0; i < count; i++) {
+					map
+						.computeIfAbsent(getName(i), k -> new ArrayList<>())
+						.add(getValue(i));
+				}
+
+				headers = Collections.unmodifiableMap(map);
+			}
+
+			return headers.entrySet();
+		}
+
+		/**
+		 * Returns the values of a header field. The name is compared
+		 * case-insensitive.
+		 *
+		 * @param key The header field name
+		 * @return The header field values or NULL if the header is not set
+		 */
+		@Override
+		public List<String> get(Object key) {
+			List<String> values = null;
+
+			if (key instanceof String) {
+				byte[] name = ((String) key)
+					.toLowerCase(Locale.ROOT)
+					.getBytes(StandardCharsets.UTF_8);
+
+				for (int i = 0; i < count; i++) {
+					int offset = i * OFFSETS;
+
+					if (equalsIgnoreCase(data, offsets[offset],
+						offsets[offset + 1], name)) {
+						if (values == null) {
+							values = new ArrayList<>(1);
+						}
+
+						values.add(getValue(i));
+					}
+				}
+			}
+
+			return values;
+		}
+
+		/**
+		 * Returns the known header field of a certain header.
+		 *
+		 * @param index The header index
+		 * @return The header field or NULL if not a known field
+		 */
+		HttpHeaderField getField(int index) {
+			int field = offsets[index * OFFSETS + 4];
+
+			return field >= 0 ? HEADER_FIELDS[field] : null;
+		}
+
+		/**
+		 * Returns the number of header lines in this map.
+		 *
+		 * @return The header line count
+		 */
+		int getHeaderCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the name of a certain header.
+		 *
+		 * @param index The header index
+		 * @return The header name
+		 */
+		String getName(int index) {
+			int offset = index * OFFSETS;
+
+			return new String(data, offsets[offset],
+				offsets[offset + 1] - offsets[offset],
+				StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Returns the raw header data, starting with the request line and
+		 * excluding the terminating empty line.
+		 *
+		 * @return The raw header string
+		 */
+		String getRawHeader() {
+			return new String(data, 0, Math.max(0, data.length - 2),
+				StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Returns the value of a certain header.
+		 *
+		 * @param index The header index
+		 * @return The header value
+		 */
+		String getValue(int index) {
+			int offset = index * OFFSETS + 2;
+
+			return new String(data, offsets[offset],
+				offsets[offset + 1] - offsets[offset],
+				StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * An input stream for the body of a request that first returns the body
+	 * data that has been read together with the request header and then
+	 * continues with the original input stream. If the body length is known
+	 * the stream will end after that number of bytes.
+	 *
+	 * @author eso
+	 */
+	private static class BodyInputStream extends InputStream {
+
+		private final byte[] bodyStart;
+
+		private final InputStream input;
+
+		private int position = 0;
+
+		private long remaining;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param bodyStart  The body data that has already been read
+		 * @param input      The input stream to continue reading from
+		 * @param bodyLength The body length or -1 for unlimited
+		 */
+		BodyInputStream(byte[] bodyStart, InputStream input, int bodyLength) {
+			this.bodyStart = bodyStart;
+			this.input = input;
+
+			remaining = bodyLength >= 0 ? bodyLength : Long.MAX_VALUE;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int available() throws IOException {
+			long available = bodyStart.length - position;
+
+			if (remaining > available) {
+				available += input.available();
+			}
+
+			return (int) Math.min(available, remaining);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() throws IOException {
+			int result = -1;
+
+			if (remaining > 0) {
+				if (position < bodyStart.length) {
+					result = bodyStart[position++] & 0xFF;
+				} else {
+					result = input.read();
+				}
+
+				if (result >= 0) {
+					remaining--;
+				}
+			}
+
+			return result;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] target, int offset, int length)
+			throws IOException {
+			int read = -1;
+
+			if (length == 0) {
+				read = 0;
+			} else if (remaining > 0) {
+				length = (int) Math.min(length, remaining);
+
+				if (position < bodyStart.length) {
+					read = Math.min(length, bodyStart.length - position);
+					System.arraycopy(bodyStart, position, target, offset,
+						read);
+					position += read;
+				} else {
+					read = input.read(target, offset, length);
+				}
+
+				if (read > 0) {
+					remaining -= read;
+				}
+			}
+
+			return read;
+		}
+	}
+}
@@ -18,41 +18,121 @@ package de.esoco.lib.comm.http;
 
 import de.esoco.lib.comm.CommunicationRelationTypes;
 import de.esoco.lib.comm.http.HttpHeaderTypes.HttpHeaderField;
+import de.esoco.lib.comm.http.ResponseCompression.ContentEncoding;
+import de.esoco.lib.io.ChannelOutput;
+import de.esoco.lib.io.PooledOutputStream;
 import de.esoco.lib.io.StreamUtil;
 import de.esoco.lib.net.NetUtil;
 import org.obrel.core.RelatedObject;
 import org.obrel.core.RelationType;
 
-import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.DeflaterOutputStream;
 
 import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_RESPONSE_HEADERS;
 import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_STATUS_CODE;
 import static de.esoco.lib.comm.CommunicationRelationTypes.RESPONSE_ENCODING;
 import static de.esoco.lib.comm.http.HttpHeaderTypes.CONTENT_LENGTH;
+import static de.esoco.lib.comm.http.HttpHeaderTypes.CONTENT_TYPE;
 import static de.esoco.lib.comm.http.HttpHeaderTypes.HTTP_HEADER_FIELD;
 import static de.esoco.lib.comm.http.HttpHeaderTypes.HTTP_HEADER_TYPES;
 
 /**
  * A class that contains the data of an HTTP response and additional response
- * information (like headers) in it's relations.
+ * information (like headers) in it's relations. The response body can be
+ * provided as a string, a {@link Reader}, or in binary form as a byte array, a
+ * {@link ByteBuffer}, or a file {@link Path}. Binary bodies are written
+ * without character conversion. Files are transferred with
+ * {@link StreamUtil#send(FileChannel, long, long, OutputStream)} which allows
+ * output streams that implement {@link ChannelOutput} to send them without
+ * copying (e.g. with {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)}). Other output streams receive a
+ * copy of the file data, e.g. the response buffer of servers in non-blocking
+ * mode.
+ *
+ * <p>Responses of unknown length can be created with a {@link BodyWriter}
+ * that writes the response body while the response is sent. Such streaming
+ * responses are sent with the chunked transfer encoding so that the body
+ * doesn't need to be kept in memory completely. If the client doesn't support
+ * chunked encoding (i.e. for HTTP/1.0 requests) the
+ * {@link HttpRequestHandler} disables it and the end of the response body is
+ * signaled by closing the connection.</p>
+ *
+ * <p>If the {@link HttpRequestHandler} has negotiated a content encoding with
+ * the client the response body will be compressed when it is written.
+ * Binary and string bodies are only compressed if they reach a minimum size
+ * and if the compression actually reduces their size. Streaming responses
+ * are always compressed while they are written. Readers and files are sent
+ * uncompressed.</p>
+ *
+ * <p>If the {@link HttpRequestHandler} has enabled byte ranges for a response
+ * with a byte array, byte buffer, string, or file body the response will
+ * contain the header Accept-Ranges. If the request contains a Range header
+ * (and an optional If-Range header matches the response) only the requested
+ * ranges of the body will be sent with the status
+ * {@link HttpStatusCode#PARTIAL_CONTENT}, either directly or as a
+ * multipart/byteranges body if multiple ranges have been requested. Ranges
+ * always refer to the body as it is sent, i.e. to the compressed data if the
+ * body is compressed. File ranges are sent with positional reads from a
+ * {@link FileChannel}.</p>
  *
  * @author eso
  */
 public class HttpResponse extends RelatedObject {
 
-	private final Reader responseBodyReader;
+	private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+	private static final int CHUNK_SIZE = 8 * 1024;
+
+	private static final String MULTIPART_BYTERANGES =
+		"multipart/byteranges; boundary=";
+
+	/**
+	 * Records for each response class whether it overrides the deprecated
+	 * method {@link #writeResponseHeader(HttpStatusCode, Map, Writer)}.
+	 */
+	private static final ClassValue<Boolean> WRITER_HEADER_OVERRIDES =
+		new ClassValue<Boolean>() {
+			@Override
+			protected Boolean computeValue(Class<?> type) {
+				return overridesWriterHeader(type);
+			}
+		};
+
+	private final Object responseBody;
+
+	private boolean chunked;
+
+	private ContentEncoding contentEncoding;
+
+	private int compressionLevel;
+
+	private int compressionThreshold;
+
+	private EncodedHeaders defaultHeaders;
+
+	private boolean rangesEnabled;
+
+	private String rangeHeader;
+
+	private String ifRangeHeader;
 
 	/**
 	 * Creates a new instance for a successful request from a response data
@@ -60,7 +140,7 @@ public class HttpResponse extends RelatedObject {
 	 * {@link HttpStatusCode#OK}.
 	 *
 	 * @param responseData The response data string
-	 * @see HttpResponse#HttpResponse(HttpStatusCode, Reader, int)
+	 * @see HttpResponse#HttpResponse(HttpStatusCode, String)
 	 */
 	public HttpResponse(String responseData) {
 		this(HttpStatusCode.OK, responseData);
@@ -80,18 +160,40 @@ public class HttpResponse extends RelatedObject {
 		this(HttpStatusCode.OK, responseData, responseLength);
 	}
 
+	/**
+	 * Creates a new instance for a successful request with the status code
+	 * {@link HttpStatusCode#OK} and a binary response body.
+	 *
+	 * @param responseData The data of the response body
+	 * @see HttpResponse#HttpResponse(HttpStatusCode, byte[])
+	 */
+	public HttpResponse(byte[] responseData) {
+		this(HttpStatusCode.OK, responseData);
+	}
+
+	/**
+	 * Creates a new instance with a certain status code and without a
+	 * response body. This is intended for status codes that must not have a
+	 * body like {@link HttpStatusCode#NOT_MODIFIED} or
+	 * {@link HttpStatusCode#NO_CONTENT}.
+	 *
+	 * @param status The response status code
+	 */
+	public HttpResponse(HttpStatusCode status) {
+		this(status, (Object) null, -1);
+	}
+
 	/**
 	 * Creates a new instance with a certain status code and (short) response
-	 * data as a string. For longer response bodies it is recommended to use
-	 * the
-	 * constructor with a {@link Reader} argument.
+	 * data as a string. The string will be encoded with the
+	 * {@link CommunicationRelationTypes#RESPONSE_ENCODING} of this instance
+	 * when the response is written.
 	 *
 	 * @param status       The response status code
 	 * @param responseData The data of the response body
-	 * @see HttpResponse#HttpResponse(HttpStatusCode, Reader, int)
 	 */
 	public HttpResponse(HttpStatusCode status, String responseData) {
-		this(status, new StringReader(responseData), responseData.length());
+		this(status, responseData, -1);
 	}
 
 	/**
@@ -105,15 +207,114 @@ public class HttpResponse extends RelatedObject {
 	 * @param responseData   A stream reader that provides access to the
 	 *                          data of
 	 *                       the response body
-	 * @param responseLength The length of the response data stream
+	 * @param responseLength The length of the encoded response data in bytes
 	 */
 	public HttpResponse(HttpStatusCode status, Reader responseData,
 		int responseLength) {
-		responseBodyReader = responseData;
+		this(status, (Object) responseData, responseLength);
+	}
+
+	/**
+	 * Creates a new instance with a certain status code and a binary response
+	 * body.
+	 *
+	 * @param status       The response status code
+	 * @param responseData The data of the response body
+	 */
+	public HttpResponse(HttpStatusCode status, byte[] responseData) {
+		this(status, responseData, responseData.length);
+	}
+
+	/**
+	 * Creates a new instance with a certain status code and a response body
+	 * that consists of the remaining data in a byte buffer. The position of
+	 * the buffer will not be modified so that the buffer can be used for
+	 * multiple responses.
+	 *
+	 * @param status       The response status code
+	 * @param responseData The buffer containing the response data
+	 */
+	public HttpResponse(HttpStatusCode status, ByteBuffer responseData) {
+		this(status, responseData.duplicate(), responseData.remaining());
+	}
+
+	/**
+	 * Creates a new instance with a certain status code and the contents of a
+	 * file as the response body. The file will only be opened when the
+	 * response is written and it must not be modified until then.
+	 *
+	 * @param status The response status code
+	 * @param file   The path of the file to send
+	 * @throws IOException If the file size cannot be determined or if the
+	 *                     file is larger than 2 GiB
+	 */
+	public HttpResponse(HttpStatusCode status, Path file) throws IOException {
+		this(status, file, checkFileSize(file));
+	}
+
+	/**
+	 * Creates a new streaming response with a certain status code. The
+	 * response body will be written by the given {@link BodyWriter} after the
+	 * response header has been sent. Streaming responses are sent with the
+	 * chunked transfer encoding, using a buffer of fixed size for the chunks
+	 * so that the memory consumption is bounded regardless of the response
+	 * size.
+	 *
+	 * @param status     The response status code
+	 * @param bodyWriter The writer of the response body
+	 */
+	public HttpResponse(HttpStatusCode status, BodyWriter bodyWriter) {
+		this(status, bodyWriter, -1);
+
+		chunked = true;
+	}
+
+	/**
+	 * Internal constructor for all types of response bodies.
+	 *
+	 * @param status         The response status code
+	 * @param responseBody   The response body
+	 * @param responseLength The length of the response body in bytes or -1
+	 *                       if it is not known in advance
+	 */
+	@SuppressWarnings("boxing")
+	private HttpResponse(HttpStatusCode status, Object responseBody,
+		int responseLength) {
+		this.responseBody = responseBody;
 
 		init(HTTP_HEADER_TYPES);
 		set(HTTP_STATUS_CODE, status);
-		set(CONTENT_LENGTH, responseLength);
+
+		if (responseLength >= 0) {
+			set(CONTENT_LENGTH, responseLength);
+		}
+	}
+
+	/**
+	 * Returns the (first) value of a header field of this response.
+	 *
+	 * @param field The header field
+	 * @return The field value or NULL if the header is not set
+	 */
+	public String getHeader(HttpHeaderField field) {
+		String name = field.getFieldName();
+		List<String> values = get(HTTP_RESPONSE_HEADERS).get(name);
+
+		if (values == null && defaultHeaders != null) {
+			values = defaultHeaders.get(name);
+		}
+
+		return values != null && !values.isEmpty() ? values.get(0) : null;
+	}
+
+	/**
+	 * Checks whether this response is a streaming response that is created by
+	 * a {@link BodyWriter}.
+	 *
+	 * @return TRUE for a streaming response
+	 */
+	public final boolean isStreaming() {
+		return responseBody instanceof BodyWriter;
 	}
 
 	/**
@@ -144,18 +345,48 @@ public class HttpResponse extends RelatedObject {
 	}
 
 	/**
-	 * Writes this response to the given output stream.
+	 * Writes this response to the given output stream. The response header and
+	 * small response bodies are written with a single write operation on the
+	 * output stream. Larger binary bodies are written together with the
+	 * header in a single gathering write if the output stream implements
+	 * {@link ChannelOutput}.
 	 *
 	 * @param output The target output stream
 	 * @throws IOException If writing to the stream fails
 	 */
+	@SuppressWarnings("boxing")
 	public void write(OutputStream output) throws IOException {
-		Writer responseHeaderWriter = new BufferedWriter(
-			new OutputStreamWriter(output, StandardCharsets.US_ASCII));
+		Object body = responseBody;
+
+		if (body instanceof String) {
+			body = ((String) body).getBytes(get(RESPONSE_ENCODING));
+			set(CONTENT_LENGTH, ((byte[]) body).length);
+		}
+
+		if (contentEncoding != null) {
+			body = compressBody(body);
+		}
 
-		// no buffer needed because StreamUtil.send() performs buffering
-		Writer responseBodyWriter =
-			new OutputStreamWriter(output, get(RESPONSE_ENCODING));
+		List<ByteRange> ranges = null;
+		String[] partHeaders = null;
+
+		if (rangesEnabled && isRandomAccess(body)) {
+			setHeader(HttpHeaderField.ACCEPT_RANGES, "bytes");
+			ranges = selectRanges();
+
+			if (ranges != null) {
+				if (ranges.isEmpty()) {
+					ranges = null;
+					body = null;
+				} else {
+					partHeaders = prepareRanges(ranges);
+				}
+			}
+		}
+
+		if (chunked) {
+			setHeader(HttpHeaderField.TRANSFER_ENCODING, "chunked");
+		}
 
 		Collection<RelationType<?>> headerTypes = get(HTTP_HEADER_TYPES);
 
@@ -163,22 +394,109 @@ public class HttpResponse extends RelatedObject {
 			setHeader(header.get(HTTP_HEADER_FIELD), get(header).toString());
 		}
 
-		writeResponseHeader(get(HTTP_STATUS_CODE), get(HTTP_RESPONSE_HEADERS),
-			responseHeaderWriter);
-		StreamUtil.send(responseBodyReader, responseBodyWriter);
-		responseHeaderWriter.flush();
-		responseBodyWriter.flush();
-		output.flush();
+		PooledOutputStream bufferedOutput =
+			new PooledOutputStream(output, OUTPUT_BUFFER_SIZE);
+
+		try {
+			writeHeader(bufferedOutput);
+
+			if (ranges != null) {
+				writeRanges(body, ranges, partHeaders, bufferedOutput, output);
+			} else if (body instanceof byte[]) {
+				bufferedOutput.write((byte[]) body);
+			} else if (body instanceof ByteBuffer) {
+				// duplicated to keep the body position for repeated writes
+				bufferedOutput.write(((ByteBuffer) body).duplicate());
+			} else if (body instanceof Path) {
+				bufferedOutput.flush();
+				writeFile((Path) body, get(CONTENT_LENGTH), output);
+			} else if (body instanceof BodyWriter) {
+				writeStream((BodyWriter) body, bufferedOutput);
+			} else if (body != null) {
+				Writer responseBodyWriter = new OutputStreamWriter(
+					bufferedOutput, get(RESPONSE_ENCODING));
+
+				StreamUtil.send((Reader) body, responseBodyWriter);
+				responseBodyWriter.flush();
+			}
+
+			// flushes and returns the buffer to the pool
+			bufferedOutput.close();
+		} finally {
+			// an incomplete response is not flushed after an error
+			bufferedOutput.release();
+		}
+	}
+
+	/**
+	 * Disables the chunked transfer encoding of a streaming response. This
+	 * must be invoked if the client doesn't support chunked encoding. The
+	 * connection must then be closed after the response to signal the end of
+	 * the response body.
+	 */
+	void disableChunkedEncoding() {
+		chunked = false;
+	}
+
+	/**
+	 * Enables the compression of the response body with a content encoding
+	 * that is supported by the client.
+	 *
+	 * @param encoding  The content encoding
+	 * @param level     The compression level
+	 * @param threshold The minimum size of bodies with a known length that
+	 *                  will be compressed
+	 */
+	void enableCompression(ContentEncoding encoding, int level,
+		int threshold) {
+		contentEncoding = encoding;
+		compressionLevel = level;
+		compressionThreshold = threshold;
+	}
+
+	/**
+	 * Enables the support of byte ranges for this response. This must only
+	 * be invoked for successful responses to GET requests. If the response
+	 * body allows random access the range headers of the request will be
+	 * evaluated when the response is written.
+	 *
+	 * @param range   The value of the Range request header or NULL for none
+	 * @param ifRange The value of the If-Range request header or NULL for
+	 *                none
+	 */
+	void enableRanges(String range, String ifRange) {
+		rangesEnabled = true;
+		rangeHeader = range;
+		ifRangeHeader = ifRange;
+	}
+
+	/**
+	 * Sets the pre-encoded default headers that are written after the
+	 * headers of this response. Default headers that are also set in this
+	 * response will be omitted.
+	 *
+	 * @param headers The default headers or NULL for none
+	 */
+	void setDefaultHeaders(EncodedHeaders headers) {
+		defaultHeaders = headers;
 	}
 
 	/**
 	 * Writes the header for an HTTP response with a certain status code to a
-	 * {@link Writer}.
+	 * {@link Writer}. This method is only invoked for subclasses that
+	 * override it. Otherwise the header is written with
+	 * {@link #writeResponseHeader(HttpStatusCode, Map, PooledOutputStream)}
+	 * which avoids the encoding of the header text.
 	 *
-	 * @param status The response status
-	 * @param out    The output writer
+	 * @param status          The response status
+	 * @param responseHeaders The response headers
+	 * @param out             The output writer
 	 * @throws IOException If writing data fails
+	 * @deprecated Override
+	 * {@link #writeResponseHeader(HttpStatusCode, Map, PooledOutputStream)}
+	 * instead
 	 */
+	@Deprecated
 	protected void writeResponseHeader(HttpStatusCode status,
 		Map<String, List<String>> responseHeaders, Writer out)
 		throws IOException {
@@ -192,8 +510,470 @@ public class HttpResponse extends RelatedObject {
 			out.write(NetUtil.CRLF);
 		}
 
+		if (defaultHeaders != null) {
+			defaultHeaders.write(responseHeaders, out);
+		}
+
 		// terminate with empty line
 		out.write(NetUtil.CRLF);
 		out.flush();
 	}
+
+	/**
+	 * Writes the header for an HTTP response with a certain status code to a
+	 * buffered output stream. The header text is written directly into the
+	 * stream buffer without creating intermediate strings or byte arrays.
+	 * The status line and the default headers of the server are copied from
+	 * pre-encoded byte arrays.
+	 *
+	 * @param status          The response status
+	 * @param responseHeaders The response headers
+	 * @param out             The buffered output stream
+	 * @throws IOException If writing data fails
+	 */
+	protected void writeResponseHeader(HttpStatusCode status,
+		Map<String, List<String>> responseHeaders, PooledOutputStream out)
+		throws IOException {
+		out.write(status.getStatusLineBytes());
+
+		for (Entry<String, List<String>> responseHeader :
+			responseHeaders.entrySet()) {
+			out.writeAscii(responseHeader.getKey());
+			out.writeAscii(": ");
+			out.writeAscii(responseHeader.getValue().get(0));
+			out.writeAscii(NetUtil.CRLF);
+		}
+
+		if (defaultHeaders != null) {
+			defaultHeaders.write(responseHeaders, out);
+		}
+
+		// terminate with empty line
+		out.writeAscii(NetUtil.CRLF);
+	}
+
+	/**
+	 * Returns the size of a file that is to be sent as a response body.
+	 *
+	 * @param file The file path
+	 * @return The file size
+	 * @throws IOException If the size cannot be determined or if it exceeds
+	 *                     the maximum response size
+	 */
+	private static int checkFileSize(Path file) throws IOException {
+		long size = Files.size(file);
+
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("File too large: " + file);
+		}
+
+		return (int) size;
+	}
+
+	/**
+	 * Checks whether a response body allows random access to byte ranges.
+	 *
+	 * @param body The response body
+	 * @return TRUE if ranges of the body can be sent
+	 */
+	private static boolean isRandomAccess(Object body) {
+		return body instanceof byte[] || body instanceof ByteBuffer ||
+			body instanceof Path;
+	}
+
+	/**
+	 * Checks whether a response class overrides the deprecated method
+	 * {@link #writeResponseHeader(HttpStatusCode, Map, Writer)}.
+	 *
+	 * @param type The response class
+	 * @return TRUE if the method is overridden
+	 */
+	private static boolean overridesWriterHeader(Class<?> type) {
+		for (Class<?> c = type; c != HttpResponse.class;
+			c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("writeResponseHeader", HttpStatusCode.class,
+					Map.class, Writer.class);
+
+				return true;
+			} catch (NoSuchMethodException e) {
+				// continue with superclass
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Compresses the response body if possible and sets the corresponding
+	 * headers. If the body is not compressed the content encoding will be
+	 * reset.
+	 *
+	 * @param body The response body
+	 * @return The compressed body or the original body if it is not
+	 * compressed
+	 */
+	@SuppressWarnings("boxing")
+	private Object compressBody(Object body) {
+		byte[] data = null;
+		int offset = 0;
+		int length = 0;
+
+		if (body instanceof byte[]) {
+			data = (byte[]) body;
+			length = data.length;
+		} else if (body instanceof ByteBuffer) {
+			ByteBuffer buffer = (ByteBuffer) body;
+
+			length = buffer.remaining();
+
+			if (buffer.hasArray()) {
+				data = buffer.array();
+				offset = buffer.arrayOffset() + buffer.position();
+			} else if (length >= compressionThreshold) {
+				data = new byte[length];
+				buffer.duplicate().get(data);
+			}
+		} else if (body instanceof BodyWriter) {
+			setHeader(HttpHeaderField.CONTENT_ENCODING,
+				contentEncoding.getName());
+
+			return body;
+		}
+
+		if (data != null && length >= compressionThreshold) {
+			byte[] compressed =
+				ResponseCompression.compress(contentEncoding, compressionLevel,
+					data, offset, length);
+
+			if (compressed.length < length) {
+				String entityTag = getHeader(HttpHeaderField.ETAG);
+
+				set(CONTENT_LENGTH, compressed.length);
+				setHeader(HttpHeaderField.CONTENT_ENCODING,
+					contentEncoding.getName());
+
+				// different encodings of an entity must have distinct tags
+				if (entityTag != null && entityTag.endsWith("\"")) {
+					setHeader(HttpHeaderField.ETAG,
+						entityTag.substring(0, entityTag.length() - 1) + "-" +
+							contentEncoding.getName() + "\"");
+				}
+
+				return compressed;
+			}
+		}
+
+		contentEncoding = null;
+
+		return body;
+	}
+
+	/**
+	 * Checks whether the If-Range header of the request matches this
+	 * response. An entity tag must match the ETag of this response with the
+	 * strong comparison. A date must be equal to the Last-Modified date of
+	 * this response.
+	 *
+	 * @return TRUE if the header is not set or if it matches
+	 */
+	private boolean matchesIfRange() {
+		if (ifRangeHeader == null) {
+			return true;
+		}
+
+		String condition = ifRangeHeader.trim();
+
+		if (condition.startsWith("\"") || condition.startsWith("W/")) {
+			String entityTag = getHeader(HttpHeaderField.ETAG);
+
+			return entityTag != null && !entityTag.startsWith("W/") &&
+				entityTag.equals(condition);
+		} else {
+			String lastModified = getHeader(HttpHeaderField.LAST_MODIFIED);
+			long date = HttpHeaderTypes.parseDate(condition);
+
+			return lastModified != null && date >= 0 &&
+				date == HttpHeaderTypes.parseDate(lastModified);
+		}
+	}
+
+	/**
+	 * Sets the headers of a partial response and returns the headers of the
+	 * body parts for multiple ranges. Multiple ranges that would exceed the
+	 * maximum response size with the part headers are combined into a
+	 * single range.
+	 *
+	 * @param ranges The ranges to send (will be modified for combined
+	 *               ranges)
+	 * @return The headers of the body parts followed by the closing
+	 * delimiter of a multipart body or NULL for a single range
+	 */
+	@SuppressWarnings("boxing")
+	private String[] prepareRanges(List<ByteRange> ranges) {
+		int size = get(CONTENT_LENGTH);
+		int count = ranges.size();
+		String[] partHeaders = null;
+		long length = 0;
+
+		set(HTTP_STATUS_CODE, HttpStatusCode.PARTIAL_CONTENT);
+
+		if (count > 1) {
+			String contentType = get(CONTENT_TYPE);
+			String boundary = Long.toHexString(
+				ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+
+			if (contentType == null) {
+				contentType = getHeader(HttpHeaderField.CONTENT_TYPE);
+			}
+
+			partHeaders = new String[count + 1];
+
+			for (int i = 0; i < count; i++) {
+				ByteRange range = ranges.get(i);
+				StringBuilder header = new StringBuilder(NetUtil.CRLF);
+
+				header.append("--").append(boundary).append(NetUtil.CRLF);
+
+				if (contentType != null) {
+					header.append("Content-Type: ").append(contentType);
+					header.append(NetUtil.CRLF);
+				}
+
+				header.append("Content-Range: ");
+				header.append(range.getContentRange(size));
+				header.append(NetUtil.CRLF).append(NetUtil.CRLF);
+
+				partHeaders[i] = header.toString();
+				length += partHeaders[i].length() + range.getLength();
+			}
+
+			partHeaders[count] =
+				NetUtil.CRLF + "--" + boundary + "--" + NetUtil.CRLF;
+			length += partHeaders[count].length();
+
+			if (length <= Integer.MAX_VALUE) {
+				set(CONTENT_TYPE, MULTIPART_BYTERANGES + boundary);
+			} else {
+				ByteRange range = new ByteRange(ranges.get(0).getStart(),
+					ranges.get(count - 1).getEnd());
+
+				ranges.clear();
+				ranges.add(range);
+				partHeaders = null;
+			}
+		}
+
+		if (partHeaders == null) {
+			ByteRange range = ranges.get(0);
+
+			length = range.getLength();
+			setHeader(HttpHeaderField.CONTENT_RANGE,
+				range.getContentRange(size));
+		}
+
+		set(CONTENT_LENGTH, (int) length);
+
+		return partHeaders;
+	}
+
+	/**
+	 * Determines the byte ranges of the response body that have been
+	 * requested by the client. If none of the requested ranges can be
+	 * satisfied the status of this response will be changed to
+	 * {@link HttpStatusCode#REQUESTED_RANGE_NOT_SATISFIABLE} and the body
+	 * must be omitted.
+	 *
+	 * @return The requested ranges, an empty list if no range can be
+	 * satisfied, or NULL if the complete body must be sent
+	 */
+	@SuppressWarnings("boxing")
+	private List<ByteRange> selectRanges() {
+		List<ByteRange> ranges = null;
+
+		if (rangeHeader != null && matchesIfRange()) {
+			int size = get(CONTENT_LENGTH);
+
+			ranges = ByteRange.parse(rangeHeader, size);
+
+			if (ranges != null && ranges.isEmpty()) {
+				set(HTTP_STATUS_CODE,
+					HttpStatusCode.REQUESTED_RANGE_NOT_SATISFIABLE);
+				setHeader(HttpHeaderField.CONTENT_RANGE, "bytes */" + size);
+				set(CONTENT_LENGTH, 0);
+			}
+		}
+
+		return ranges;
+	}
+
+	/**
+	 * Writes the contents of a file to an output stream.
+	 *
+	 * @param file   The file path
+	 * @param length The number of bytes to write
+	 * @param output The output stream
+	 * @throws IOException If reading the file or writing the data fails
+	 */
+	private void writeFile(Path file, long length, OutputStream output)
+		throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+			StandardOpenOption.READ)) {
+			StreamUtil.send(channel, 0, length, output);
+		}
+	}
+
+	/**
+	 * Writes the response header to the buffered output stream. If a subclass
+	 * overrides the deprecated method
+	 * {@link #writeResponseHeader(HttpStatusCode, Map, Writer)} that method
+	 * will be invoked with a writer that encodes the header into the stream.
+	 *
+	 * @param output The buffered output stream
+	 * @throws IOException If writing the header fails
+	 */
+	@SuppressWarnings("deprecation")
+	private void writeHeader(PooledOutputStream output) throws IOException {
+		HttpStatusCode status = get(HTTP_STATUS_CODE);
+		Map<String, List<String>> headers = get(HTTP_RESPONSE_HEADERS);
+
+		if (WRITER_HEADER_OVERRIDES.get(getClass()).booleanValue()) {
+			Writer headerWriter =
+				new OutputStreamWriter(output, StandardCharsets.US_ASCII);
+
+			writeResponseHeader(status, headers, headerWriter);
+			headerWriter.flush();
+		} else {
+			writeResponseHeader(status, headers, output);
+		}
+	}
+
+	/**
+	 * Writes byte ranges of the response body. File ranges are sent directly
+	 * to the output stream with positional reads from a single file channel.
+	 *
+	 * @param body           The response body
+	 * @param ranges         The ranges to write
+	 * @param partHeaders    The headers of the body parts of a multipart
+	 *                       response or NULL for a single range
+	 * @param bufferedOutput The buffered output stream of the response
+	 * @param output         The underlying output stream
+	 * @throws IOException If reading the file or writing the data fails
+	 */
+	private void writeRanges(Object body, List<ByteRange> ranges,
+		String[] partHeaders, PooledOutputStream bufferedOutput,
+		OutputStream output) throws IOException {
+		FileChannel channel = null;
+
+		if (body instanceof Path) {
+			channel = FileChannel.open((Path) body, StandardOpenOption.READ);
+		}
+
+		try {
+			for (int i = 0; i < ranges.size(); i++) {
+				ByteRange range = ranges.get(i);
+				int start = (int) range.getStart();
+				int length = (int) range.getLength();
+
+				if (partHeaders != null) {
+					bufferedOutput.writeAscii(partHeaders[i]);
+				}
+
+				if (body instanceof byte[]) {
+					bufferedOutput.write((byte[]) body, start, length);
+				} else if (body instanceof ByteBuffer) {
+					// duplicated to keep the body position for repeated writes
+					ByteBuffer data = ((ByteBuffer) body).duplicate();
+					int position = data.position() + start;
+
+					data.limit(position + length);
+					data.position(position);
+					bufferedOutput.write(data);
+				} else {
+					bufferedOutput.flush();
+					StreamUtil.send(channel, start, length, output);
+				}
+			}
+
+			if (partHeaders != null) {
+				bufferedOutput.writeAscii(partHeaders[ranges.size()]);
+			}
+		} finally {
+			if (channel != null) {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes the body of a streaming response. The body writer writes to a
+	 * stream that either performs the chunked encoding or (if disabled) to a
+	 * stream that ignores attempts to close the underlying stream. If a
+	 * content encoding has been negotiated the data will be compressed before
+	 * it is written to these streams.
+	 *
+	 * @param bodyWriter The body writer
+	 * @param output     The output stream
+	 * @throws IOException If writing the data fails
+	 */
+	private void writeStream(BodyWriter bodyWriter, OutputStream output)
+		throws IOException {
+		ChunkedOutputStream chunkedOutput = null;
+		OutputStream bodyOutput;
+
+		if (chunked) {
+			chunkedOutput = new ChunkedOutputStream(output, CHUNK_SIZE);
+			bodyOutput = chunkedOutput;
+		} else {
+			bodyOutput = new FilterOutputStream(output) {
+				@Override
+				public void close() throws IOException {
+					flush();
+				}
+
+				@Override
+				public void write(byte[] data, int offset, int length)
+					throws IOException {
+					out.write(data, offset, length);
+				}
+			};
+		}
+
+		if (contentEncoding != null) {
+			DeflaterOutputStream compressedOutput =
+				ResponseCompression.compress(contentEncoding,
+					compressionLevel, bodyOutput, CHUNK_SIZE);
+
+			bodyWriter.writeBody(compressedOutput);
+			compressedOutput.finish();
+		} else {
+			bodyWriter.writeBody(bodyOutput);
+		}
+
+		if (chunkedOutput != null) {
+			chunkedOutput.finish();
+		}
+	}
+
+	/**
+	 * A functional interface for the producers of streaming response bodies.
+	 *
+	 * @author eso
+	 */
+	@FunctionalInterface
+	public interface BodyWriter {
+
+		/**
+		 * Writes the response body to the given stream. The data is sent to
+		 * the client while it is written and the stream may be flushed to
+		 * send the data written so far immediately. Implementations may close
+		 * the stream but this will not close the client connection. If an
+		 * exception occurs the response will be incomplete and the connection
+		 * will be closed.
+		 *
+		 * @param output The output stream to write the body to
+		 * @throws IOException If writing the body fails
+		 */
+		void writeBody(OutputStream output) throws IOException;
+	}
 }
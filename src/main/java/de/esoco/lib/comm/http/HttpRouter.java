@@ -0,0 +1,405 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import de.esoco.lib.collection.CacheMap;
+import de.esoco.lib.comm.CommunicationRelationTypes;
+import de.esoco.lib.comm.http.HttpRequestHandler.HttpRequestMethodHandler;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_PATH_PARAMETERS;
+
+/**
+ * A {@link HttpRequestMethodHandler} that dispatches requests to other method
+ * handlers based on the request path. The routes are stored in a trie of path
+ * segments which can either be literal names, named parameters in the form
+ * '{name}', or a trailing wildcard '*' that matches the rest of the path.
+ * Literal segments take precedence over parameters which take precedence
+ * over wildcards. The values of the parameter segments (and of a wildcard
+ * under the name '*') of a matched route are set on the request in the
+ * relation {@link CommunicationRelationTypes#HTTP_PATH_PARAMETERS}.
+ * Requests for paths without a route are handed to the fallback handler if
+ * one has been set or else rejected with the status
+ * {@link HttpStatusCode#NOT_FOUND}.
+ *
+ * <p>The routes should be defined completely before the router is used to
+ * handle requests. Afterwards the trie is only read and lookups can be
+ * performed concurrently without locking. Matched routes are cached by path
+ * in a {@link CacheMap} that evicts the least recently used paths if it
+ * exceeds {@link #MAX_CACHED_PATHS}. Unmatched paths are not cached so that
+ * requests for arbitrary unknown paths cannot displace the valid routes.</p>
+ *
+ * @author eso
+ */
+public class HttpRouter implements HttpRequestMethodHandler {
+
+	/**
+	 * The maximum number of resolved paths that are cached.
+	 */
+	public static final int MAX_CACHED_PATHS = 1000;
+
+	private static final String WILDCARD = "*";
+
+	private final Node root = new Node();
+
+	private final HttpRequestMethodHandler fallbackHandler;
+
+	private final Map<String, Route> routeCache =
+		Collections.synchronizedMap(new CacheMap<>(MAX_CACHED_PATHS));
+
+	/**
+	 * Creates a new instance that rejects requests for unknown paths.
+	 */
+	public HttpRouter() {
+		this(null);
+	}
+
+	/**
+	 * Creates a new instance with a fallback handler for unknown paths.
+	 *
+	 * @param fallbackHandler The handler for requests that don't match a
+	 *                        route or NULL to reject such requests
+	 */
+	public HttpRouter(HttpRequestMethodHandler fallbackHandler) {
+		this.fallbackHandler = fallbackHandler;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public HttpResponse doDelete(HttpRequest request)
+		throws HttpStatusException {
+		return getHandler(request).doDelete(request);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public HttpResponse doGet(HttpRequest request) throws HttpStatusException {
+		return getHandler(request).doGet(request);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public HttpResponse doPost(HttpRequest request)
+		throws HttpStatusException {
+		return getHandler(request).doPost(request);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public HttpResponse doPut(HttpRequest request) throws HttpStatusException {
+		return getHandler(request).doPut(request);
+	}
+
+	/**
+	 * Overridden to dispatch the request to the method handler of the
+	 * matching route.
+	 *
+	 * @see HttpRequestMethodHandler#handleMethod(HttpRequest)
+	 */
+	@Override
+	public HttpResponse handleMethod(HttpRequest request) throws IOException {
+		return getHandler(request).handleMethod(request);
+	}
+
+	/**
+	 * Resolves the route for a certain request path. A query string in the
+	 * path will be ignored.
+	 *
+	 * @param path The request path
+	 * @return The matching route or NULL if no route matches the path
+	 */
+	public Route resolve(String path) {
+		int query = path.indexOf('?');
+
+		if (query >= 0) {
+			path = path.substring(0, query);
+		}
+
+		Route route = routeCache.get(path);
+
+		if (route == null) {
+			Map<String, String> parameters = new HashMap<>();
+			Node node = root.find(splitPath(path), 0, parameters);
+
+			if (node != null) {
+				route = new Route(node.handler,
+					parameters.isEmpty() ?
+					Collections.emptyMap() :
+					Collections.unmodifiableMap(parameters));
+
+				routeCache.put(path, route);
+			}
+		}
+
+		return route;
+	}
+
+	/**
+	 * Adds a route to the handler for a certain path pattern. The pattern
+	 * consists of segments that are separated by slashes. Segments in curly
+	 * braces define path parameters and the last segment may be a wildcard
+	 * ('*') that matches the remaining path, including the empty path.
+	 *
+	 * @param pattern The path pattern (e.g. '/users/{id}/*')
+	 * @param handler The handler for requests that match the pattern
+	 * @return This instance for concatenation
+	 * @throws IllegalArgumentException If the pattern is invalid or if it
+	 *                                  conflicts with an existing route
+	 */
+	public synchronized HttpRouter route(String pattern,
+		HttpRequestMethodHandler handler) {
+		String[] segments = splitPath(pattern);
+		Node node = root;
+
+		for (int i = 0; i < segments.length; i++) {
+			String segment = segments[i];
+
+			if (WILDCARD.equals(segment) && i < segments.length - 1) {
+				throw new IllegalArgumentException(
+					"Wildcard must be the last segment: " + pattern);
+			}
+
+			node = node.addChild(segment, pattern);
+		}
+
+		if (node.handler != null) {
+			throw new IllegalArgumentException("Duplicate route: " + pattern);
+		}
+
+		node.handler = handler;
+		routeCache.clear();
+
+		return this;
+	}
+
+	/**
+	 * Splits a path into it's segments, ignoring leading and trailing
+	 * slashes.
+	 *
+	 * @param path The path
+	 * @return The path segments
+	 */
+	private static String[] splitPath(String path) {
+		int start = 0;
+		int end = path.length();
+
+		while (start < end && path.charAt(start) == '/') {
+			start++;
+		}
+
+		while (end > start && path.charAt(end - 1) == '/') {
+			end--;
+		}
+
+		return start < end ?
+		       path.substring(start, end).split("/+") :
+		       new String[0];
+	}
+
+	/**
+	 * Returns the method handler for a request and sets the path parameters
+	 * of the matching route on the request.
+	 *
+	 * @param request The request
+	 * @return The method handler
+	 * @throws HttpStatusException If no route matches the request path and
+	 *                             no fallback handler exists
+	 */
+	private HttpRequestMethodHandler getHandler(HttpRequest request)
+		throws HttpStatusException {
+		Route route = resolve(request.getPath());
+
+		if (route != null) {
+			request.set(HTTP_PATH_PARAMETERS, route.getParameters());
+
+			return route.getHandler();
+		} else if (fallbackHandler != null) {
+			return fallbackHandler;
+		} else {
+			throw new HttpStatusException(HttpStatusCode.NOT_FOUND,
+				"No route for " + request.getPath());
+		}
+	}
+
+	/**
+	 * The result of resolving a request path with a router.
+	 *
+	 * @author eso
+	 */
+	public static final class Route {
+
+		private final HttpRequestMethodHandler handler;
+
+		private final Map<String, String> parameters;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param handler    The method handler of the route
+		 * @param parameters The path parameters
+		 */
+		Route(HttpRequestMethodHandler handler,
+			Map<String, String> parameters) {
+			this.handler = handler;
+			this.parameters = parameters;
+		}
+
+		/**
+		 * Returns the method handler of this route.
+		 *
+		 * @return The method handler
+		 */
+		public HttpRequestMethodHandler getHandler() {
+			return handler;
+		}
+
+		/**
+		 * Returns the values of the path parameters, mapped from their names.
+		 *
+		 * @return The unmodifiable parameter map (empty for none)
+		 */
+		public Map<String, String> getParameters() {
+			return parameters;
+		}
+	}
+
+	/**
+	 * A node in the trie of path segments.
+	 *
+	 * @author eso
+	 */
+	private static class Node {
+
+		private final Map<String, Node> literalChildren = new HashMap<>();
+
+		private Node parameterChild;
+
+		private String parameterName;
+
+		private Node wildcardChild;
+
+		private HttpRequestMethodHandler handler;
+
+		/**
+		 * Returns the child node for a pattern segment, creating it if
+		 * necessary.
+		 *
+		 * @param segment The pattern segment
+		 * @param pattern The full pattern for error messages
+		 * @return The child node
+		 */
+		Node addChild(String segment, String pattern) {
+			Node child;
+
+			if (WILDCARD.equals(segment)) {
+				if (wildcardChild == null) {
+					wildcardChild = new Node();
+				}
+
+				child = wildcardChild;
+			} else if (segment.startsWith("{") && segment.endsWith("}")) {
+				String name = segment.substring(1, segment.length() - 1);
+
+				if (name.isEmpty()) {
+					throw new IllegalArgumentException(
+						"Empty parameter name: " + pattern);
+				} else if (parameterChild == null) {
+					parameterChild = new Node();
+					parameterName = name;
+				} else if (!parameterName.equals(name)) {
+					throw new IllegalArgumentException(String.format(
+						"Parameter {%s} conflicts with {%s}: %s", name,
+						parameterName, pattern));
+				}
+
+				child = parameterChild;
+			} else {
+				child = literalChildren.computeIfAbsent(segment,
+					s -> new Node());
+			}
+
+			return child;
+		}
+
+		/**
+		 * Finds the node with a handler that matches the remaining path
+		 * segments, starting at this node.
+		 *
+		 * @param segments   The path segments
+		 * @param index      The index of the next segment to match
+		 * @param parameters The map to store the parameter values in
+		 * @return The matching node or NULL for none
+		 */
+		Node find(String[] segments, int index,
+			Map<String, String> parameters) {
+			if (index == segments.length) {
+				if (handler != null) {
+					return this;
+				} else if (wildcardChild != null &&
+					wildcardChild.handler != null) {
+					parameters.put(WILDCARD, "");
+
+					return wildcardChild;
+				} else {
+					return null;
+				}
+			}
+
+			String segment = segments[index];
+			Node literal = literalChildren.get(segment);
+			Node result = null;
+
+			if (literal != null) {
+				result = literal.find(segments, index + 1, parameters);
+			}
+
+			if (result == null && parameterChild != null) {
+				result = parameterChild.find(segments, index + 1, parameters);
+
+				if (result != null) {
+					parameters.put(parameterName, segment);
+				}
+			}
+
+			if (result == null && wildcardChild != null &&
+				wildcardChild.handler != null) {
+				StringBuilder rest = new StringBuilder(segment);
+
+				for (int i = index + 1; i < segments.length; i++) {
+					rest.append('/').append(segments[i]);
+				}
+
+				parameters.put(WILDCARD, rest.toString());
+				result = wildcardChild;
+			}
+
+			return result;
+		}
+	}
+}
@@ -18,6 +18,8 @@ package de.esoco.lib.comm.http;
 
 import de.esoco.lib.net.NetUtil;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * An enumeration of the standard HTTP 1.1 status codes as defined in the HTTP
  * RFC 2616.
@@ -74,6 +76,10 @@ public enum HttpStatusCode {
 
 	private final String reasonPhrase;
 
+	private final String statusLine;
+
+	private final byte[] statusLineBytes;
+
 	/**
 	 * Creates a new instance.
 	 *
@@ -83,6 +89,10 @@ public enum HttpStatusCode {
 	HttpStatusCode(int code, String reason) {
 		statusCode = code;
 		reasonPhrase = reason;
+
+		// pre-encoded because it is written for each response
+		statusLine = "HTTP/1.1 " + code + ' ' + reason + NetUtil.CRLF;
+		statusLineBytes = statusLine.getBytes(StandardCharsets.US_ASCII);
 	}
 
 	/**
@@ -141,10 +151,6 @@ public enum HttpStatusCode {
 	 * @return The status line
 	 */
 	public final String getStatusLine() {
-
-		String statusLine =
-			"HTTP/1.1 " + statusCode + ' ' + reasonPhrase + NetUtil.CRLF;
-
 		return statusLine;
 	}
 
@@ -212,7 +218,7 @@ public enum HttpStatusCode {
 	 * reason phrase, and trailing CRLF
 	 */
 	public String toResponseString() {
-		return String.format("HTTP/1.1 %s\r\n", this);
+		return statusLine;
 	}
 
 	/**
@@ -224,4 +230,14 @@ public enum HttpStatusCode {
 	public String toString() {
 		return statusCode + " " + reasonPhrase;
 	}
+
+	/**
+	 * Returns the status line of this status code as ASCII bytes. The
+	 * returned array is shared and must not be modified.
+	 *
+	 * @return The encoded status line
+	 */
+	final byte[] getStatusLineBytes() {
+		return statusLineBytes;
+	}
 }
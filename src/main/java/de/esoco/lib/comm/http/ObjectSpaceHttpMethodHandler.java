@@ -16,34 +16,168 @@
 //++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 package de.esoco.lib.comm.http;
 
+import de.esoco.lib.collection.CacheMap;
+import de.esoco.lib.comm.http.HttpHeaderTypes.HttpHeaderField;
 import de.esoco.lib.comm.http.HttpRequestHandler.HttpRequestMethodHandler;
 import de.esoco.lib.logging.Log;
 import org.obrel.space.ObjectSpace;
 import org.obrel.space.SynchronizedObjectSpace;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  * A HTTP request method handler that retrieves the data of it's responses from
- * an {@link ObjectSpace}.
+ * an {@link ObjectSpace}. Requests are executed concurrently by the threads of
+ * a server and the access to the object space is therefore synchronized in a
+ * way that depends on the {@link ConcurrencyMode} of the handler.
+ *
+ * <p>GET responses contain a strong ETag that is derived from a hash of the
+ * response data and a Last-Modified date that records when a change of the
+ * data at a path has been detected. Together with
+ * {@link HttpRequestHandler#checkNotModified(HttpRequest, HttpResponse)}
+ * this allows clients that poll resources to receive responses with only a
+ * header if the data hasn't changed. The modification dates are tracked for
+ * a limited number of recently requested paths. If a path has been evicted
+ * from the tracking its date will be reset by the next request.</p>
+ *
+ * <p>Optionally the rendered responses can be cached so that repeated GET
+ * requests don't need to access the object space and convert the data. The
+ * cache is enabled by setting a time to live with
+ * {@link #setCacheTimeToLive(long)}, either for all paths or with
+ * {@link #setCacheTimeToLive(String, long)} for particular subtrees, e.g.
+ * with shorter times for computed values. Cache entries are invalidated
+ * automatically if a PUT or POST request modifies the cached path or a path
+ * above or below it. Modifications of the object space that are not
+ * performed through this handler must be signaled by invoking
+ * {@link #invalidateCache(String)}. If the cache contains the maximum number
+ * of paths the least recently used response will be evicted.</p>
  *
  * @author eso
  */
 public class ObjectSpaceHttpMethodHandler implements HttpRequestMethodHandler {
 
+	/**
+	 * A cache time to live that doesn't expire cached responses. They will
+	 * only be removed by invalidation.
+	 */
+	public static final long CACHE_UNLIMITED = -1;
+
+	/**
+	 * The maximum number of paths for which responses are cached and
+	 * modification dates are tracked.
+	 */
+	public static final int MAX_TRACKED_PATHS = 1000;
+
+	private static final int LOCK_STRIPES = 16;
+
+	private static final int MAX_CACHE_ENTRY_SIZE = 1024 * 1024;
+
 	private final ObjectSpace<? super String> objectSpace;
 
 	private final String defaultPath;
 
+	private final int subtreeDepth;
+
+	private final ReadWriteLock rootLock;
+
+	private final ReadWriteLock[] subtreeLocks;
+
+	private final Map<String, ResourceVersion> resourceVersions =
+		Collections.synchronizedMap(new CacheMap<>(MAX_TRACKED_PATHS));
+
+	private final Map<String, CachedResponse> responseCache =
+		Collections.synchronizedMap(new CacheMap<>(MAX_TRACKED_PATHS));
+
+	private final ConcurrentMap<String, Long> cacheTimesToLive =
+		new ConcurrentHashMap<>();
+
+	private final AtomicLong cacheGeneration = new AtomicLong();
+
+	private volatile long defaultCacheTimeToLive = 0;
+
 	/**
-	 * Creates a new instance.
+	 * Creates a new instance that synchronizes all access to the object
+	 * space.
 	 *
 	 * @param objectSpace The object space to get response data from
 	 * @param defaultPath The default path to lookup for the GET method if the
 	 *                    request path is empty
+	 * @see #ObjectSpaceHttpMethodHandler(ObjectSpace, String, ConcurrencyMode)
 	 */
 	public ObjectSpaceHttpMethodHandler(ObjectSpace<? super String> objectSpace,
 		String defaultPath) {
-		this.objectSpace = new SynchronizedObjectSpace<>(objectSpace);
+		this(objectSpace, defaultPath, ConcurrencyMode.SYNCHRONIZED);
+	}
+
+	/**
+	 * Creates a new instance with a certain concurrency mode. In the mode
+	 * {@link ConcurrencyMode#READ_WRITE} the independent subtrees are
+	 * defined by the first element of the request paths.
+	 *
+	 * @param objectSpace The object space to get response data from
+	 * @param defaultPath The default path to lookup for the GET method if the
+	 *                    request path is empty
+	 * @param mode        The concurrency mode for the object space access
+	 * @see #ObjectSpaceHttpMethodHandler(ObjectSpace, String, ConcurrencyMode,
+	 * int)
+	 */
+	public ObjectSpaceHttpMethodHandler(ObjectSpace<? super String> objectSpace,
+		String defaultPath, ConcurrencyMode mode) {
+		this(objectSpace, defaultPath, mode, 1);
+	}
+
+	/**
+	 * Creates a new instance with a certain concurrency mode and the depth
+	 * of the independent subtrees of the object space for the mode
+	 * {@link ConcurrencyMode#READ_WRITE}. If the space contains a single
+	 * root element with independent child spaces (like {@code /api/status}
+	 * and {@code /api/control}) the depth must be 2 so that writes to one
+	 * child space don't block the access to the others.
+	 *
+	 * @param objectSpace  The object space to get response data from
+	 * @param defaultPath  The default path to lookup for the GET method if the
+	 *                     request path is empty
+	 * @param mode         The concurrency mode for the object space access
+	 * @param subtreeDepth The number of leading path elements that identify
+	 *                     an independent subtree (must be at least 1)
+	 */
+	public ObjectSpaceHttpMethodHandler(ObjectSpace<? super String> objectSpace,
+		String defaultPath, ConcurrencyMode mode, int subtreeDepth) {
+		if (subtreeDepth < 1) {
+			throw new IllegalArgumentException(
+				"Subtree depth must be at least 1: " + subtreeDepth);
+		}
+
 		this.defaultPath = defaultPath;
+		this.subtreeDepth = subtreeDepth;
+
+		if (mode == ConcurrencyMode.READ_WRITE) {
+			this.objectSpace = objectSpace;
+
+			rootLock = new ReentrantReadWriteLock();
+			subtreeLocks = new ReadWriteLock[LOCK_STRIPES];
+
+			for (int i = 0; i < LOCK_STRIPES; i++) {
+				subtreeLocks[i] = new ReentrantReadWriteLock();
+			}
+		} else {
+			this.objectSpace = new SynchronizedObjectSpace<>(objectSpace);
+
+			rootLock = null;
+			subtreeLocks = null;
+		}
 	}
 
 	/**
@@ -57,19 +191,41 @@ public class ObjectSpaceHttpMethodHandler implements HttpRequestMethodHandler {
 			path = defaultPath;
 		}
 
-		try {
-			Object data = objectSpace.get(path);
+		CachedResponse cachedResponse = responseCache.get(path);
 
-			if (data == null) {
-				// jump into catch below
-				throw new IllegalArgumentException();
-			}
+		if (cachedResponse != null &&
+			!cachedResponse.isExpired(System.currentTimeMillis())) {
+			return cachedResponse.createResponse();
+		}
+
+		long generation = cacheGeneration.get();
+		Object data;
+
+		Lock[] locks = lock(path, false);
 
-			return new HttpResponse(data.toString());
+		try {
+			data = objectSpace.get(path);
 		} catch (RuntimeException e) {
+			data = null;
+		} finally {
+			unlock(locks);
+		}
+
+		if (data == null) {
 			throw new HttpStatusException(HttpStatusCode.NOT_FOUND,
 				"No data at " + path);
 		}
+
+		byte[] body = data.toString().getBytes(StandardCharsets.UTF_8);
+		String entityTag = createEntityTag(body);
+		long lastModified = getLastModified(path, entityTag);
+
+		cachedResponse = new CachedResponse(body, entityTag,
+			HttpHeaderTypes.formatDate(lastModified), getCacheExpiry(path));
+
+		cacheResponse(path, cachedResponse, generation);
+
+		return cachedResponse.createResponse();
 	}
 
 	/**
@@ -88,6 +244,261 @@ public class ObjectSpaceHttpMethodHandler implements HttpRequestMethodHandler {
 		return update(request);
 	}
 
+	/**
+	 * Removes the cached responses for a certain path and all paths above and
+	 * below it. This must be invoked by applications that modify the object
+	 * space directly while the response cache is enabled.
+	 *
+	 * @param path The modified path
+	 */
+	public void invalidateCache(String path) {
+		String modifiedPath = normalizePath(path);
+
+		// prevents concurrent readers from caching data they read before
+		cacheGeneration.incrementAndGet();
+
+		responseCache
+			.keySet()
+			.removeIf(cachedPath -> isRelatedPath(normalizePath(cachedPath),
+				modifiedPath));
+	}
+
+	/**
+	 * Sets the default time to live for cached responses. A value of zero
+	 * (the initial default) disables the response cache for all paths that
+	 * don't have a specific time to live.
+	 *
+	 * @param timeToLive The time to live in milliseconds, 0 to disable
+	 *                   caching, or {@link #CACHE_UNLIMITED}
+	 * @see #setCacheTimeToLive(String, long)
+	 */
+	public void setCacheTimeToLive(long timeToLive) {
+		defaultCacheTimeToLive = timeToLive;
+		invalidateCache("");
+	}
+
+	/**
+	 * Sets the time to live for the cached responses of a certain path and
+	 * all paths below it, overriding the default time to live and the times
+	 * of paths above it. This can be used to limit the caching time of
+	 * computed values or to disable caching for certain paths.
+	 *
+	 * @param path       The path
+	 * @param timeToLive The time to live in milliseconds, 0 to disable
+	 *                   caching, or {@link #CACHE_UNLIMITED}
+	 */
+	public void setCacheTimeToLive(String path, long timeToLive) {
+		cacheTimesToLive.put(normalizePath(path), timeToLive);
+		invalidateCache(path);
+	}
+
+	/**
+	 * Stores a rendered response in the cache if the cache is enabled for
+	 * the path, if the response is not too large, and if no invalidation
+	 * has occurred since the data has been read from the object space.
+	 *
+	 * @param path       The request path
+	 * @param response   The rendered response
+	 * @param generation The cache generation before reading the data
+	 */
+	private void cacheResponse(String path, CachedResponse response,
+		long generation) {
+		if (response.expiry != 0 &&
+			response.body.length <= MAX_CACHE_ENTRY_SIZE &&
+			cacheGeneration.get() == generation) {
+			responseCache.put(path, response);
+
+			// remove again if invalidated concurrently
+			if (cacheGeneration.get() != generation) {
+				responseCache.remove(path, response);
+			}
+		}
+	}
+
+	/**
+	 * Creates a strong entity tag from a hash of the response data.
+	 *
+	 * @param data The response data
+	 * @return The entity tag, including the enclosing quotes
+	 */
+	private String createEntityTag(byte[] data) {
+		try {
+			byte[] hash = MessageDigest.getInstance("MD5").digest(data);
+
+			return '"' +
+				Base64.getUrlEncoder().withoutPadding().encodeToString(hash) +
+				'"';
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the expiration time for a cached response of a certain path.
+	 * The time to live is taken from the closest path for which it has been
+	 * set or else from the default.
+	 *
+	 * @param path The request path
+	 * @return The expiration time in milliseconds, {@link Long#MAX_VALUE}
+	 * for no expiration, or zero if the path must not be cached
+	 */
+	private long getCacheExpiry(String path) {
+		long timeToLive = defaultCacheTimeToLive;
+
+		if (!cacheTimesToLive.isEmpty()) {
+			String ancestor = normalizePath(path);
+
+			while (true) {
+				Long pathTimeToLive = cacheTimesToLive.get(ancestor);
+
+				if (pathTimeToLive != null) {
+					timeToLive = pathTimeToLive.longValue();
+					break;
+				} else if (ancestor.isEmpty()) {
+					break;
+				}
+
+				ancestor = ancestor.substring(0,
+					Math.max(0, ancestor.lastIndexOf('/')));
+			}
+		}
+
+		return timeToLive < 0 ? Long.MAX_VALUE :
+		       timeToLive > 0 ? System.currentTimeMillis() + timeToLive : 0;
+	}
+
+	/**
+	 * Returns the time at which a change of the data at a certain path has
+	 * been detected. If the path is requested for the first time or if the
+	 * entity tag has changed since the last request the current time will be
+	 * recorded.
+	 *
+	 * @param path      The request path
+	 * @param entityTag The entity tag of the current data
+	 * @return The last modification time in milliseconds (truncated to
+	 * seconds)
+	 */
+	private long getLastModified(String path, String entityTag) {
+		ResourceVersion version = resourceVersions.get(path);
+
+		if (version == null || !version.entityTag.equals(entityTag)) {
+			long now = System.currentTimeMillis();
+
+			version = new ResourceVersion(entityTag, now - now % 1000);
+			resourceVersions.put(path, version);
+		}
+
+		return version.lastModified;
+	}
+
+	/**
+	 * Checks whether two normalized paths are equal or whether one is above
+	 * the other.
+	 *
+	 * @param first  The first path
+	 * @param second The second path
+	 * @return TRUE if the paths are related
+	 */
+	private boolean isRelatedPath(String first, String second) {
+		return first.isEmpty() || second.isEmpty() || first.equals(second) ||
+			first.startsWith(second + "/") || second.startsWith(first + "/");
+	}
+
+	/**
+	 * Acquires the locks for the access to a certain path if the concurrency
+	 * mode is {@link ConcurrencyMode#READ_WRITE}. The subtree of a path
+	 * consists of the first path elements up to the subtree depth and the
+	 * subtree locks are striped by it. All accesses except writes above the
+	 * subtree level acquire the root read lock first.
+	 *
+	 * <ul>
+	 *   <li>Writing into a subtree acquires the write lock of the subtree
+	 *     while writing the subtree itself or a path above it acquires the
+	 *     root write lock.</li>
+	 *   <li>Reading a subtree or a path in it acquires the read lock of the
+	 *     subtree while reading a path above the subtree level acquires the
+	 *     read locks of all stripes because the result may contain data from
+	 *     any subtree below it.</li>
+	 * </ul>
+	 *
+	 * @param path  The path to access
+	 * @param write TRUE for write access, FALSE for read access
+	 * @return The acquired locks in the order of acquisition or NULL if no
+	 * locks are used
+	 */
+	private Lock[] lock(String path, boolean write) {
+		Lock[] locks = null;
+
+		if (rootLock != null) {
+			String normalizedPath = normalizePath(path);
+			String[] elements = normalizedPath.isEmpty() ?
+			                    new String[0] :
+			                    normalizedPath.split("/+");
+
+			if (write && elements.length <= subtreeDepth) {
+				locks = new Lock[] { rootLock.writeLock() };
+			} else if (elements.length < subtreeDepth) {
+				locks = new Lock[LOCK_STRIPES + 1];
+				locks[0] = rootLock.readLock();
+
+				for (int i = 0; i < LOCK_STRIPES; i++) {
+					locks[i + 1] = subtreeLocks[i].readLock();
+				}
+			} else {
+				String subtree = String.join("/",
+					Arrays.copyOf(elements, subtreeDepth));
+				ReadWriteLock stripe = subtreeLocks[
+					(subtree.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+
+				locks = new Lock[] { rootLock.readLock(),
+				                     write ? stripe.writeLock() :
+				                     stripe.readLock() };
+			}
+
+			for (Lock lock : locks) {
+				lock.lock();
+			}
+		}
+
+		return locks;
+	}
+
+	/**
+	 * Normalizes a path for comparisons by removing leading and trailing
+	 * slashes.
+	 *
+	 * @param path The path
+	 * @return The normalized path
+	 */
+	private String normalizePath(String path) {
+		int start = 0;
+		int end = path.length();
+
+		while (start < end && path.charAt(start) == '/') {
+			start++;
+		}
+
+		while (end > start && path.charAt(end - 1) == '/') {
+			end--;
+		}
+
+		return path.substring(start, end);
+	}
+
+	/**
+	 * Releases locks that have been acquired by {@link #lock(String,
+	 * boolean)}.
+	 *
+	 * @param locks The locks to release (NULL for none)
+	 */
+	private void unlock(Lock[] locks) {
+		if (locks != null) {
+			for (int i = locks.length - 1; i >= 0; i--) {
+				locks[i].unlock();
+			}
+		}
+	}
+
 	/**
 	 * Performs an update due to a POST or PUT request.
 	 *
@@ -103,7 +514,14 @@ public class ObjectSpaceHttpMethodHandler implements HttpRequestMethodHandler {
 		try {
 			data = request.getBody();
 
-			objectSpace.put(path, data);
+			Lock[] locks = lock(path, true);
+
+			try {
+				objectSpace.put(path, data);
+			} finally {
+				unlock(locks);
+				invalidateCache(path);
+			}
 
 			return new HttpResponse("");
 		} catch (HttpStatusException e) {
@@ -120,4 +538,95 @@ public class ObjectSpaceHttpMethodHandler implements HttpRequestMethodHandler {
 			}
 		}
 	}
+
+	/**
+	 * Enumeration of the modes for the synchronization of concurrent
+	 * requests. {@link #SYNCHRONIZED} serializes all access to the object
+	 * space. {@link #READ_WRITE} allows concurrent reads of the space while
+	 * writes are only serialized with other accesses to the same subtree (as
+	 * defined by the leading path elements up to the subtree depth of the
+	 * handler). This requires that reading from the object space doesn't
+	 * modify it and that the subtrees are independent of each other.
+	 */
+	public enum ConcurrencyMode { SYNCHRONIZED, READ_WRITE }
+
+	/**
+	 * A rendered response in the response cache.
+	 *
+	 * @author eso
+	 */
+	private static class CachedResponse {
+
+		private final byte[] body;
+
+		private final String entityTag;
+
+		private final String lastModified;
+
+		private final long expiry;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param body         The encoded response body
+		 * @param entityTag    The entity tag
+		 * @param lastModified The Last-Modified header
+		 * @param expiry       The expiration time in milliseconds
+		 */
+		CachedResponse(byte[] body, String entityTag, String lastModified,
+			long expiry) {
+			this.body = body;
+			this.entityTag = entityTag;
+			this.lastModified = lastModified;
+			this.expiry = expiry;
+		}
+
+		/**
+		 * Creates a new HTTP response from this cached response.
+		 *
+		 * @return The new response
+		 */
+		HttpResponse createResponse() {
+			HttpResponse response = new HttpResponse(body);
+
+			response.setHeader(HttpHeaderField.ETAG, entityTag);
+			response.setHeader(HttpHeaderField.LAST_MODIFIED, lastModified);
+
+			return response;
+		}
+
+		/**
+		 * Checks whether this response has expired.
+		 *
+		 * @param now The current time in milliseconds
+		 * @return TRUE if expired
+		 */
+		boolean isExpired(long now) {
+			return now >= expiry;
+		}
+	}
+
+	/**
+	 * The entity tag of the data at a path and the time at which it has been
+	 * recorded.
+	 *
+	 * @author eso
+	 */
+	private static class ResourceVersion {
+
+		private final String entityTag;
+
+		private final long lastModified;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param entityTag    The entity tag
+		 * @param lastModified The modification time
+		 */
+		ResourceVersion(String entityTag, long lastModified) {
+			this.entityTag = entityTag;
+			this.lastModified = lastModified;
+		}
+	}
 }
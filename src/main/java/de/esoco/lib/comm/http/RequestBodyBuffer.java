@@ -0,0 +1,165 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import de.esoco.lib.io.StreamUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A buffer for the body of an HTTP request that keeps small bodies in memory
+ * and writes bodies that reach a certain size to a temporary file. This
+ * allows to handle large uploads without allocating heap memory proportional
+ * to the body size. The buffered data can be read as often as necessary with
+ * {@link #openStream()}. Instances must be closed after use to delete the
+ * temporary file.
+ *
+ * @author eso
+ * @see HttpRequest#bufferBody(int)
+ */
+public final class RequestBodyBuffer implements Closeable {
+
+	private static final int TRANSFER_BUFFER_SIZE = 8 * 1024;
+
+	private byte[] data;
+
+	private Path file;
+
+	private long length;
+
+	/**
+	 * Creates a new instance by reading an input stream completely.
+	 *
+	 * @param input       The stream to read
+	 * @param memoryLimit The maximum number of bytes to keep in memory or
+	 *                    zero to always use a temporary file
+	 * @throws IOException If reading the input or writing the temporary file
+	 *                     fails
+	 */
+	public RequestBodyBuffer(InputStream input, int memoryLimit)
+		throws IOException {
+		data = new byte[Math.max(0,
+			Math.min(memoryLimit, TRANSFER_BUFFER_SIZE))];
+
+		int read = 0;
+
+		while (read >= 0) {
+			if (length == data.length) {
+				if (length < memoryLimit) {
+					data = Arrays.copyOf(data,
+						(int) Math.min(memoryLimit, length * 2));
+				} else {
+					spill(input);
+
+					break;
+				}
+			}
+
+			read = input.read(data, (int) length, data.length - (int) length);
+
+			if (read > 0) {
+				length += read;
+			}
+		}
+	}
+
+	/**
+	 * Deletes the temporary file if the data has been written to a file.
+	 *
+	 * @throws IOException If deleting the file fails
+	 */
+	@Override
+	public void close() throws IOException {
+		data = null;
+
+		if (file != null) {
+			Files.deleteIfExists(file);
+			file = null;
+		}
+	}
+
+	/**
+	 * Returns the buffered data as a byte array. If the data has been
+	 * written to a file it will be read completely into memory.
+	 *
+	 * @return The buffered data
+	 * @throws IOException If reading the temporary file fails
+	 */
+	public byte[] getBytes() throws IOException {
+		return file != null ? Files.readAllBytes(file) :
+		       Arrays.copyOf(data, (int) length);
+	}
+
+	/**
+	 * Returns the number of buffered bytes.
+	 *
+	 * @return The data length
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Checks whether the data is kept in memory or has been written to a
+	 * temporary file.
+	 *
+	 * @return TRUE if the data is in memory
+	 */
+	public boolean isInMemory() {
+		return file == null;
+	}
+
+	/**
+	 * Opens a new stream that reads the buffered data from the beginning.
+	 *
+	 * @return The new input stream
+	 * @throws IOException If opening the temporary file fails
+	 */
+	public InputStream openStream() throws IOException {
+		return file != null ? Files.newInputStream(file) :
+		       new ByteArrayInputStream(data, 0, (int) length);
+	}
+
+	/**
+	 * Writes the data in memory and the remaining input to a temporary file.
+	 *
+	 * @param input The input stream to read the remaining data from
+	 * @throws IOException If reading or writing fails
+	 */
+	private void spill(InputStream input) throws IOException {
+		file = Files.createTempFile("http-body", ".tmp");
+
+		try (OutputStream output = Files.newOutputStream(file)) {
+			output.write(data, 0, (int) length);
+			length += StreamUtil.send(input, output);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(file);
+			file = null;
+
+			throw e;
+		}
+
+		data = null;
+	}
+}
@@ -0,0 +1,371 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Implements the HTTP content encodings 'gzip' and 'deflate' for response
+ * bodies. Creating a {@link Deflater} allocates native memory and is
+ * comparatively expensive. Therefore each thread that compresses responses
+ * (typically the worker threads of a server) keeps a deflater for each
+ * encoding that is reset and reused for all responses that are compressed by
+ * the thread.
+ *
+ * @author eso
+ */
+final class ResponseCompression {
+
+	private static final byte[] GZIP_HEADER =
+		{ 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	private static final int GZIP_TRAILER_SIZE = 8;
+
+	private static final ThreadLocal<Deflater> gzipDeflater =
+		ThreadLocal.withInitial(
+			() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+	private static final ThreadLocal<Deflater> zlibDeflater =
+		ThreadLocal.withInitial(Deflater::new);
+
+	/**
+	 * Private, only static use.
+	 */
+	private ResponseCompression() {
+	}
+
+	/**
+	 * Compresses a block of data.
+	 *
+	 * @param encoding The content encoding to apply
+	 * @param level    The compression level
+	 * @param data     The data array
+	 * @param offset   The offset of the data to compress
+	 * @param length   The length of the data to compress
+	 * @return A new array containing the compressed data
+	 */
+	public static byte[] compress(ContentEncoding encoding, int level,
+		byte[] data, int offset, int length) {
+		boolean gzip = encoding == ContentEncoding.GZIP;
+		Deflater deflater = getDeflater(encoding, level);
+		int start = gzip ? GZIP_HEADER.length : 0;
+		byte[] result = new byte[start + length / 2 + 64];
+
+		if (gzip) {
+			System.arraycopy(GZIP_HEADER, 0, result, 0, start);
+		}
+
+		deflater.setInput(data, offset, length);
+		deflater.finish();
+
+		int position = start;
+
+		while (!deflater.finished()) {
+			if (position == result.length) {
+				result = Arrays.copyOf(result, result.length * 2);
+			}
+
+			position +=
+				deflater.deflate(result, position, result.length - position);
+		}
+
+		deflater.reset();
+
+		if (gzip) {
+			CRC32 crc = new CRC32();
+
+			crc.update(data, offset, length);
+
+			if (result.length - position < GZIP_TRAILER_SIZE) {
+				result = Arrays.copyOf(result, position + GZIP_TRAILER_SIZE);
+			}
+
+			writeInt((int) crc.getValue(), result, position);
+			writeInt(length, result, position + 4);
+			position += GZIP_TRAILER_SIZE;
+		}
+
+		return Arrays.copyOf(result, position);
+	}
+
+	/**
+	 * Returns a stream that compresses the data written to it and writes the
+	 * result to another stream. Flushing the returned stream flushes the
+	 * compressor so that the data written so far can be decompressed by the
+	 * receiver. Invoking {@link DeflaterOutputStream#finish()} completes the
+	 * compressed data without closing the target stream.
+	 *
+	 * @param encoding   The content encoding to apply
+	 * @param level      The compression level
+	 * @param output     The target stream for the compressed data
+	 * @param bufferSize The size of the output buffer
+	 * @return The compressing output stream
+	 * @throws IOException If writing the encoding header fails
+	 */
+	public static DeflaterOutputStream compress(ContentEncoding encoding,
+		int level, OutputStream output, int bufferSize) throws IOException {
+		Deflater deflater = getDeflater(encoding, level);
+
+		return encoding == ContentEncoding.GZIP ?
+		       new GzipOutputStream(output, deflater, bufferSize) :
+		       new ReusingDeflaterOutputStream(output, deflater, bufferSize);
+	}
+
+	/**
+	 * Determines the preferred content encoding from the values of the
+	 * Accept-Encoding header of a request. Encodings with a quality value of
+	 * zero are excluded. If gzip and deflate are accepted with the same
+	 * quality gzip will be preferred because it is supported more reliably by
+	 * clients.
+	 *
+	 * @param acceptEncoding The header values or NULL if not present
+	 * @return The preferred encoding or NULL if no supported encoding is
+	 * accepted
+	 */
+	public static ContentEncoding negotiate(List<String> acceptEncoding) {
+		ContentEncoding[] encodings = ContentEncoding.values();
+		double[] qualities = new double[encodings.length];
+		double wildcardQuality = -1;
+
+		Arrays.fill(qualities, -1);
+
+		if (acceptEncoding != null) {
+			for (String headerValue : acceptEncoding) {
+				for (String element : headerValue.split(",")) {
+					String[] parts = element.split(";");
+					String coding = parts[0].trim();
+
+					if ("*".equals(coding)) {
+						wildcardQuality = getQuality(parts);
+					} else {
+						for (ContentEncoding encoding : encodings) {
+							if (coding.equalsIgnoreCase(encoding.getName())) {
+								qualities[encoding.ordinal()] =
+									getQuality(parts);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		ContentEncoding result = null;
+		double bestQuality = 0;
+
+		for (ContentEncoding encoding : encodings) {
+			double quality = qualities[encoding.ordinal()];
+
+			if (quality < 0) {
+				quality = wildcardQuality;
+			}
+
+			if (quality > bestQuality) {
+				result = encoding;
+				bestQuality = quality;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the deflater of the current thread for a certain encoding,
+	 * prepared for the given compression level.
+	 *
+	 * @param encoding The content encoding
+	 * @param level    The compression level
+	 * @return The deflater
+	 */
+	private static Deflater getDeflater(ContentEncoding encoding,
+		int level) {
+		Deflater deflater = encoding == ContentEncoding.GZIP ?
+		                    gzipDeflater.get() :
+		                    zlibDeflater.get();
+
+		deflater.reset();
+		deflater.setLevel(level);
+
+		return deflater;
+	}
+
+	/**
+	 * Parses the quality value of an element of the Accept-Encoding header.
+	 *
+	 * @param parts The parts of the header element, split at semicolons
+	 * @return The quality value (1 if not present, 0 if invalid)
+	 */
+	private static double getQuality(String[] parts) {
+		for (int i = 1; i < parts.length; i++) {
+			String parameter = parts[i].trim();
+
+			if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+				try {
+					return Double.parseDouble(parameter.substring(2));
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+
+		return 1;
+	}
+
+	/**
+	 * Writes an integer value in little-endian byte order as required by the
+	 * gzip format.
+	 *
+	 * @param value    The value to write
+	 * @param target   The target array
+	 * @param position The position to write the value at
+	 */
+	private static void writeInt(int value, byte[] target, int position) {
+		for (int i = 0; i < 4; i++) {
+			target[position + i] = (byte) (value >>> (i * 8));
+		}
+	}
+
+	/**
+	 * Enumeration of the supported content encodings in the order of
+	 * preference.
+	 */
+	public enum ContentEncoding {
+		GZIP, DEFLATE;
+
+		/**
+		 * Returns the name of this encoding in HTTP headers.
+		 *
+		 * @return The encoding name
+		 */
+		public final String getName() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	 * A deflater output stream that finishes instead of closing the target
+	 * stream and doesn't release the (shared) deflater.
+	 *
+	 * @author eso
+	 */
+	private static class ReusingDeflaterOutputStream
+		extends DeflaterOutputStream {
+
+		private boolean closed = false;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param output     The target stream
+		 * @param deflater   The deflater to use
+		 * @param bufferSize The size of the output buffer
+		 */
+		ReusingDeflaterOutputStream(OutputStream output, Deflater deflater,
+			int bufferSize) {
+			super(output, deflater, bufferSize, true);
+		}
+
+		/**
+		 * Finishes this stream and flushes the target stream.
+		 *
+		 * @see DeflaterOutputStream#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				finish();
+				out.flush();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] data, int offset, int length)
+			throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+
+			super.write(data, offset, length);
+		}
+	}
+
+	/**
+	 * A deflater output stream that adds the gzip header and trailer.
+	 *
+	 * @author eso
+	 */
+	private static class GzipOutputStream extends ReusingDeflaterOutputStream {
+
+		private final CRC32 crc = new CRC32();
+
+		private boolean trailerWritten = false;
+
+		/**
+		 * Creates a new instance and writes the gzip header.
+		 *
+		 * @param output     The target stream
+		 * @param deflater   The deflater to use
+		 * @param bufferSize The size of the output buffer
+		 * @throws IOException If writing the header fails
+		 */
+		GzipOutputStream(OutputStream output, Deflater deflater,
+			int bufferSize) throws IOException {
+			super(output, deflater, bufferSize);
+
+			output.write(GZIP_HEADER);
+		}
+
+		/**
+		 * Finishes the compressed data and writes the gzip trailer.
+		 *
+		 * @see DeflaterOutputStream#finish()
+		 */
+		@Override
+		public void finish() throws IOException {
+			super.finish();
+
+			if (!trailerWritten) {
+				byte[] trailer = new byte[GZIP_TRAILER_SIZE];
+
+				trailerWritten = true;
+				writeInt((int) crc.getValue(), trailer, 0);
+				writeInt((int) def.getBytesRead(), trailer, 4);
+				out.write(trailer);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] data, int offset, int length)
+			throws IOException {
+			super.write(data, offset, length);
+			crc.update(data, offset, length);
+		}
+	}
+}
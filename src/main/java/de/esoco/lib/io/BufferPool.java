@@ -0,0 +1,313 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * A pool of I/O buffers that allows to reuse buffers instead of allocating
+ * new ones for each operation. Buffers are managed in size classes that are
+ * powers of two from {@link #MIN_BUFFER_SIZE} up to {@link #MAX_BUFFER_SIZE}.
+ * Requests for a certain size will be served with a buffer of the smallest
+ * size class that can hold that size, so the returned buffer can be larger
+ * than requested. Larger buffers are allocated on demand and not pooled.
+ *
+ * <p>The pool has two levels: each thread caches one buffer per size class
+ * and type which can be reused without any synchronization. Additional
+ * buffers are kept in shared lock-free queues up to a maximum number per size
+ * class. Buffers beyond that limit will be discarded on release.</p>
+ *
+ * <p>The pool manages byte arrays, char arrays, and direct byte buffers. Heap
+ * byte buffers wrap pooled byte arrays and are therefore interchangeable
+ * with them. Buffers that have been released must not be used anymore by the
+ * releasing code and must not be released twice.</p>
+ *
+ * @author eso
+ */
+public final class BufferPool {
+
+	/**
+	 * The size of the smallest size class.
+	 */
+	public static final int MIN_BUFFER_SIZE = 512;
+
+	/**
+	 * The size of the largest size class.
+	 */
+	public static final int MAX_BUFFER_SIZE = 256 * 1024;
+
+	private static final int MIN_SIZE_SHIFT =
+		Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+
+	private static final int SIZE_CLASSES =
+		Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SIZE_SHIFT + 1;
+
+	private static final BufferPool SHARED_POOL = new BufferPool(64);
+
+	private final Pool<byte[]> byteArrays;
+
+	private final Pool<char[]> charArrays;
+
+	private final Pool<ByteBuffer> directBuffers;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param maxSharedBuffers The maximum number of buffers per size class and
+	 *                         type that are kept in addition to the buffers
+	 *                         cached by threads
+	 * @throws IllegalArgumentException If the argument is negative
+	 */
+	public BufferPool(int maxSharedBuffers) {
+		if (maxSharedBuffers < 0) {
+			throw new IllegalArgumentException(
+				"Invalid buffer limit: " + maxSharedBuffers);
+		}
+
+		byteArrays = new Pool<>(byte[]::new, a -> a.length, maxSharedBuffers);
+		charArrays = new Pool<>(char[]::new, a -> a.length, maxSharedBuffers);
+		directBuffers = new Pool<>(ByteBuffer::allocateDirect,
+			ByteBuffer::capacity, maxSharedBuffers);
+	}
+
+	/**
+	 * Returns the buffer pool that is shared by all I/O code in the
+	 * application.
+	 *
+	 * @return The shared buffer pool
+	 */
+	public static BufferPool getShared() {
+		return SHARED_POOL;
+	}
+
+	/**
+	 * Returns a cleared byte buffer with at least the given capacity. Heap
+	 * buffers wrap a pooled byte array that is completely available.
+	 *
+	 * @param minCapacity The minimum buffer capacity
+	 * @param direct      TRUE for a direct buffer, FALSE for a heap buffer
+	 * @return A byte buffer with undefined content
+	 */
+	public ByteBuffer acquireBuffer(int minCapacity, boolean direct) {
+		ByteBuffer buffer;
+
+		if (direct) {
+			buffer = directBuffers.acquire(minCapacity);
+			buffer.clear();
+		} else {
+			buffer = ByteBuffer.wrap(byteArrays.acquire(minCapacity));
+		}
+
+		return buffer;
+	}
+
+	/**
+	 * Returns a byte array with at least the given size.
+	 *
+	 * @param minSize The minimum array size
+	 * @return A byte array with undefined content
+	 */
+	public byte[] acquireBytes(int minSize) {
+		return byteArrays.acquire(minSize);
+	}
+
+	/**
+	 * Returns a char array with at least the given size.
+	 *
+	 * @param minSize The minimum array size
+	 * @return A char array with undefined content
+	 */
+	public char[] acquireChars(int minSize) {
+		return charArrays.acquire(minSize);
+	}
+
+	/**
+	 * Returns a byte array to this pool.
+	 *
+	 * @param array The array to release
+	 */
+	public void release(byte[] array) {
+		byteArrays.release(array);
+	}
+
+	/**
+	 * Returns a char array to this pool.
+	 *
+	 * @param array The array to release
+	 */
+	public void release(char[] array) {
+		charArrays.release(array);
+	}
+
+	/**
+	 * Returns a byte buffer to this pool. Heap buffers will only be pooled if
+	 * they wrap a complete byte array, read-only buffers are always ignored.
+	 *
+	 * @param buffer The buffer to release
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer.isDirect()) {
+			if (!buffer.isReadOnly()) {
+				directBuffers.release(buffer);
+			}
+		} else if (buffer.hasArray() && buffer.arrayOffset() == 0 &&
+			buffer.capacity() == buffer.array().length) {
+			byteArrays.release(buffer.array());
+		}
+	}
+
+	/**
+	 * Returns the size class for a buffer size.
+	 *
+	 * @param size  The buffer size
+	 * @param exact TRUE if the size must match the size class exactly
+	 * @return The size class index or -1 if the size is not pooled
+	 */
+	static int getSizeClass(int size, boolean exact) {
+		int sizeClass = -1;
+
+		if (size <= MIN_BUFFER_SIZE) {
+			sizeClass = exact && size != MIN_BUFFER_SIZE ? -1 : 0;
+		} else if (size <= MAX_BUFFER_SIZE) {
+			sizeClass = 32 - Integer.numberOfLeadingZeros(size - 1) -
+				MIN_SIZE_SHIFT;
+
+			if (exact && size != getClassSize(sizeClass)) {
+				sizeClass = -1;
+			}
+		}
+
+		return sizeClass;
+	}
+
+	/**
+	 * Returns the buffer size of a size class.
+	 *
+	 * @param sizeClass The size class index
+	 * @return The buffer size
+	 */
+	private static int getClassSize(int sizeClass) {
+		return MIN_BUFFER_SIZE << sizeClass;
+	}
+
+	/**
+	 * The two-level pool of a certain buffer type.
+	 *
+	 * @author eso
+	 */
+	private static class Pool<T> {
+
+		private final IntFunction<T> factory;
+
+		private final ToIntFunction<T> sizeFunction;
+
+		private final int maxShared;
+
+		private final ThreadLocal<Object[]> threadBuffers =
+			ThreadLocal.withInitial(() -> new Object[SIZE_CLASSES]);
+
+		private final Queue<T>[] sharedBuffers;
+
+		private final AtomicInteger[] sharedCounts;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param factory      The function that creates a new buffer of a
+		 *                     certain size
+		 * @param sizeFunction The function that returns the size of a buffer
+		 * @param maxShared    The maximum number of shared buffers per size
+		 *                     class
+		 */
+		@SuppressWarnings("unchecked")
+		Pool(IntFunction<T> factory, ToIntFunction<T> sizeFunction,
+			int maxShared) {
+			this.factory = factory;
+			this.sizeFunction = sizeFunction;
+			this.maxShared = maxShared;
+
+			sharedBuffers = new Queue[SIZE_CLASSES];
+			sharedCounts = new AtomicInteger[SIZE_CLASSES];
+
+			for (int i = 0; i < SIZE_CLASSES; i++) {
+				sharedBuffers[i] = new ConcurrentLinkedQueue<>();
+				sharedCounts[i] = new AtomicInteger();
+			}
+		}
+
+		/**
+		 * Returns a buffer with at least the given size.
+		 *
+		 * @param minSize The minimum buffer size
+		 * @return The buffer
+		 */
+		@SuppressWarnings("unchecked")
+		T acquire(int minSize) {
+			int sizeClass = getSizeClass(minSize, false);
+
+			if (sizeClass < 0) {
+				return factory.apply(minSize);
+			}
+
+			Object[] local = threadBuffers.get();
+			T buffer = (T) local[sizeClass];
+
+			if (buffer != null) {
+				local[sizeClass] = null;
+			} else {
+				buffer = sharedBuffers[sizeClass].poll();
+
+				if (buffer != null) {
+					sharedCounts[sizeClass].decrementAndGet();
+				} else {
+					buffer = factory.apply(getClassSize(sizeClass));
+				}
+			}
+
+			return buffer;
+		}
+
+		/**
+		 * Returns a buffer to this pool if it has the size of a size class
+		 * and the pool limit has not been reached.
+		 *
+		 * @param buffer The buffer to release
+		 */
+		void release(T buffer) {
+			int sizeClass =
+				getSizeClass(sizeFunction.applyAsInt(buffer), true);
+
+			if (sizeClass >= 0) {
+				Object[] local = threadBuffers.get();
+
+				if (local[sizeClass] == null) {
+					local[sizeClass] = buffer;
+				} else if (sharedCounts[sizeClass].incrementAndGet() <=
+					maxShared) {
+					sharedBuffers[sizeClass].offer(buffer);
+				} else {
+					sharedCounts[sizeClass].decrementAndGet();
+				}
+			}
+		}
+	}
+}
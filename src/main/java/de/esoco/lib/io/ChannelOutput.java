@@ -0,0 +1,66 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * An interface for outputs (typically output streams) that can receive the
+ * contents of files directly from a {@link FileChannel}. Implementations
+ * that write to a socket channel can use
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * to let the operating system transfer the data without copying it into the
+ * Java heap. {@link StreamUtil#send(FileChannel, long, long, java.io.OutputStream)}
+ * makes use of this interface if the target stream implements it.
+ *
+ * <p>Multiple byte buffers can be written with
+ * {@link #transferFrom(ByteBuffer[])} which allows implementations to send
+ * them with a single {@link GatheringByteChannel#write(ByteBuffer[])}, e.g.
+ * the header and the body of a response. This is used by
+ * {@link StreamUtil#send(ByteBuffer[], java.io.OutputStream)}.</p>
+ *
+ * @author eso
+ */
+public interface ChannelOutput {
+
+	/**
+	 * Transfers the remaining data of multiple byte buffers to this output in
+	 * the order of the array. The positions of the buffers will be advanced
+	 * to their limits. Any data that has been buffered by this output must be
+	 * written before the buffer data.
+	 *
+	 * @param buffers The buffers to transfer
+	 * @throws IOException If writing the data fails
+	 */
+	void transferFrom(ByteBuffer[] buffers) throws IOException;
+
+	/**
+	 * Transfers a region of a file to this output. Any data that has been
+	 * buffered by this output must be written before the file data.
+	 *
+	 * @param source   The channel of the file to transfer
+	 * @param position The file position to start the transfer at
+	 * @param count    The number of bytes to transfer
+	 * @throws IOException If reading the file or writing the data fails or if
+	 *                     the file contains less than the requested data
+	 */
+	void transferFrom(FileChannel source, long position, long count)
+		throws IOException;
+}
@@ -23,7 +23,16 @@ import java.io.OutputStream;
 
 /**
  * An input stream that echos all bytes that are read from a wrapped input
- * stream to an output stream.
+ * stream to an output stream. The echo follows the position in the stream:
+ *
+ * <ul>
+ *   <li>If the wrapped stream supports {@link #mark(int)} and
+ *     {@link #reset()} each byte will only be echoed once, even if it is read
+ *     again after a reset.</li>
+ *   <li>Bytes that are skipped with {@link #skip(long)} will not be echoed,
+ *     also not if they are read after a reset to a position before the
+ *     skipped bytes.</li>
+ * </ul>
  *
  * @author eso
  */
@@ -31,6 +40,12 @@ public class EchoInputStream extends FilterInputStream {
 
 	private final OutputStream echoStream;
 
+	private long position = 0;
+
+	private long markPosition = 0;
+
+	private long echoPosition = 0;
+
 	/**
 	 * Creates a new instance.
 	 *
@@ -44,6 +59,17 @@ public class EchoInputStream extends FilterInputStream {
 		this.echoStream = echoStream;
 	}
 
+	/**
+	 * Marks the current position for a subsequent {@link #reset()}.
+	 *
+	 * @see FilterInputStream#mark(int)
+	 */
+	@Override
+	public synchronized void mark(int readLimit) {
+		super.mark(readLimit);
+		markPosition = position;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -52,8 +78,12 @@ public class EchoInputStream extends FilterInputStream {
 		int b = super.read();
 
 		if (b >= 0) {
-			echoStream.write(b);
+			if (position++ == echoPosition) {
+				echoStream.write(b);
+				echoPosition++;
+			}
 		}
+
 		return b;
 	}
 
@@ -64,9 +94,48 @@ public class EchoInputStream extends FilterInputStream {
 	public int read(byte[] buffer, int offset, int length) throws IOException {
 		int read = super.read(buffer, offset, length);
 
-		if (read >= 0) {
-			echoStream.write(buffer, offset, read);
+		if (read > 0) {
+			long end = position + read;
+
+			if (end > echoPosition) {
+				int echoed = (int) Math.max(echoPosition - position, 0);
+
+				echoStream.write(buffer, offset + echoed, read - echoed);
+				echoPosition = end;
+			}
+
+			position = end;
 		}
+
 		return read;
 	}
+
+	/**
+	 * Resets the position to the last mark. Bytes that are read again after
+	 * the reset will not be echoed again.
+	 *
+	 * @see FilterInputStream#reset()
+	 */
+	@Override
+	public synchronized void reset() throws IOException {
+		super.reset();
+		position = markPosition;
+	}
+
+	/**
+	 * Skips bytes without echoing them.
+	 *
+	 * @see FilterInputStream#skip(long)
+	 */
+	@Override
+	public long skip(long count) throws IOException {
+		long skipped = super.skip(count);
+
+		if (skipped > 0) {
+			position += skipped;
+			echoPosition = Math.max(echoPosition, position);
+		}
+
+		return skipped;
+	}
 }
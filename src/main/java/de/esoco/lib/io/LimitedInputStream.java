@@ -22,13 +22,22 @@ import java.io.InputStream;
 
 /**
  * An input stream wrapper that limits the number of bytes that can be read from
- * the stream. It limits all (and only) bytes read from the stream, even if the
- * {@link #mark(int)} and {@link #reset()} methods are used. Bytes ignored by
- * invoking the {@link #skip(long)} method will not count against the limit.
+ * the stream. The limit applies to the position in the stream and not to the
+ * number of read invocations:
  *
- * <p>If the limit is exceeded any further attempt at reading from the stream
- * will throw a {@link StreamLimitException}. The remaining limit can be queried
- * with the {@link #getRemainingLimit()} method.</p>
+ * <ul>
+ *   <li>Bytes that are skipped with {@link #skip(long)} count against the
+ *     limit like read bytes. A skip will not advance beyond the limit.</li>
+ *   <li>If the wrapped stream supports {@link #mark(int)} and
+ *     {@link #reset()} the remaining limit is restored on a reset so that
+ *     bytes which are read again after the reset don't count twice.</li>
+ * </ul>
+ *
+ * <p>Reads are truncated at the limit so that exactly the given number of
+ * bytes can be read. After the limit has been reached any further attempt at
+ * reading from the stream will throw a {@link StreamLimitException}. The
+ * remaining limit can be queried with the {@link #getRemainingLimit()}
+ * method.</p>
  *
  * @author eso
  */
@@ -36,6 +45,8 @@ public class LimitedInputStream extends FilterInputStream {
 
 	private int remainingLength;
 
+	private int markedLength;
+
 	/**
 	 * Creates a new instance.
 	 *
@@ -47,6 +58,7 @@ public class LimitedInputStream extends FilterInputStream {
 		super(wrappedStream);
 
 		remainingLength = max;
+		markedLength = max;
 	}
 
 	/**
@@ -58,15 +70,32 @@ public class LimitedInputStream extends FilterInputStream {
 		return remainingLength;
 	}
 
+	/**
+	 * Marks the current position and stores the remaining limit for a
+	 * subsequent {@link #reset()}.
+	 *
+	 * @see FilterInputStream#mark(int)
+	 */
+	@Override
+	public synchronized void mark(int readLimit) {
+		super.mark(readLimit);
+		markedLength = remainingLength;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public int read() throws IOException {
 		checkLimit();
-		remainingLength--;
 
-		return super.read();
+		int b = super.read();
+
+		if (b >= 0) {
+			remainingLength--;
+		}
+
+		return b;
 	}
 
 	/**
@@ -82,11 +111,42 @@ public class LimitedInputStream extends FilterInputStream {
 
 		int read = super.read(buffer, offset, length);
 
-		remainingLength -= read;
+		if (read > 0) {
+			remainingLength -= read;
+		}
 
 		return read;
 	}
 
+	/**
+	 * Resets the position to the last mark and restores the remaining limit
+	 * of that position.
+	 *
+	 * @see FilterInputStream#reset()
+	 */
+	@Override
+	public synchronized void reset() throws IOException {
+		super.reset();
+		remainingLength = markedLength;
+	}
+
+	/**
+	 * Skips bytes up to the remaining limit. The skipped bytes count against
+	 * the limit.
+	 *
+	 * @see FilterInputStream#skip(long)
+	 */
+	@Override
+	public long skip(long count) throws IOException {
+		long skipped = super.skip(Math.min(count, remainingLength));
+
+		if (skipped > 0) {
+			remainingLength -= skipped;
+		}
+
+		return skipped;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -19,19 +19,27 @@ package de.esoco.lib.io;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * An output stream wrapper that limits the number of bytes that can be written
  * to the stream. If the limit is exceeded any further attempt at writing to the
  * stream will throw a {@link StreamLimitException}. The remaining limit can be
- * queried with the {@link #getRemainingLimit()} method.
+ * queried with the {@link #getRemainingLimit()} method. Write operations that
+ * would exceed the limit are rejected completely. The number of bytes that
+ * have actually been written to the wrapped stream can therefore be queried
+ * separately with {@link #getBytesWritten()}.
  *
  * @author eso
  */
-public class LimitedOutputStream extends FilterOutputStream {
+public class LimitedOutputStream extends FilterOutputStream
+	implements ChannelOutput {
 
 	private int remainingLimit;
 
+	private int bytesWritten = 0;
+
 	/**
 	 * Creates a new instance.
 	 *
@@ -45,6 +53,17 @@ public class LimitedOutputStream extends FilterOutputStream {
 		remainingLimit = maxBytes;
 	}
 
+	/**
+	 * Returns the number of bytes that have been written to the wrapped
+	 * stream. In contrast to the remaining limit this will not include the
+	 * size of a write operation that exceeded the limit.
+	 *
+	 * @return The number of bytes written
+	 */
+	public int getBytesWritten() {
+		return bytesWritten;
+	}
+
 	/**
 	 * Returns the remaining limit that can be written.
 	 *
@@ -64,6 +83,70 @@ public class LimitedOutputStream extends FilterOutputStream {
 			remainingLimit, out);
 	}
 
+	/**
+	 * Transfers the buffer data to the wrapped stream with
+	 * {@link StreamUtil#send(ByteBuffer[], OutputStream)} if it is within the
+	 * remaining limit.
+	 *
+	 * @see ChannelOutput#transferFrom(ByteBuffer[])
+	 */
+	@Override
+	public void transferFrom(ByteBuffer[] buffers) throws IOException {
+		long count = 0;
+
+		for (ByteBuffer buffer : buffers) {
+			count += buffer.remaining();
+		}
+
+		if (count > remainingLimit) {
+			remainingLimit = -1;
+			throw new StreamLimitException("Output limit reached", false);
+		}
+
+		remainingLimit -= count;
+		StreamUtil.send(buffers, out);
+		bytesWritten += count;
+	}
+
+	/**
+	 * Transfers the file data to the wrapped stream with
+	 * {@link StreamUtil#send(FileChannel, long, long, OutputStream)} if it is
+	 * within the remaining limit.
+	 *
+	 * @see ChannelOutput#transferFrom(FileChannel, long, long)
+	 */
+	@Override
+	public void transferFrom(FileChannel source, long position, long count)
+		throws IOException {
+		if (count > remainingLimit) {
+			remainingLimit = -1;
+			throw new StreamLimitException("Output limit reached", false);
+		}
+
+		remainingLimit -= count;
+		StreamUtil.send(source, position, count, out);
+		bytesWritten += count;
+	}
+
+	/**
+	 * Overridden to write the complete data to the wrapped stream if it is
+	 * within the remaining limit.
+	 *
+	 * @see FilterOutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] data, int offset, int length)
+		throws IOException {
+		if (length > remainingLimit) {
+			remainingLimit = -1;
+			throw new StreamLimitException("Output limit reached", false);
+		}
+
+		remainingLimit -= length;
+		out.write(data, offset, length);
+		bytesWritten += length;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -71,6 +154,7 @@ public class LimitedOutputStream extends FilterOutputStream {
 	public void write(int b) throws IOException {
 		if (remainingLimit-- > 0) {
 			super.write(b);
+			bytesWritten++;
 		} else {
 			throw new StreamLimitException("Output limit reached", false);
 		}
@@ -0,0 +1,225 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A buffered output stream that uses a buffer from a {@link BufferPool}. The
+ * buffer is returned to the pool when the stream is closed. Closing this
+ * stream flushes the buffered data but doesn't close the wrapped stream which
+ * typically belongs to a connection that may be reused. The stream must not
+ * be used after it has been closed.
+ *
+ * <p>Unlike {@link java.io.BufferedOutputStream} the methods of this class
+ * are not synchronized because the stream is typically used by a single
+ * thread.</p>
+ *
+ * <p>If the wrapped stream implements {@link ChannelOutput} data that doesn't
+ * fit into the buffer is transferred together with the buffered data so
+ * that both can be sent with a single gathering write. This allows to send
+ * a protocol header that has been written into the buffer and a large
+ * message body with one system call.</p>
+ *
+ * @author eso
+ */
+public class PooledOutputStream extends FilterOutputStream {
+
+	private final BufferPool pool;
+
+	private byte[] buffer;
+
+	private int count = 0;
+
+	/**
+	 * Creates a new instance with a buffer from the shared pool.
+	 *
+	 * @param output     The stream to write the buffered data to
+	 * @param bufferSize The minimal buffer size
+	 */
+	public PooledOutputStream(OutputStream output, int bufferSize) {
+		this(output, bufferSize, BufferPool.getShared());
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param output     The stream to write the buffered data to
+	 * @param bufferSize The minimal buffer size
+	 * @param pool       The pool to acquire the buffer from
+	 */
+	public PooledOutputStream(OutputStream output, int bufferSize,
+		BufferPool pool) {
+		super(output);
+
+		this.pool = pool;
+
+		buffer = pool.acquireBytes(bufferSize);
+	}
+
+	/**
+	 * Flushes the buffered data and returns the buffer to the pool. Further
+	 * invocations will be ignored.
+	 *
+	 * @throws IOException If writing the buffered data fails
+	 */
+	@Override
+	public void close() throws IOException {
+		if (buffer != null) {
+			try {
+				flush();
+			} finally {
+				pool.release(buffer);
+				buffer = null;
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() throws IOException {
+		writeBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Returns the buffer to the pool without writing the buffered data. This
+	 * can be used to discard incomplete data after an error. Further
+	 * invocations of this method or of {@link #close()} will be ignored.
+	 */
+	public void release() {
+		if (buffer != null) {
+			pool.release(buffer);
+			buffer = null;
+			count = 0;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		if (count == buffer.length) {
+			writeBuffer();
+		}
+
+		buffer[count++] = (byte) b;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(byte[] data, int offset, int length)
+		throws IOException {
+		if (length >= buffer.length) {
+			// no need to copy large data into the buffer
+			if (count > 0 && out instanceof ChannelOutput) {
+				transferWithBuffer(ByteBuffer.wrap(data, offset, length));
+			} else {
+				writeBuffer();
+				out.write(data, offset, length);
+			}
+		} else {
+			if (length > buffer.length - count) {
+				writeBuffer();
+			}
+
+			System.arraycopy(data, offset, buffer, count, length);
+			count += length;
+		}
+	}
+
+	/**
+	 * Writes the remaining data of a byte buffer and advances it's position
+	 * to the limit. Data that doesn't fit into the stream buffer will be
+	 * transferred together with the buffered data if the wrapped stream
+	 * implements {@link ChannelOutput}.
+	 *
+	 * @param data The buffer containing the data to write
+	 * @throws IOException If writing fails
+	 */
+	public void write(ByteBuffer data) throws IOException {
+		int length = data.remaining();
+
+		if (length <= buffer.length - count) {
+			data.get(buffer, count, length);
+			count += length;
+		} else if (out instanceof ChannelOutput) {
+			transferWithBuffer(data);
+		} else {
+			writeBuffer();
+			StreamUtil.send(new ByteBuffer[] { data }, out);
+		}
+	}
+
+	/**
+	 * Writes a string that only contains ASCII characters. Other characters
+	 * will be replaced with '?'. This avoids the allocation of a byte array
+	 * or an encoding writer for the ASCII text of protocol headers.
+	 *
+	 * @param text The text to write
+	 * @throws IOException If writing fails
+	 */
+	public void writeAscii(String text) throws IOException {
+		int length = text.length();
+
+		for (int i = 0; i < length; i++) {
+			if (count == buffer.length) {
+				writeBuffer();
+			}
+
+			char c = text.charAt(i);
+
+			buffer[count++] = (byte) (c < 128 ? c : '?');
+		}
+	}
+
+	/**
+	 * Transfers the buffered data together with additional data to the
+	 * wrapped stream which must implement {@link ChannelOutput}.
+	 *
+	 * @param data The additional data to transfer after the buffered data
+	 * @throws IOException If writing fails
+	 */
+	private void transferWithBuffer(ByteBuffer data) throws IOException {
+		try {
+			((ChannelOutput) out).transferFrom(
+				new ByteBuffer[] { ByteBuffer.wrap(buffer, 0, count), data });
+		} finally {
+			count = 0;
+		}
+	}
+
+	/**
+	 * Writes the buffered data to the wrapped stream.
+	 *
+	 * @throws IOException If writing fails
+	 */
+	private void writeBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
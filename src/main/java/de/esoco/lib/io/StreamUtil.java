@@ -25,6 +25,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Class containing tools for access to IO streams.
@@ -33,6 +35,8 @@ import java.io.Writer;
  */
 public final class StreamUtil {
 
+	private static final BufferPool BUFFER_POOL = BufferPool.getShared();
+
 	/**
 	 * Invokes {@link #find(InputStream, byte[], int, ReadHandler)} with no
 	 * read
@@ -181,14 +185,18 @@ public final class StreamUtil {
 		}
 
 		ByteArray readBuffer = new ByteArray(bufferSize);
-		byte[] bytes = new byte[bufferSize];
+		byte[] bytes = BUFFER_POOL.acquireBytes(bufferSize);
 		int readMax = Math.min(max, bufferSize);
 		int count;
 
-		while (max > 0 && (count = in.read(bytes, 0, readMax)) != -1) {
-			readBuffer.add(bytes, 0, count);
-			max -= count;
-			readMax = Math.min(max, bufferSize);
+		try {
+			while (max > 0 && (count = in.read(bytes, 0, readMax)) != -1) {
+				readBuffer.add(bytes, 0, count);
+				max -= count;
+				readMax = Math.min(max, bufferSize);
+			}
+		} finally {
+			BUFFER_POOL.release(bytes);
 		}
 
 		return readBuffer.toByteArray();
@@ -215,14 +223,18 @@ public final class StreamUtil {
 		}
 
 		StringBuilder result = new StringBuilder(bufferSize);
-		char[] buffer = new char[bufferSize];
+		char[] buffer = BUFFER_POOL.acquireChars(bufferSize);
 		int readMax = Math.min(max, bufferSize);
 		int count;
 
-		while (max > 0 && (count = in.read(buffer, 0, readMax)) != -1) {
-			result.append(buffer, 0, count);
-			max -= count;
-			readMax = Math.min(max, bufferSize);
+		try {
+			while (max > 0 && (count = in.read(buffer, 0, readMax)) != -1) {
+				result.append(buffer, 0, count);
+				max -= count;
+				readMax = Math.min(max, bufferSize);
+			}
+		} finally {
+			BUFFER_POOL.release(buffer);
 		}
 
 		return result.toString();
@@ -332,9 +344,8 @@ public final class StreamUtil {
 
 	/**
 	 * Sends the data from an input stream to an output stream. This method
-	 * uses
-	 * a buffer of 8K for the transfer so it is not necessary to wrap the
-	 * streams in buffered streams.
+	 * uses a pooled buffer of 8K for the transfer so it is not necessary to
+	 * wrap the streams in buffered streams.
 	 *
 	 * @param input  The input stream to read the data to send from
 	 * @param output The target output stream
@@ -343,23 +354,112 @@ public final class StreamUtil {
 	 */
 	public static long send(InputStream input, OutputStream output)
 		throws IOException {
-		byte[] buffer = new byte[1024 * 8];
+		byte[] buffer = BUFFER_POOL.acquireBytes(1024 * 8);
 		long count = 0;
 		int read = 0;
 
-		while ((read = input.read(buffer)) != -1) {
-			output.write(buffer, 0, read);
-			count += read;
+		try {
+			while ((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+				count += read;
+			}
+		} finally {
+			BUFFER_POOL.release(buffer);
 		}
 
 		return count;
 	}
 
 	/**
-	 * Sends the data from a reader to a writer. This method uses a buffer
-	 * of 8K
-	 * for the transfer so it is not necessary to wrap the streams in buffered
-	 * streams.
+	 * Sends the remaining data of multiple byte buffers to an output stream.
+	 * If the stream implements {@link ChannelOutput} the transfer will be
+	 * delegated to it so that it can write all buffers at once. Otherwise the
+	 * data of each buffer will be written separately, through a pooled buffer
+	 * of up to 64K if the buffer is not backed by an array. The positions of
+	 * the buffers will be advanced to their limits.
+	 *
+	 * @param buffers The buffers to send
+	 * @param output  The target output stream
+	 * @throws IOException If writing to the stream fails
+	 */
+	public static void send(ByteBuffer[] buffers, OutputStream output)
+		throws IOException {
+		if (output instanceof ChannelOutput) {
+			((ChannelOutput) output).transferFrom(buffers);
+		} else {
+			for (ByteBuffer data : buffers) {
+				if (data.hasArray()) {
+					output.write(data.array(),
+						data.arrayOffset() + data.position(), data.remaining());
+					data.position(data.limit());
+				} else if (data.hasRemaining()) {
+					byte[] chunk = BUFFER_POOL.acquireBytes(
+						Math.min(data.remaining(), 1024 * 64));
+
+					try {
+						while (data.hasRemaining()) {
+							int length = Math.min(data.remaining(),
+								chunk.length);
+
+							data.get(chunk, 0, length);
+							output.write(chunk, 0, length);
+						}
+					} finally {
+						BUFFER_POOL.release(chunk);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends a region of a file to an output stream. If the stream implements
+	 * {@link ChannelOutput} the transfer will be delegated to it so that it
+	 * can send the file data without copying. Otherwise the data will be
+	 * copied through a pooled buffer of up to 64K.
+	 *
+	 * @param input    The channel of the file to send
+	 * @param position The file position to start at
+	 * @param count    The number of bytes to send
+	 * @param output   The target output stream
+	 * @throws IOException If a stream access fails or if the file ends
+	 *                     before the given number of bytes has been sent
+	 */
+	public static void send(FileChannel input, long position, long count,
+		OutputStream output) throws IOException {
+		if (output instanceof ChannelOutput) {
+			((ChannelOutput) output).transferFrom(input, position, count);
+		} else {
+			ByteBuffer buffer = BUFFER_POOL.acquireBuffer(
+				(int) Math.min(count, 1024 * 64), false);
+			long end = position + count;
+
+			try {
+				while (position < end) {
+					buffer.clear();
+					buffer.limit(
+						(int) Math.min(buffer.capacity(), end - position));
+
+					int read = input.read(buffer, position);
+
+					if (read < 0) {
+						throw new EOFException(
+							"File ended at position " + position);
+					}
+
+					output.write(buffer.array(), 0, read);
+					position += read;
+				}
+			} finally {
+				BUFFER_POOL.release(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Sends the data from a reader to a writer. This method uses a pooled
+	 * buffer of 8K for the transfer so it is not necessary to wrap the streams
+	 * in buffered streams.
 	 *
 	 * @param input  The reader to read the data to send from
 	 * @param output The target writer
@@ -367,13 +467,17 @@ public final class StreamUtil {
 	 * @throws IOException If a stream access fails
 	 */
 	public static long send(Reader input, Writer output) throws IOException {
-		char[] buffer = new char[1024 * 8];
+		char[] buffer = BUFFER_POOL.acquireChars(1024 * 8);
 		long count = 0;
 		int read = 0;
 
-		while ((read = input.read(buffer)) != -1) {
-			output.write(buffer, 0, read);
-			count += read;
+		try {
+			while ((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+				count += read;
+			}
+		} finally {
+			BUFFER_POOL.release(buffer);
 		}
 
 		return count;
@@ -0,0 +1,344 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.security;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded cache of credentials that have been verified successfully by an
+ * {@link AuthenticationService}. It allows to skip the expensive verification
+ * of credentials that are sent repeatedly (e.g. with HTTP basic
+ * authentication on each request) for a limited time.
+ *
+ * <p>The credentials are not stored in the cache. Instead they are mapped to
+ * a keyed hash (HMAC-SHA256) with a random key that is generated for each
+ * cache instance and never leaves it. Entries expire after a fixed time to
+ * live which also defines how long a revoked credential can still be used if
+ * the cache is not invalidated explicitly. Applications should therefore
+ * invoke {@link #invalidate(String)} or {@link #invalidateUser(String)} if
+ * credentials change or access is revoked, or {@link #invalidateAll()} to
+ * enforce a full re-authentication of all users.</p>
+ *
+ * <p>A credential that is verified while the user is invalidated must not be
+ * added afterwards because the verification may have used the revoked data.
+ * Therefore authentication code should query {@link #getGeneration(String)}
+ * before the verification and add the credential with
+ * {@link #add(String, String, long)} which ignores it if the user (or the
+ * whole cache) has been invalidated in the meantime. The generations are
+ * tracked in a fixed number of stripes so that invalidating a user can
+ * occasionally prevent the caching of another user's credential too.</p>
+ *
+ * <p>If the maximum size is reached expired entries will be removed. If that
+ * is not sufficient the entry that expires first will be evicted. All
+ * methods can be invoked concurrently.</p>
+ *
+ * @author eso
+ */
+public final class CredentialCache {
+
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+	private static final int GENERATION_STRIPES = 64;
+
+	private final ConcurrentMap<String, Entry> entries =
+		new ConcurrentHashMap<>();
+
+	private final int maxSize;
+
+	private final long timeToLive;
+
+	private final ThreadLocal<Mac> threadMac;
+
+	private final AtomicLong cacheGeneration = new AtomicLong();
+
+	private final AtomicLongArray userGenerations =
+		new AtomicLongArray(GENERATION_STRIPES);
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param maxSize    The maximum number of cached credentials
+	 * @param timeToLive The time in milliseconds for which a verified
+	 *                   credential will be cached
+	 * @throws IllegalArgumentException If one of the arguments is not
+	 *                                  positive
+	 */
+	public CredentialCache(int maxSize, long timeToLive) {
+		if (maxSize <= 0 || timeToLive <= 0) {
+			throw new IllegalArgumentException(
+				"Size and time to live must be positive");
+		}
+
+		byte[] key = new byte[32];
+
+		new SecureRandom().nextBytes(key);
+
+		SecretKeySpec secretKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+
+		this.maxSize = maxSize;
+		this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+
+		threadMac = ThreadLocal.withInitial(() -> {
+			try {
+				Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+
+				mac.init(secretKey);
+
+				return mac;
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	/**
+	 * Adds a credential that has been verified successfully. If the user can
+	 * be invalidated concurrently {@link #add(String, String, long)} should
+	 * be used instead.
+	 *
+	 * @param credential The credential (e.g. an HTTP authorization header)
+	 * @param loginName  The login name the credential belongs to or NULL if
+	 *                   not known
+	 */
+	public void add(String credential, String loginName) {
+		long now = System.nanoTime();
+
+		if (entries.size() >= maxSize) {
+			evict(now);
+		}
+
+		entries.put(hash(credential), new Entry(loginName, now + timeToLive));
+	}
+
+	/**
+	 * Adds a credential that has been verified successfully unless the user
+	 * or the cache has been invalidated since the verification has started.
+	 *
+	 * @param credential The credential (e.g. an HTTP authorization header)
+	 * @param loginName  The login name the credential belongs to or NULL if
+	 *                   not known
+	 * @param generation The generation of the user that has been queried
+	 *                   with {@link #getGeneration(String)} before the
+	 *                   verification
+	 * @return TRUE if the credential has been added, FALSE if it has been
+	 * ignored because of an invalidation
+	 */
+	public boolean add(String credential, String loginName, long generation) {
+		if (getGeneration(loginName) != generation) {
+			return false;
+		}
+
+		long now = System.nanoTime();
+		String key = hash(credential);
+		Entry entry = new Entry(loginName, now + timeToLive);
+
+		if (entries.size() >= maxSize) {
+			evict(now);
+		}
+
+		entries.put(key, entry);
+
+		// remove again if invalidated concurrently
+		if (getGeneration(loginName) != generation) {
+			entries.remove(key, entry);
+
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks whether a credential has been verified and has not expired yet.
+	 *
+	 * @param credential The credential to check
+	 * @return TRUE if the credential is valid, FALSE if it needs to be
+	 * verified
+	 */
+	public boolean contains(String credential) {
+		String key = hash(credential);
+		Entry entry = entries.get(key);
+
+		if (entry != null && entry.isExpired(System.nanoTime())) {
+			entries.remove(key, entry);
+			entry = null;
+		}
+
+		return entry != null;
+	}
+
+	/**
+	 * Returns the invalidation generation of a user. The generation changes
+	 * each time the user or the whole cache is invalidated and must be
+	 * queried before a credential of the user is verified.
+	 *
+	 * @param loginName The login name of the user or NULL if not known
+	 * @return The current generation
+	 * @see #add(String, String, long)
+	 */
+	public long getGeneration(String loginName) {
+		return cacheGeneration.get() +
+			userGenerations.get(getGenerationStripe(loginName));
+	}
+
+	/**
+	 * Returns the maximum number of cached credentials.
+	 *
+	 * @return The maximum size
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the current number of cached credentials, including expired
+	 * entries that have not been removed yet.
+	 *
+	 * @return The cache size
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Removes a certain credential from the cache.
+	 *
+	 * @param credential The credential to remove
+	 */
+	public void invalidate(String credential) {
+		entries.remove(hash(credential));
+	}
+
+	/**
+	 * Removes all cached credentials.
+	 */
+	public void invalidateAll() {
+		cacheGeneration.incrementAndGet();
+		entries.clear();
+	}
+
+	/**
+	 * Removes all cached credentials of a certain user.
+	 *
+	 * @param loginName The login name of the user
+	 */
+	public void invalidateUser(String loginName) {
+		// prevents concurrent authentications from adding credentials they
+		// verified before
+		userGenerations.incrementAndGet(getGenerationStripe(loginName));
+		entries.values().removeIf(entry -> loginName.equals(entry.loginName));
+	}
+
+	/**
+	 * Removes expired entries and, if the cache is still full, the entry that
+	 * expires first.
+	 *
+	 * @param now The current time in nanoseconds
+	 */
+	private void evict(long now) {
+		Map.Entry<String, Entry> oldest = null;
+		Iterator<Map.Entry<String, Entry>> iterator =
+			entries.entrySet().iterator();
+
+		while (iterator.hasNext()) {
+			Map.Entry<String, Entry> mapEntry = iterator.next();
+			Entry entry = mapEntry.getValue();
+
+			if (entry.isExpired(now)) {
+				iterator.remove();
+			} else if (oldest == null ||
+				entry.expiry - oldest.getValue().expiry < 0) {
+				oldest = mapEntry;
+			}
+		}
+
+		if (oldest != null && entries.size() >= maxSize) {
+			entries.remove(oldest.getKey(), oldest.getValue());
+		}
+	}
+
+	/**
+	 * Returns the index of the generation stripe of a user.
+	 *
+	 * @param loginName The login name or NULL for none
+	 * @return The stripe index
+	 */
+	private int getGenerationStripe(String loginName) {
+		return loginName != null ?
+		       (loginName.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES :
+		       0;
+	}
+
+	/**
+	 * Calculates the keyed hash of a credential.
+	 *
+	 * @param credential The credential
+	 * @return The hash value in base64 encoding
+	 */
+	private String hash(String credential) {
+		byte[] hash = threadMac
+			.get()
+			.doFinal(credential.getBytes(StandardCharsets.UTF_8));
+
+		return Base64.getEncoder().withoutPadding().encodeToString(hash);
+	}
+
+	/**
+	 * A cache entry.
+	 *
+	 * @author eso
+	 */
+	private static class Entry {
+
+		private final String loginName;
+
+		private final long expiry;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param loginName The login name or NULL for none
+		 * @param expiry    The expiration time in nanoseconds
+		 */
+		Entry(String loginName, long expiry) {
+			this.loginName = loginName;
+			this.expiry = expiry;
+		}
+
+		/**
+		 * Checks whether this entry has expired.
+		 *
+		 * @param now The current time in nanoseconds
+		 * @return TRUE if expired
+		 */
+		boolean isExpired(long now) {
+			return now - expiry >= 0;
+		}
+	}
+}
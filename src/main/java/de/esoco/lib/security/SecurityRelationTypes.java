@@ -86,6 +86,15 @@ public class SecurityRelationTypes {
 	public static final RelationType<AuthenticationService>
 		AUTHENTICATION_SERVICE = RelationTypes.newType();
 
+	/**
+	 * A cache of credentials that have been verified successfully by an
+	 * {@link #AUTHENTICATION_SERVICE}. If set, repeated authentications with
+	 * the same credential will not be verified again until the cache entry
+	 * expires or is invalidated.
+	 */
+	public static final RelationType<CredentialCache> CREDENTIAL_CACHE =
+		newType();
+
 	/**
 	 * A Java security key store that holds a cryptographic certificate and the
 	 * corresponding private key. The alias under which the certificate will be
@@ -39,7 +39,6 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static org.obrel.core.RelationTypes.newType;
-import static org.obrel.type.StandardTypes.IP_ADDRESS;
 import static org.obrel.type.StandardTypes.NAME;
 
 /**
@@ -101,7 +100,7 @@ public class ModificationSyncService extends RestService
 	static String getClientAddress() {
 		return HttpRequestHandler
 			.getThreadLocalRequest()
-			.get(IP_ADDRESS)
+			.getClientAddress()
 			.getHostAddress();
 	}
 
@@ -156,6 +155,7 @@ public class ModificationSyncService extends RestService
 		Server restServer = super.createRestServer();
 
 		restServer.set(CommunicationRelationTypes.MAX_CONNECTIONS, 20);
+		restServer.set(CommunicationRelationTypes.KEEP_ALIVE);
 
 		return restServer;
 	}
@@ -0,0 +1,162 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import de.esoco.lib.comm.AccessLog.Entry;
+import de.esoco.lib.comm.AccessLog.Format;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link AccessLog}.
+ *
+ * @author eso
+ */
+public class AccessLogTest {
+
+	private static final String TIMESTAMP =
+		"\\[\\d{2}/\\w{3}/\\d{4}:\\d{2}:\\d{2}:\\d{2} [+-]\\d{4}]";
+
+	private Path directory;
+
+	private Path logFile;
+
+	/**
+	 * Creates the directory for the log files.
+	 */
+	@BeforeEach
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("access-log");
+		logFile = directory.resolve("access.log");
+	}
+
+	/**
+	 * Deletes the log files.
+	 */
+	@AfterEach
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files
+				.sorted(Comparator.reverseOrder())
+				.forEach(f -> f.toFile().delete());
+		}
+	}
+
+	/**
+	 * Test the Combined Log Format, including the escaping of values.
+	 */
+	@Test
+	public void testCombinedFormat() throws IOException {
+		try (AccessLog log = new AccessLog(logFile.toString(),
+			Format.COMBINED_LATENCY, 0, 0)) {
+			Entry entry = newEntry("GET", "/a\"b", 200, 42);
+
+			entry.setClientInfo(null, "Agentä\n");
+			entry.setResult(200, 42, 1234);
+			log.log(entry);
+		}
+
+		List<String> lines = Files.readAllLines(logFile);
+
+		assertEquals(1, lines.size());
+		assertTrue(lines.get(0).matches("127\\.0\\.0\\.1 - - " + TIMESTAMP +
+			" \"GET /a\\\\\"b HTTP/1\\.1\" 200 42 \"-\" " +
+			"\"Agent\\\\xc3\\\\xa4\\\\x0a\" 1234"), lines.get(0));
+	}
+
+	/**
+	 * Test the Common Log Format, including a record of an incomplete request
+	 * and a record that is added after the log has been closed.
+	 */
+	@Test
+	public void testCommonFormat() throws IOException {
+		AccessLog log =
+			new AccessLog(logFile.toString(), Format.COMMON, 0, 0);
+
+		log.log(newEntry("POST", "/data", 201, 1000));
+		log.log(new Entry(InetAddress.getLoopbackAddress()));
+		log.close();
+		log.log(newEntry("GET", "/", 200, 1));
+
+		List<String> lines = Files.readAllLines(logFile);
+
+		assertEquals(2, lines.size());
+		assertTrue(lines.get(0).matches("127\\.0\\.0\\.1 - - " + TIMESTAMP +
+			" \"POST /data HTTP/1\\.1\" 201 1000"), lines.get(0));
+		assertTrue(lines.get(1).matches("127\\.0\\.0\\.1 - - " + TIMESTAMP +
+			" \"-\" - -"), lines.get(1));
+		assertEquals(1, log.getDroppedRecords());
+	}
+
+	/**
+	 * Test the rollover of log files. Each record has a size of 68 bytes so
+	 * that a file is rolled over after three records.
+	 */
+	@Test
+	public void testRollOver() throws IOException {
+		try (AccessLog log = new AccessLog(logFile.toString(), Format.COMMON,
+			200, 2)) {
+			for (int i = 10; i < 31; i++) {
+				log.log(newEntry("GET", "/" + i, 200, i));
+			}
+		}
+
+		List<String> newest =
+			Files.readAllLines(directory.resolve("access.log.1"));
+		List<String> oldest =
+			Files.readAllLines(directory.resolve("access.log.2"));
+
+		assertFalse(Files.exists(logFile));
+		assertFalse(Files.exists(directory.resolve("access.log.3")));
+		assertEquals(3, newest.size());
+		assertEquals(3, oldest.size());
+		assertTrue(newest.get(2).contains("\"GET /30 HTTP/1.1\" 200 30"));
+		assertTrue(oldest.get(0).contains("\"GET /25 HTTP/1.1\" 200 25"));
+	}
+
+	/**
+	 * Creates a new log record for a completed request.
+	 *
+	 * @param method The request method
+	 * @param path   The request path
+	 * @param status The status code
+	 * @param bytes  The number of bytes sent
+	 * @return The new record
+	 */
+	private Entry newEntry(String method, String path, int status,
+		long bytes) {
+		Entry entry = new Entry(InetAddress.getLoopbackAddress());
+
+		entry.setRequest(method, path, "HTTP/1.1");
+		entry.setResult(status, bytes, 0);
+
+		return entry;
+	}
+}
@@ -0,0 +1,107 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link ClientRateLimiter}.
+ *
+ * @author eso
+ */
+public class ClientRateLimiterTest {
+
+	/**
+	 * Test the per-client connection limit.
+	 */
+	@Test
+	public void testConnectionLimit() throws UnknownHostException {
+		ClientRateLimiter limiter = new ClientRateLimiter(0, 0, 2);
+		InetAddress client = address(1);
+		InetAddress other = address(2);
+
+		assertTrue(limiter.acquireConnection(client));
+		assertTrue(limiter.acquireConnection(client));
+		assertFalse(limiter.acquireConnection(client));
+		assertTrue(limiter.acquireConnection(other));
+
+		limiter.releaseConnection(client);
+		assertTrue(limiter.acquireConnection(client));
+		assertFalse(limiter.acquireConnection(client));
+
+		// no request rate limit
+		assertEquals(0, limiter.acquireRequest(client));
+	}
+
+	/**
+	 * Test invalid parameters.
+	 */
+	@Test
+	public void testInvalidParameters() {
+		assertThrows(IllegalArgumentException.class,
+			() -> new ClientRateLimiter(-1, 1, 0));
+		assertThrows(IllegalArgumentException.class,
+			() -> new ClientRateLimiter(10, 0, 0));
+		assertThrows(IllegalArgumentException.class,
+			() -> new ClientRateLimiter(0, 0, -1));
+	}
+
+	/**
+	 * Test the per-client request rate limit.
+	 */
+	@Test
+	public void testRequestRate() throws Exception {
+		ClientRateLimiter limiter = new ClientRateLimiter(10, 3, 0);
+		InetAddress client = address(1);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, limiter.acquireRequest(client));
+		}
+
+		long retryAfter = limiter.acquireRequest(client);
+
+		assertTrue(retryAfter > 0 && retryAfter <= 100, "" + retryAfter);
+
+		// other clients are not affected
+		assertEquals(0, limiter.acquireRequest(address(2)));
+		assertEquals(2, limiter.getClientCount());
+
+		Thread.sleep(retryAfter + 10);
+		assertEquals(0, limiter.acquireRequest(client));
+
+		// no connection limit
+		assertTrue(limiter.acquireConnection(client));
+	}
+
+	/**
+	 * Creates a client address.
+	 *
+	 * @param id The last byte of the address
+	 * @return The address
+	 */
+	private InetAddress address(int id) throws UnknownHostException {
+		return InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte) id });
+	}
+}
@@ -0,0 +1,82 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link LatencyHistogram}.
+ *
+ * @author eso
+ */
+public class LatencyHistogramTest {
+
+	/**
+	 * Test the mapping of values to buckets.
+	 */
+	@Test
+	public void testBuckets() {
+		assertEquals(0, LatencyHistogram.bucketIndex(0));
+		assertEquals(15, LatencyHistogram.bucketIndex(15));
+		assertEquals(16, LatencyHistogram.bucketIndex(16));
+		assertEquals(16, LatencyHistogram.bucketIndex(17));
+		assertEquals(17, LatencyHistogram.bucketIndex(18));
+		assertEquals(24, LatencyHistogram.bucketIndex(32));
+		assertEquals(17, LatencyHistogram.bucketUpperBound(16));
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(
+			LatencyHistogram.bucketIndex(Long.MAX_VALUE)));
+
+		for (long value = 1; value < 1_000_000; value = value * 3 + 1) {
+			long upperBound = LatencyHistogram.bucketUpperBound(
+				LatencyHistogram.bucketIndex(value));
+
+			assertTrue(upperBound >= value);
+			assertTrue(upperBound <= value * 1.125 + 1);
+		}
+	}
+
+	/**
+	 * Test the calculation of percentiles.
+	 */
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		assertEquals(0, histogram.getValueAtPercentile(99));
+
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+
+		histogram.record(-1);
+
+		assertEquals(1001, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500.0, histogram.getMean(), 0.5);
+		assertEquals(0, histogram.getValueAtPercentile(0));
+		assertEquals(1000, histogram.getValueAtPercentile(100));
+
+		long p50 = histogram.getValueAtPercentile(50);
+		long p99 = histogram.getValueAtPercentile(99);
+
+		assertTrue(p50 >= 500 && p50 <= 500 * 1.125, "p50: " + p50);
+		assertTrue(p99 >= 990 && p99 <= 1000, "p99: " + p99);
+	}
+}
@@ -0,0 +1,117 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import de.esoco.lib.comm.RequestHistory.Entry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link RequestHistory}.
+ *
+ * @author eso
+ */
+public class RequestHistoryTest {
+
+	/**
+	 * Test adding entries to a history.
+	 */
+	@Test
+	public void testAdd() {
+		RequestHistory history = new RequestHistory(3);
+
+		assertNull(history.getLatest());
+		assertTrue(history.getEntries().isEmpty());
+
+		history.add("A", 1);
+		history.add(null, 2);
+
+		List<Entry> entries = history.getEntries();
+
+		assertEquals(2, entries.size());
+		assertEquals("A", entries.get(0).getRequest());
+		assertNull(entries.get(1).getRequest());
+		assertEquals(2, history.getLatest().getHandlingTime());
+	}
+
+	/**
+	 * Test concurrent writing to a history.
+	 */
+	@Test
+	public void testConcurrentAdd() throws InterruptedException {
+		RequestHistory history = new RequestHistory(16);
+		Thread[] threads = new Thread[4];
+
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				for (int n = 0; n < 1000; n++) {
+					history.add("R", n);
+				}
+			});
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(4000, history.getTotalCount());
+		assertEquals(16, history.getEntries().size());
+	}
+
+	/**
+	 * Test the string representation of history entries.
+	 */
+	@Test
+	public void testGetRequests() {
+		RequestHistory history = new RequestHistory(1);
+
+		history.add("GET / HTTP/1.1\r\nHost: x\r\n", 5);
+
+		String request = history.getRequests().get(0);
+
+		assertTrue(request.endsWith("[5ms] GET / HTTP/1.1¶Host: x¶"));
+		assertThrows(IllegalArgumentException.class,
+			() -> new RequestHistory(0));
+	}
+
+	/**
+	 * Test the overwriting of old entries.
+	 */
+	@Test
+	public void testOverflow() {
+		RequestHistory history = new RequestHistory(3);
+
+		for (int i = 1; i <= 5; i++) {
+			history.add("R" + i, i);
+		}
+
+		List<Entry> entries = history.getEntries();
+
+		assertEquals(3, entries.size());
+		assertEquals("R3", entries.get(0).getRequest());
+		assertEquals("R5", entries.get(2).getRequest());
+		assertEquals("R5", history.getLatest().getRequest());
+		assertEquals(5, history.getTotalCount());
+	}
+}
@@ -0,0 +1,739 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import de.esoco.lib.comm.Server.ShutdownResult;
+import de.esoco.lib.comm.http.HttpRequest;
+import de.esoco.lib.comm.http.HttpRequestHandler;
+import de.esoco.lib.comm.http.HttpRequestHandler.HttpRequestMethodHandler;
+import de.esoco.lib.comm.http.HttpResponse;
+import de.esoco.lib.comm.http.HttpStatusCode;
+import de.esoco.lib.comm.http.HttpStatusException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.esoco.lib.comm.CommunicationRelationTypes.ACCEPTOR_THREADS;
+import static de.esoco.lib.comm.CommunicationRelationTypes.KEEP_ALIVE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.MAX_CONNECTIONS;
+import static de.esoco.lib.comm.CommunicationRelationTypes.MAX_RESPONSE_SIZE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.NON_BLOCKING_IO;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_QUEUE_SIZE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.RETRY_AFTER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.obrel.type.StandardTypes.PORT;
+
+/**
+ * Test of {@link Server} connections over the loopback interface in blocking
+ * and non-blocking mode.
+ *
+ * @author eso
+ */
+public class ServerTest {
+
+	private static final int TIMEOUT = 5000;
+
+	private Server server;
+
+	/**
+	 * Stops the server of a test.
+	 */
+	@AfterEach
+	public void stopServer() throws InterruptedException {
+		if (server != null) {
+			server.shutdown(TIMEOUT);
+			server = null;
+		}
+	}
+
+	/**
+	 * Test the upload of a chunked request body that is followed by a
+	 * pipelined request.
+	 */
+	@Test
+	public void testChunkedUpload() throws Exception {
+		testEngines((socket, input) -> {
+			send(socket, "POST /up HTTP/1.1\r\nHost: localhost\r\n" +
+				"Transfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n" +
+				"4;ext=x\r\ndefg\r\n0\r\n\r\n" +
+				"GET /next HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+			assertEquals("200 POST abcdefg", readResponse(input));
+			assertEquals("200 GET /next", readResponse(input));
+		});
+	}
+
+	/**
+	 * Test that a request with conflicting Content-Length headers is
+	 * rejected and that the connection is closed afterwards so that the
+	 * remaining data is not handled as a request.
+	 */
+	@Test
+	public void testConflictingContentLength() throws Exception {
+		testEngines((socket, input) -> {
+			send(socket, "POST /a HTTP/1.1\r\nHost: localhost\r\n" +
+				"Content-Length: 3\r\nContent-Length: 40\r\n\r\n" +
+				"abcGET /smuggled HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+			assertTrue(readResponse(input).startsWith("400 "));
+			assertClosed(input);
+		});
+	}
+
+	/**
+	 * Test that the server sockets are created by a subclass override of
+	 * {@link Server#createServerSocket(int)} for one and for multiple
+	 * acceptor threads.
+	 */
+	@Test
+	@SuppressWarnings("boxing")
+	public void testCreateServerSocketOverride() throws Exception {
+		for (int acceptors = 1; acceptors <= 2; acceptors++) {
+			AtomicInteger createdSockets = new AtomicInteger();
+
+			Server customServer = new Server(
+				context -> new HttpRequestHandler(context, new EchoHandler())) {
+				@Override
+				protected ServerSocket createServerSocket(int port)
+					throws IOException {
+					createdSockets.incrementAndGet();
+
+					return super.createServerSocket(port);
+				}
+			};
+
+			customServer.set(ACCEPTOR_THREADS, acceptors);
+
+			try (Socket socket = connect(customServer)) {
+				send(socket, "GET /custom HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+				assertEquals("200 GET /custom",
+					readResponse(socket.getInputStream()));
+			} finally {
+				stopServer();
+			}
+
+			assertTrue(createdSockets.get() >= 1);
+			assertTrue(createdSockets.get() <= acceptors);
+		}
+	}
+
+	/**
+	 * Test that a shutdown lets an active request finish while new
+	 * connections are refused.
+	 */
+	@Test
+	@SuppressWarnings("boxing")
+	public void testGracefulShutdown() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+
+		try {
+			for (boolean nonBlocking : new boolean[] { false, true }) {
+				SlowHandler handler = new SlowHandler();
+				Server slowServer = new Server(
+					context -> new HttpRequestHandler(context, handler))
+					.with(NON_BLOCKING_IO, nonBlocking);
+
+				try (Socket socket = connect(slowServer)) {
+					InputStream input = socket.getInputStream();
+
+					send(socket,
+						"GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n");
+					assertTrue(
+						handler.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+					Future<ShutdownResult> shutdown =
+						executor.submit(() -> server.shutdown(TIMEOUT));
+
+					assertRefused(server.get(PORT));
+					assertFalse(shutdown.isDone());
+
+					handler.release.countDown();
+
+					assertEquals("200 GET /slow", readResponse(input));
+					assertClosed(input);
+
+					ShutdownResult result =
+						shutdown.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+					assertTrue(result.isComplete());
+					assertEquals(1, result.getCompletedRequests());
+				} finally {
+					handler.release.countDown();
+					stopServer();
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Test that a persistent connection is re-used for subsequent requests.
+	 */
+	@Test
+	public void testKeepAlive() throws Exception {
+		testEngines((socket, input) -> {
+			for (int i = 1; i <= 3; i++) {
+				send(socket,
+					"GET /" + i + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+				assertEquals("200 GET /" + i, readResponse(input));
+			}
+		});
+	}
+
+	/**
+	 * Test that pipelined requests that are sent at once on a single
+	 * connection are all answered in order.
+	 */
+	@Test
+	public void testPipelinedRequests() throws Exception {
+		testEngines((socket, input) -> {
+			send(socket, "GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+				"GET /b HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+			assertEquals("200 GET /a", readResponse(input));
+			assertEquals("200 GET /b", readResponse(input));
+		});
+	}
+
+	/**
+	 * Test that a response in non-blocking mode is sent if it has exactly
+	 * the maximum response size and that a larger response is discarded
+	 * completely and the connection closed.
+	 */
+	@Test
+	@SuppressWarnings("boxing")
+	public void testResponseSizeLimit() throws Exception {
+		int maxSize = 1000;
+		Server limitedServer = new Server(
+			context -> new HttpRequestHandler(context, new SizeHandler()))
+			.with(NON_BLOCKING_IO, true)
+			.with(MAX_RESPONSE_SIZE, maxSize);
+
+		try (Socket socket = connect(limitedServer)) {
+			InputStream input = socket.getInputStream();
+
+			send(socket, "GET /100 HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+			// the header size is the same for all bodies of 3 digit sizes
+			int bodySize = maxSize - (readResponseLength(input) - 100);
+
+			send(socket,
+				"GET /" + bodySize + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+			assertEquals(maxSize, readResponseLength(input));
+
+			send(socket, "GET /" + (bodySize + 1) +
+				" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+			assertClosed(input);
+		}
+	}
+
+	/**
+	 * Test that a request is rejected with the status 503 (Service
+	 * Unavailable) and a Retry-After header if all request threads are busy
+	 * and that the connection is closed afterwards.
+	 */
+	@Test
+	@SuppressWarnings("boxing")
+	public void testServerBusy() throws Exception {
+		for (boolean nonBlocking : new boolean[] { false, true }) {
+			SlowHandler handler = new SlowHandler();
+			Server busyServer = new Server(
+				context -> new HttpRequestHandler(context, handler))
+				.with(NON_BLOCKING_IO, nonBlocking)
+				.with(MAX_CONNECTIONS, 1)
+				.with(REQUEST_QUEUE_SIZE, 0)
+				.with(RETRY_AFTER, 7);
+
+			try (Socket socket = connect(busyServer)) {
+				send(socket,
+					"GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n");
+				assertTrue(
+					handler.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+				try (Socket rejected = new Socket(
+					InetAddress.getLoopbackAddress(), server.get(PORT))) {
+					InputStream input = rejected.getInputStream();
+
+					rejected.setSoTimeout(TIMEOUT);
+
+					// the blocking server rejects the connection on accept
+					// while the non-blocking server rejects the request
+					if (nonBlocking) {
+						send(rejected,
+							"GET /b HTTP/1.1\r\nHost: localhost\r\n\r\n");
+					}
+
+					String status = readLine(input);
+					List<String> headers = readHeaders(input);
+
+					assertTrue(status.startsWith("HTTP/1.1 503 "), status);
+					assertTrue(headers.contains("Retry-After: 7"),
+						headers.toString());
+					assertClosed(input);
+				}
+
+				handler.release.countDown();
+
+				assertEquals("200 GET /slow",
+					readResponse(socket.getInputStream()));
+			} finally {
+				handler.release.countDown();
+				stopServer();
+			}
+		}
+	}
+
+	/**
+	 * Test that the shutdown of a server that has not been started returns
+	 * immediately.
+	 */
+	@Test
+	public void testShutdownNotStarted() throws Exception {
+		Server newServer = new Server(
+			context -> new HttpRequestHandler(context, new EchoHandler()));
+
+		assertNull(newServer.shutdown(TIMEOUT));
+		assertFalse(newServer.isRunning());
+	}
+
+	/**
+	 * Test that a shutdown that is requested while the server is starting
+	 * stops the server as soon as it runs instead of waiting forever.
+	 */
+	@Test
+	@SuppressWarnings("boxing")
+	public void testShutdownWhileStarting() throws Exception {
+		CountDownLatch socketRequested = new CountDownLatch(1);
+		CountDownLatch createSocket = new CountDownLatch(1);
+		ExecutorService executor = Executors.newCachedThreadPool();
+
+		server = new Server(
+			context -> new HttpRequestHandler(context, new EchoHandler())) {
+			@Override
+			protected ServerSocket createServerSocket(int port)
+				throws IOException {
+				socketRequested.countDown();
+
+				try {
+					createSocket.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+
+				return super.createServerSocket(port);
+			}
+		}.with(PORT, getFreePort());
+
+		try {
+			executor.submit(server);
+			assertTrue(
+				socketRequested.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+			Future<ShutdownResult> shutdown =
+				executor.submit(() -> server.shutdown(TIMEOUT));
+
+			assertThrows(TimeoutException.class,
+				() -> shutdown.get(200, TimeUnit.MILLISECONDS));
+
+			createSocket.countDown();
+
+			assertNotNull(shutdown.get(TIMEOUT, TimeUnit.MILLISECONDS));
+			assertFalse(server.isRunning());
+		} finally {
+			createSocket.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Asserts that the server has closed a connection.
+	 *
+	 * @param input The input stream of the connection
+	 * @throws IOException If reading fails
+	 */
+	private void assertClosed(InputStream input) throws IOException {
+		try {
+			assertEquals(-1, input.read());
+		} catch (SocketException e) {
+			// a reset because of unread request data also signals the close
+		}
+	}
+
+	/**
+	 * Asserts that connections to a port are refused within the test
+	 * timeout.
+	 *
+	 * @param port The port to connect to
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	private void assertRefused(int port) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+
+		while (System.currentTimeMillis() < end) {
+			try (Socket socket =
+				new Socket(InetAddress.getLoopbackAddress(), port)) {
+				Thread.sleep(20);
+			} catch (IOException e) {
+				return;
+			}
+		}
+
+		fail("Connection not refused");
+	}
+
+	/**
+	 * Starts a new server with persistent connections and opens a connection
+	 * to it.
+	 *
+	 * @param nonBlocking TRUE for a server in non-blocking mode
+	 * @return The client socket
+	 * @throws Exception If starting the server or connecting fails
+	 */
+	@SuppressWarnings("boxing")
+	private Socket connect(boolean nonBlocking) throws Exception {
+		return connect(new Server(
+			context -> new HttpRequestHandler(context, new EchoHandler()))
+			.with(NON_BLOCKING_IO, nonBlocking));
+	}
+
+	/**
+	 * Starts a server with persistent connections on a free port and opens a
+	 * connection to it.
+	 *
+	 * @param newServer The server to start
+	 * @return The client socket
+	 * @throws Exception If starting the server or connecting fails
+	 */
+	@SuppressWarnings("boxing")
+	private Socket connect(Server newServer) throws Exception {
+		int port = getFreePort();
+
+		server = newServer.with(PORT, port).with(KEEP_ALIVE, true);
+
+		Thread serverThread = new Thread(server);
+
+		serverThread.setDaemon(true);
+		serverThread.start();
+
+		long end = System.currentTimeMillis() + TIMEOUT;
+
+		while (true) {
+			try {
+				Socket socket =
+					new Socket(InetAddress.getLoopbackAddress(), port);
+
+				socket.setSoTimeout(TIMEOUT);
+
+				return socket;
+			} catch (IOException e) {
+				if (System.currentTimeMillis() > end) {
+					throw e;
+				}
+
+				Thread.sleep(20);
+			}
+		}
+	}
+
+	/**
+	 * Returns a free local port.
+	 *
+	 * @return The port number
+	 * @throws IOException If no port is available
+	 */
+	private int getFreePort() throws IOException {
+		try (ServerSocket freePort = new ServerSocket(0)) {
+			return freePort.getLocalPort();
+		}
+	}
+
+	/**
+	 * Reads the header lines of an HTTP response up to the empty line that
+	 * terminates the header.
+	 *
+	 * @param input The input stream
+	 * @return The header lines
+	 * @throws IOException If reading fails
+	 */
+	private List<String> readHeaders(InputStream input) throws IOException {
+		List<String> headers = new ArrayList<>();
+		String header;
+
+		while (!(header = readLine(input)).isEmpty()) {
+			headers.add(header);
+		}
+
+		return headers;
+	}
+
+	/**
+	 * Reads an HTTP response with a Content-Length header and returns the
+	 * total number of bytes in the response.
+	 *
+	 * @param input The input stream to read from
+	 * @return The response length, including the header
+	 * @throws IOException If reading fails
+	 */
+	private int readResponseLength(InputStream input) throws IOException {
+		String statusLine = readLine(input);
+		int length = statusLine.length() + 4;
+		int contentLength = 0;
+
+		assertTrue(statusLine.startsWith("HTTP/1.1 200 "), statusLine);
+
+		for (String header : readHeaders(input)) {
+			length += header.length() + 2;
+
+			if (header.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+				contentLength = Integer.parseInt(header.substring(15).trim());
+			}
+		}
+
+		for (int i = 0; i < contentLength; i++) {
+			if (input.read() < 0) {
+				throw new IOException("Incomplete response body");
+			}
+		}
+
+		return length + contentLength;
+	}
+
+	/**
+	 * Reads a line terminated with CRLF from an input stream.
+	 *
+	 * @param input The input stream
+	 * @return The line without CRLF
+	 * @throws IOException If reading fails or the stream ends
+	 */
+	private String readLine(InputStream input) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+
+		while ((b = input.read()) != '\n') {
+			if (b < 0) {
+				throw new IOException("Connection closed");
+			} else if (b != '\r') {
+				line.write(b);
+			}
+		}
+
+		return line.toString("UTF-8");
+	}
+
+	/**
+	 * Reads an HTTP response with a Content-Length header.
+	 *
+	 * @param input The input stream to read from
+	 * @return A string containing the status code and the response body,
+	 * separated by a space
+	 * @throws IOException If reading fails
+	 */
+	private String readResponse(InputStream input) throws IOException {
+		String statusLine = readLine(input);
+		int contentLength = 0;
+		String header;
+
+		assertTrue(statusLine.startsWith("HTTP/1.1 "), statusLine);
+
+		while (!(header = readLine(input)).isEmpty()) {
+			int colon = header.indexOf(':');
+
+			if (header.substring(0, colon).equalsIgnoreCase("content-length")) {
+				contentLength =
+					Integer.parseInt(header.substring(colon + 1).trim());
+			}
+		}
+
+		byte[] body = new byte[contentLength];
+		int offset = 0;
+
+		while (offset < contentLength) {
+			int read = input.read(body, offset, contentLength - offset);
+
+			if (read < 0) {
+				throw new IOException("Incomplete response body");
+			}
+
+			offset += read;
+		}
+
+		return statusLine.substring(9, 12) + " " +
+			new String(body, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Sends request data to the server.
+	 *
+	 * @param socket The client socket
+	 * @param data   The request data
+	 * @throws IOException If writing fails
+	 */
+	private void send(Socket socket, String data) throws IOException {
+		OutputStream output = socket.getOutputStream();
+
+		output.write(data.getBytes(StandardCharsets.UTF_8));
+		output.flush();
+	}
+
+	/**
+	 * Runs a client test against a new server in blocking and in
+	 * non-blocking mode.
+	 *
+	 * @param test The client test
+	 * @throws Exception If the test fails
+	 */
+	private void testEngines(ClientTest test) throws Exception {
+		for (boolean nonBlocking : new boolean[] { false, true }) {
+			try (Socket socket = connect(nonBlocking)) {
+				test.run(socket, socket.getInputStream());
+			} finally {
+				stopServer();
+			}
+		}
+	}
+
+	/**
+	 * The interface of client tests that are run on a server connection.
+	 *
+	 * @author eso
+	 */
+	@FunctionalInterface
+	interface ClientTest {
+
+		/**
+		 * Runs the test.
+		 *
+		 * @param socket The client socket
+		 * @param input  The input stream of the socket
+		 * @throws Exception If the test fails
+		 */
+		void run(Socket socket, InputStream input) throws Exception;
+	}
+
+	/**
+	 * A request method handler that echoes the method and path of GET
+	 * requests and the body of POST requests.
+	 *
+	 * @author eso
+	 */
+	static class EchoHandler implements HttpRequestMethodHandler {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public HttpResponse doGet(HttpRequest request) {
+			return new HttpResponse("GET " + request.getPath());
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public HttpResponse doPost(HttpRequest request)
+			throws HttpStatusException {
+			try {
+				return new HttpResponse("POST " + request.getBody());
+			} catch (IOException e) {
+				throw new HttpStatusException(HttpStatusCode.BAD_REQUEST, e);
+			}
+		}
+	}
+
+	/**
+	 * A request method handler that returns a body with the size in bytes
+	 * that is given by the request path.
+	 *
+	 * @author eso
+	 */
+	static class SizeHandler implements HttpRequestMethodHandler {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public HttpResponse doGet(HttpRequest request) {
+			char[] body =
+				new char[Integer.parseInt(request.getPath().substring(1))];
+
+			Arrays.fill(body, 'x');
+
+			return new HttpResponse(new String(body));
+		}
+	}
+
+	/**
+	 * An echo handler that blocks GET requests for the path /slow until it
+	 * is released.
+	 *
+	 * @author eso
+	 */
+	static class SlowHandler extends EchoHandler {
+
+		final CountDownLatch started = new CountDownLatch(1);
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public HttpResponse doGet(HttpRequest request) {
+			if ("/slow".equals(request.getPath())) {
+				started.countDown();
+
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new HttpStatusException(
+						HttpStatusCode.INTERNAL_SERVER_ERROR, e);
+				}
+			}
+
+			return super.doGet(request);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm;
+
+import de.esoco.lib.comm.TimingWheel.Timeout;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link TimingWheel} and {@link ConnectionTimer}.
+ *
+ * @author eso
+ */
+public class TimingWheelTest {
+
+	/**
+	 * Test the cancellation of timeouts.
+	 */
+	@Test
+	public void testCancel() throws InterruptedException {
+		try (TimingWheel wheel = new TimingWheel("test", 10, 8)) {
+			AtomicInteger count = new AtomicInteger();
+			Timeout timeout = wheel.schedule(30, count::incrementAndGet);
+
+			assertTrue(timeout.cancel());
+			assertFalse(timeout.cancel());
+			Thread.sleep(100);
+			assertEquals(0, count.get());
+			assertFalse(timeout.isExpired());
+		}
+	}
+
+	/**
+	 * Test the deadline handling of {@link ConnectionTimer}.
+	 */
+	@Test
+	public void testConnectionTimer() throws InterruptedException {
+		try (TimingWheel wheel = new TimingWheel("test", 10, 8)) {
+			CountDownLatch expired = new CountDownLatch(1);
+			ConnectionTimer timer =
+				new ConnectionTimer(wheel, expired::countDown);
+
+			timer.set(50);
+			timer.clear();
+			Thread.sleep(100);
+			assertFalse(timer.isExpired());
+
+			// extending the deadline re-schedules the check
+			timer.set(200);
+			Thread.sleep(50);
+			timer.set(400);
+			Thread.sleep(250);
+			assertFalse(timer.isExpired());
+			assertTrue(expired.await(2, TimeUnit.SECONDS));
+			assertTrue(timer.isExpired());
+
+			// an expired timer cannot be set again
+			timer.set(10);
+			Thread.sleep(50);
+			assertEquals(0, expired.getCount());
+		}
+	}
+
+	/**
+	 * Test invalid parameters.
+	 */
+	@Test
+	public void testInvalidParameters() {
+		assertThrows(IllegalArgumentException.class,
+			() -> new TimingWheel("test", 0, 8));
+		assertThrows(IllegalArgumentException.class,
+			() -> new TimingWheel("test", 10, 0));
+	}
+
+	/**
+	 * Test the expiration of timeouts, including timeouts that exceed a
+	 * full rotation of the wheel.
+	 */
+	@Test
+	public void testSchedule() throws InterruptedException {
+		try (TimingWheel wheel = new TimingWheel("test", 10, 4)) {
+			CountDownLatch latch = new CountDownLatch(2);
+			long start = System.nanoTime();
+			long[] times = new long[2];
+
+			Timeout first = wheel.schedule(20, () -> {
+				times[0] = System.nanoTime() - start;
+				latch.countDown();
+			});
+			Timeout second = wheel.schedule(100, () -> {
+				times[1] = System.nanoTime() - start;
+				latch.countDown();
+			});
+
+			assertTrue(latch.await(1, TimeUnit.SECONDS));
+			assertTrue(first.isExpired());
+			assertTrue(second.isExpired());
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(times[0]) >= 20);
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(times[1]) >= 100);
+		}
+	}
+}
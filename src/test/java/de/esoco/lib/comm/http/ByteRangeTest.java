@@ -0,0 +1,114 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link ByteRange}.
+ *
+ * @author eso
+ */
+public class ByteRangeTest {
+
+	/**
+	 * Test the parsing of invalid Range headers which must be ignored.
+	 */
+	@Test
+	public void testInvalidRanges() {
+		assertNull(ByteRange.parse("items=0-10", 1000));
+		assertNull(ByteRange.parse("bytes=", 1000));
+		assertNull(ByteRange.parse("bytes=10", 1000));
+		assertNull(ByteRange.parse("bytes=-", 1000));
+		assertNull(ByteRange.parse("bytes=20-10", 1000));
+		assertNull(ByteRange.parse("bytes=a-10", 1000));
+		assertNull(ByteRange.parse("bytes=0-10,x", 1000));
+		assertNull(ByteRange.parse("bytes=-+5", 1000));
+
+		StringBuilder tooMany = new StringBuilder("bytes=0-0");
+
+		for (int i = 1; i <= ByteRange.MAX_RANGES; i++) {
+			tooMany.append(',').append(i * 2).append('-').append(i * 2);
+		}
+
+		assertNull(ByteRange.parse(tooMany.toString(), 1000));
+	}
+
+	/**
+	 * Test the merging of overlapping and adjacent ranges.
+	 */
+	@Test
+	public void testMerge() {
+		assertRanges("[0-199]", ByteRange.parse("bytes=100-199,0-99", 1000));
+		assertRanges("[0-150, 500-599]",
+			ByteRange.parse("bytes=500-599, 0-100, 50-150", 1000));
+		assertRanges("[0-999]", ByteRange.parse("bytes=0-,-500", 1000));
+	}
+
+	/**
+	 * Test the parsing of multiple ranges.
+	 */
+	@Test
+	public void testMultipleRanges() {
+		List<ByteRange> ranges = ByteRange.parse("bytes=0-9, 20-29", 100);
+
+		assertRanges("[0-9, 20-29]", ranges);
+		assertEquals(10, ranges.get(1).getLength());
+		assertEquals("bytes 20-29/100", ranges.get(1).getContentRange(100));
+	}
+
+	/**
+	 * Test the parsing of single ranges.
+	 */
+	@Test
+	public void testSingleRange() {
+		assertRanges("[0-499]", ByteRange.parse("bytes=0-499", 1000));
+		assertRanges("[500-999]", ByteRange.parse("Bytes=500-", 1000));
+		assertRanges("[900-999]", ByteRange.parse("bytes=-100", 1000));
+		assertRanges("[0-999]", ByteRange.parse("bytes=-5000", 1000));
+		assertRanges("[990-999]", ByteRange.parse(" bytes=990-2000 ", 1000));
+		assertEquals("bytes 0-499/1000",
+			ByteRange.parse("bytes=0-499", 1000).get(0).getContentRange(1000));
+	}
+
+	/**
+	 * Test ranges that cannot be satisfied.
+	 */
+	@Test
+	public void testUnsatisfiableRanges() {
+		assertTrue(ByteRange.parse("bytes=1000-", 1000).isEmpty());
+		assertTrue(ByteRange.parse("bytes=-0", 1000).isEmpty());
+		assertTrue(ByteRange.parse("bytes=0-10", 0).isEmpty());
+		assertRanges("[0-9]", ByteRange.parse("bytes=2000-3000,0-9", 1000));
+	}
+
+	/**
+	 * Asserts that a list of ranges has a certain string representation.
+	 *
+	 * @param expected The expected ranges string
+	 * @param ranges   The ranges to check
+	 */
+	private void assertRanges(String expected, List<ByteRange> ranges) {
+		assertEquals(expected, String.valueOf(ranges));
+	}
+}
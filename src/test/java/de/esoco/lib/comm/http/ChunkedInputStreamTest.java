@@ -0,0 +1,115 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link ChunkedInputStream}.
+ *
+ * @author eso
+ */
+public class ChunkedInputStreamTest {
+
+	/**
+	 * Test the decoding of chunked data.
+	 */
+	@Test
+	public void testDecode() throws IOException {
+		InputStream input = stream(
+			"3\r\nabc\r\n4;ext=1\r\ndefg\r\nA\r\n0123456789\r\n0\r\n" +
+				"Trailer: x\r\n\r\nNEXT");
+		ChunkedInputStream chunked = new ChunkedInputStream(input);
+
+		assertEquals('a', chunked.read());
+		assertEquals("bcdefg0123456789", readAll(chunked));
+		assertTrue(chunked.isFinished());
+		assertEquals(-1, chunked.read());
+
+		// the wrapped stream must be positioned after the chunked data
+		assertEquals("NEXT", readAll(input));
+	}
+
+	/**
+	 * Test an empty chunked body.
+	 */
+	@Test
+	public void testEmpty() throws IOException {
+		ChunkedInputStream chunked =
+			new ChunkedInputStream(stream("0\r\n\r\n"));
+
+		assertFalse(chunked.isFinished());
+		assertEquals(-1, chunked.read(new byte[10], 0, 10));
+		assertTrue(chunked.isFinished());
+	}
+
+	/**
+	 * Test invalid chunked data.
+	 */
+	@Test
+	public void testInvalid() {
+		assertThrows(HttpStatusException.class,
+			() -> readAll(new ChunkedInputStream(stream("x\r\nabc\r\n"))));
+		assertThrows(HttpStatusException.class,
+			() -> readAll(new ChunkedInputStream(stream("3\r\nabcd\r\n"))));
+		assertThrows(HttpStatusException.class,
+			() -> readAll(new ChunkedInputStream(stream("3\nabc\r\n"))));
+		assertThrows(EOFException.class,
+			() -> readAll(new ChunkedInputStream(stream("5\r\nabc"))));
+	}
+
+	/**
+	 * Reads a stream completely.
+	 *
+	 * @param input The input stream
+	 * @return The data as a string
+	 */
+	private String readAll(InputStream input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[3];
+		int read;
+
+		while ((read = input.read(buffer)) >= 0) {
+			output.write(buffer, 0, read);
+		}
+
+		return new String(output.toByteArray(), StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Creates an input stream for a string.
+	 *
+	 * @param data The stream data
+	 * @return The input stream
+	 */
+	private InputStream stream(String data) {
+		return new ByteArrayInputStream(
+			data.getBytes(StandardCharsets.US_ASCII));
+	}
+}
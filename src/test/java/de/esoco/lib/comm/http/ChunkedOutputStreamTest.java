@@ -0,0 +1,106 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test of {@link ChunkedOutputStream}.
+ *
+ * @author eso
+ */
+public class ChunkedOutputStreamTest {
+
+	/**
+	 * Test the buffering of small writes into chunks.
+	 */
+	@Test
+	public void testBufferedChunks() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ChunkedOutputStream chunked = new ChunkedOutputStream(output, 4);
+
+		chunked.write(bytes("ab"));
+		chunked.write('c');
+		chunked.write(bytes("defg"));
+		chunked.write(bytes("h"));
+		chunked.flush();
+		assertEquals("3\r\nabc\r\n4\r\ndefg\r\n1\r\nh\r\n", text(output));
+
+		chunked.close();
+		assertEquals("3\r\nabc\r\n4\r\ndefg\r\n1\r\nh\r\n0\r\n\r\n",
+			text(output));
+		assertThrows(IOException.class, () -> chunked.write('x'));
+	}
+
+	/**
+	 * Test an empty stream.
+	 */
+	@Test
+	public void testEmpty() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ChunkedOutputStream chunked = new ChunkedOutputStream(output, 8);
+
+		chunked.flush();
+		chunked.finish();
+		chunked.close();
+
+		assertEquals("0\r\n\r\n", text(output));
+	}
+
+	/**
+	 * Test writing data that is larger than the buffer.
+	 */
+	@Test
+	public void testLargeChunk() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ChunkedOutputStream chunked = new ChunkedOutputStream(output, 8);
+		byte[] data = new byte[20];
+
+		chunked.write(data);
+		chunked.finish();
+
+		assertEquals(4 + 20 + 2 + 5, output.size());
+		assertEquals("14\r\n", text(output).substring(0, 4));
+	}
+
+	/**
+	 * Returns the ASCII bytes of a string.
+	 *
+	 * @param text The string
+	 * @return The bytes
+	 */
+	private byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Returns the ASCII contents of an output stream.
+	 *
+	 * @param output The output stream
+	 * @return The stream contents
+	 */
+	private String text(ByteArrayOutputStream output) {
+		return new String(output.toByteArray(), StandardCharsets.US_ASCII);
+	}
+}
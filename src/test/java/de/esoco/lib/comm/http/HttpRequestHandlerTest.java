@@ -0,0 +1,183 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import de.esoco.lib.comm.Server.RequestCapture;
+import de.esoco.lib.comm.http.HttpRequestHandler.HttpRequestMethodHandler;
+import org.junit.jupiter.api.Test;
+import org.obrel.core.RelatedObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_CAPTURE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_CAPTURE_SAMPLE_RATE;
+import static de.esoco.lib.comm.CommunicationRelationTypes.REQUEST_CAPTURE_SIZE;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of the request capturing in {@link HttpRequestHandler}.
+ *
+ * @author eso
+ */
+public class HttpRequestHandlerTest {
+
+	private static final String HEADER =
+		"POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: 10\r\n";
+
+	private static final String REQUEST = HEADER + "\r\n0123456789";
+
+	/**
+	 * Test the capture mode {@link RequestCapture#FULL}.
+	 */
+	@Test
+	public void testCaptureFull() throws IOException {
+		RelatedObject context = new RelatedObject();
+
+		context.set(REQUEST_CAPTURE, RequestCapture.FULL);
+
+		assertEquals(REQUEST, handleRequest(context));
+	}
+
+	/**
+	 * Test the capture mode {@link RequestCapture#HEADERS}.
+	 */
+	@Test
+	public void testCaptureHeaders() throws IOException {
+		RelatedObject context = new RelatedObject();
+
+		context.set(REQUEST_CAPTURE, RequestCapture.HEADERS);
+
+		String captured = handleRequest(context);
+
+		assertTrue(captured.startsWith(
+			"POST /echo HTTP/1.1\r\nHost: localhost\r\n"), captured);
+		assertTrue(captured.contains("Content-Length: 10"), captured);
+		assertFalse(captured.contains("0123456789"), captured);
+	}
+
+	/**
+	 * Test the capture mode {@link RequestCapture#NONE}.
+	 */
+	@Test
+	public void testCaptureNone() throws IOException {
+		RelatedObject context = new RelatedObject();
+
+		context.set(REQUEST_CAPTURE, RequestCapture.NONE);
+
+		assertNull(handleRequest(context));
+	}
+
+	/**
+	 * Test the capture mode {@link RequestCapture#SAMPLED}.
+	 */
+	@Test
+	@SuppressWarnings("boxing")
+	public void testCaptureSampled() throws IOException {
+		RelatedObject context = new RelatedObject();
+		int captured = 0;
+
+		context.set(REQUEST_CAPTURE, RequestCapture.SAMPLED);
+		context.set(REQUEST_CAPTURE_SAMPLE_RATE, 3);
+
+		for (int i = 0; i < 6; i++) {
+			String request = handleRequest(context);
+
+			if (request != null) {
+				assertEquals(REQUEST, request);
+				captured++;
+			}
+		}
+
+		assertEquals(2, captured);
+	}
+
+	/**
+	 * Test the capture mode {@link RequestCapture#TRUNCATED}.
+	 */
+	@Test
+	@SuppressWarnings("boxing")
+	public void testCaptureTruncated() throws IOException {
+		RelatedObject context = new RelatedObject();
+
+		context.set(REQUEST_CAPTURE, RequestCapture.TRUNCATED);
+		context.set(REQUEST_CAPTURE_SIZE, 16);
+
+		assertEquals(REQUEST.substring(0, 16), handleRequest(context));
+
+		context.set(REQUEST_CAPTURE_SIZE, 1000);
+
+		assertEquals(REQUEST, handleRequest(context));
+	}
+
+	/**
+	 * Handles the test request with a new request handler and returns the
+	 * captured request data.
+	 *
+	 * @param context The handler context with the capture configuration
+	 * @return The captured request data
+	 * @throws IOException If handling the request fails
+	 */
+	private String handleRequest(RelatedObject context) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		HttpRequestHandler handler =
+			new HttpRequestHandler(context, new EchoHandler());
+
+		String captured = handler.handleRequest(new ByteArrayInputStream(
+			REQUEST.getBytes(StandardCharsets.US_ASCII)), output);
+
+		assertTrue(output.toString("US-ASCII").endsWith("\r\n\r\n0123456789"));
+
+		return captured;
+	}
+
+	/**
+	 * A request method handler that echoes the path of GET requests and the
+	 * body of POST requests.
+	 *
+	 * @author eso
+	 */
+	static class EchoHandler implements HttpRequestMethodHandler {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public HttpResponse doGet(HttpRequest request) {
+			return new HttpResponse("GET " + request.getPath());
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public HttpResponse doPost(HttpRequest request)
+			throws HttpStatusException {
+			try {
+				return new HttpResponse(request.getBody());
+			} catch (IOException e) {
+				throw new HttpStatusException(HttpStatusCode.BAD_REQUEST, e);
+			}
+		}
+	}
+}
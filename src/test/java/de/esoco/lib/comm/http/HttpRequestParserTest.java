@@ -0,0 +1,234 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import de.esoco.lib.comm.http.HttpHeaderTypes.HttpHeaderField;
+import de.esoco.lib.comm.http.HttpRequestParser.HeaderMap;
+import de.esoco.lib.comm.http.HttpStatusException.EmptyRequestException;
+import de.esoco.lib.io.EchoInputStream;
+import de.esoco.lib.io.LimitedInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link HttpRequestParser}.
+ *
+ * @author eso
+ */
+public class HttpRequestParserTest {
+
+	/**
+	 * Test parsing of the request body.
+	 */
+	@Test
+	public void testBody() throws IOException {
+		HttpRequestParser parser = HttpRequestParser.getThreadParser();
+		InputStream input =
+			input("POST /data HTTP/1.1\r\nContent-Length: 5\r\n\r\n12345");
+
+		parser.parse(input, 1024);
+
+		InputStream body = parser.getBodyStream(input, 5);
+		byte[] data = new byte[10];
+
+		assertEquals(5, body.read(data));
+		assertEquals("12345", new String(data, 0, 5, StandardCharsets.UTF_8));
+		assertEquals(-1, body.read());
+		assertFalse(parser.hasExcessData(5));
+	}
+
+	/**
+	 * Test the detection of pipelined request data in input streams that
+	 * don't support marking.
+	 */
+	@Test
+	public void testExcessData() throws IOException {
+		HttpRequestParser parser = HttpRequestParser.getThreadParser();
+
+		parser.parse(new FilterInputStream(
+				input("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\n\r\n")) {
+				@Override
+				public boolean markSupported() {
+					return false;
+				}
+			}, 1024);
+
+		assertTrue(parser.hasExcessData(0));
+	}
+
+	/**
+	 * Test parsing of header fields.
+	 */
+	@Test
+	public void testHeaders() throws IOException {
+		HttpRequestParser parser = HttpRequestParser.getThreadParser();
+
+		parser.parse(input("GET / HTTP/1.1\r\n" + "Host: localhost\r\n" +
+			"content-length:  0 \r\n" + "X-Test: a\r\n" + "X-Test: b\r\n" +
+			"\r\n"), 1024);
+
+		HeaderMap headers = parser.getHeaders();
+
+		assertEquals(4, headers.getHeaderCount());
+		assertEquals(HttpHeaderField.HOST, headers.getField(0));
+		assertEquals(HttpHeaderField.CONTENT_LENGTH, headers.getField(1));
+		assertNull(headers.getField(2));
+		assertEquals("0", headers.getValue(1));
+		assertEquals(Arrays.asList("localhost"), headers.get("host"));
+		assertEquals(Arrays.asList("a", "b"), headers.get("X-Test"));
+		assertNull(headers.get("Accept"));
+		assertEquals(3, headers.size());
+	}
+
+	/**
+	 * Test that header names are matched independent of the default locale.
+	 */
+	@Test
+	public void testHeadersLocale() throws IOException {
+		Locale defaultLocale = Locale.getDefault();
+
+		try {
+			Locale.setDefault(new Locale("tr", "TR"));
+
+			HttpRequestParser parser = HttpRequestParser.getThreadParser();
+
+			parser.parse(input("GET / HTTP/1.1\r\nIf-None-Match: \"1\"\r\n" +
+				"X-ID: a\r\n\r\n"), 1024);
+
+			HeaderMap headers = parser.getHeaders();
+
+			assertEquals(Arrays.asList("\"1\""), headers.get("IF-NONE-MATCH"));
+			assertEquals(Arrays.asList("a"), headers.get("X-ID"));
+		} finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+
+	/**
+	 * Test the handling of invalid requests.
+	 */
+	@Test
+	public void testInvalidRequests() {
+		HttpRequestParser parser = HttpRequestParser.getThreadParser();
+
+		assertThrows(EmptyRequestException.class,
+			() -> parser.parse(input(""), 1024));
+		assertThrows(HttpStatusException.class,
+			() -> parser.parse(input("GET / HTTP/1.1\r\n"), 1024));
+		assertThrows(HttpStatusException.class,
+			() -> parser.parse(input("FOO / HTTP/1.1\r\n\r\n"), 1024));
+		assertThrows(HttpStatusException.class,
+			() -> parser.parse(input("GET / FTP/1.1\r\n\r\n"), 1024));
+		assertThrows(HttpStatusException.class,
+			() -> parser.parse(input("GET /\r\n\r\n"), 1024));
+		assertThrows(HttpStatusException.class,
+			() -> parser.parse(input("GET / HTTP/1.1\nHost: x\n\n"), 1024));
+		assertThrows(HttpStatusException.class,
+			() -> parser.parse(input("GET / HTTP/1.1\r\nHost\r\n\r\n"),
+				1024));
+		assertThrows(HttpStatusException.class,
+			() -> parser.parse(input("GET /long/path HTTP/1.1\r\n\r\n"), 10));
+	}
+
+	/**
+	 * Test that pipelined requests remain in input streams that support
+	 * marking so that they can be parsed one after the other. The request
+	 * copy and the input limit must only reflect the consumed data.
+	 */
+	@Test
+	public void testPipelinedRequests() throws IOException {
+		HttpRequestParser parser = HttpRequestParser.getThreadParser();
+		String first = "POST /a HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc";
+		String second = "GET /b HTTP/1.1\r\n\r\n";
+		InputStream connection =
+			new BufferedInputStream(input(first + second + second));
+		ByteArrayOutputStream copy = new ByteArrayOutputStream();
+		LimitedInputStream limited = new LimitedInputStream(connection, 1000);
+		InputStream input = new EchoInputStream(limited, copy);
+
+		parser.parse(input, 1024);
+
+		InputStream body = parser.getBodyStream(input, 3);
+		byte[] data = new byte[10];
+
+		assertEquals("/a", parser.getPath());
+		assertFalse(parser.hasExcessData(3));
+		assertEquals(3, body.read(data));
+		assertEquals(-1, body.read());
+		assertEquals(1000 - first.length(), limited.getRemainingLimit());
+
+		parser.parse(connection, 1024);
+		assertEquals("/b", parser.getPath());
+		assertFalse(parser.hasExcessData(0));
+		parser.parse(connection, 1024);
+		assertEquals("/b", parser.getPath());
+		assertEquals(-1, connection.read());
+
+		String copied = copy.toString("UTF-8");
+
+		assertTrue(copied.startsWith(first));
+		assertEquals(copied.indexOf("abc"), copied.lastIndexOf("abc"));
+	}
+
+	/**
+	 * Test parsing of the request line.
+	 */
+	@Test
+	public void testRequestLine() throws IOException {
+		HttpRequestParser parser = HttpRequestParser.getThreadParser();
+
+		parser.parse(input("PUT /test/path?x=1 HTTP/1.0\r\n\r\n"), 1024);
+
+		assertEquals(HttpRequestMethod.PUT, parser.getMethod());
+		assertEquals("/test/path?x=1", parser.getPath());
+		assertEquals("HTTP/1.0", parser.getVersion());
+		assertEquals(0, parser.getHeaders().getHeaderCount());
+	}
+
+	/**
+	 * Creates an input stream that returns the given string data in small
+	 * fragments to simulate network input.
+	 *
+	 * @param data The input data
+	 * @return The input stream
+	 */
+	private InputStream input(String data) {
+		return new ByteArrayInputStream(
+			data.getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public synchronized int read(byte[] buffer, int offset,
+				int length) {
+				return super.read(buffer, offset, Math.min(length, 7));
+			}
+		};
+	}
+}
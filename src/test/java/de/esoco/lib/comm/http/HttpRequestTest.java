@@ -0,0 +1,291 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import org.junit.jupiter.api.Test;
+import org.obrel.core.Relation;
+import org.obrel.core.RelationType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static de.esoco.lib.comm.http.HttpHeaderTypes.CONTENT_LENGTH;
+import static de.esoco.lib.comm.http.HttpHeaderTypes.CONTENT_TYPE;
+import static de.esoco.lib.comm.http.HttpHeaderTypes.HOST;
+import static de.esoco.lib.comm.http.HttpHeaderTypes.USER_AGENT;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.obrel.type.StandardTypes.IP_ADDRESS;
+
+/**
+ * Test of the request parsing and framing in {@link HttpRequest}.
+ *
+ * @author eso
+ */
+public class HttpRequestTest {
+
+	/**
+	 * Test parsing of a chunked request body.
+	 */
+	@Test
+	public void testChunkedBody() throws IOException {
+		HttpRequest request = parse("POST / HTTP/1.1\r\n" +
+			"Transfer-Encoding: gzip, chunked\r\n\r\n3\r\nabc\r\n0\r\n\r\n");
+
+		assertEquals("abc", request.getBody());
+	}
+
+	/**
+	 * Test the rejection of requests with multiple Content-Length headers.
+	 */
+	@Test
+	public void testDuplicateContentLength() {
+		assertBadRequest("POST / HTTP/1.1\r\nContent-Length: 3\r\n" +
+			"Content-Length: 3\r\n\r\nabc");
+		assertBadRequest("POST / HTTP/1.1\r\nContent-Length: 3\r\n" +
+			"Content-Length: 10\r\n\r\nabc");
+		assertBadRequest("POST / HTTP/1.1\r\nContent-Length: 3, 10\r\n\r\nabc");
+	}
+
+	/**
+	 * Test the framing of chunked requests.
+	 */
+	@Test
+	public void testFrameChunkedRequest() {
+		String header = "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n";
+		String body = "3\r\nabc\r\nA;ext=1\r\n0123456789\r\n0\r\n\r\n";
+		String next = "GET / HTTP/1.1\r\n\r\n";
+
+		assertFrame(header.length() + body.length(), header + body);
+		assertFrame(header.length() + body.length(), header + body + next);
+		assertFrame(-1, header + body.substring(0, body.length() - 2));
+		assertFrame(-1, header + "3\r\nab");
+		assertFrame(-1, header + "3\r");
+
+		String trailer = "0\r\nExpires: never\r\n\r\n";
+
+		assertFrame(header.length() + trailer.length(), header + trailer);
+
+		// invalid chunk sizes hand the available data to the request handler
+		assertFrame(header.length() + 8, header + "x\r\nabc\r\n");
+		assertFrame(header.length() + 15, header + "fffffffff\r\nab\r\n");
+	}
+
+	/**
+	 * Test the framing of requests with a Content-Length header.
+	 */
+	@Test
+	public void testFrameContentLength() {
+		String request = "POST / HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc";
+
+		assertFrame(request.length(), request);
+		assertFrame(request.length(), request + "GET / HTTP/1.1\r\n\r\n");
+		assertFrame(-1, request.substring(0, request.length() - 1));
+		assertFrame(-1, "GET / HTTP/1.1\r\n");
+		assertFrame(18, "GET / HTTP/1.1\r\n\r\nGET");
+	}
+
+	/**
+	 * Test that requests with an ambiguous length are framed with all
+	 * available data so that they will be rejected by the request handler.
+	 */
+	@Test
+	public void testFrameInvalidLength() {
+		String request = "POST / HTTP/1.1\r\nContent-Length: 3\r\n" +
+			"Content-Length: 30\r\n\r\nabcGET / HTTP/1.1\r\n\r\n";
+
+		assertFrame(request.length(), request);
+
+		request = "POST / HTTP/1.1\r\nContent-Length: 3\r\n" +
+			"Transfer-Encoding: chunked\r\n\r\n0\r\n\r\nabc";
+		assertFrame(request.length(), request);
+
+		request = "POST / HTTP/1.1\r\nTransfer-Encoding: gzip\r\n\r\nabc";
+		assertFrame(request.length(), request);
+	}
+
+	/**
+	 * Test the rejection of requests with both Content-Length and
+	 * Transfer-Encoding headers or an unsupported transfer encoding.
+	 */
+	@Test
+	public void testInvalidTransferEncoding() {
+		assertBadRequest("POST / HTTP/1.1\r\nContent-Length: 5\r\n" +
+			"Transfer-Encoding: chunked\r\n\r\n0\r\n\r\n");
+		assertBadRequest("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n" +
+			"Content-Length: 5\r\n\r\n0\r\n\r\n");
+		assertBadRequest(
+			"POST / HTTP/1.1\r\nTransfer-Encoding: gzip\r\n\r\nabc");
+	}
+
+	/**
+	 * Test that the lazy header relations are created on deletion so that
+	 * deleted relations are not re-created by a later access.
+	 */
+	@Test
+	public void testLazyRelationsDelete() throws IOException {
+		HttpRequest request = parseWithHeaders();
+
+		request.deleteRelation(HOST);
+
+		assertFalse(request.hasRelation(HOST));
+		assertNull(request.get(HOST));
+		assertEquals("text/plain", request.get(CONTENT_TYPE));
+	}
+
+	/**
+	 * Test the lazy header relations with {@link HttpRequest#get(RelationType)}.
+	 */
+	@Test
+	public void testLazyRelationsGet() throws IOException {
+		HttpRequest request = parseWithHeaders();
+
+		assertEquals("localhost", request.get(HOST));
+		assertEquals("text/plain", request.get(CONTENT_TYPE));
+		assertEquals(Integer.valueOf(3), request.get(CONTENT_LENGTH));
+		assertEquals(InetAddress.getLoopbackAddress(),
+			request.get(IP_ADDRESS));
+		assertNull(request.get(USER_AGENT));
+	}
+
+	/**
+	 * Test the lazy header relations with
+	 * {@link HttpRequest#getRelation(RelationType)}.
+	 */
+	@Test
+	public void testLazyRelationsGetRelation() throws IOException {
+		HttpRequest request = parseWithHeaders();
+		Relation<String> host = request.getRelation(HOST);
+
+		assertNotNull(host);
+		assertEquals("localhost", host.getTarget());
+		assertNotNull(request.getRelation(IP_ADDRESS));
+		assertNull(request.getRelation(USER_AGENT));
+	}
+
+	/**
+	 * Test the lazy header relations with
+	 * {@link HttpRequest#getRelations(java.util.function.Predicate)}.
+	 */
+	@Test
+	public void testLazyRelationsGetRelations() throws IOException {
+		HttpRequest request = parseWithHeaders();
+		Set<RelationType<?>> types = new HashSet<>();
+
+		for (Relation<?> relation : request.getRelations(r -> true)) {
+			types.add(relation.getType());
+		}
+
+		assertTrue(types.contains(HOST));
+		assertTrue(types.contains(CONTENT_TYPE));
+		assertTrue(types.contains(CONTENT_LENGTH));
+		assertTrue(types.contains(IP_ADDRESS));
+		assertFalse(types.contains(USER_AGENT));
+	}
+
+	/**
+	 * Test the lazy header relations with
+	 * {@link HttpRequest#hasRelation(RelationType)}.
+	 */
+	@Test
+	public void testLazyRelationsHasRelation() throws IOException {
+		HttpRequest request = parseWithHeaders();
+
+		assertTrue(request.hasRelation(HOST));
+		assertTrue(request.hasRelation(CONTENT_TYPE));
+		assertTrue(request.hasRelation(IP_ADDRESS));
+		assertFalse(request.hasRelation(USER_AGENT));
+	}
+
+	/**
+	 * Test that header relations that are set by the application are not
+	 * replaced by the lazy header relations.
+	 */
+	@Test
+	public void testLazyRelationsSet() throws IOException {
+		HttpRequest request = parseWithHeaders();
+
+		request.set(HOST, "example.com");
+
+		assertEquals("example.com", request.get(HOST));
+		assertEquals("text/plain", request.get(CONTENT_TYPE));
+	}
+
+	/**
+	 * Asserts that parsing a request fails with the status code
+	 * {@link HttpStatusCode#BAD_REQUEST}.
+	 *
+	 * @param request The request data
+	 */
+	private void assertBadRequest(String request) {
+		HttpStatusException e =
+			assertThrows(HttpStatusException.class, () -> parse(request));
+
+		assertEquals(HttpStatusCode.BAD_REQUEST, e.getStatusCode());
+	}
+
+	/**
+	 * Asserts the request length that is determined by the request framer.
+	 *
+	 * @param expected The expected length
+	 * @param data     The request data
+	 */
+	private void assertFrame(int expected, String data) {
+		ByteBuffer buffer =
+			ByteBuffer.wrap(data.getBytes(StandardCharsets.US_ASCII));
+
+		assertEquals(expected, HttpRequest.getRequestLength(buffer));
+		assertEquals(0, buffer.position());
+	}
+
+	/**
+	 * Parses a request from a string.
+	 *
+	 * @param request The request data
+	 * @return The parsed request
+	 * @throws IOException If parsing fails
+	 */
+	private HttpRequest parse(String request) throws IOException {
+		return new HttpRequest(new ByteArrayInputStream(
+			request.getBytes(StandardCharsets.US_ASCII)), 1024);
+	}
+
+	/**
+	 * Parses a request with several header fields from the loopback address.
+	 *
+	 * @return The parsed request
+	 * @throws IOException If parsing fails
+	 */
+	private HttpRequest parseWithHeaders() throws IOException {
+		HttpRequest request = parse("POST / HTTP/1.1\r\nHost: localhost\r\n" +
+			"Content-Type: text/plain\r\nContent-Length: 3\r\n\r\nabc");
+
+		request.setClientAddress(InetAddress.getLoopbackAddress());
+
+		return request;
+	}
+}
@@ -0,0 +1,109 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link HttpResponse}.
+ *
+ * @author eso
+ */
+public class HttpResponseTest {
+
+	/**
+	 * Test that a response which fails while it is written is not flushed to
+	 * the output stream.
+	 */
+	@Test
+	public void testIncompleteResponse() {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		HttpResponse response = new HttpResponse(HttpStatusCode.OK, out -> {
+			out.write("partial".getBytes(StandardCharsets.US_ASCII));
+			throw new IOException("Body failed");
+		});
+
+		assertThrows(IOException.class, () -> response.write(output));
+		assertEquals(0, output.size());
+	}
+
+	/**
+	 * Test writing a response with a string body.
+	 */
+	@Test
+	public void testWrite() throws IOException {
+		String response = write(new HttpResponse("Test"));
+
+		assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"), response);
+		assertTrue(response.contains("\r\nContent-Length: 4\r\n"), response);
+		assertTrue(response.endsWith("\r\n\r\nTest"), response);
+	}
+
+	/**
+	 * Test that subclasses which override the deprecated header method with
+	 * a writer argument are still invoked.
+	 */
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testWriterHeaderOverride() throws IOException {
+		boolean[] invoked = new boolean[1];
+
+		HttpResponse response = new HttpResponse("Test") {
+			@Override
+			protected void writeResponseHeader(HttpStatusCode status,
+				Map<String, List<String>> responseHeaders, Writer out)
+				throws IOException {
+				invoked[0] = true;
+				out.write("X-Legacy: 1\r\n");
+				super.writeResponseHeader(status, responseHeaders, out);
+			}
+		};
+
+		String result = write(response);
+
+		assertTrue(invoked[0]);
+		assertTrue(result.startsWith("X-Legacy: 1\r\nHTTP/1.1 200 OK\r\n"),
+			result);
+		assertTrue(result.endsWith("\r\n\r\nTest"), result);
+	}
+
+	/**
+	 * Writes a response and returns the written data as a string.
+	 *
+	 * @param response The response to write
+	 * @return The response data
+	 * @throws IOException If writing fails
+	 */
+	private String write(HttpResponse response) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		response.write(output);
+
+		return new String(output.toByteArray(), StandardCharsets.US_ASCII);
+	}
+}
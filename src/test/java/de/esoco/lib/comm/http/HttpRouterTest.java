@@ -0,0 +1,146 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import de.esoco.lib.comm.http.HttpRequestHandler.HttpRequestMethodHandler;
+import de.esoco.lib.comm.http.HttpRouter.Route;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link HttpRouter}.
+ *
+ * @author eso
+ */
+public class HttpRouterTest {
+
+	private final HttpRequestMethodHandler root = r -> null;
+
+	private final HttpRequestMethodHandler users = r -> null;
+
+	private final HttpRequestMethodHandler user = r -> null;
+
+	private final HttpRequestMethodHandler me = r -> null;
+
+	private final HttpRequestMethodHandler files = r -> null;
+
+	/**
+	 * Test invalid route patterns.
+	 */
+	@Test
+	public void testInvalidRoutes() {
+		HttpRouter router = createRouter();
+
+		assertThrows(IllegalArgumentException.class,
+			() -> router.route("/users", root));
+		assertThrows(IllegalArgumentException.class,
+			() -> router.route("/users/{name}/x", root));
+		assertThrows(IllegalArgumentException.class,
+			() -> router.route("/a/*/b", root));
+		assertThrows(IllegalArgumentException.class,
+			() -> router.route("/a/{}", root));
+	}
+
+	/**
+	 * Test the resolving of literal routes.
+	 */
+	@Test
+	public void testLiteralRoutes() {
+		HttpRouter router = createRouter();
+
+		assertSame(root, router.resolve("/").getHandler());
+		assertSame(root, router.resolve("").getHandler());
+		assertSame(users, router.resolve("/users").getHandler());
+		assertSame(users, router.resolve("/users/?sort=name").getHandler());
+		assertSame(me, router.resolve("/users/me").getHandler());
+		assertTrue(router.resolve("/users/me").getParameters().isEmpty());
+		assertNull(router.resolve("/unknown"));
+		assertNull(router.resolve("/users/1/unknown"));
+	}
+
+	/**
+	 * Test the resolving of routes with parameters and wildcards.
+	 */
+	@Test
+	public void testParameterRoutes() {
+		HttpRouter router = createRouter();
+		Route route = router.resolve("/users/42?x=1");
+
+		assertSame(user, route.getHandler());
+		assertEquals("42", route.getParameters().get("id"));
+		assertSame(route, router.resolve("/users/42"));
+
+		route = router.resolve("/users/42/files/a/b.txt");
+		assertSame(files, route.getHandler());
+		assertEquals("42", route.getParameters().get("id"));
+		assertEquals("a/b.txt", route.getParameters().get("*"));
+
+		route = router.resolve("/users/me/files");
+		assertSame(files, route.getHandler());
+		assertEquals("me", route.getParameters().get("id"));
+		assertEquals("", route.getParameters().get("*"));
+	}
+
+	/**
+	 * Test that unmatched paths are not cached and that the cache evicts the
+	 * least recently used routes.
+	 */
+	@Test
+	public void testRouteCache() {
+		HttpRouter router = createRouter();
+		Route route = router.resolve("/users/1");
+		Route other = router.resolve("/users/2");
+
+		for (int i = 0; i < HttpRouter.MAX_CACHED_PATHS * 2; i++) {
+			assertNull(router.resolve("/unknown/" + i));
+		}
+
+		assertSame(route, router.resolve("/users/1"));
+		assertSame(other, router.resolve("/users/2"));
+
+		for (int i = 3; i < HttpRouter.MAX_CACHED_PATHS + 2; i++) {
+			assertSame(user, router.resolve("/users/" + i).getHandler());
+			assertSame(route, router.resolve("/users/1"));
+		}
+
+		Route evicted = router.resolve("/users/2");
+
+		assertNotSame(other, evicted);
+		assertSame(user, evicted.getHandler());
+		assertEquals("2", evicted.getParameters().get("id"));
+	}
+
+	/**
+	 * Creates a router with test routes.
+	 *
+	 * @return The router
+	 */
+	private HttpRouter createRouter() {
+		return new HttpRouter()
+			.route("/", root)
+			.route("/users", users)
+			.route("/users/me", me)
+			.route("/users/{id}", user)
+			.route("/users/{id}/files/*", files);
+	}
+}
@@ -0,0 +1,424 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import de.esoco.lib.comm.http.HttpHeaderTypes.HttpHeaderField;
+import de.esoco.lib.comm.http.ObjectSpaceHttpMethodHandler.ConcurrencyMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.obrel.core.RelatedObject;
+import org.obrel.space.RelationSpace;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.esoco.lib.comm.CommunicationRelationTypes.HTTP_STATUS_CODE;
+import static de.esoco.lib.comm.http.ObjectSpaceHttpMethodHandler.CACHE_UNLIMITED;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link ObjectSpaceHttpMethodHandler}.
+ *
+ * @author eso
+ */
+public class ObjectSpaceHttpMethodHandlerTest {
+
+	private TestSpace space;
+
+	private ObjectSpaceHttpMethodHandler handler;
+
+	private ExecutorService executor;
+
+	/**
+	 * Test setup.
+	 */
+	@BeforeEach
+	public void setUp() {
+		space = new TestSpace();
+		handler = new ObjectSpaceHttpMethodHandler(space, "info");
+		executor = Executors.newCachedThreadPool();
+
+		space.data.put("/test/a", "A");
+		space.data.put("/test/b", "B");
+	}
+
+	/**
+	 * Test cleanup.
+	 */
+	@AfterEach
+	public void tearDown() {
+		CountDownLatch gate = space.gate;
+
+		if (gate != null) {
+			gate.countDown();
+		}
+
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Test that the object space is accessed on each request if the cache is
+	 * disabled.
+	 */
+	@Test
+	public void testCacheDisabled() throws IOException {
+		handler.doGet(request("GET", "/test/a"));
+
+		assertEquals("A", getBody(handler.doGet(request("GET", "/test/a"))));
+		assertEquals(2, space.reads.get());
+	}
+
+	/**
+	 * Test that the least recently used responses are evicted from a full
+	 * cache.
+	 */
+	@Test
+	public void testCacheEviction() throws IOException {
+		handler.setCacheTimeToLive(CACHE_UNLIMITED);
+
+		int max = ObjectSpaceHttpMethodHandler.MAX_TRACKED_PATHS;
+
+		for (int i = 0; i <= max; i++) {
+			space.data.put("/test/" + i, "V" + i);
+		}
+
+		handler.doGet(request("GET", "/test/0"));
+
+		for (int i = 1; i <= max; i++) {
+			handler.doGet(request("GET", "/test/" + i));
+			handler.doGet(request("GET", "/test/0"));
+		}
+
+		assertEquals(max + 1, space.reads.get());
+
+		assertEquals("V1", getBody(handler.doGet(request("GET", "/test/1"))));
+		assertEquals(max + 2, space.reads.get());
+	}
+
+	/**
+	 * Test that cached responses are returned without accessing the object
+	 * space.
+	 */
+	@Test
+	public void testCacheHit() throws IOException {
+		handler.setCacheTimeToLive(CACHE_UNLIMITED);
+
+		HttpResponse first = handler.doGet(request("GET", "/test/a"));
+		HttpResponse second = handler.doGet(request("GET", "/test/a"));
+
+		assertEquals(1, space.reads.get());
+		assertEquals("A", getBody(second));
+		assertEquals(first.getHeader(HttpHeaderField.ETAG),
+			second.getHeader(HttpHeaderField.ETAG));
+		assertEquals(first.getHeader(HttpHeaderField.LAST_MODIFIED),
+			second.getHeader(HttpHeaderField.LAST_MODIFIED));
+	}
+
+	/**
+	 * Test that writes invalidate the cached responses of the modified path
+	 * and of the paths above it but not of unrelated paths.
+	 */
+	@Test
+	public void testCacheInvalidation() throws IOException {
+		handler.setCacheTimeToLive(CACHE_UNLIMITED);
+		space.data.put("/test", "T");
+
+		handler.doGet(request("GET", "/test"));
+		handler.doGet(request("GET", "/test/a"));
+		handler.doGet(request("GET", "/test/b"));
+		assertEquals(3, space.reads.get());
+
+		handler.doPut(
+			parse("PUT /test/a HTTP/1.1\r\nContent-Length: 1\r\n\r\nX"));
+
+		assertEquals("X", getBody(handler.doGet(request("GET", "/test/a"))));
+		assertEquals("B", getBody(handler.doGet(request("GET", "/test/b"))));
+		assertEquals("T", getBody(handler.doGet(request("GET", "/test"))));
+		assertEquals(5, space.reads.get());
+
+		space.data.put("/test/b", "Y");
+		handler.invalidateCache("/test/b");
+
+		assertEquals("Y", getBody(handler.doGet(request("GET", "/test/b"))));
+		assertEquals(6, space.reads.get());
+	}
+
+	/**
+	 * Test that the entity tag is derived from the response data and that it
+	 * changes after a modification.
+	 */
+	@Test
+	public void testEntityTag() throws Exception {
+		handler.setCacheTimeToLive(CACHE_UNLIMITED);
+
+		String entityTag = getEntityTag("/test/a");
+
+		assertEquals(createEntityTag("A"), entityTag);
+		assertEquals(entityTag, getEntityTag("/test/a"));
+		assertEquals(createEntityTag("B"), getEntityTag("/test/b"));
+
+		handler.doPut(
+			parse("PUT /test/a HTTP/1.1\r\nContent-Length: 1\r\n\r\nX"));
+
+		assertEquals(createEntityTag("X"), getEntityTag("/test/a"));
+
+		handler.doPut(
+			parse("PUT /test/a HTTP/1.1\r\nContent-Length: 1\r\n\r\nA"));
+
+		assertEquals(entityTag, getEntityTag("/test/a"));
+	}
+
+	/**
+	 * Test that a request with a matching If-None-Match header receives a
+	 * response with the status 304 (not modified).
+	 */
+	@Test
+	public void testNotModified() throws IOException {
+		HttpRequestHandler requestHandler =
+			new HttpRequestHandler(new RelatedObject(), handler);
+		String entityTag = handler
+			.doGet(request("GET", "/test/a"))
+			.getHeader(HttpHeaderField.ETAG);
+
+		HttpRequest request = parse("GET /test/a HTTP/1.1\r\n" +
+			"If-None-Match: " + entityTag + "\r\n\r\n");
+		HttpResponse response = requestHandler.checkNotModified(request,
+			handler.doGet(request));
+
+		assertEquals(HttpStatusCode.NOT_MODIFIED,
+			response.get(HTTP_STATUS_CODE));
+		assertEquals(entityTag, response.getHeader(HttpHeaderField.ETAG));
+
+		space.data.put("/test/a", "X");
+		response = requestHandler.checkNotModified(request,
+			handler.doGet(request));
+
+		assertEquals(HttpStatusCode.OK, response.get(HTTP_STATUS_CODE));
+		assertEquals("X", getBody(response));
+	}
+
+	/**
+	 * Test that reads of the same subtree run concurrently in the mode
+	 * {@link ConcurrencyMode#READ_WRITE} while a write excludes them.
+	 */
+	@Test
+	public void testReadWriteMode() throws Exception {
+		handler = new ObjectSpaceHttpMethodHandler(space, "info",
+			ConcurrencyMode.READ_WRITE);
+
+		CountDownLatch readGate = new CountDownLatch(1);
+
+		space.gate = readGate;
+
+		Future<?> read1 = executor.submit(() -> handler.doGet(
+			request("GET", "/test/a")));
+		Future<?> read2 = executor.submit(() -> handler.doGet(
+			request("GET", "/test/b")));
+
+		// both reads must be in the object space at the same time
+		assertTrue(space.entered.tryAcquire(2, 5, TimeUnit.SECONDS));
+
+		Future<?> write = executor.submit(() -> handler.doPut(
+			parse("PUT /test/a HTTP/1.1\r\nContent-Length: 1\r\n\r\nX")));
+
+		// the write must wait until the reads are finished
+		assertFalse(space.entered.tryAcquire(200, TimeUnit.MILLISECONDS));
+
+		space.gate = new CountDownLatch(1);
+		readGate.countDown();
+		read1.get(5, TimeUnit.SECONDS);
+		read2.get(5, TimeUnit.SECONDS);
+		assertTrue(space.entered.tryAcquire(5, TimeUnit.SECONDS));
+
+		Future<?> read3 = executor.submit(() -> handler.doGet(
+			request("GET", "/test/b")));
+
+		// and further reads must wait for the write
+		assertFalse(space.entered.tryAcquire(200, TimeUnit.MILLISECONDS));
+
+		space.gate.countDown();
+		write.get(5, TimeUnit.SECONDS);
+		read3.get(5, TimeUnit.SECONDS);
+		assertTrue(space.entered.tryAcquire(5, TimeUnit.SECONDS));
+		assertEquals("X", space.data.get("/test/a"));
+	}
+
+	/**
+	 * Test that the default concurrency mode serializes reads so that the
+	 * mode {@link ConcurrencyMode#READ_WRITE} must be enabled explicitly.
+	 */
+	@Test
+	public void testSynchronizedMode() throws Exception {
+		space.gate = new CountDownLatch(1);
+
+		Future<?> read1 = executor.submit(() -> handler.doGet(
+			request("GET", "/test/a")));
+		Future<?> read2 = executor.submit(() -> handler.doGet(
+			request("GET", "/test/b")));
+
+		assertTrue(space.entered.tryAcquire(5, TimeUnit.SECONDS));
+		assertFalse(space.entered.tryAcquire(200, TimeUnit.MILLISECONDS));
+
+		space.gate.countDown();
+		read1.get(5, TimeUnit.SECONDS);
+		read2.get(5, TimeUnit.SECONDS);
+		assertTrue(space.entered.tryAcquire(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Creates the expected entity tag for a response body.
+	 *
+	 * @param body The response body
+	 * @return The entity tag
+	 * @throws Exception If creating the hash fails
+	 */
+	private String createEntityTag(String body) throws Exception {
+		byte[] hash = MessageDigest
+			.getInstance("MD5")
+			.digest(body.getBytes(StandardCharsets.UTF_8));
+
+		return '"' +
+			Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + '"';
+	}
+
+	/**
+	 * Returns the body of a response as a string.
+	 *
+	 * @param response The response
+	 * @return The body string
+	 * @throws IOException If writing the response fails
+	 */
+	private String getBody(HttpResponse response) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		response.write(output);
+
+		String data = new String(output.toByteArray(), StandardCharsets.UTF_8);
+
+		return data.substring(data.indexOf("\r\n\r\n") + 4);
+	}
+
+	/**
+	 * Returns the entity tag of a GET request for a certain path.
+	 *
+	 * @param path The request path
+	 * @return The entity tag
+	 * @throws IOException If the request fails
+	 */
+	private String getEntityTag(String path) throws IOException {
+		return handler
+			.doGet(request("GET", path))
+			.getHeader(HttpHeaderField.ETAG);
+	}
+
+	/**
+	 * Parses a request from a string.
+	 *
+	 * @param request The request data
+	 * @return The parsed request
+	 * @throws IOException If parsing fails
+	 */
+	private HttpRequest parse(String request) throws IOException {
+		return new HttpRequest(new ByteArrayInputStream(
+			request.getBytes(StandardCharsets.US_ASCII)), 1024);
+	}
+
+	/**
+	 * Parses a request without header fields and body.
+	 *
+	 * @param method The request method
+	 * @param path   The request path
+	 * @return The parsed request
+	 * @throws IOException If parsing fails
+	 */
+	private HttpRequest request(String method, String path)
+		throws IOException {
+		return parse(method + " " + path + " HTTP/1.1\r\n\r\n");
+	}
+
+	/**
+	 * An object space that stores values by path and counts the read
+	 * accesses. Each access releases a permit of {@link #entered} and then
+	 * waits until the current {@link #gate} (if set) is opened.
+	 *
+	 * @author eso
+	 */
+	static class TestSpace extends RelationSpace<Object> {
+
+		final Map<String, Object> data = new ConcurrentHashMap<>();
+
+		final AtomicInteger reads = new AtomicInteger();
+
+		final Semaphore entered = new Semaphore(0);
+
+		volatile CountDownLatch gate = null;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Object get(String path) {
+			reads.incrementAndGet();
+			enter();
+
+			return data.get(path);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void put(String path, Object value) {
+			enter();
+			data.put(path, value);
+		}
+
+		/**
+		 * Signals an access and waits for the gate.
+		 */
+		private void enter() {
+			CountDownLatch currentGate = gate;
+
+			entered.release();
+
+			if (currentGate != null) {
+				try {
+					currentGate.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
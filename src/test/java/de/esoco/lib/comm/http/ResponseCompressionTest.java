@@ -0,0 +1,175 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.comm.http;
+
+import de.esoco.lib.comm.http.ResponseCompression.ContentEncoding;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link ResponseCompression}.
+ *
+ * @author eso
+ */
+public class ResponseCompressionTest {
+
+	private static final byte[] DATA = createData();
+
+	/**
+	 * Test the compression of data blocks.
+	 */
+	@Test
+	public void testCompress() throws IOException {
+		for (ContentEncoding encoding : ContentEncoding.values()) {
+			byte[] compressed = ResponseCompression.compress(encoding,
+				Deflater.DEFAULT_COMPRESSION, DATA, 0, DATA.length);
+
+			assertTrue(compressed.length < DATA.length / 4);
+			assertArrayEquals(DATA, decompress(encoding, compressed));
+		}
+
+		// the thread's deflater must be reusable
+		byte[] compressed = ResponseCompression.compress(ContentEncoding.GZIP,
+			Deflater.BEST_SPEED, DATA, 10, 100);
+
+		assertArrayEquals(Arrays.copyOfRange(DATA, 10, 110),
+			decompress(ContentEncoding.GZIP, compressed));
+	}
+
+	/**
+	 * Test that the encoding names don't depend on the default locale.
+	 */
+	@Test
+	public void testEncodingNameLocale() {
+		Locale defaultLocale = Locale.getDefault();
+
+		try {
+			Locale.setDefault(new Locale("tr", "TR"));
+
+			assertEquals("gzip", ContentEncoding.GZIP.getName());
+			assertEquals("deflate", ContentEncoding.DEFLATE.getName());
+			assertEquals(ContentEncoding.GZIP, negotiate("gzip"));
+		} finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+
+	/**
+	 * Test the negotiation of content encodings.
+	 */
+	@Test
+	public void testNegotiate() {
+		assertNull(ResponseCompression.negotiate(null));
+		assertNull(negotiate("identity"));
+		assertNull(negotiate("gzip;q=0, deflate;q=0"));
+		assertNull(negotiate("*;q=0"));
+		assertEquals(ContentEncoding.GZIP, negotiate("gzip, deflate, br"));
+		assertEquals(ContentEncoding.GZIP, negotiate("deflate, GZIP"));
+		assertEquals(ContentEncoding.DEFLATE,
+			negotiate("gzip;q=0.5, deflate"));
+		assertEquals(ContentEncoding.DEFLATE, negotiate("gzip;q=0, *"));
+		assertEquals(ContentEncoding.GZIP, negotiate("*"));
+	}
+
+	/**
+	 * Test the compression of streamed data.
+	 */
+	@Test
+	public void testStream() throws IOException {
+		for (ContentEncoding encoding : ContentEncoding.values()) {
+			ByteArrayOutputStream target = new ByteArrayOutputStream();
+			OutputStream output =
+				ResponseCompression.compress(encoding, 6, target, 1024);
+
+			output.write(DATA, 0, 1000);
+			output.flush();
+			output.write(DATA, 1000, DATA.length - 1000);
+			output.close();
+			output.close();
+
+			assertArrayEquals(DATA, decompress(encoding, target.toByteArray()));
+		}
+	}
+
+	/**
+	 * Creates compressible test data.
+	 *
+	 * @return The test data
+	 */
+	private static byte[] createData() {
+		StringBuilder data = new StringBuilder();
+
+		for (int i = 0; i < 1000; i++) {
+			data.append("{\"id\":").append(i).append(",\"state\":\"OK\"},");
+		}
+
+		return data.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decompresses data.
+	 *
+	 * @param encoding The content encoding of the data
+	 * @param data     The compressed data
+	 * @return The decompressed data
+	 */
+	private byte[] decompress(ContentEncoding encoding, byte[] data)
+		throws IOException {
+		ByteArrayInputStream compressed = new ByteArrayInputStream(data);
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+
+		try (InputStream input = encoding == ContentEncoding.GZIP ?
+		                         new GZIPInputStream(compressed) :
+		                         new InflaterInputStream(compressed)) {
+			while ((read = input.read(buffer)) >= 0) {
+				result.write(buffer, 0, read);
+			}
+		}
+
+		return result.toByteArray();
+	}
+
+	/**
+	 * Negotiates the encoding for a single header value.
+	 *
+	 * @param acceptEncoding The header value
+	 * @return The negotiated encoding
+	 */
+	private ContentEncoding negotiate(String acceptEncoding) {
+		return ResponseCompression.negotiate(
+			Collections.singletonList(acceptEncoding));
+	}
+}
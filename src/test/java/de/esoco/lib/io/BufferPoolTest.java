@@ -0,0 +1,211 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link BufferPool}.
+ *
+ * @author eso
+ */
+public class BufferPoolTest {
+
+	/**
+	 * Test the pooling of arrays.
+	 */
+	@Test
+	public void testArrays() throws Exception {
+		BufferPool pool = new BufferPool(1);
+		byte[] small = pool.acquireBytes(10);
+		byte[] large = pool.acquireBytes(BufferPool.MAX_BUFFER_SIZE + 1);
+
+		assertEquals(BufferPool.MIN_BUFFER_SIZE, small.length);
+		assertEquals(BufferPool.MAX_BUFFER_SIZE + 1, large.length);
+		assertEquals(8192, pool.acquireChars(5000).length);
+
+		pool.release(small);
+		pool.release(large);
+		assertSame(small, pool.acquireBytes(1));
+		assertNotSame(large, pool.acquireBytes(large.length));
+
+		byte[] first = pool.acquireBytes(4096);
+		byte[] second = pool.acquireBytes(4096);
+		byte[] third = pool.acquireBytes(4096);
+
+		// first in thread cache, second shared, third discarded
+		pool.release(first);
+		pool.release(second);
+		pool.release(third);
+
+		// only the shared buffer is available to other threads
+		assertSame(second,
+			CompletableFuture.supplyAsync(() -> pool.acquireBytes(4096)).get());
+		assertSame(first, pool.acquireBytes(4096));
+		assertNotSame(third, pool.acquireBytes(4096));
+
+		// arrays that don't match a size class are ignored
+		pool.release(new byte[1000]);
+		assertEquals(1024, pool.acquireBytes(1000).length);
+	}
+
+	/**
+	 * Test the pooling of byte buffers.
+	 */
+	@Test
+	public void testByteBuffers() {
+		BufferPool pool = new BufferPool(0);
+		ByteBuffer direct = pool.acquireBuffer(1000, true);
+		ByteBuffer heap = pool.acquireBuffer(1000, false);
+
+		assertTrue(direct.isDirect());
+		assertEquals(1024, direct.capacity());
+		assertEquals(1024, heap.capacity());
+
+		direct.put((byte) 1);
+		pool.release(direct);
+		pool.release(heap);
+
+		ByteBuffer reused = pool.acquireBuffer(600, true);
+
+		assertSame(direct, reused);
+		assertEquals(0, reused.position());
+		assertEquals(1024, reused.limit());
+
+		// heap buffers share the pooled byte arrays
+		assertSame(heap.array(), pool.acquireBytes(1024));
+
+		// slices are not pooled
+		ByteBuffer slice = ByteBuffer.wrap(new byte[2048], 1, 1024).slice();
+
+		pool.release(slice);
+		assertNotSame(slice.array(), pool.acquireBytes(1024));
+	}
+
+	/**
+	 * Test of {@link PooledOutputStream}.
+	 */
+	@Test
+	public void testPooledOutputStream() throws IOException {
+		BufferPool pool = new BufferPool(0);
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		PooledOutputStream output = new PooledOutputStream(target, 512, pool);
+		byte[] data = new byte[700];
+
+		output.writeAscii("HTTP/1.1 200 ä\r\n");
+		output.write('X');
+		assertEquals(0, target.size());
+
+		output.write(data);
+		output.close();
+
+		byte[] written = target.toByteArray();
+
+		assertEquals(17 + 700, written.length);
+		assertArrayEquals("HTTP/1.1 200 ?\r\nX".getBytes(),
+			Arrays.copyOf(written, 17));
+	}
+
+	/**
+	 * Test the gathering write of {@link PooledOutputStream} to a
+	 * {@link ChannelOutput}.
+	 */
+	@Test
+	public void testPooledOutputStreamGathering() throws IOException {
+		List<Integer> transfers = new ArrayList<>();
+		ByteArrayOutputStream target = new GatheringOutput(transfers);
+		PooledOutputStream output = new PooledOutputStream(target, 512,
+			new BufferPool(0));
+
+		output.writeAscii("HEADER");
+		output.write(ByteBuffer.wrap(new byte[10]));
+		assertEquals(0, target.size());
+
+		// header and large data are transferred together
+		output.write(new byte[600]);
+		assertEquals(Arrays.asList(2), transfers);
+		assertEquals(616, target.size());
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(1000);
+
+		output.write(direct);
+		assertEquals(Arrays.asList(2, 2), transfers);
+		assertEquals(0, direct.remaining());
+		output.close();
+		assertEquals(1616, target.size());
+	}
+
+	/**
+	 * A {@link ChannelOutput} that records the number of buffers of gathering
+	 * transfers.
+	 *
+	 * @author eso
+	 */
+	private static class GatheringOutput extends ByteArrayOutputStream
+		implements ChannelOutput {
+
+		private final List<Integer> transfers;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param transfers The list to record the transfers in
+		 */
+		GatheringOutput(List<Integer> transfers) {
+			this.transfers = transfers;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("boxing")
+		public void transferFrom(ByteBuffer[] buffers) {
+			transfers.add(buffers.length);
+
+			for (ByteBuffer buffer : buffers) {
+				while (buffer.hasRemaining()) {
+					write(buffer.get());
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void transferFrom(FileChannel source, long position,
+			long count) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test of {@link EchoInputStream}.
+ *
+ * @author eso
+ */
+public class EchoInputStreamTest {
+
+	private final ByteArrayOutputStream echo = new ByteArrayOutputStream();
+
+	/**
+	 * Test that all read bytes are echoed.
+	 */
+	@Test
+	public void testEcho() throws IOException {
+		EchoInputStream input = input("0123456789");
+		byte[] data = new byte[10];
+
+		input.read();
+		input.read(data, 0, 4);
+		input.read(data, 0, 10);
+
+		assertEquals(-1, input.read());
+		assertEquals("0123456789", getEcho());
+	}
+
+	/**
+	 * Test that bytes which are read again after a reset are only echoed
+	 * once.
+	 */
+	@Test
+	public void testMarkReset() throws IOException {
+		EchoInputStream input = input("0123456789");
+		byte[] data = new byte[10];
+
+		input.read();
+		input.mark(100);
+		input.read(data, 0, 3);
+		input.reset();
+		input.read(data, 0, 5);
+		input.reset();
+		input.read();
+
+		assertEquals("012345", getEcho());
+	}
+
+	/**
+	 * Test that skipped bytes are not echoed.
+	 */
+	@Test
+	public void testSkip() throws IOException {
+		EchoInputStream input = input("0123456789");
+		byte[] data = new byte[10];
+
+		input.read(data, 0, 2);
+		assertEquals(3, input.skip(3));
+		input.read(data, 0, 2);
+
+		assertEquals("0156", getEcho());
+	}
+
+	/**
+	 * Test that skipped bytes are not echoed if they are read after a reset.
+	 */
+	@Test
+	public void testSkipAfterReset() throws IOException {
+		EchoInputStream input = input("0123456789");
+		byte[] data = new byte[10];
+
+		input.mark(100);
+		input.read(data, 0, 2);
+		input.skip(2);
+		input.reset();
+		input.read(data, 0, 6);
+
+		assertEquals("0145", getEcho());
+	}
+
+	/**
+	 * Returns the echoed data as a string.
+	 *
+	 * @return The echoed data
+	 */
+	private String getEcho() {
+		return new String(echo.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates an echo input stream for a string.
+	 *
+	 * @param data The stream data
+	 * @return The new stream
+	 */
+	private EchoInputStream input(String data) {
+		return new EchoInputStream(
+			new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)),
+			echo);
+	}
+}
@@ -0,0 +1,119 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test of {@link LimitedInputStream}.
+ *
+ * @author eso
+ */
+public class LimitedInputStreamTest {
+
+	/**
+	 * Test that reading the end of a stream doesn't count against the limit.
+	 */
+	@Test
+	public void testEndOfStream() throws IOException {
+		LimitedInputStream input = input("01", 5);
+
+		assertEquals('0', input.read());
+		assertEquals('1', input.read());
+		assertEquals(-1, input.read());
+		assertEquals(-1, input.read(new byte[5], 0, 5));
+		assertEquals(3, input.getRemainingLimit());
+	}
+
+	/**
+	 * Test that exactly the number of bytes up to the limit can be read.
+	 */
+	@Test
+	public void testLimit() throws IOException {
+		LimitedInputStream input = input("0123456789", 5);
+		byte[] data = new byte[10];
+
+		assertEquals(5, input.read(data, 0, 10));
+		assertEquals("01234", new String(data, 0, 5, StandardCharsets.UTF_8));
+		assertEquals(0, input.getRemainingLimit());
+		assertThrows(StreamLimitException.class, () -> input.read());
+		assertThrows(StreamLimitException.class,
+			() -> input.read(data, 0, 10));
+
+		LimitedInputStream single = input("012", 2);
+
+		assertEquals('0', single.read());
+		assertEquals('1', single.read());
+		assertThrows(StreamLimitException.class, () -> single.read());
+	}
+
+	/**
+	 * Test that bytes which are read again after a reset don't count twice
+	 * against the limit.
+	 */
+	@Test
+	public void testMarkReset() throws IOException {
+		LimitedInputStream input = input("0123456789", 6);
+		byte[] data = new byte[10];
+
+		input.read();
+		input.mark(100);
+		assertEquals(4, input.read(data, 0, 4));
+		assertEquals(1, input.getRemainingLimit());
+
+		input.reset();
+		assertEquals(5, input.getRemainingLimit());
+		assertEquals(5, input.read(data, 0, 10));
+		assertEquals("12345", new String(data, 0, 5, StandardCharsets.UTF_8));
+		assertThrows(StreamLimitException.class, () -> input.read());
+	}
+
+	/**
+	 * Test that skipped bytes count against the limit.
+	 */
+	@Test
+	public void testSkip() throws IOException {
+		LimitedInputStream input = input("0123456789", 5);
+
+		assertEquals(3, input.skip(3));
+		assertEquals(2, input.getRemainingLimit());
+		assertEquals(2, input.skip(10));
+		assertEquals(0, input.getRemainingLimit());
+		assertEquals(0, input.skip(1));
+		assertThrows(StreamLimitException.class, () -> input.read());
+	}
+
+	/**
+	 * Creates a limited input stream for a string.
+	 *
+	 * @param data  The stream data
+	 * @param limit The stream limit
+	 * @return The new stream
+	 */
+	private LimitedInputStream input(String data, int limit) {
+		return new LimitedInputStream(
+			new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)),
+			limit);
+	}
+}
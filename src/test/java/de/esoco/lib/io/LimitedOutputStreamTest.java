@@ -0,0 +1,94 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link LimitedOutputStream}.
+ *
+ * @author eso
+ */
+public class LimitedOutputStreamTest {
+
+	/**
+	 * Test that writing up to the limit succeeds.
+	 */
+	@Test
+	public void testLimit() throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		LimitedOutputStream output = new LimitedOutputStream(data, 10);
+
+		output.write(new byte[6]);
+		output.write(1);
+		output.transferFrom(
+			new ByteBuffer[] { ByteBuffer.allocate(2), ByteBuffer.allocate(1) });
+
+		assertEquals(10, data.size());
+		assertEquals(10, output.getBytesWritten());
+		assertEquals(0, output.getRemainingLimit());
+	}
+
+	/**
+	 * Test that a write exceeding the limit is rejected completely and not
+	 * counted as written.
+	 */
+	@Test
+	public void testOverflow() throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		LimitedOutputStream output = new LimitedOutputStream(data, 10);
+
+		output.write(new byte[4]);
+
+		assertThrows(StreamLimitException.class,
+			() -> output.write(new byte[7]));
+		assertEquals(4, data.size());
+		assertEquals(4, output.getBytesWritten());
+		assertTrue(output.getRemainingLimit() < 0);
+
+		assertThrows(StreamLimitException.class, () -> output.write(1));
+		assertThrows(StreamLimitException.class,
+			() -> output.transferFrom(
+				new ByteBuffer[] { ByteBuffer.allocate(1) }));
+		assertEquals(4, data.size());
+		assertEquals(4, output.getBytesWritten());
+	}
+
+	/**
+	 * Test that a single byte write fails after the limit has been reached.
+	 */
+	@Test
+	public void testSingleByteOverflow() throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		LimitedOutputStream output = new LimitedOutputStream(data, 2);
+
+		output.write(1);
+		output.write(2);
+
+		assertThrows(StreamLimitException.class, () -> output.write(3));
+		assertEquals(2, data.size());
+		assertEquals(2, output.getBytesWritten());
+	}
+}
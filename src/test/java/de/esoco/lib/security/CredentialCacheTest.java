@@ -0,0 +1,132 @@
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// This file is a part of the 'esoco-lib' project.
+// Copyright 2020 Elmar Sonnenschein, esoco GmbH, Flensburg, Germany
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//	  http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+package de.esoco.lib.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link CredentialCache}.
+ *
+ * @author eso
+ */
+public class CredentialCacheTest {
+
+	/**
+	 * Test adding and querying credentials.
+	 */
+	@Test
+	public void testContains() {
+		CredentialCache cache = new CredentialCache(10, 60_000);
+
+		assertFalse(cache.contains("Basic dGVzdDp0ZXN0"));
+
+		cache.add("Basic dGVzdDp0ZXN0", "test");
+
+		assertTrue(cache.contains("Basic dGVzdDp0ZXN0"));
+		assertFalse(cache.contains("Basic dGVzdDp0ZXN1"));
+		assertThrows(IllegalArgumentException.class,
+			() -> new CredentialCache(0, 1000));
+	}
+
+	/**
+	 * Test the eviction of entries if the cache is full.
+	 */
+	@Test
+	public void testEviction() {
+		CredentialCache cache = new CredentialCache(3, 60_000);
+
+		for (int i = 0; i < 5; i++) {
+			cache.add("C" + i, null);
+		}
+
+		assertEquals(3, cache.getSize());
+		assertTrue(cache.contains("C4"));
+	}
+
+	/**
+	 * Test the expiration of entries.
+	 */
+	@Test
+	public void testExpiration() throws InterruptedException {
+		CredentialCache cache = new CredentialCache(10, 20);
+
+		cache.add("A", "a");
+		Thread.sleep(50);
+
+		assertFalse(cache.contains("A"));
+		assertEquals(0, cache.getSize());
+	}
+
+	/**
+	 * Test the invalidation of entries.
+	 */
+	@Test
+	public void testInvalidate() {
+		CredentialCache cache = new CredentialCache(10, 60_000);
+
+		cache.add("A1", "a");
+		cache.add("A2", "a");
+		cache.add("B", "b");
+		cache.invalidateUser("a");
+
+		assertFalse(cache.contains("A1"));
+		assertFalse(cache.contains("A2"));
+		assertTrue(cache.contains("B"));
+
+		cache.invalidate("B");
+		assertFalse(cache.contains("B"));
+
+		cache.add("C", "c");
+		cache.invalidateAll();
+		assertEquals(0, cache.getSize());
+	}
+
+	/**
+	 * Test that a credential which has been verified while its user or the
+	 * cache has been invalidated is not added.
+	 */
+	@Test
+	public void testInvalidateDuringAuthentication() {
+		CredentialCache cache = new CredentialCache(10, 60_000);
+		long generationA = cache.getGeneration("a");
+		long generationB = cache.getGeneration("b");
+
+		// invalidation while the credentials of a and b are verified
+		cache.invalidateUser("a");
+
+		assertFalse(cache.add("A", "a", generationA));
+		assertFalse(cache.contains("A"));
+		assertTrue(cache.add("B", "b", generationB));
+		assertTrue(cache.contains("B"));
+
+		generationA = cache.getGeneration("a");
+
+		assertTrue(cache.add("A", "a", generationA));
+		assertTrue(cache.contains("A"));
+
+		generationB = cache.getGeneration("b");
+		cache.invalidateAll();
+
+		assertFalse(cache.add("B", "b", generationB));
+		assertEquals(0, cache.getSize());
+	}
+}